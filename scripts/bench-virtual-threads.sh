@@ -0,0 +1,28 @@
+#!/usr/bin/env bash
+# Compares platform vs virtual request threads at high concurrency on the dashboard and
+# transaction endpoints, using the embedded profile and the built-in load driver.
+#
+# Usage: scripts/bench-virtual-threads.sh [threads] [duration-seconds]
+set -euo pipefail
+
+THREADS="${1:-1000}"
+DURATION="${2:-60}"
+
+# The embedded profile and the load driver are only in jars built with -Pembedded
+mvn -B -q -Pembedded package -DskipTests
+JAR="$(ls target/cash-flow-manager-*.jar | head -n 1)"
+
+for MODE in false true; do
+    echo "=== spring.threads.virtual.enabled=$MODE, $THREADS concurrent clients ==="
+    java -jar "$JAR" \
+        --spring.profiles.active=embedded \
+        --spring.threads.virtual.enabled="$MODE" \
+        --server.port=0 \
+        --loadtest.run=true \
+        --loadtest.scenario=dashboard-transactions \
+        --loadtest.client-virtual-threads=true \
+        --loadtest.threads="$THREADS" \
+        --loadtest.duration-seconds="$DURATION" \
+        --loadtest.warmup-seconds=15 \
+        | sed -n '/Server request threads/,/total throughput/p'
+done
@@ -0,0 +1,94 @@
+package com.shop.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stands in for asynchronous replication when the primary and replicas are embedded H2
+ * databases: every interval the replicas are rebuilt from a SCRIPT dump of the primary, so they
+ * lag the primary by up to one interval - just like a real replica under load. After the first
+ * full copy only rows are replaced, inside one transaction, so readers never see a partial copy.
+ */
+@Component
+@Profile("embedded-replica")
+public class EmbeddedReplicaSync {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddedReplicaSync.class);
+
+    @Autowired
+    private ReplicaRoutingDataSource routingDataSource;
+
+    private final Set<DataSource> initialized = ConcurrentHashMap.newKeySet();
+
+    @Scheduled(fixedDelayString = "${datasource.replicas.embedded-sync-interval-ms:2000}")
+    public void sync() {
+        try (Connection source = routingDataSource.getPrimary().getConnection();
+             Statement statement = source.createStatement();
+             ResultSet script = statement.executeQuery("SCRIPT NOPASSWORDS NOSETTINGS")) {
+            List<String> commands = new ArrayList<>();
+            while (script.next()) {
+                commands.add(script.getString(1));
+            }
+            for (DataSource replica : routingDataSource.getReplicas()) {
+                apply(replica, commands);
+            }
+        } catch (SQLException e) {
+            log.warn("Embedded replica sync failed: {}", e.getMessage());
+        }
+    }
+
+    private void apply(DataSource replica, List<String> commands) throws SQLException {
+        try (Connection target = replica.getConnection();
+             Statement statement = target.createStatement()) {
+            target.setReadOnly(false);
+            if (initialized.add(replica)) {
+                statement.execute("DROP ALL OBJECTS");
+                for (String command : commands) {
+                    statement.execute(command);
+                }
+                return;
+            }
+
+            List<String> tables = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery(
+                    "SELECT table_name FROM information_schema.tables WHERE table_schema = 'public'")) {
+                while (rs.next()) {
+                    tables.add(rs.getString(1));
+                }
+            }
+            statement.execute("SET REFERENTIAL_INTEGRITY FALSE");
+            target.setAutoCommit(false);
+            try {
+                for (String table : tables) {
+                    statement.execute("DELETE FROM \"" + table + "\"");
+                }
+                for (String command : commands) {
+                    if (command.startsWith("INSERT")) {
+                        statement.execute(command);
+                    }
+                }
+                target.commit();
+            } catch (SQLException e) {
+                target.rollback();
+                throw e;
+            } finally {
+                target.setAutoCommit(true);
+                statement.execute("SET REFERENTIAL_INTEGRITY TRUE");
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.shop.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Append-only latency sample buffer. Each load worker owns its own recorders, so no
+ * synchronization is needed while recording; buffers are merged once at the end.
+ */
+public class LatencyRecorder {
+
+    private long[] samples = new long[1024];
+    private int size;
+    private long errors;
+
+    public void record(long nanos) {
+        if (size == samples.length) {
+            samples = Arrays.copyOf(samples, size * 2);
+        }
+        samples[size++] = nanos;
+    }
+
+    public void recordError() {
+        errors++;
+    }
+
+    public void merge(LatencyRecorder other) {
+        for (int i = 0; i < other.size; i++) {
+            record(other.samples[i]);
+        }
+        errors += other.errors;
+    }
+
+    public int count() {
+        return size;
+    }
+
+    public long errors() {
+        return errors;
+    }
+
+    /**
+     * Returns the sample at the given percentile (0-100) in nanoseconds. Sorts in place,
+     * so only call once recording has finished.
+     */
+    public long percentile(double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        Arrays.sort(samples, 0, size);
+        int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+        return samples[Math.max(0, Math.min(index, size - 1))];
+    }
+}
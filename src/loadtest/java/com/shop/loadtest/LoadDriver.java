@@ -0,0 +1,262 @@
+package com.shop.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Scripted multi-threaded HTTP load driver for the synthetic dataset. Each worker logs in as
+ * one seeded shop and then issues a weighted mix of reads and writes against the real API,
+ * recording per-endpoint latency. Samples taken during warmup are discarded.
+ *
+ * <p>Standalone usage (against an app started with the "embedded" profile):
+ * <pre>
+ * java -cp target/classes com.shop.loadtest.LoadDriver --baseUrl=http://localhost:8080/api --threads=64
+ * </pre>
+ */
+public class LoadDriver {
+
+    static final String LOGIN = "POST /auth/login";
+    static final String LIST_CUSTOMERS = "GET /customers";
+    static final String CUSTOMER_TRANSACTIONS = "GET /transactions?customerId";
+    static final String CREATE_TRANSACTION = "POST /transactions";
+    static final String DASHBOARD_TODAY = "GET /dashboard/today";
+    static final String DASHBOARD_SUMMARY = "GET /dashboard/summary";
+
+    public static final String SCENARIO_MIXED = "mixed";
+    public static final String SCENARIO_DASHBOARD_TRANSACTIONS = "dashboard-transactions";
+
+    private static final Pattern TOKEN = Pattern.compile("\"token\"\\s*:\\s*\"([^\"]+)\"");
+
+    private final String baseUrl;
+    private final int threads;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final int shops;
+    private final int customersPerShop;
+    private final long seed;
+    private final HttpClient client;
+    private String scenario = SCENARIO_MIXED;
+    private boolean virtualThreads;
+
+    public LoadDriver(String baseUrl, int threads, int durationSeconds, int warmupSeconds,
+                      int shops, int customersPerShop, long seed) {
+        this.baseUrl = baseUrl;
+        this.threads = threads;
+        this.durationSeconds = durationSeconds;
+        this.warmupSeconds = warmupSeconds;
+        this.shops = shops;
+        this.customersPerShop = customersPerShop;
+        this.seed = seed;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        LoadDriver driver = new LoadDriver(
+                options.getOrDefault("baseUrl", "http://localhost:8080/api"),
+                Integer.parseInt(options.getOrDefault("threads", "32")),
+                Integer.parseInt(options.getOrDefault("duration", "60")),
+                Integer.parseInt(options.getOrDefault("warmup", "10")),
+                Integer.parseInt(options.getOrDefault("shops", "20")),
+                Integer.parseInt(options.getOrDefault("customersPerShop", "500")),
+                Long.parseLong(options.getOrDefault("seed", "42")));
+        driver.setScenario(options.getOrDefault("scenario", SCENARIO_MIXED));
+        driver.setVirtualThreads(Boolean.parseBoolean(options.getOrDefault("virtualThreads", "false")));
+        System.out.println(driver.run().format());
+    }
+
+    /**
+     * {@value #SCENARIO_MIXED} exercises every endpoint; {@value #SCENARIO_DASHBOARD_TRANSACTIONS}
+     * only the dashboard and transaction endpoints (logging in once per worker).
+     */
+    public void setScenario(String scenario) {
+        this.scenario = scenario;
+    }
+
+    /**
+     * Runs the load workers themselves on virtual threads, so the client is not the
+     * bottleneck at thousands of concurrent connections.
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public Report run() throws InterruptedException {
+        long startNanos = System.nanoTime();
+        long warmupEnd = startNanos + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long deadline = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        Worker[] workers = new Worker[threads];
+        ExecutorService executor = virtualThreads
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(i, warmupEnd, deadline);
+            executor.submit(workers[i]);
+        }
+        executor.shutdown();
+        executor.awaitTermination(durationSeconds + warmupSeconds + 60L, TimeUnit.SECONDS);
+
+        Map<String, LatencyRecorder> merged = new LinkedHashMap<>();
+        for (String endpoint : new String[]{LOGIN, LIST_CUSTOMERS, CUSTOMER_TRANSACTIONS, CREATE_TRANSACTION,
+                DASHBOARD_TODAY, DASHBOARD_SUMMARY}) {
+            merged.put(endpoint, new LatencyRecorder());
+        }
+        for (Worker worker : workers) {
+            worker.recorders.forEach((endpoint, recorder) -> merged.get(endpoint).merge(recorder));
+        }
+        merged.values().removeIf(recorder -> recorder.count() == 0 && recorder.errors() == 0);
+        return new Report(threads, durationSeconds, merged);
+    }
+
+    private class Worker implements Runnable {
+        private final int index;
+        private final long warmupEnd;
+        private final long deadline;
+        private final Random random;
+        private final Map<String, LatencyRecorder> recorders = new LinkedHashMap<>();
+        private String token;
+
+        Worker(int index, long warmupEnd, long deadline) {
+            this.index = index;
+            this.warmupEnd = warmupEnd;
+            this.deadline = deadline;
+            this.random = new Random(seed * 7919 + index);
+        }
+
+        @Override
+        public void run() {
+            int shop = index % shops;
+            login(shop);
+            boolean mixed = !SCENARIO_DASHBOARD_TRANSACTIONS.equals(scenario);
+            while (System.nanoTime() < deadline) {
+                // The dashboard/transactions scenario skips logins and customer listing
+                int roll = mixed ? random.nextInt(100) : 27 + random.nextInt(73);
+                String customerId = SyntheticDataset.customerId(shop, random.nextInt(customersPerShop));
+                if (roll < 2) {
+                    login(shop);
+                } else if (roll < 27) {
+                    call(LIST_CUSTOMERS, get("/customers"));
+                } else if (roll < 47) {
+                    call(CUSTOMER_TRANSACTIONS, get("/transactions?customerId=" + customerId));
+                } else if (roll < 67) {
+                    String body = "{\"customerId\":\"" + customerId + "\",\"transactionType\":\"" +
+                            (random.nextBoolean() ? "CREDIT" : "PAYMENT") + "\",\"amount\":" +
+                            (1 + random.nextInt(500)) + ".00,\"description\":\"load test\",\"date\":\"" + LocalDate.now() + "\"}";
+                    call(CREATE_TRANSACTION, authorized("/transactions")
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(body)).build());
+                } else if (roll < 85) {
+                    call(DASHBOARD_TODAY, get("/dashboard/today"));
+                } else {
+                    call(DASHBOARD_SUMMARY, get("/dashboard/summary?period=month"));
+                }
+            }
+        }
+
+        private void login(int shop) {
+            String body = "{\"email\":\"" + SyntheticDataset.userEmail(shop) + "\",\"password\":\"" +
+                    SyntheticDataset.PASSWORD + "\"}";
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/auth/login"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+            HttpResponse<String> response = call(LOGIN, request);
+            if (response != null && response.statusCode() == 200) {
+                Matcher matcher = TOKEN.matcher(response.body());
+                if (matcher.find()) {
+                    token = matcher.group(1);
+                }
+            }
+        }
+
+        private HttpRequest.Builder authorized(String path) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Authorization", "Bearer " + token);
+        }
+
+        private HttpRequest get(String path) {
+            return authorized(path).GET().build();
+        }
+
+        private HttpResponse<String> call(String endpoint, HttpRequest request) {
+            long start = System.nanoTime();
+            HttpResponse<String> response = null;
+            boolean ok;
+            try {
+                response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                ok = response.statusCode() / 100 == 2;
+            } catch (IOException e) {
+                ok = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            long end = System.nanoTime();
+            if (start >= warmupEnd) {
+                LatencyRecorder recorder = recorders.computeIfAbsent(endpoint, k -> new LatencyRecorder());
+                if (ok) {
+                    recorder.record(end - start);
+                } else {
+                    recorder.recordError();
+                }
+            }
+            return response;
+        }
+    }
+
+    public static class Report {
+        private final int threads;
+        private final int durationSeconds;
+        private final Map<String, LatencyRecorder> endpoints;
+
+        Report(int threads, int durationSeconds, Map<String, LatencyRecorder> endpoints) {
+            this.threads = threads;
+            this.durationSeconds = durationSeconds;
+            this.endpoints = endpoints;
+        }
+
+        public Map<String, LatencyRecorder> getEndpoints() {
+            return endpoints;
+        }
+
+        public String format() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format("Load test: %d threads, %d s measured%n", threads, durationSeconds));
+            out.append(String.format("%-32s %9s %7s %9s %9s %9s %9s%n",
+                    "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms"));
+            long total = 0;
+            for (Map.Entry<String, LatencyRecorder> entry : endpoints.entrySet()) {
+                LatencyRecorder recorder = entry.getValue();
+                total += recorder.count();
+                out.append(String.format("%-32s %9d %7d %9.1f %9.2f %9.2f %9.2f%n",
+                        entry.getKey(), recorder.count(), recorder.errors(),
+                        recorder.count() / (double) durationSeconds,
+                        recorder.percentile(50) / 1e6, recorder.percentile(99) / 1e6, recorder.percentile(99.9) / 1e6));
+            }
+            out.append(String.format("total throughput: %.1f req/s%n", total / (double) durationSeconds));
+            return out.toString();
+        }
+    }
+}
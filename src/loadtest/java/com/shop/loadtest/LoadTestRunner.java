@@ -0,0 +1,80 @@
+package com.shop.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs {@link LoadDriver} against this application once it is up and the synthetic dataset
+ * is seeded, prints the report, and optionally shuts down. Enable with {@code --loadtest.run=true}.
+ */
+@Component
+@Profile("embedded")
+@ConditionalOnProperty(name = "loadtest.run", havingValue = "true")
+public class LoadTestRunner implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadTestRunner.class);
+
+    @Value("${server.servlet.context-path:}")
+    private String contextPath;
+
+    @Value("${loadtest.threads:32}")
+    private int threads;
+
+    @Value("${loadtest.duration-seconds:60}")
+    private int durationSeconds;
+
+    @Value("${loadtest.warmup-seconds:10}")
+    private int warmupSeconds;
+
+    @Value("${loadtest.seed.shops:20}")
+    private int shops;
+
+    @Value("${loadtest.seed.customers-per-shop:500}")
+    private int customersPerShop;
+
+    @Value("${loadtest.seed.random-seed:42}")
+    private long seed;
+
+    @Value("${loadtest.scenario:mixed}")
+    private String scenario;
+
+    @Value("${loadtest.client-virtual-threads:false}")
+    private boolean clientVirtualThreads;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean serverVirtualThreads;
+
+    @Value("${loadtest.exit-on-finish:true}")
+    private boolean exitOnFinish;
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        int port = ((WebServerApplicationContext) event.getApplicationContext()).getWebServer().getPort();
+        String baseUrl = "http://localhost:" + port + contextPath;
+        Thread thread = new Thread(() -> {
+            try {
+                LoadDriver driver = new LoadDriver(baseUrl, threads, durationSeconds, warmupSeconds,
+                        shops, customersPerShop, seed);
+                driver.setScenario(scenario);
+                driver.setVirtualThreads(clientVirtualThreads);
+                LoadDriver.Report report = driver.run();
+                log.info("\nServer request threads: {}, scenario: {}\n{}",
+                        serverVirtualThreads ? "virtual" : "platform", scenario, report.format());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (exitOnFinish) {
+                System.exit(SpringApplication.exit(event.getApplicationContext()));
+            }
+        }, "load-driver");
+        thread.start();
+    }
+}
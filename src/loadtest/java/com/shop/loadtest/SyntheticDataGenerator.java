@@ -0,0 +1,163 @@
+package com.shop.loadtest;
+
+import com.shop.category.CategoryCatalog;
+import com.shop.datasource.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Seeds a deterministic synthetic dataset into the embedded database using batched JDBC inserts.
+ * The same seed and sizes always produce the same rows, so runs are comparable across changes.
+ * Customer balances are derived from the generated transactions, so they are consistent.
+ */
+@Component
+@Profile("embedded")
+@Order(0)
+@ConditionalOnProperty(name = "loadtest.seed.enabled", havingValue = "true")
+public class SyntheticDataGenerator implements CommandLineRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(SyntheticDataGenerator.class);
+
+    private static final String[] CATEGORIES = {"Regular", "VIP", "Wholesale", "New"};
+    private static final LocalDate BASE_DATE = LocalDate.of(2024, 1, 1);
+    // The default_payment_terms default
+    private static final int PAYMENT_TERMS_DAYS = 30;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private CategoryCatalog categoryCatalog;
+
+    @Value("${loadtest.seed.shops:20}")
+    private int shops;
+
+    @Value("${loadtest.seed.customers-per-shop:500}")
+    private int customersPerShop;
+
+    @Value("${loadtest.seed.transactions-per-customer:20}")
+    private int transactionsPerCustomer;
+
+    @Value("${loadtest.seed.random-seed:42}")
+    private long randomSeed;
+
+    @Value("${loadtest.seed.batch-size:1000}")
+    private int batchSize;
+
+    @Override
+    public void run(String... args) {
+        long start = System.currentTimeMillis();
+        // Hash once - BCrypt per row would dominate seeding time
+        String passwordHash = passwordEncoder.encode(SyntheticDataset.PASSWORD);
+        LocalDateTime now = LocalDateTime.now();
+        Integer[] categoryIds = new Integer[CATEGORIES.length];
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            categoryIds[i] = categoryCatalog.idFor(CATEGORIES[i]);
+        }
+
+        long customerRows = 0;
+        long transactionRows = 0;
+        for (int shop = 0; shop < shops; shop++) {
+            // Each shop is written as its own tenant, so sharded setups place it on its home shard
+            long[] rows = TenantContext.callAsTenant(SyntheticDataset.userEmail(shop), seedShop(shop, passwordHash, now, categoryIds));
+            customerRows += rows[0];
+            transactionRows += rows[1];
+        }
+
+        log.info("Seeded {} shops, {} customers, {} transactions in {} ms (password for every shop: {})",
+                shops, customerRows, transactionRows, System.currentTimeMillis() - start, SyntheticDataset.PASSWORD);
+    }
+
+    private Supplier<long[]> seedShop(int shop, String passwordHash, LocalDateTime now, Integer[] categoryIds) {
+        return () -> {
+            // One generator per shop keeps each shop's data independent of batch boundaries
+            Random random = new Random(randomSeed * 31 + shop);
+            String email = SyntheticDataset.userEmail(shop);
+            long customerRows = 0;
+            long transactionRows = 0;
+            List<Object[]> customerBatch = new ArrayList<>(batchSize);
+            List<Object[]> transactionBatch = new ArrayList<>(batchSize);
+
+            jdbcTemplate.update("INSERT INTO users (id, name, email, password_hash, shop_name, mobile, is_active) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?)", SyntheticDataset.userId(shop), "Load Shop " + shop, email,
+                    passwordHash, "Load Shop " + shop, String.format("8%09d", shop), true);
+
+            for (int c = 0; c < customersPerShop; c++) {
+                String customerId = SyntheticDataset.customerId(shop, c);
+                String customerName = "Customer " + shop + "-" + c;
+                BigDecimal totalDue = BigDecimal.ZERO;
+                LocalDate lastDate = BASE_DATE;
+
+                for (int t = 0; t < transactionsPerCustomer; t++) {
+                    boolean credit = random.nextInt(100) < 60;
+                    BigDecimal amount = BigDecimal.valueOf(100 + random.nextInt(500_000), 2);
+                    LocalDate date = BASE_DATE.plusDays(random.nextInt(365));
+                    String status = credit ? (random.nextInt(100) < 70 ? "PENDING" : "COMPLETED") : "COMPLETED";
+                    totalDue = credit ? totalDue.add(amount) : totalDue.subtract(amount);
+                    if (date.isAfter(lastDate)) {
+                        lastDate = date;
+                    }
+                    transactionBatch.add(new Object[]{SyntheticDataset.transactionId(shop, c, t), email, customerId,
+                            customerName, credit ? "CREDIT" : "PAYMENT", amount, credit ? "Goods on credit" : "Payment received",
+                            Date.valueOf(date), Date.valueOf(date.plusDays(PAYMENT_TERMS_DAYS)), status, "CASH", Timestamp.valueOf(now), Timestamp.valueOf(now)});
+                }
+
+                customerBatch.add(new Object[]{customerId, email, customerName, SyntheticDataset.customerMobile(shop, c),
+                        categoryIds[random.nextInt(categoryIds.length)], totalDue.setScale(2, RoundingMode.HALF_UP), true,
+                        Date.valueOf(lastDate), Timestamp.valueOf(now), Timestamp.valueOf(now)});
+
+                if (customerBatch.size() >= batchSize || transactionBatch.size() >= batchSize) {
+                    customerRows += flushCustomers(customerBatch);
+                    transactionRows += flushTransactions(transactionBatch);
+                }
+            }
+            customerRows += flushCustomers(customerBatch);
+            transactionRows += flushTransactions(transactionBatch);
+            return new long[]{customerRows, transactionRows};
+        };
+    }
+
+    private int flushCustomers(List<Object[]> batch) {
+        int size = batch.size();
+        if (size > 0) {
+            jdbcTemplate.batchUpdate("INSERT INTO customers (id, user_email, name, mobile, category_id, total_due, is_active, " +
+                    "last_transaction_date, created_at, updated_at, version) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)", batch);
+            batch.clear();
+        }
+        return size;
+    }
+
+    private int flushTransactions(List<Object[]> batch) {
+        int size = batch.size();
+        if (size > 0) {
+            jdbcTemplate.batchUpdate("INSERT INTO transactions (id, user_email, customer_id, customer_name, transaction_type, " +
+                    "amount, description, date, due_date, status, payment_method, created_at, updated_at, version) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)", batch);
+            batch.clear();
+        }
+        return size;
+    }
+}
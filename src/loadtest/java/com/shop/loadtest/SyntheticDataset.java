@@ -0,0 +1,34 @@
+package com.shop.loadtest;
+
+/**
+ * Naming scheme shared by the data generator and the load driver, so the driver can
+ * address seeded shops and customers without querying for them first.
+ */
+public final class SyntheticDataset {
+
+    public static final String PASSWORD = "loadtest123";
+
+    private SyntheticDataset() {
+    }
+
+    public static String userId(int shop) {
+        return "load-u-" + shop;
+    }
+
+    public static String userEmail(int shop) {
+        return "shop" + shop + "@load.test";
+    }
+
+    public static String customerId(int shop, int customer) {
+        return "load-c-" + shop + "-" + customer;
+    }
+
+    public static String customerMobile(int shop, int customer) {
+        // Unique per shop; 10 digits
+        return String.format("9%04d%05d", shop % 10000, customer % 100000);
+    }
+
+    public static String transactionId(int shop, int customer, int transaction) {
+        return "load-t-" + shop + "-" + customer + "-" + transaction;
+    }
+}
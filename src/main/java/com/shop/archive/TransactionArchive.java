@@ -0,0 +1,390 @@
+package com.shop.archive;
+
+import com.shop.datasource.ShardRoutingDataSource;
+import com.shop.datasource.TenantContext;
+import com.shop.dto.TransactionDto;
+import com.shop.entity.CustomerOpeningBalance;
+import com.shop.entity.Transaction.PaymentMethod;
+import com.shop.entity.Transaction.TransactionStatus;
+import com.shop.entity.Transaction.TransactionType;
+import com.shop.workingset.TenantWorkingSetManager;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves settled history out of the hot tables. Transactions that are COMPLETED or CANCELLED and dated
+ * more than {@code archive.retention-days} ago go to {@code transactions_archive}, their payment
+ * allocations to {@code transaction_payments_archive}, and what they add up to per customer onto the
+ * customer's {@code customer_opening_balances} row, so the hot transactions plus the opening balance
+ * still give the balance. Balances themselves live on the customer and in the ledger and do not move.
+ * <p>
+ * Each tenant is archived oldest first, {@code archive.chunk-size} transactions per database
+ * transaction: lock the chunk, copy it, add it to the opening balances, delete it. No transaction
+ * holds more than one chunk of hot rows, and a stopped or failed run loses at most its current chunk.
+ * <p>
+ * Reads that cover archived dates merge the archive in: date-ranged lists, period totals, exports,
+ * lookups by id and payment allocations. Which dates are archived is known per tenant from the newest
+ * archived date (the horizon), cached for a minute, so tenants and ranges with nothing archived cost no
+ * extra query. Archived transactions are read-only.
+ */
+@Component
+public class TransactionArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionArchive.class);
+
+    private static final String COLUMNS = "id, user_email, customer_id, customer_name, transaction_type, amount, " +
+            "description, date, due_date, status, payment_method, notes, created_at, updated_at, version";
+    private static final String SETTLED = "SELECT id FROM transactions WHERE user_email = ? AND date < ? " +
+            "AND status IN ('COMPLETED', 'CANCELLED') ORDER BY date, id LIMIT ? FOR UPDATE";
+    private static final String CARRY_FORWARD = "SELECT customer_id, " +
+            "SUM(CASE WHEN transaction_type = 'CREDIT' THEN amount ELSE -amount END), COUNT(*), MAX(date) " +
+            "FROM transactions WHERE id IN ";
+    private static final String ADD_OPENING = "UPDATE customer_opening_balances SET balance = balance + ?, " +
+            "transaction_count = transaction_count + ?, archived_through = CASE WHEN archived_through < ? THEN ? " +
+            "ELSE archived_through END, updated_at = ? WHERE customer_id = ?";
+    private static final String INSERT_OPENING = "INSERT INTO customer_opening_balances (customer_id, user_email, " +
+            "balance, transaction_count, archived_through, updated_at) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String READ = "SELECT id, customer_id, customer_name, transaction_type, amount, description, " +
+            "date, due_date, status, payment_method, notes, version FROM transactions_archive";
+
+    private static final long HORIZON_TTL_MS = 60_000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TenantWorkingSetManager workingSets;
+
+    @Autowired
+    private ObjectProvider<ShardRoutingDataSource> shardRouting;
+
+    @Value("${archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${archive.retention-days:730}")
+    private int retentionDays;
+
+    @Value("${archive.chunk-size:500}")
+    private int chunkSize;
+
+    // Newest archived date per tenant; an empty entry means nothing is archived
+    private final Map<String, Horizon> horizons = new ConcurrentHashMap<>();
+
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(r -> new Thread(r, "archive"));
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean stopRequested;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong transactionsArchived = new AtomicLong();
+    private final AtomicLong allocationsArchived = new AtomicLong();
+    private final AtomicLong archiveReads = new AtomicLong();
+    private volatile LocalDate lastCutoff;
+    private volatile LocalDateTime lastRunFinishedAt;
+    private volatile String lastError;
+
+    private static final class Horizon {
+        final LocalDate newest;
+        final long loadedAtMillis;
+
+        Horizon(LocalDate newest) {
+            this.newest = newest;
+            this.loadedAtMillis = System.currentTimeMillis();
+        }
+    }
+
+    // Archiving
+
+    @Scheduled(cron = "${archive.cron:0 30 3 * * *}")
+    public void nightly() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            start();
+        } catch (IllegalStateException e) {
+            log.info("Skipping scheduled archive run: {}", e.getMessage());
+        }
+    }
+
+    /** Starts a run in the background over every tenant; returns the cutoff date. */
+    public LocalDate start() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("An archive run is already in progress");
+        }
+        LocalDate cutoff = LocalDate.now().minusDays(retentionDays);
+        stopRequested = false;
+        try {
+            runner.execute(() -> run(cutoff));
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+        return cutoff;
+    }
+
+    /** Asks the current run to stop after its current chunk. */
+    public boolean stop() {
+        stopRequested = true;
+        return running.get();
+    }
+
+    private void run(LocalDate cutoff) {
+        long start = System.currentTimeMillis();
+        long archived = 0;
+        lastError = null;
+        try {
+            ShardRoutingDataSource routing = shardRouting.getIfAvailable();
+            int shards = routing != null ? routing.getDirectory().getShardCount() : 1;
+            for (int shard = 0; shard < shards && !stopRequested; shard++) {
+                List<String> tenants = routing != null
+                        ? TenantContext.callOnShard(shard, this::tenants)
+                        : tenants();
+                for (String tenant : tenants) {
+                    if (stopRequested) {
+                        break;
+                    }
+                    archived += TenantContext.callAsTenant(tenant, () -> archiveTenant(tenant, cutoff));
+                }
+            }
+            log.info("Archived {} transactions dated before {} in {} ms", archived, cutoff,
+                    System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            lastError = e.getMessage();
+            log.error("Archive run failed after {} transactions", archived, e);
+        } finally {
+            lastCutoff = cutoff;
+            lastRunFinishedAt = LocalDateTime.now();
+            runs.incrementAndGet();
+            running.set(false);
+        }
+    }
+
+    private List<String> tenants() {
+        return jdbcTemplate.queryForList("SELECT email FROM users ORDER BY email", String.class);
+    }
+
+    /** Archives the tenant's settled transactions dated before {@code cutoff}; returns how many moved. */
+    public long archiveTenant(String tenant, LocalDate cutoff) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        long archived = 0;
+        while (!stopRequested) {
+            Integer rows = template.execute(status -> archiveChunk(tenant, cutoff));
+            if (rows == null || rows == 0) {
+                break;
+            }
+            archived += rows;
+            chunks.incrementAndGet();
+            transactionsArchived.addAndGet(rows);
+        }
+        if (archived > 0) {
+            horizons.remove(tenant);
+            // The working set holds every hot transaction; it reloads without the archived ones
+            workingSets.invalidate(tenant);
+        }
+        return archived;
+    }
+
+    private int archiveChunk(String tenant, LocalDate cutoff) {
+        List<String> ids = jdbcTemplate.queryForList(SETTLED, String.class, tenant, Date.valueOf(cutoff), chunkSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        String in = placeholders(ids.size());
+        Object[] args = ids.toArray();
+        LocalDateTime now = LocalDateTime.now();
+
+        jdbcTemplate.update("INSERT INTO transactions_archive (" + COLUMNS + ", archived_at) SELECT " + COLUMNS +
+                ", CURRENT_TIMESTAMP FROM transactions WHERE id IN " + in, args);
+        allocationsArchived.addAndGet(jdbcTemplate.update("INSERT INTO transaction_payments_archive (transaction_id, " +
+                "payment_record_id, amount_applied, created_at, archived_at) SELECT transaction_id, payment_record_id, " +
+                "amount_applied, created_at, CURRENT_TIMESTAMP FROM transaction_payments WHERE transaction_id IN " + in +
+                " ORDER BY id", args));
+
+        // Customer id order, so chunks of two tenants never wait on each other's rows in opposite order
+        List<Object[]> carried = jdbcTemplate.query(CARRY_FORWARD + in + " GROUP BY customer_id ORDER BY customer_id",
+                (rs, i) -> new Object[]{rs.getString(1), rs.getBigDecimal(2), rs.getLong(3), rs.getDate(4)}, args);
+        List<Object[]> updates = new ArrayList<>();
+        for (Object[] row : carried) {
+            updates.add(new Object[]{row[1], row[2], row[3], row[3], Timestamp.valueOf(now), row[0]});
+        }
+        int[] updated = jdbcTemplate.batchUpdate(ADD_OPENING, updates);
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                Object[] row = carried.get(i);
+                inserts.add(new Object[]{row[0], tenant, row[1], row[2], row[3], Timestamp.valueOf(now)});
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_OPENING, inserts);
+        }
+
+        jdbcTemplate.update("DELETE FROM transaction_payments WHERE transaction_id IN " + in, args);
+        jdbcTemplate.update("DELETE FROM transactions WHERE id IN " + in, args);
+        return ids.size();
+    }
+
+    // Reads
+
+    /** Newest archived transaction date of the tenant, or null when nothing is archived. */
+    public LocalDate horizon(String tenant) {
+        Horizon horizon = horizons.get(tenant);
+        if (horizon == null || System.currentTimeMillis() - horizon.loadedAtMillis > HORIZON_TTL_MS) {
+            Date newest = jdbcTemplate.queryForObject("SELECT MAX(date) FROM transactions_archive WHERE user_email = ?",
+                    Date.class, tenant);
+            horizon = new Horizon(newest != null ? newest.toLocalDate() : null);
+            horizons.put(tenant, horizon);
+        }
+        return horizon.newest;
+    }
+
+    /** Whether anything archived can fall on or after {@code startDate}; a null start is open. */
+    public boolean covers(String tenant, LocalDate startDate) {
+        LocalDate horizon = horizon(tenant);
+        return horizon != null && (startDate == null || !startDate.isAfter(horizon));
+    }
+
+    /** Archived amount of one type and status dated within the range, both ends inclusive. */
+    public BigDecimal sumAmount(String tenant, TransactionType type, TransactionStatus status, LocalDate startDate,
+                                LocalDate endDate) {
+        if (!covers(tenant, startDate)) {
+            return BigDecimal.ZERO;
+        }
+        archiveReads.incrementAndGet();
+        BigDecimal sum = jdbcTemplate.queryForObject("SELECT SUM(amount) FROM transactions_archive WHERE user_email = ? " +
+                "AND date BETWEEN ? AND ? AND transaction_type = ? AND status = ?", BigDecimal.class, tenant,
+                Date.valueOf(startDate), Date.valueOf(endDate), type.name(), status.name());
+        return sum != null ? sum : BigDecimal.ZERO;
+    }
+
+    /** Archived transactions dated within the range, newest first; a null customer means all. */
+    public List<TransactionDto> find(String tenant, String customerId, LocalDate startDate, LocalDate endDate) {
+        if (!covers(tenant, startDate)) {
+            return List.of();
+        }
+        archiveReads.incrementAndGet();
+        if (customerId != null) {
+            return jdbcTemplate.query(READ + " WHERE customer_id = ? AND user_email = ? AND date BETWEEN ? AND ? " +
+                    "ORDER BY date DESC, created_at DESC", ROW, customerId, tenant, Date.valueOf(startDate), Date.valueOf(endDate));
+        }
+        return jdbcTemplate.query(READ + " WHERE user_email = ? AND date BETWEEN ? AND ? ORDER BY date DESC, created_at DESC",
+                ROW, tenant, Date.valueOf(startDate), Date.valueOf(endDate));
+    }
+
+    public TransactionDto findById(String tenant, String id) {
+        if (horizon(tenant) == null) {
+            return null;
+        }
+        archiveReads.incrementAndGet();
+        List<TransactionDto> rows = jdbcTemplate.query(READ + " WHERE id = ? AND user_email = ?", ROW, id, tenant);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /** Adds the archived allocations of a payment to {@code allocation}, by transaction id. */
+    public void addAllocations(String tenant, Long paymentRecordId, Map<String, BigDecimal> allocation) {
+        if (horizon(tenant) == null) {
+            return;
+        }
+        archiveReads.incrementAndGet();
+        jdbcTemplate.query("SELECT transaction_id, amount_applied FROM transaction_payments_archive " +
+                "WHERE payment_record_id = ? ORDER BY id", rs -> {
+            allocation.merge(rs.getString(1), rs.getBigDecimal(2), BigDecimal::add);
+        }, paymentRecordId);
+    }
+
+    /** The customer's carried-forward archived total, or null when none of its transactions are archived. */
+    public CustomerOpeningBalance openingBalance(String tenant, String customerId) {
+        if (horizon(tenant) == null) {
+            return null;
+        }
+        archiveReads.incrementAndGet();
+        List<CustomerOpeningBalance> rows = jdbcTemplate.query("SELECT balance, transaction_count, archived_through " +
+                "FROM customer_opening_balances WHERE customer_id = ? AND user_email = ?", (rs, i) -> {
+            CustomerOpeningBalance opening = new CustomerOpeningBalance();
+            opening.setCustomerId(customerId);
+            opening.setUserEmail(tenant);
+            opening.setBalance(rs.getBigDecimal(1));
+            opening.setTransactionCount(rs.getLong(2));
+            opening.setArchivedThrough(rs.getDate(3).toLocalDate());
+            return opening;
+        }, customerId, tenant);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private static final RowMapper<TransactionDto> ROW = (rs, i) -> {
+        TransactionDto dto = new TransactionDto();
+        dto.setId(rs.getString(1));
+        dto.setCustomerId(rs.getString(2));
+        dto.setCustomerName(rs.getString(3));
+        dto.setTransactionType(TransactionType.valueOf(rs.getString(4)));
+        dto.setAmount(rs.getBigDecimal(5));
+        dto.setDescription(rs.getString(6));
+        dto.setDate(rs.getDate(7).toLocalDate());
+        Date dueDate = rs.getDate(8);
+        dto.setDueDate(dueDate != null ? dueDate.toLocalDate() : null);
+        dto.setStatus(TransactionStatus.valueOf(rs.getString(9)));
+        String paymentMethod = rs.getString(10);
+        dto.setPaymentMethod(paymentMethod != null ? PaymentMethod.valueOf(paymentMethod) : null);
+        dto.setNotes(rs.getString(11));
+        dto.setVersion(rs.getLong(12));
+        return dto;
+    };
+
+    private static String placeholders(int count) {
+        return "(" + String.join(", ", Collections.nCopies(count, "?")) + ")";
+    }
+
+    @PreDestroy
+    void shutdown() {
+        stopRequested = true;
+        runner.shutdown();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("running", running.get());
+        stats.put("retentionDays", retentionDays);
+        stats.put("chunkSize", chunkSize);
+        stats.put("runs", runs.get());
+        stats.put("lastCutoff", lastCutoff);
+        stats.put("lastRunFinishedAt", lastRunFinishedAt);
+        stats.put("lastError", lastError);
+        stats.put("chunks", chunks.get());
+        stats.put("transactionsArchived", transactionsArchived.get());
+        stats.put("allocationsArchived", allocationsArchived.get());
+        stats.put("archiveReads", archiveReads.get());
+        stats.put("tenantsWithKnownHorizon", horizons.size());
+        return stats;
+    }
+}
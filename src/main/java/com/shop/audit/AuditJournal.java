@@ -0,0 +1,247 @@
+package com.shop.audit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.datasource.TenantContext;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Audit trail of customer and transaction changes, kept off the request path. Services hand in
+ * before/after snapshots ({@link AuditSnapshots}); once the change commits the event goes onto a
+ * lock-free queue, and a background writer inserts queued events into {@code audit_log} with JDBC
+ * batches of {@code audit.batch-size}. Rolled-back changes are never audited.
+ * <p>
+ * A failed batch goes back on the queue and is retried on the next run. On a clean shutdown the
+ * queue is drained before the data source closes. If the backlog passes {@code audit.max-backlog},
+ * the thread that queues an event writes a batch itself, so memory stays bounded without dropping
+ * events.
+ */
+@Component
+public class AuditJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditJournal.class);
+
+    public static final String CUSTOMER = "CUSTOMER";
+    public static final String TRANSACTION = "TRANSACTION";
+
+    public static final String CREATE = "CREATE";
+    public static final String UPDATE = "UPDATE";
+    public static final String DELETE = "DELETE";
+    // A customer's balance moved because of one of its transactions
+    public static final String BALANCE = "BALANCE";
+
+    private static final String INSERT = "INSERT INTO audit_log (user_email, entity_type, entity_id, action, "
+            + "before_state, after_state, occurred_at, recorded_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Value("${audit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${audit.batch-size:500}")
+    private int batchSize;
+
+    @Value("${audit.max-backlog:100000}")
+    private int maxBacklog;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Queue<AuditEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger backlog = new AtomicInteger();
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong inlineBatches = new AtomicLong();
+    private final AtomicInteger peakBacklog = new AtomicInteger();
+    private volatile long lastBatchMs;
+
+    /**
+     * Audits a change made in the current transaction. {@code before} and {@code after} must be
+     * snapshots nobody modifies afterwards; null stands for "did not exist".
+     */
+    public void record(String tenant, String entityType, String entityId, String action,
+                       Map<String, Object> before, Map<String, Object> after) {
+        if (!enabled) {
+            return;
+        }
+        AuditEvent event = new AuditEvent(tenant, entityType, entityId, action, before, after);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            enqueue(event);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                event.occurredAt = LocalDateTime.now();
+                enqueue(event);
+            }
+        });
+    }
+
+    private void enqueue(AuditEvent event) {
+        event.queuedAtMillis = System.currentTimeMillis();
+        queue.offer(event);
+        queued.incrementAndGet();
+        int size = backlog.incrementAndGet();
+        peakBacklog.accumulateAndGet(size, Math::max);
+        if (size > maxBacklog) {
+            // The writer is falling behind (or the database is down): make the producer pay
+            inlineBatches.incrementAndGet();
+            writeBatch();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${audit.flush-interval-ms:500}")
+    public void flush() {
+        while (writeBatch() == batchSize) {
+            // keep going while full batches come out
+        }
+    }
+
+    /** Writes up to one batch; returns how many events it took, or -1 if the write failed. */
+    private int writeBatch() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        AuditEvent event;
+        while (batch.size() < batchSize && (event = queue.poll()) != null) {
+            batch.add(event);
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        backlog.addAndGet(-batch.size());
+
+        Map<String, List<AuditEvent>> byTenant = new LinkedHashMap<>();
+        for (AuditEvent e : batch) {
+            byTenant.computeIfAbsent(e.tenant, t -> new ArrayList<>()).add(e);
+        }
+        long start = System.currentTimeMillis();
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        List<AuditEvent> failed = new ArrayList<>();
+        for (Map.Entry<String, List<AuditEvent>> e : byTenant.entrySet()) {
+            try {
+                // Per tenant, so with sharding each batch lands on the tenant's shard
+                TenantContext.runAsTenant(e.getKey(), () -> template.executeWithoutResult(status -> insert(e.getValue())));
+                written.addAndGet(e.getValue().size());
+            } catch (RuntimeException ex) {
+                failed.addAll(e.getValue());
+                log.warn("Writing {} audit events of {} failed, will retry: {}", e.getValue().size(), e.getKey(),
+                        ex.getMessage());
+            }
+        }
+        lastBatchMs = System.currentTimeMillis() - start;
+        batches.incrementAndGet();
+        if (!failed.isEmpty()) {
+            failedBatches.incrementAndGet();
+            failed.forEach(queue::offer);
+            backlog.addAndGet(failed.size());
+            return -1;
+        }
+        return batch.size();
+    }
+
+    private void insert(List<AuditEvent> events) {
+        Timestamp recordedAt = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(events.size());
+        for (AuditEvent e : events) {
+            rows.add(new Object[]{e.tenant, e.entityType, e.entityId, e.action, toJson(e.before), toJson(e.after),
+                    Timestamp.valueOf(e.occurredAt), recordedAt});
+        }
+        jdbcTemplate.batchUpdate(INSERT, rows);
+    }
+
+    private String toJson(Map<String, Object> state) {
+        if (state == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(state);
+        } catch (JsonProcessingException e) {
+            // Snapshots only hold strings, numbers, booleans and dates
+            throw new IllegalStateException("Unserializable audit snapshot", e);
+        }
+    }
+
+    @PreDestroy
+    public void drain() {
+        int remaining = backlog.get();
+        if (remaining > 0) {
+            log.info("Writing {} queued audit events before shutdown", remaining);
+        }
+        while (!queue.isEmpty()) {
+            if (writeBatch() < 0) {
+                log.error("Could not write {} audit events before shutdown", backlog.get());
+                return;
+            }
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        AuditEvent oldest = queue.peek();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("backlog", backlog.get());
+        stats.put("peakBacklog", peakBacklog.get());
+        stats.put("maxBacklog", maxBacklog);
+        stats.put("oldestQueuedMs", oldest != null ? System.currentTimeMillis() - oldest.queuedAtMillis : 0);
+        stats.put("queued", queued.get());
+        stats.put("written", written.get());
+        stats.put("batches", batches.get());
+        stats.put("failedBatches", failedBatches.get());
+        stats.put("inlineBatches", inlineBatches.get());
+        stats.put("lastBatchMs", lastBatchMs);
+        return stats;
+    }
+
+    private static final class AuditEvent {
+        final String tenant;
+        final String entityType;
+        final String entityId;
+        final String action;
+        final Map<String, Object> before;
+        final Map<String, Object> after;
+        LocalDateTime occurredAt = LocalDateTime.now();
+        volatile long queuedAtMillis;
+
+        AuditEvent(String tenant, String entityType, String entityId, String action,
+                   Map<String, Object> before, Map<String, Object> after) {
+            this.tenant = tenant;
+            this.entityType = entityType;
+            this.entityId = entityId;
+            this.action = action;
+            this.before = before;
+            this.after = after;
+        }
+    }
+}
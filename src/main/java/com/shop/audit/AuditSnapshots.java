@@ -0,0 +1,49 @@
+package com.shop.audit;
+
+import com.shop.entity.Customer;
+import com.shop.entity.Transaction;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable copies of the audited fields, taken on the request thread so later changes to the
+ * entity can't leak into an event that is still queued.
+ */
+public final class AuditSnapshots {
+
+    private AuditSnapshots() {}
+
+    public static Map<String, Object> of(Customer customer) {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("id", customer.getId());
+        state.put("name", customer.getName());
+        state.put("mobile", customer.getMobile());
+        state.put("address", customer.getAddress());
+        state.put("categoryId", customer.getCategoryId());
+        state.put("notes", customer.getNotes());
+        state.put("totalDue", customer.getTotalDue());
+        state.put("creditLimit", customer.getCreditLimit());
+        state.put("lastTransactionDate", customer.getLastTransactionDate());
+        state.put("isActive", customer.getIsActive());
+        state.put("version", customer.getVersion());
+        return Collections.unmodifiableMap(state);
+    }
+
+    public static Map<String, Object> of(Transaction transaction) {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("id", transaction.getId());
+        state.put("customerId", transaction.getCustomer() != null ? transaction.getCustomer().getId() : null);
+        state.put("transactionType", transaction.getTransactionType());
+        state.put("amount", transaction.getAmount());
+        state.put("description", transaction.getDescription());
+        state.put("date", transaction.getDate());
+        state.put("dueDate", transaction.getDueDate());
+        state.put("status", transaction.getStatus());
+        state.put("paymentMethod", transaction.getPaymentMethod());
+        state.put("notes", transaction.getNotes());
+        state.put("version", transaction.getVersion());
+        return Collections.unmodifiableMap(state);
+    }
+}
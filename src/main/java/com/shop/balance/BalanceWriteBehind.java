@@ -0,0 +1,477 @@
+package com.shop.balance;
+
+import com.shop.audit.AuditSnapshots;
+import com.shop.datasource.ShardRoutingDataSource;
+import com.shop.datasource.TenantContext;
+import com.shop.dto.CustomerDto;
+import com.shop.entity.BalanceJournalEntry;
+import com.shop.entity.Customer;
+import com.shop.repository.BalanceJournalRepository;
+import com.shop.repository.CustomerRepository;
+import com.shop.service.CustomerLockManager;
+import com.shop.service.EntityChanges;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Write-behind for customer balances ({@code balances.write-behind.enabled=true}). Instead of
+ * updating the customer row on every transaction, a balance change is appended to
+ * {@code balance_journal} in the caller's transaction and kept in memory; every
+ * {@code balances.write-behind.flush-interval-ms} the pending changes of each customer are folded
+ * into one UPDATE of that customer and their journal rows are deleted, in one transaction.
+ * <p>
+ * Reads add the pending changes to what they loaded. A flush marks its entries with the customer
+ * version it writes, so a reader that loaded the row before the flush committed still adds them
+ * and one that loaded it after does not; no locking between readers and the flusher is needed.
+ * On startup all journal rows left by a crash are loaded back and flushed.
+ */
+@Component
+public class BalanceWriteBehind {
+
+    private static final Logger log = LoggerFactory.getLogger(BalanceWriteBehind.class);
+
+    @Value("${balances.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Autowired
+    private BalanceJournalRepository journalRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectProvider<ShardRoutingDataSource> shardRouting;
+
+    @Autowired
+    private CustomerLockManager customerLocks;
+
+    @Autowired
+    private EntityChanges changes;
+
+    // tenant -> customer id -> pending journal entries
+    private final Map<String, Map<String, CustomerPending>> pending = new ConcurrentHashMap<>();
+
+    // Bumped when a shard move renumbers journal rows; a flush that overlapped one starts over
+    private final AtomicLong remaps = new AtomicLong();
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong flushedEntries = new AtomicLong();
+    private final AtomicLong customerUpdates = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private volatile long lastFlushMs;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records a balance change for the customer. Must run inside the transaction that makes the
+     * change, so the journal row commits or rolls back with it.
+     */
+    public void append(String tenant, String customerId, BigDecimal delta, LocalDate transactionDate) {
+        BalanceJournalEntry entry = journalRepository.save(
+                new BalanceJournalEntry(tenant, customerId, delta, transactionDate));
+        appended.incrementAndGet();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            track(entry);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                track(entry);
+            }
+        });
+    }
+
+    private void track(BalanceJournalEntry entry) {
+        pending.computeIfAbsent(entry.getUserEmail(), t -> new ConcurrentHashMap<>())
+                .computeIfAbsent(entry.getCustomerId(), c -> new CustomerPending())
+                .add(entry.getId(), entry.getDelta(), entry.getTransactionDate());
+    }
+
+    // Reads
+
+    public boolean hasPending(String tenant) {
+        Map<String, CustomerPending> customers = pending.get(tenant);
+        return enabled && customers != null && !customers.isEmpty();
+    }
+
+    /** Adds the customer's not yet applied changes to a freshly loaded customer. */
+    public CustomerDto merge(String tenant, CustomerDto customer) {
+        if (customer == null || !hasPending(tenant)) {
+            return customer;
+        }
+        CustomerPending customerPending = pending.get(tenant).get(customer.getId());
+        if (customerPending != null) {
+            customerPending.mergeInto(customer);
+        }
+        return customer;
+    }
+
+    public List<CustomerDto> merge(String tenant, List<CustomerDto> customers) {
+        if (hasPending(tenant)) {
+            for (CustomerDto customer : customers) {
+                merge(tenant, customer);
+            }
+        }
+        return customers;
+    }
+
+    /**
+     * For queries that filter on the balance: the database (or working set) answered on the stored
+     * balance, so customers with pending changes are loaded too and the filter is re-checked on
+     * the merged values.
+     */
+    public List<CustomerDto> mergeFiltered(String tenant, List<CustomerDto> matched, Predicate<CustomerDto> filter,
+                                           Function<Collection<String>, List<CustomerDto>> loader) {
+        if (!hasPending(tenant)) {
+            return matched;
+        }
+        Set<String> missing = new HashSet<>(pending.get(tenant).keySet());
+        List<CustomerDto> candidates = new ArrayList<>(matched);
+        for (CustomerDto customer : matched) {
+            missing.remove(customer.getId());
+        }
+        if (!missing.isEmpty()) {
+            candidates.addAll(loader.apply(missing));
+        }
+        List<CustomerDto> result = new ArrayList<>();
+        for (CustomerDto customer : candidates) {
+            if (filter.test(merge(tenant, customer))) {
+                result.add(customer);
+            }
+        }
+        return result;
+    }
+
+    // Flushing
+
+    @Scheduled(fixedDelayString = "${balances.write-behind.flush-interval-ms:1000}")
+    public void flushAll() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        for (String tenant : new ArrayList<>(pending.keySet())) {
+            flushTenant(tenant);
+        }
+        lastFlushMs = System.currentTimeMillis() - start;
+    }
+
+    /** Applies everything pending for the shop now. */
+    public void flushTenant(String tenant) {
+        Map<String, CustomerPending> customers = pending.get(tenant);
+        if (!enabled || customers == null) {
+            return;
+        }
+        customers.values().forEach(CustomerPending::pruneApplied);
+        customers.entrySet().removeIf(e -> e.getValue().isEmpty());
+
+        Map<String, Set<Long>> batch = new HashMap<>();
+        for (Map.Entry<String, CustomerPending> e : customers.entrySet()) {
+            Set<Long> ids = e.getValue().unappliedIds();
+            if (!ids.isEmpty()) {
+                batch.put(e.getKey(), ids);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long remapsBefore = remaps.get();
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            // Holds the locks of every customer in the batch (taken in stripe order) until after commit
+            customerLocks.withCustomerLocks(batch.keySet(), () ->
+                    TenantContext.callAsTenant(tenant, () -> template.execute(status -> {
+                        for (Map.Entry<String, Set<Long>> e : batch.entrySet()) {
+                            if (remaps.get() != remapsBefore) {
+                                throw new IllegalStateException("journal renumbered by a shard move");
+                            }
+                            flushCustomer(tenant, e.getKey(), e.getValue(), customers.get(e.getKey()));
+                        }
+                        return null;
+                    })));
+        } catch (RuntimeException e) {
+            // Entries stay pending (and journaled); the next interval tries again
+            failedFlushes.incrementAndGet();
+            log.warn("Flushing pending balances of {} failed: {}", tenant, e.getMessage());
+        }
+    }
+
+    /**
+     * Applies the customer's pending changes now, before its balance is overwritten. Call it holding the
+     * customer's lock: appends to the customer are then held off, so nothing can slip in between this flush
+     * and the overwrite. Unlike the interval flush, a failure is thrown to the caller.
+     */
+    public void flushCustomer(String tenant, String customerId) {
+        Map<String, CustomerPending> customers = pending.get(tenant);
+        CustomerPending customerPending = customers != null ? customers.get(customerId) : null;
+        if (!enabled || customerPending == null) {
+            return;
+        }
+        long remapsBefore = remaps.get();
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        customerLocks.runWithCustomerLock(customerId, () -> {
+            Set<Long> ids = customerPending.unappliedIds();
+            if (ids.isEmpty()) {
+                return;
+            }
+            TenantContext.runAsTenant(tenant, () -> template.executeWithoutResult(status -> {
+                if (remaps.get() != remapsBefore) {
+                    throw new IllegalStateException("journal renumbered by a shard move");
+                }
+                flushCustomer(tenant, customerId, ids, customerPending);
+            }));
+        });
+    }
+
+    private void flushCustomer(String tenant, String customerId, Set<Long> ids, CustomerPending customerPending) {
+        List<BalanceJournalEntry> rows = journalRepository.lockByIds(tenant, ids);
+        Set<Long> present = new HashSet<>();
+        BigDecimal sum = BigDecimal.ZERO;
+        LocalDate lastDate = null;
+        for (BalanceJournalEntry row : rows) {
+            present.add(row.getId());
+            sum = sum.add(row.getDelta());
+            if (row.getTransactionDate() != null && (lastDate == null || row.getTransactionDate().isAfter(lastDate))) {
+                lastDate = row.getTransactionDate();
+            }
+        }
+        // Rows another flusher (e.g. a restarted instance) already applied
+        Set<Long> gone = new HashSet<>(ids);
+        gone.removeAll(present);
+        if (!gone.isEmpty()) {
+            customerPending.discard(gone);
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        Customer customer = customerRepository.findByIdAndUserEmail(customerId, tenant).orElse(null);
+        if (customer == null) {
+            log.warn("Dropping {} pending balance changes of deleted customer {}", rows.size(), customerId);
+            journalRepository.deleteAllInBatch(rows);
+            discardAfterCommit(customerPending, present);
+            return;
+        }
+        Map<String, Object> before = AuditSnapshots.of(customer);
+        BigDecimal current = customer.getTotalDue() != null ? customer.getTotalDue() : BigDecimal.ZERO;
+        customer.setTotalDue(current.add(sum));
+        if (lastDate != null && (customer.getLastTransactionDate() == null
+                || lastDate.isAfter(customer.getLastTransactionDate()))) {
+            customer.setLastTransactionDate(lastDate);
+        }
+        Customer saved = customerRepository.saveAndFlush(customer);
+        journalRepository.deleteAllInBatch(rows);
+        changes.balanceFlushed(tenant, saved, before);
+
+        // Visible to readers right away: a row read before our commit has a lower version and
+        // still gets these added, one read after it doesn't
+        customerPending.markApplied(present, saved.getVersion());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    flushedEntries.addAndGet(present.size());
+                    customerUpdates.incrementAndGet();
+                } else {
+                    customerPending.unmarkApplied(present);
+                }
+            }
+        });
+    }
+
+    private void discardAfterCommit(CustomerPending customerPending, Set<Long> ids) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                customerPending.discard(ids);
+            }
+        });
+    }
+
+    /** Called by a shard move with the old to new ids of the tenant's copied journal rows. */
+    public void remapJournalIds(String tenant, Map<Object, Object> idMap) {
+        remaps.incrementAndGet();
+        Map<String, CustomerPending> customers = pending.get(tenant);
+        if (customers == null || idMap.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> ids = new HashMap<>();
+        idMap.forEach((from, to) -> ids.put(((Number) from).longValue(), ((Number) to).longValue()));
+        customers.values().forEach(customerPending -> customerPending.remap(ids));
+    }
+
+    // Crash recovery and shutdown
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        if (!enabled) {
+            return;
+        }
+        ShardRoutingDataSource routing = shardRouting.getIfAvailable();
+        int shards = routing != null ? routing.getDirectory().getShardCount() : 1;
+        int recovered = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            List<BalanceJournalEntry> rows = routing != null
+                    ? TenantContext.callOnShard(shard, journalRepository::findAll)
+                    : journalRepository.findAll();
+            rows.forEach(this::track);
+            recovered += rows.size();
+        }
+        if (recovered > 0) {
+            log.info("Recovered {} pending balance changes from the journal", recovered);
+            flushAll();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flushAll();
+    }
+
+    public Map<String, Object> snapshot() {
+        int customers = 0;
+        int entries = 0;
+        for (Map<String, CustomerPending> tenantPending : pending.values()) {
+            for (CustomerPending customerPending : tenantPending.values()) {
+                int unapplied = customerPending.unappliedIds().size();
+                if (unapplied > 0) {
+                    customers++;
+                    entries += unapplied;
+                }
+            }
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("pendingCustomers", customers);
+        stats.put("pendingEntries", entries);
+        stats.put("appended", appended.get());
+        stats.put("flushedEntries", flushedEntries.get());
+        stats.put("customerUpdates", customerUpdates.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        stats.put("lastFlushMs", lastFlushMs);
+        return stats;
+    }
+
+    /** Journal entries of one customer that are not yet known to be in the customer row. */
+    private static final class CustomerPending {
+        private final Map<Long, Entry> entries = new HashMap<>();
+
+        synchronized void add(Long id, BigDecimal delta, LocalDate transactionDate) {
+            entries.putIfAbsent(id, new Entry(delta, transactionDate));
+        }
+
+        synchronized void mergeInto(CustomerDto customer) {
+            long version = customer.getVersion() != null ? customer.getVersion() : -1;
+            BigDecimal totalDue = customer.getTotalDue() != null ? customer.getTotalDue() : BigDecimal.ZERO;
+            LocalDate lastDate = customer.getLastTransactionDate();
+            for (Entry entry : entries.values()) {
+                if (entry.appliedInVersion != null && version >= entry.appliedInVersion) {
+                    continue;
+                }
+                totalDue = totalDue.add(entry.delta);
+                if (entry.transactionDate != null && (lastDate == null || entry.transactionDate.isAfter(lastDate))) {
+                    lastDate = entry.transactionDate;
+                }
+            }
+            customer.setTotalDue(totalDue);
+            customer.setLastTransactionDate(lastDate);
+        }
+
+        synchronized Set<Long> unappliedIds() {
+            Set<Long> ids = new HashSet<>();
+            entries.forEach((id, entry) -> {
+                if (entry.appliedInVersion == null) {
+                    ids.add(id);
+                }
+            });
+            return ids;
+        }
+
+        synchronized void markApplied(Set<Long> ids, Long version) {
+            for (Long id : ids) {
+                Entry entry = entries.get(id);
+                if (entry != null) {
+                    entry.appliedInVersion = version;
+                }
+            }
+        }
+
+        synchronized void unmarkApplied(Set<Long> ids) {
+            for (Long id : ids) {
+                Entry entry = entries.get(id);
+                if (entry != null) {
+                    entry.appliedInVersion = null;
+                }
+            }
+        }
+
+        // Applied entries are kept for one more interval for readers still holding an older row
+        synchronized void pruneApplied() {
+            entries.values().removeIf(entry -> entry.appliedInVersion != null && entry.prunable);
+            entries.values().forEach(entry -> entry.prunable = entry.appliedInVersion != null);
+        }
+
+        synchronized void remap(Map<Long, Long> ids) {
+            Map<Long, Entry> remapped = new HashMap<>();
+            entries.forEach((id, entry) -> remapped.put(ids.getOrDefault(id, id), entry));
+            entries.clear();
+            entries.putAll(remapped);
+        }
+
+        synchronized void discard(Set<Long> ids) {
+            entries.keySet().removeAll(ids);
+        }
+
+        synchronized boolean isEmpty() {
+            return entries.isEmpty();
+        }
+    }
+
+    private static final class Entry {
+        final BigDecimal delta;
+        final LocalDate transactionDate;
+        Long appliedInVersion;
+        boolean prunable;
+
+        Entry(BigDecimal delta, LocalDate transactionDate) {
+            this.delta = delta;
+            this.transactionDate = transactionDate;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.shop.category;
+
+import com.shop.datasource.ShardRoutingDataSource;
+import com.shop.datasource.TenantContext;
+import com.shop.dto.CategoryDto;
+import com.shop.entity.Category;
+import com.shop.repository.CategoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The category list every shop picks from, held in memory. Customers store the small integer id;
+ * names are resolved here without a query, from an immutable snapshot that is swapped whenever the
+ * table changes. Changes made by another instance are noticed by polling {@code COUNT(*)} and
+ * {@code MAX(updated_at)} every {@code categories.poll-interval-ms}.
+ * <p>
+ * The table is global, so it always lives on the default shard. It is read and written there in a
+ * transaction of its own, which also keeps catalog writes out of the caller's tenant transaction. A
+ * name nobody used before becomes a new category; the defaults from database-schema.sql are created
+ * when the table is empty.
+ */
+@Component
+public class CategoryCatalog {
+
+    private static final Logger log = LoggerFactory.getLogger(CategoryCatalog.class);
+
+    public static final String DEFAULT_CATEGORY = "Regular";
+
+    private static final String[][] DEFAULTS = {
+            {"Regular", "Regular customers", "#3182ce"},
+            {"VIP", "VIP customers with special privileges", "#38a169"},
+            {"Wholesale", "Wholesale customers", "#d69e2e"},
+            {"New", "New customers", "#e53e3e"},
+            {"Inactive", "Inactive customers", "#718096"}
+    };
+
+    private static final String FINGERPRINT = "SELECT COUNT(*), MAX(updated_at) FROM categories";
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private volatile Catalog catalog;
+    private volatile String fingerprint;
+
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+
+    /** Active categories by name, as copies the caller may fill in. */
+    public List<CategoryDto> getCategories() {
+        List<CategoryDto> categories = new ArrayList<>();
+        for (CategoryDto category : catalog().byId.values()) {
+            if (!Boolean.FALSE.equals(category.getIsActive())) {
+                categories.add(copy(category));
+            }
+        }
+        categories.sort((a, b) -> a.getName().compareToIgnoreCase(b.getName()));
+        return categories;
+    }
+
+    public CategoryDto getCategory(Integer id) {
+        CategoryDto category = lookup(id);
+        return category != null ? copy(category) : null;
+    }
+
+    public String nameOf(Integer id) {
+        CategoryDto category = lookup(id);
+        return category != null ? category.getName() : null;
+    }
+
+    /** The id of an existing category, or null; names match ignoring case. */
+    public Integer findId(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return null;
+        }
+        String key = key(name);
+        Integer id = catalog().byName.get(key);
+        if (id == null) {
+            // Possibly created by another instance since the last poll
+            id = refresh().byName.get(key);
+        }
+        return id;
+    }
+
+    /** The id for a customer's category name, creating the category the first time it is used. */
+    public Integer idFor(String name) {
+        String trimmed = name == null || name.trim().isEmpty() ? DEFAULT_CATEGORY : name.trim();
+        Integer id = findId(trimmed);
+        if (id != null) {
+            return id;
+        }
+        CategoryDto dto = new CategoryDto();
+        dto.setName(trimmed);
+        return create(dto).getId();
+    }
+
+    public synchronized CategoryDto create(CategoryDto dto) {
+        String name = dto.getName() != null ? dto.getName().trim() : "";
+        if (name.isEmpty() || name.length() > 50) {
+            throw new IllegalArgumentException("Category name must be 1 to 50 characters");
+        }
+        Integer existing = catalog().byName.get(key(name));
+        if (existing != null) {
+            return getCategory(existing);
+        }
+        try {
+            onDefaultShard(status -> {
+                Category category = new Category();
+                category.setName(name);
+                category.setDescription(dto.getDescription());
+                if (dto.getColor() != null) {
+                    category.setColor(dto.getColor());
+                }
+                category.setIsActive(dto.getIsActive() != null ? dto.getIsActive() : true);
+                return categoryRepository.saveAndFlush(category);
+            });
+            created.incrementAndGet();
+        } catch (DataIntegrityViolationException e) {
+            // Another instance created it first
+            log.debug("Category {} already exists: {}", name, e.getMessage());
+        }
+        Integer id = refresh().byName.get(key(name));
+        if (id == null) {
+            throw new IllegalStateException("Category " + name + " could not be created");
+        }
+        return getCategory(id);
+    }
+
+    public synchronized CategoryDto update(Integer id, CategoryDto dto) {
+        try {
+            boolean found = onDefaultShard(status -> {
+                Category category = categoryRepository.findById(id).orElse(null);
+                if (category == null) {
+                    return false;
+                }
+                if (dto.getName() != null && !dto.getName().trim().isEmpty()) {
+                    category.setName(dto.getName().trim());
+                }
+                if (dto.getDescription() != null) {
+                    category.setDescription(dto.getDescription());
+                }
+                if (dto.getColor() != null) {
+                    category.setColor(dto.getColor());
+                }
+                if (dto.getIsActive() != null) {
+                    category.setIsActive(dto.getIsActive());
+                }
+                categoryRepository.saveAndFlush(category);
+                return true;
+            });
+            if (!found) {
+                return null;
+            }
+        } catch (DataIntegrityViolationException e) {
+            throw new IllegalArgumentException("Category name " + dto.getName() + " is already taken");
+        }
+        reload();
+        return getCategory(id);
+    }
+
+    @Scheduled(fixedDelayString = "${categories.poll-interval-ms:30000}")
+    public void poll() {
+        try {
+            String current = onDefaultShard(status -> readFingerprint());
+            if (catalog != null && !Objects.equals(current, fingerprint)) {
+                reload();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Polling categories failed: {}", e.getMessage());
+        }
+    }
+
+    public void reload() {
+        refresh();
+    }
+
+    private synchronized Catalog refresh() {
+        Catalog loaded = onDefaultShard(status -> {
+            String newFingerprint = readFingerprint();
+            List<Category> rows = categoryRepository.findAll();
+            if (rows.isEmpty()) {
+                for (String[] d : DEFAULTS) {
+                    Category category = new Category();
+                    category.setName(d[0]);
+                    category.setDescription(d[1]);
+                    category.setColor(d[2]);
+                    rows.add(category);
+                }
+                rows = categoryRepository.saveAllAndFlush(rows);
+                newFingerprint = readFingerprint();
+            }
+            return new Catalog(rows, newFingerprint);
+        });
+        catalog = loaded;
+        fingerprint = loaded.fingerprint;
+        reloads.incrementAndGet();
+        return loaded;
+    }
+
+    private Catalog catalog() {
+        Catalog current = catalog;
+        return current != null ? current : refresh();
+    }
+
+    private CategoryDto lookup(Integer id) {
+        if (id == null) {
+            return null;
+        }
+        CategoryDto category = catalog().byId.get(id);
+        if (category == null) {
+            category = refresh().byId.get(id);
+        }
+        return category;
+    }
+
+    private String readFingerprint() {
+        return jdbcTemplate.queryForObject(FINGERPRINT, (rs, row) -> rs.getLong(1) + "|" + rs.getTimestamp(2));
+    }
+
+    private <T> T onDefaultShard(TransactionCallback<T> work) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return TenantContext.callOnShard(ShardRoutingDataSource.DEFAULT_SHARD, () -> template.execute(work));
+    }
+
+    private static String key(String name) {
+        return name.trim().toLowerCase();
+    }
+
+    private static CategoryDto copy(CategoryDto c) {
+        return new CategoryDto(c.getId(), c.getName(), c.getDescription(), c.getColor(), c.getIsActive());
+    }
+
+    public Map<String, Object> snapshot() {
+        Catalog current = catalog;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("categories", current != null ? current.byId.size() : 0);
+        stats.put("reloads", reloads.get());
+        stats.put("created", created.get());
+        return stats;
+    }
+
+    private static final class Catalog {
+        final Map<Integer, CategoryDto> byId;
+        final Map<String, Integer> byName;
+        final String fingerprint;
+
+        Catalog(List<Category> rows, String fingerprint) {
+            Map<Integer, CategoryDto> ids = new LinkedHashMap<>();
+            Map<String, Integer> names = new HashMap<>();
+            for (Category c : rows) {
+                ids.put(c.getId(), new CategoryDto(c.getId(), c.getName(), c.getDescription(), c.getColor(), c.getIsActive()));
+                names.put(key(c.getName()), c.getId());
+            }
+            this.byId = Collections.unmodifiableMap(ids);
+            this.byName = Collections.unmodifiableMap(names);
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.shop.category;
+
+import com.shop.datasource.TenantContext;
+import com.shop.dto.CategoryDto;
+import com.shop.dto.CustomerDto;
+import com.shop.entity.CategoryStat;
+import com.shop.entity.Customer;
+import com.shop.repository.CategoryStatRepository;
+import com.shop.sync.ChangeFeed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-shop customer counts and balance totals for each category, kept in {@code category_stats} so
+ * the category list is a read of a handful of rows instead of a GROUP BY over customers.
+ * <p>
+ * Services report each change (a customer created, moved, deactivated or deleted, a balance change)
+ * as it happens. The changes of one transaction are summed in memory and written just before it
+ * commits, as one UPDATE per touched row in category id order, so the counters commit or roll back
+ * with the change that caused them and two transactions never wait on each other's rows in opposite
+ * order. Balance changes that go through {@link com.shop.balance.BalanceWriteBehind} are counted when
+ * they are appended, which is when they become visible, not when they are flushed.
+ * <p>
+ * A shop's rows are created from the customers table the first time it is touched after the table
+ * was added; {@link #rebuild(String)} recomputes them the same way.
+ */
+@Component
+public class CategoryStats {
+
+    private static final Logger log = LoggerFactory.getLogger(CategoryStats.class);
+
+    private static final String AGGREGATE = "SELECT category_id, COUNT(*), COALESCE(SUM(total_due), 0) FROM customers " +
+            "WHERE user_email = ? AND is_active = TRUE AND category_id IS NOT NULL GROUP BY category_id";
+    private static final String INSERT = "INSERT INTO category_stats (id, user_email, category_id, customer_count, total_due, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String APPLY = "UPDATE category_stats SET customer_count = customer_count + ?, " +
+            "total_due = total_due + ?, updated_at = ? WHERE id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private CategoryStatRepository categoryStatRepository;
+
+    @Autowired
+    private CategoryCatalog catalog;
+
+    // Category ids that have a row, per shop; a shop is only listed once its rows exist
+    private final Map<String, Set<Integer>> knownRows = new ConcurrentHashMap<>();
+
+    private final AtomicLong rowsApplied = new AtomicLong();
+    private final AtomicLong rowsMissing = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+
+    /** What a customer contributes to the counters. */
+    public static final class State {
+        final Integer categoryId;
+        final BigDecimal totalDue;
+        final boolean active;
+
+        public State(Integer categoryId, BigDecimal totalDue, boolean active) {
+            this.categoryId = categoryId;
+            this.totalDue = totalDue != null ? totalDue : BigDecimal.ZERO;
+            this.active = active;
+        }
+    }
+
+    // Pass the customer with pending write-behind changes merged in
+    public static State stateOf(CustomerDto customer) {
+        return new State(customer.getCategoryId(), customer.getTotalDue(), !Boolean.FALSE.equals(customer.getIsActive()));
+    }
+
+    /** A customer changed from {@code before} to {@code after}; null before is a create, null after a delete. */
+    public void changed(String tenant, State before, State after) {
+        if (before != null && before.active && before.categoryId != null) {
+            add(tenant, before.categoryId, -1, before.totalDue.negate());
+        }
+        if (after != null && after.active && after.categoryId != null) {
+            add(tenant, after.categoryId, 1, after.totalDue);
+        }
+    }
+
+    public void balanceChanged(Customer customer, BigDecimal delta) {
+        if (delta == null || delta.signum() == 0 || customer.getCategoryId() == null
+                || Boolean.FALSE.equals(customer.getIsActive())) {
+            return;
+        }
+        add(customer.getUserEmail(), customer.getCategoryId(), 0, delta);
+    }
+
+    private void add(String tenant, Integer categoryId, long count, BigDecimal totalDue) {
+        ensureRow(tenant, categoryId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(Map.of(categoryId, new Delta(count, totalDue)), tenant);
+            return;
+        }
+        PendingDeltas pending = (PendingDeltas) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new PendingDeltas(tenant);
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        pending.add(tenant, categoryId, count, totalDue);
+    }
+
+    private void apply(Map<Integer, Delta> deltas, String tenant) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> args = new ArrayList<>();
+        List<Integer> ids = new ArrayList<>();
+        for (Map.Entry<Integer, Delta> entry : new TreeMap<>(deltas).entrySet()) {
+            Delta delta = entry.getValue();
+            if (delta.count == 0 && delta.totalDue.signum() == 0) {
+                continue;
+            }
+            ids.add(entry.getKey());
+            args.add(new Object[]{delta.count, delta.totalDue, Timestamp.valueOf(now),
+                    CategoryStat.idOf(tenant, entry.getKey())});
+        }
+        if (args.isEmpty()) {
+            return;
+        }
+        int[] updated = jdbcTemplate.batchUpdate(APPLY, args);
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                // The row went away (a rebuild raced this transaction); the next rebuild puts it right
+                rowsMissing.incrementAndGet();
+                knownRows.remove(tenant);
+                log.warn("No category_stats row for {} category {}, change not counted", tenant, ids.get(i));
+            }
+        }
+        rowsApplied.addAndGet(updated.length);
+    }
+
+    public List<CategoryDto> getCategories(String tenant) {
+        rowsOf(tenant);
+        Map<Integer, CategoryStat> stats = new HashMap<>();
+        for (CategoryStat stat : categoryStatRepository.findByUserEmail(tenant)) {
+            stats.put(stat.getCategoryId(), stat);
+        }
+        List<CategoryDto> categories = catalog.getCategories();
+        for (CategoryDto category : categories) {
+            CategoryStat stat = stats.get(category.getId());
+            category.setCustomerCount(stat != null ? stat.getCustomerCount() : 0L);
+            category.setTotalDue(stat != null ? stat.getTotalDue() : BigDecimal.ZERO);
+        }
+        return categories;
+    }
+
+    /** Recomputes a shop's rows from its customers. Changes committing meanwhile may be lost; run it when quiet. */
+    public int rebuild(String tenant) {
+        List<Integer> ids = asTenant(tenant, status -> {
+            jdbcTemplate.update("DELETE FROM category_stats WHERE user_email = ?", tenant);
+            return seed(tenant);
+        });
+        knownRows.put(tenant, newRowSet(ids));
+        rebuilds.incrementAndGet();
+        return ids.size();
+    }
+
+    private void ensureRow(String tenant, Integer categoryId) {
+        Set<Integer> rows = rowsOf(tenant);
+        if (rows.contains(categoryId)) {
+            return;
+        }
+        try {
+            asTenant(tenant, status -> jdbcTemplate.update(INSERT, CategoryStat.idOf(tenant, categoryId), tenant,
+                    categoryId, 0L, BigDecimal.ZERO, Timestamp.valueOf(LocalDateTime.now())));
+        } catch (DataIntegrityViolationException e) {
+            // Created concurrently
+        }
+        rows.add(categoryId);
+    }
+
+    private Set<Integer> rowsOf(String tenant) {
+        Set<Integer> rows = knownRows.get(tenant);
+        if (rows != null) {
+            return rows;
+        }
+        List<Integer> ids;
+        try {
+            ids = asTenant(tenant, status -> {
+                List<Integer> existing = existingRows(tenant);
+                return existing.isEmpty() ? seed(tenant) : existing;
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Another request seeded the shop first
+            ids = asTenant(tenant, status -> existingRows(tenant));
+        }
+        Set<Integer> loaded = newRowSet(ids);
+        rows = knownRows.putIfAbsent(tenant, loaded);
+        return rows != null ? rows : loaded;
+    }
+
+    private List<Integer> existingRows(String tenant) {
+        return jdbcTemplate.queryForList("SELECT category_id FROM category_stats WHERE user_email = ?", Integer.class, tenant);
+    }
+
+    // A plain aggregate and then inserts, rather than INSERT ... SELECT, so seeding takes no locks on customers
+    private List<Integer> seed(String tenant) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = jdbcTemplate.query(AGGREGATE, (rs, i) -> new Object[]{
+                CategoryStat.idOf(tenant, rs.getInt(1)), tenant, rs.getInt(1), rs.getLong(2), rs.getBigDecimal(3), now},
+                tenant);
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT, rows);
+        }
+        List<Integer> ids = new ArrayList<>();
+        for (Object[] row : rows) {
+            ids.add((Integer) row[2]);
+        }
+        return ids;
+    }
+
+    private static Set<Integer> newRowSet(List<Integer> ids) {
+        Set<Integer> rows = ConcurrentHashMap.newKeySet();
+        rows.addAll(ids);
+        return rows;
+    }
+
+    // Row creation commits on its own, so it never waits on or holds up the caller's transaction
+    private <T> T asTenant(String tenant, TransactionCallback<T> work) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return TenantContext.callAsTenant(tenant, () -> template.execute(work));
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("tenantsLoaded", knownRows.size());
+        stats.put("rowsApplied", rowsApplied.get());
+        stats.put("rowsMissing", rowsMissing.get());
+        stats.put("rebuilds", rebuilds.get());
+        stats.put("catalog", catalog.snapshot());
+        return stats;
+    }
+
+    private static final class Delta {
+        long count;
+        BigDecimal totalDue;
+
+        Delta(long count, BigDecimal totalDue) {
+            this.count = count;
+            this.totalDue = totalDue;
+        }
+    }
+
+    // One transaction's changes, keyed by shop and category
+    private final class PendingDeltas implements TransactionSynchronization {
+        private final Map<String, Map<Integer, Delta>> byTenant = new HashMap<>();
+
+        PendingDeltas(String tenant) {
+            byTenant.put(tenant, new HashMap<>());
+        }
+
+        void add(String tenant, Integer categoryId, long count, BigDecimal totalDue) {
+            Delta delta = byTenant.computeIfAbsent(tenant, t -> new HashMap<>()).get(categoryId);
+            if (delta == null) {
+                byTenant.get(tenant).put(categoryId, new Delta(count, totalDue));
+            } else {
+                delta.count += count;
+                delta.totalDue = delta.totalDue.add(totalDue);
+            }
+        }
+
+        // Before the change feed takes the shop's sequence row
+        @Override
+        public int getOrder() {
+            return ChangeFeed.STAMP_ORDER - 1;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            byTenant.forEach((tenant, deltas) -> apply(deltas, tenant));
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(CategoryStats.this);
+        }
+    }
+}
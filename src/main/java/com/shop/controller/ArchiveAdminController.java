@@ -0,0 +1,59 @@
+package com.shop.controller;
+
+import com.shop.archive.TransactionArchive;
+import com.shop.security.AdminKeyVerifier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin/archive")
+public class ArchiveAdminController {
+
+    @Autowired
+    private TransactionArchive archive;
+
+    @Autowired
+    private AdminKeyVerifier adminKeyVerifier;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getStatus(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.ok(archive.snapshot());
+    }
+
+    // Runs in the background; poll GET for progress
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> startRun(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        Map<String, Object> result = new HashMap<>();
+        try {
+            result.put("cutoff", archive.start());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(result);
+        } catch (IllegalStateException e) {
+            result.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(result);
+        }
+    }
+
+    @PostMapping("/stop")
+    public ResponseEntity<Map<String, Object>> stopRun(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("stopping", archive.stop());
+        return ResponseEntity.ok(result);
+    }
+}
@@ -1,5 +1,6 @@
 package com.shop.controller;
 
+import com.shop.datasource.TenantContext;
 import com.shop.dto.*;
 import com.shop.entity.User;
 import com.shop.security.JwtUtil;
@@ -27,7 +28,8 @@ public class AuthController {
     @PostMapping("/register")
     public ResponseEntity<AuthResponse> register(@Valid @RequestBody RegisterRequest registerRequest) {
         try {
-            UserDto user = userService.registerUser(registerRequest);
+            UserDto user = TenantContext.callAsTenant(registerRequest.getEmail(),
+                    () -> userService.registerUser(registerRequest));
             String token = jwtUtil.generateToken(user.getEmail(), user.getId());
             
             AuthResponse response = new AuthResponse(true, "User registered successfully", token, user);
@@ -45,6 +47,11 @@ public class AuthController {
 
     @PostMapping("/login")
     public ResponseEntity<AuthResponse> login(@Valid @RequestBody LoginRequest loginRequest) {
+        // The caller isn't authenticated yet - route database access by the email being logged in
+        return TenantContext.callAsTenant(loginRequest.getEmail(), () -> doLogin(loginRequest));
+    }
+
+    private ResponseEntity<AuthResponse> doLogin(LoginRequest loginRequest) {
         try {
             Optional<User> userOptional = userService.findByEmail(loginRequest.getEmail());
             
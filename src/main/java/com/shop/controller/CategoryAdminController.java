@@ -0,0 +1,91 @@
+package com.shop.controller;
+
+import com.shop.category.CategoryCatalog;
+import com.shop.category.CategoryStats;
+import com.shop.dto.CategoryDto;
+import com.shop.security.AdminKeyVerifier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin/categories")
+public class CategoryAdminController {
+
+    @Autowired
+    private CategoryCatalog categoryCatalog;
+
+    @Autowired
+    private CategoryStats categoryStats;
+
+    @Autowired
+    private AdminKeyVerifier adminKeyVerifier;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getCategories(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        Map<String, Object> body = new HashMap<>();
+        body.put("categories", categoryCatalog.getCategories());
+        body.put("stats", categoryStats.snapshot());
+        return ResponseEntity.ok(body);
+    }
+
+    @PostMapping
+    public ResponseEntity<?> createCategory(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey,
+            @RequestBody CategoryDto categoryDto) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        try {
+            return ResponseEntity.ok(categoryCatalog.create(categoryDto));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(error(e));
+        }
+    }
+
+    @PutMapping("/{id}")
+    public ResponseEntity<?> updateCategory(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey,
+            @PathVariable Integer id,
+            @RequestBody CategoryDto categoryDto) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        try {
+            CategoryDto updated = categoryCatalog.update(id, categoryDto);
+            if (updated == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(updated);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(error(e));
+        }
+    }
+
+    // Recomputes one shop's counters from its customers, e.g. after editing customers with SQL
+    @PostMapping("/stats/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildStats(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey,
+            @RequestParam String email) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        Map<String, Object> body = new HashMap<>();
+        body.put("email", email);
+        body.put("categories", categoryStats.rebuild(email));
+        return ResponseEntity.ok(body);
+    }
+
+    private static Map<String, Object> error(RuntimeException e) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", e.getMessage());
+        return error;
+    }
+}
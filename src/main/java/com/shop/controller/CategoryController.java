@@ -0,0 +1,31 @@
+package com.shop.controller;
+
+import com.shop.category.CategoryStats;
+import com.shop.dto.CategoryDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/categories")
+@CrossOrigin(origins = {"http://localhost:3000", "http://localhost:3002"}, allowedHeaders = "*")
+public class CategoryController {
+
+    @Autowired
+    private CategoryStats categoryStats;
+
+    private String getCurrentUserEmail() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication.getName();
+    }
+
+    // The catalog with the shop's customer count and total due per category
+    @GetMapping
+    public ResponseEntity<List<CategoryDto>> getCategories() {
+        return ResponseEntity.ok(categoryStats.getCategories(getCurrentUserEmail()));
+    }
+}
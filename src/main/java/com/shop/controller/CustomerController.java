@@ -1,25 +1,51 @@
 package com.shop.controller;
 
+import com.shop.dto.BalanceAsOfDto;
+import com.shop.dto.CustomerDetailDto;
 import com.shop.dto.CustomerDto;
+import com.shop.dto.CustomerImportResultDto;
+import com.shop.dto.TransactionDto;
+import com.shop.importer.CustomerImportService;
 import com.shop.service.CustomerService;
+import com.shop.service.TransactionService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/customers")
 @CrossOrigin(origins = {"http://localhost:3000", "http://localhost:3002"}, allowedHeaders = "*")
 public class CustomerController {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
     @Autowired
     private CustomerService customerService;
 
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private CustomerImportService customerImportService;
+
     private String getCurrentUserEmail() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         return authentication.getName();
@@ -57,11 +83,20 @@ public class CustomerController {
         String userEmail = getCurrentUserEmail();
         CustomerDto customer = customerService.getCustomerById(userEmail, id);
         if (customer != null) {
-            return ResponseEntity.ok(customer);
+            return ResponseEntity.ok().eTag(EntityTags.of(customer.getVersion())).body(customer);
         }
         return ResponseEntity.notFound().build();
     }
 
+    // 409 with the customer as it is now, so the client can merge and retry with the new ETag
+    private ResponseEntity<CustomerDto> conflict(String userEmail, String id) {
+        CustomerDto current = customerService.getCustomerById(userEmail, id);
+        if (current == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.status(HttpStatus.CONFLICT).eTag(EntityTags.of(current.getVersion())).body(current);
+    }
+
     @PostMapping
     public ResponseEntity<CustomerDto> createCustomer(@Valid @RequestBody CustomerDto customerDto) {
         try {
@@ -73,14 +108,45 @@ public class CustomerController {
         }
     }
 
+    // The CSV as the request body; read as it arrives
+    @PostMapping(value = "/import", consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<?> importCustomers(HttpServletRequest request) throws IOException {
+        return importCustomers(request.getInputStream());
+    }
+
+    // The CSV as the "file" part of a form upload
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> importCustomersFile(@RequestParam("file") MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return importCustomers(in);
+        }
+    }
+
+    private ResponseEntity<?> importCustomers(InputStream in) throws IOException {
+        try {
+            CustomerImportResultDto result = customerImportService.importCustomers(getCurrentUserEmail(), in);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<CustomerDto> updateCustomer(
             @PathVariable String id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @Valid @RequestBody CustomerDto customerDto) {
+        String userEmail = getCurrentUserEmail();
         try {
-            String userEmail = getCurrentUserEmail();
-            CustomerDto updatedCustomer = customerService.updateCustomer(userEmail, id, customerDto);
-            return ResponseEntity.ok(updatedCustomer);
+            CustomerDto updatedCustomer = customerService.updateCustomer(userEmail, id, customerDto,
+                    EntityTags.parseIfMatch(ifMatch));
+            return ResponseEntity.ok().eTag(EntityTags.of(updatedCustomer.getVersion())).body(updatedCustomer);
+        } catch (OptimisticLockingFailureException e) {
+            return conflict(userEmail, id);
+        } catch (PessimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
@@ -100,11 +166,17 @@ public class CustomerController {
     @PutMapping("/{id}/total-due")
     public ResponseEntity<CustomerDto> updateCustomerTotalDue(
             @PathVariable String id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @RequestParam BigDecimal totalDue) {
+        String userEmail = getCurrentUserEmail();
         try {
-            String userEmail = getCurrentUserEmail();
-            CustomerDto updatedCustomer = customerService.updateCustomerTotalDue(userEmail, id, totalDue);
-            return ResponseEntity.ok(updatedCustomer);
+            CustomerDto updatedCustomer = customerService.updateCustomerTotalDue(userEmail, id, totalDue,
+                    EntityTags.parseIfMatch(ifMatch));
+            return ResponseEntity.ok().eTag(EntityTags.of(updatedCustomer.getVersion())).body(updatedCustomer);
+        } catch (OptimisticLockingFailureException e) {
+            return conflict(userEmail, id);
+        } catch (PessimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
@@ -113,20 +185,69 @@ public class CustomerController {
     @PatchMapping("/{id}")
     public ResponseEntity<CustomerDto> patchCustomer(
             @PathVariable String id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @RequestBody CustomerDto customerDto) {
+        String userEmail = getCurrentUserEmail();
         try {
-            String userEmail = getCurrentUserEmail();
-            CustomerDto updatedCustomer = customerService.patchCustomer(userEmail, id, customerDto);
-            return ResponseEntity.ok(updatedCustomer);
+            CustomerDto updatedCustomer = customerService.patchCustomer(userEmail, id, customerDto,
+                    EntityTags.parseIfMatch(ifMatch));
+            return ResponseEntity.ok().eTag(EntityTags.of(updatedCustomer.getVersion())).body(updatedCustomer);
+        } catch (OptimisticLockingFailureException e) {
+            return conflict(userEmail, id);
+        } catch (PessimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
     }
 
+    // What the customer owed at the end of asOf (default today), from the balance ledger
+    @GetMapping("/{id}/balance")
+    public ResponseEntity<BalanceAsOfDto> getBalanceAsOf(
+            @PathVariable String id,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate asOf) {
+        String userEmail = getCurrentUserEmail();
+        BalanceAsOfDto balance = customerService.getBalanceAsOf(userEmail, id, asOf);
+        if (balance != null) {
+            return ResponseEntity.ok(balance);
+        }
+        return ResponseEntity.notFound().build();
+    }
+
+    // The customer, a page of its transactions, its pending totals and latest payments in one round trip
+    @GetMapping("/{id}/detail")
+    public ResponseEntity<CustomerDetailDto> getCustomerDetail(
+            @PathVariable String id,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "10") int payments) {
+        if (page < 0 || size < 1 || payments < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        String userEmail = getCurrentUserEmail();
+        CustomerDetailDto detail = customerService.getCustomerDetail(userEmail, id, page,
+                Math.min(size, MAX_PAGE_SIZE), Math.min(payments, MAX_PAGE_SIZE));
+        if (detail != null) {
+            return ResponseEntity.ok().eTag(EntityTags.of(detail.getCustomer().getVersion())).body(detail);
+        }
+        return ResponseEntity.notFound().build();
+    }
+
+    // Newest first, a page at a time; older archived ones are in GET /transactions?customerId=&startDate=
     @GetMapping("/{id}/transactions")
-    public ResponseEntity<List<Object>> getCustomerTransactions(@PathVariable String id) {
-        // This will be implemented when TransactionController is updated
-        return ResponseEntity.ok().build();
+    public ResponseEntity<List<TransactionDto>> getCustomerTransactions(
+            @PathVariable String id,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        if (page < 0 || size < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        String userEmail = getCurrentUserEmail();
+        if (customerService.getCustomerById(userEmail, id) == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(transactionService.getCustomerTransactionPage(userEmail, id, page,
+                Math.min(size, MAX_PAGE_SIZE)).getContent());
     }
 
     @GetMapping("/search")
@@ -41,6 +41,8 @@ public class DashboardController {
         stats.put("dailyCashReceived", transactionService.getDailyCashReceived(userEmail, today));
         stats.put("dailyCreditGiven", transactionService.getDailyCreditGiven(userEmail, today));
         stats.put("totalOutstandingAmount", customerService.getTotalOutstandingBalance(userEmail));
+        stats.put("overdueCount", transactionService.countOverdueTransactions(userEmail));
+        stats.put("overdueAmount", transactionService.getOverdueAmount(userEmail));
 
         return ResponseEntity.ok(stats);
     }
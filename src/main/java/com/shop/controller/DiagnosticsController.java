@@ -0,0 +1,148 @@
+package com.shop.controller;
+
+import com.shop.audit.AuditJournal;
+import com.shop.balance.BalanceWriteBehind;
+import com.shop.diagnostics.VirtualThreadPinningMonitor;
+import com.shop.ledger.CustomerLedger;
+import com.shop.idempotency.IdempotencyKeys;
+import com.shop.service.CascadingDeletes;
+import com.shop.service.CustomerLockManager;
+import com.shop.sync.ChangeFeed;
+import com.shop.workingset.TenantWorkingSetManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/diagnostics")
+@CrossOrigin(origins = {"http://localhost:3000", "http://localhost:3002"}, allowedHeaders = "*")
+public class DiagnosticsController {
+
+    @Autowired
+    private ObjectProvider<VirtualThreadPinningMonitor> pinningMonitor;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TenantWorkingSetManager workingSets;
+
+    @Autowired
+    private BalanceWriteBehind balances;
+
+    @Autowired
+    private CustomerLockManager customerLocks;
+
+    @Autowired
+    private AuditJournal audit;
+
+    @Autowired
+    private CustomerLedger ledger;
+
+    @Autowired
+    private CascadingDeletes cascadingDeletes;
+
+    @Autowired
+    private IdempotencyKeys idempotencyKeys;
+
+    @Autowired
+    private ChangeFeed changeFeed;
+
+    @GetMapping("/virtual-threads")
+    public ResponseEntity<Map<String, Object>> getVirtualThreadPinning() {
+        VirtualThreadPinningMonitor monitor = pinningMonitor.getIfAvailable();
+        if (monitor == null) {
+            Map<String, Object> disabled = new HashMap<>();
+            disabled.put("enabled", false);
+            disabled.put("message", "Virtual threads are disabled (spring.threads.virtual.enabled=false)");
+            return ResponseEntity.ok(disabled);
+        }
+        Map<String, Object> stats = new HashMap<>(monitor.snapshot());
+        stats.put("enabled", true);
+        return ResponseEntity.ok(stats);
+    }
+
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, Object>> getSecondLevelCacheStats() {
+        SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        Statistics statistics = sessionFactory.getStatistics();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", sessionFactory.getSessionFactoryOptions().isSecondLevelCacheEnabled());
+        stats.put("statisticsEnabled", statistics.isStatisticsEnabled());
+        stats.put("hits", statistics.getSecondLevelCacheHitCount());
+        stats.put("misses", statistics.getSecondLevelCacheMissCount());
+        stats.put("puts", statistics.getSecondLevelCachePutCount());
+        stats.put("queryCacheHits", statistics.getQueryCacheHitCount());
+        stats.put("queryCacheMisses", statistics.getQueryCacheMissCount());
+
+        Map<String, Object> regions = new LinkedHashMap<>();
+        for (String regionName : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics region = statistics.getDomainDataRegionStatistics(regionName);
+            if (region == null) {
+                continue;
+            }
+            Map<String, Object> regionStats = new HashMap<>();
+            regionStats.put("hits", region.getHitCount());
+            regionStats.put("misses", region.getMissCount());
+            regionStats.put("puts", region.getPutCount());
+            long lookups = region.getHitCount() + region.getMissCount();
+            regionStats.put("hitRatio", lookups == 0 ? 0.0 : (double) region.getHitCount() / lookups);
+            if (region.getElementCountInMemory() >= 0) {
+                regionStats.put("elementsInMemory", region.getElementCountInMemory());
+            }
+            regions.put(regionName, regionStats);
+        }
+        stats.put("regions", regions);
+        return ResponseEntity.ok(stats);
+    }
+
+    @GetMapping("/working-set")
+    public ResponseEntity<Map<String, Object>> getWorkingSetStats() {
+        return ResponseEntity.ok(workingSets.snapshot());
+    }
+
+    @GetMapping("/balance-journal")
+    public ResponseEntity<Map<String, Object>> getBalanceJournalStats() {
+        return ResponseEntity.ok(balances.snapshot());
+    }
+
+    @GetMapping("/customer-locks")
+    public ResponseEntity<Map<String, Object>> getCustomerLockStats() {
+        return ResponseEntity.ok(customerLocks.snapshot());
+    }
+
+    @GetMapping("/audit")
+    public ResponseEntity<Map<String, Object>> getAuditStats() {
+        return ResponseEntity.ok(audit.snapshot());
+    }
+
+    @GetMapping("/ledger")
+    public ResponseEntity<Map<String, Object>> getLedgerStats() {
+        return ResponseEntity.ok(ledger.snapshot());
+    }
+
+    @GetMapping("/deletes")
+    public ResponseEntity<Map<String, Object>> getDeleteStats() {
+        return ResponseEntity.ok(cascadingDeletes.snapshot());
+    }
+
+    @GetMapping("/idempotency")
+    public ResponseEntity<Map<String, Object>> getIdempotencyStats() {
+        return ResponseEntity.ok(idempotencyKeys.snapshot());
+    }
+
+    @GetMapping("/sync")
+    public ResponseEntity<Map<String, Object>> getSyncStats() {
+        return ResponseEntity.ok(changeFeed.snapshot());
+    }
+}
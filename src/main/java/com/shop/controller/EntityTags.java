@@ -0,0 +1,38 @@
+package com.shop.controller;
+
+/**
+ * ETag / If-Match handling for versioned entities. The ETag is the entity's version,
+ * e.g. {@code ETag: "3"}; a PUT or PATCH sent with {@code If-Match: "3"} only applies if
+ * the row is still at version 3.
+ */
+final class EntityTags {
+
+    private EntityTags() {
+    }
+
+    static String of(Long version) {
+        return version != null ? "\"" + version + "\"" : null;
+    }
+
+    /**
+     * The version a request is conditional on, or null when there is no If-Match header or it is "*".
+     * A tag that isn't one of ours yields -1, which never matches.
+     */
+    static Long parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        try {
+            return Long.parseLong(tag);
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+}
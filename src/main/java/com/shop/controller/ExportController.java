@@ -0,0 +1,90 @@
+package com.shop.controller;
+
+import com.shop.export.ExportService;
+import com.shop.export.ExportService.Format;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.zip.GZIPOutputStream;
+
+// Writes straight to the response instead of returning a body, so nothing is collected in memory
+@RestController
+@RequestMapping("/export")
+@CrossOrigin(origins = {"http://localhost:3000", "http://localhost:3002"}, allowedHeaders = "*",
+        exposedHeaders = HttpHeaders.CONTENT_DISPOSITION)
+public class ExportController {
+
+    @Autowired
+    private ExportService exportService;
+
+    private String getCurrentUserEmail() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication.getName();
+    }
+
+    @GetMapping("/transactions")
+    public void exportTransactions(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            HttpServletResponse response) throws IOException {
+        Format exportFormat = parseFormat(format, response);
+        if (exportFormat == null) {
+            return;
+        }
+        String userEmail = getCurrentUserEmail();
+        try (OutputStream out = open(response, "transactions", exportFormat, gzip)) {
+            exportService.exportTransactions(userEmail, startDate, endDate, exportFormat, out);
+        }
+    }
+
+    @GetMapping("/customers")
+    public void exportCustomers(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            HttpServletResponse response) throws IOException {
+        Format exportFormat = parseFormat(format, response);
+        if (exportFormat == null) {
+            return;
+        }
+        String userEmail = getCurrentUserEmail();
+        try (OutputStream out = open(response, "customers", exportFormat, gzip)) {
+            exportService.exportCustomers(userEmail, exportFormat, out);
+        }
+    }
+
+    private static Format parseFormat(String format, HttpServletResponse response) throws IOException {
+        try {
+            return Format.valueOf(format.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            response.setContentType("text/plain");
+            response.getWriter().write("format must be csv or ndjson");
+            return null;
+        }
+    }
+
+    private static OutputStream open(HttpServletResponse response, String name, Format format, boolean gzip)
+            throws IOException {
+        String fileName = name + "-" + LocalDate.now() + (format == Format.NDJSON ? ".ndjson" : ".csv");
+        if (gzip) {
+            fileName += ".gz";
+            response.setContentType("application/gzip");
+        } else {
+            response.setContentType(format == Format.NDJSON ? "application/x-ndjson" : "text/csv");
+            response.setCharacterEncoding("UTF-8");
+        }
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+        return gzip ? new GZIPOutputStream(response.getOutputStream(), 8192) : response.getOutputStream();
+    }
+}
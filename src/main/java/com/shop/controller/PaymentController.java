@@ -0,0 +1,101 @@
+package com.shop.controller;
+
+import com.shop.dto.PaymentRecordDto;
+import com.shop.dto.PaymentRequestDto;
+import com.shop.idempotency.IdempotencyKeys;
+import com.shop.service.PaymentService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import jakarta.validation.Valid;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/payments")
+@CrossOrigin(origins = {"http://localhost:3000", "http://localhost:3002"}, allowedHeaders = "*")
+public class PaymentController {
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private IdempotencyKeys idempotencyKeys;
+
+    private String getCurrentUserEmail() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication.getName();
+    }
+
+    @GetMapping
+    public ResponseEntity<List<PaymentRecordDto>> getPayments(
+            @RequestParam(required = false) String customerId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        String userEmail = getCurrentUserEmail();
+        return ResponseEntity.ok(paymentService.getPayments(userEmail, customerId, startDate, endDate));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<PaymentRecordDto> getPaymentById(@PathVariable Long id) {
+        String userEmail = getCurrentUserEmail();
+        PaymentRecordDto payment = paymentService.getPaymentById(userEmail, id);
+        if (payment != null) {
+            return ResponseEntity.ok(payment);
+        }
+        return ResponseEntity.notFound().build();
+    }
+
+    // Uses the request's transactionPayments unless isLumpSum is set or none are given
+    @PostMapping
+    public ResponseEntity<?> recordPayment(
+            @RequestHeader(value = IdempotencyKeys.HEADER, required = false) String idempotencyKey,
+            @Valid @RequestBody PaymentRequestDto request) {
+        return record("POST /payments", idempotencyKey, request);
+    }
+
+    @PostMapping("/lump-sum")
+    public ResponseEntity<?> recordLumpSumPayment(
+            @RequestHeader(value = IdempotencyKeys.HEADER, required = false) String idempotencyKey,
+            @Valid @RequestBody PaymentRequestDto request) {
+        request.setIsLumpSum(true);
+        return record("POST /payments/lump-sum", idempotencyKey, request);
+    }
+
+    @PostMapping("/partial")
+    public ResponseEntity<?> recordPartialPayment(
+            @RequestHeader(value = IdempotencyKeys.HEADER, required = false) String idempotencyKey,
+            @Valid @RequestBody PaymentRequestDto request) {
+        if (request.getTransactionPayments() == null || request.getTransactionPayments().isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "A partial payment needs transactionPayments"));
+        }
+        request.setIsLumpSum(false);
+        return record("POST /payments/partial", idempotencyKey, request);
+    }
+
+    // A retry with the same Idempotency-Key gets the first response instead of a second payment
+    private ResponseEntity<?> record(String scope, String idempotencyKey, PaymentRequestDto request) {
+        String userEmail = getCurrentUserEmail();
+        return idempotencyKeys.execute(userEmail, scope, idempotencyKey, request, () -> doRecord(userEmail, request));
+    }
+
+    // Anything else propagates as a server error; the idempotency key is released either way
+    private ResponseEntity<?> doRecord(String userEmail, PaymentRequestDto request) {
+        try {
+            return ResponseEntity.ok(paymentService.recordPayment(userEmail, request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (OptimisticLockingFailureException | PessimisticLockingFailureException e) {
+            // Nothing was written; safe for the client to resend
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+}
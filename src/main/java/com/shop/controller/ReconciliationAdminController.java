@@ -0,0 +1,91 @@
+package com.shop.controller;
+
+import com.shop.entity.ReconciliationDrift;
+import com.shop.entity.ReconciliationRun;
+import com.shop.ledger.BalanceReconciler;
+import com.shop.repository.ReconciliationDriftRepository;
+import com.shop.repository.ReconciliationRunRepository;
+import com.shop.security.AdminKeyVerifier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin/reconciliation")
+public class ReconciliationAdminController {
+
+    @Autowired
+    private BalanceReconciler reconciler;
+
+    @Autowired
+    private ReconciliationRunRepository runRepository;
+
+    @Autowired
+    private ReconciliationDriftRepository driftRepository;
+
+    @Autowired
+    private AdminKeyVerifier adminKeyVerifier;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getLatestRun(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        Map<String, Object> status = new HashMap<>();
+        status.put("running", reconciler.isRunning());
+        status.put("latestRun", runRepository.findTopByOrderByIdDesc().orElse(null));
+        return ResponseEntity.ok(status);
+    }
+
+    // Runs in the background; poll GET for progress
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> startRun(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey,
+            @RequestParam(defaultValue = "false") boolean repair,
+            @RequestParam(defaultValue = "true") boolean resume) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        Map<String, Object> result = new HashMap<>();
+        try {
+            result.put("run", reconciler.start(repair, resume));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(result);
+        } catch (IllegalStateException e) {
+            result.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(result);
+        }
+    }
+
+    @PostMapping("/stop")
+    public ResponseEntity<Map<String, Object>> stopRun(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("stopping", reconciler.stop());
+        return ResponseEntity.ok(result);
+    }
+
+    @GetMapping("/{runId}/drift")
+    public ResponseEntity<List<ReconciliationDrift>> getDrift(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey,
+            @PathVariable Long runId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "100") int size) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        if (!runRepository.existsById(runId)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(driftRepository.findByRunIdOrderByIdAsc(runId, PageRequest.of(page, Math.min(size, 1000))));
+    }
+}
@@ -0,0 +1,74 @@
+package com.shop.controller;
+
+import com.shop.dto.SettingDto;
+import com.shop.security.AdminKeyVerifier;
+import com.shop.settings.SettingsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin/settings")
+public class SettingsAdminController {
+
+    @Autowired
+    private SettingsService settingsService;
+
+    @Autowired
+    private AdminKeyVerifier adminKeyVerifier;
+
+    // The snapshot this instance is serving, with its version and polling counters
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getSettings(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.ok(settingsService.snapshot());
+    }
+
+    @PutMapping("/{key}")
+    public ResponseEntity<Map<String, Object>> putSetting(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey,
+            @PathVariable String key,
+            @RequestBody SettingDto settingDto) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        try {
+            settingsService.put(key, settingDto);
+            return ResponseEntity.ok(settingsService.snapshot());
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    @DeleteMapping("/{key}")
+    public ResponseEntity<Map<String, Object>> deleteSetting(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey,
+            @PathVariable String key) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        if (!settingsService.delete(key)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(settingsService.snapshot());
+    }
+
+    // Loads the table now instead of waiting for the next poll
+    @PostMapping("/reload")
+    public ResponseEntity<Map<String, Object>> reload(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        settingsService.reload();
+        return ResponseEntity.ok(settingsService.snapshot());
+    }
+}
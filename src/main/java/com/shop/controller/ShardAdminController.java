@@ -0,0 +1,76 @@
+package com.shop.controller;
+
+import com.shop.datasource.ShardMigrationService;
+import com.shop.datasource.ShardRoutingDataSource;
+import com.shop.security.AdminKeyVerifier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin/shards")
+@ConditionalOnProperty(name = "datasource.shards.enabled", havingValue = "true")
+public class ShardAdminController {
+
+    @Autowired
+    private ShardRoutingDataSource shardRoutingDataSource;
+
+    @Autowired
+    private ShardMigrationService shardMigrationService;
+
+    @Autowired
+    private AdminKeyVerifier adminKeyVerifier;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getDirectory(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        Map<String, Object> directory = new HashMap<>();
+        directory.put("shardCount", shardRoutingDataSource.getDirectory().getShardCount());
+        directory.put("assignments", shardRoutingDataSource.getDirectory().getAssignments());
+        return ResponseEntity.ok(directory);
+    }
+
+    @GetMapping("/tenant")
+    public ResponseEntity<Map<String, Object>> getTenantShard(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey,
+            @RequestParam String email) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("email", email);
+        result.put("shard", shardRoutingDataSource.getDirectory().shardFor(email));
+        result.put("hashShard", shardRoutingDataSource.getDirectory().hashShard(email));
+        return ResponseEntity.ok(result);
+    }
+
+    @PostMapping("/move")
+    public ResponseEntity<Map<String, Object>> moveTenant(
+            @RequestHeader(value = AdminKeyVerifier.HEADER, required = false) String adminKey,
+            @RequestParam String email,
+            @RequestParam int targetShard) {
+        if (!adminKeyVerifier.isAuthorized(adminKey)) {
+            return ResponseEntity.status(403).build();
+        }
+        try {
+            return ResponseEntity.ok(shardMigrationService.moveTenant(email, targetShard));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        } catch (IllegalStateException e) {
+            // Another instance is running, the fence was not acquired, or a copy step failed
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.shop.controller;
+
+import com.shop.service.SyncCursorExpiredException;
+import com.shop.service.SyncService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/sync")
+@CrossOrigin(origins = {"http://localhost:3000", "http://localhost:3002"}, allowedHeaders = "*")
+public class SyncController {
+
+    @Autowired
+    private SyncService syncService;
+
+    private String getCurrentUserEmail() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication.getName();
+    }
+
+    // Customers and transactions changed or deleted after the cursor; without since, everything
+    @GetMapping
+    public ResponseEntity<?> sync(
+            @RequestParam(required = false) String since,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.ok(syncService.changesSince(getCurrentUserEmail(), since, limit));
+        } catch (SyncCursorExpiredException e) {
+            return ResponseEntity.status(HttpStatus.GONE).body(Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -1,10 +1,18 @@
 package com.shop.controller;
 
 import com.shop.dto.TransactionDto;
+import com.shop.dto.TransactionStatusResultDto;
+import com.shop.dto.TransactionStatusUpdateDto;
 import com.shop.entity.Transaction.TransactionStatus;
+import com.shop.idempotency.IdempotencyKeys;
+import com.shop.service.CreditLimitExceededException;
 import com.shop.service.TransactionService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -13,7 +21,9 @@ import org.springframework.web.bind.annotation.*;
 import jakarta.validation.Valid;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/transactions")
@@ -23,6 +33,9 @@ public class TransactionController {
     @Autowired
     private TransactionService transactionService;
 
+    @Autowired
+    private IdempotencyKeys idempotencyKeys;
+
     private String getCurrentUserEmail() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         return authentication.getName();
@@ -38,6 +51,11 @@ public class TransactionController {
 
         String userEmail = getCurrentUserEmail();
 
+        // A date range also reaches archived transactions
+        if (startDate != null || endDate != null) {
+            return ResponseEntity.ok(transactionService.getTransactionsInPeriod(userEmail, customerId, startDate, endDate));
+        }
+
         if (customerId != null) {
             return ResponseEntity.ok(transactionService.getTransactionsByCustomer(userEmail, customerId));
         }
@@ -54,26 +72,70 @@ public class TransactionController {
         String userEmail = getCurrentUserEmail();
         TransactionDto transaction = transactionService.getTransactionById(userEmail, id);
         if (transaction != null) {
-            return ResponseEntity.ok(transaction);
+            return ResponseEntity.ok().eTag(EntityTags.of(transaction.getVersion())).body(transaction);
         }
         return ResponseEntity.notFound().build();
     }
 
+    // 422 naming the customer and the limit the posting would have gone past
+    private static ResponseEntity<Map<String, Object>> creditLimitExceeded(CreditLimitExceededException e) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", e.getMessage());
+        error.put("customerId", e.getCustomerId());
+        error.put("creditLimit", e.getLimit());
+        return ResponseEntity.unprocessableEntity().body(error);
+    }
+
+    // 409 with the transaction as it is now, so the client can merge and retry with the new ETag
+    private ResponseEntity<TransactionDto> conflict(String userEmail, String id) {
+        TransactionDto current = transactionService.getTransactionById(userEmail, id);
+        if (current == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.status(HttpStatus.CONFLICT).eTag(EntityTags.of(current.getVersion())).body(current);
+    }
+
+    // A retry with the same Idempotency-Key gets the first response instead of a second transaction
     @PostMapping
-    public ResponseEntity<TransactionDto> createTransaction(@Valid @RequestBody TransactionDto transactionDto) {
+    public ResponseEntity<?> createTransaction(
+            @RequestHeader(value = IdempotencyKeys.HEADER, required = false) String idempotencyKey,
+            @Valid @RequestBody TransactionDto transactionDto) {
         String userEmail = getCurrentUserEmail();
-        TransactionDto createdTransaction = transactionService.createTransaction(userEmail, transactionDto);
-        return ResponseEntity.ok(createdTransaction);
+        return idempotencyKeys.execute(userEmail, "POST /transactions", idempotencyKey, transactionDto,
+                () -> doCreate(userEmail, transactionDto));
+    }
+
+    private ResponseEntity<?> doCreate(String userEmail, TransactionDto transactionDto) {
+        try {
+            TransactionDto createdTransaction = transactionService.createTransaction(userEmail, transactionDto);
+            return ResponseEntity.ok(createdTransaction);
+        } catch (CreditLimitExceededException e) {
+            return creditLimitExceeded(e);
+        } catch (OptimisticLockingFailureException e) {
+            // The customer's balance kept changing under us through every retry; safe for the client to resend
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (PessimisticLockingFailureException e) {
+            // Timed out queueing behind other changes to the same customer
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<TransactionDto> updateTransaction(
+    public ResponseEntity<?> updateTransaction(
             @PathVariable String id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @Valid @RequestBody TransactionDto transactionDto) {
+        String userEmail = getCurrentUserEmail();
         try {
-            String userEmail = getCurrentUserEmail();
-            TransactionDto updatedTransaction = transactionService.updateTransaction(userEmail, id, transactionDto);
-            return ResponseEntity.ok(updatedTransaction);
+            TransactionDto updatedTransaction = transactionService.updateTransaction(userEmail, id, transactionDto,
+                    EntityTags.parseIfMatch(ifMatch));
+            return ResponseEntity.ok().eTag(EntityTags.of(updatedTransaction.getVersion())).body(updatedTransaction);
+        } catch (CreditLimitExceededException e) {
+            return creditLimitExceeded(e);
+        } catch (OptimisticLockingFailureException e) {
+            return conflict(userEmail, id);
+        } catch (PessimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
@@ -85,6 +147,8 @@ public class TransactionController {
             String userEmail = getCurrentUserEmail();
             transactionService.deleteTransaction(userEmail, id);
             return ResponseEntity.ok().build();
+        } catch (OptimisticLockingFailureException | PessimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
@@ -98,11 +162,27 @@ public class TransactionController {
             String userEmail = getCurrentUserEmail();
             TransactionDto updatedTransaction = transactionService.updateTransactionStatus(userEmail, id, status);
             return ResponseEntity.ok(updatedTransaction);
+        } catch (PessimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
     }
 
+    // Many transactions at once, by ids and/or a filter; returns how many moved, per customer
+    @PostMapping("/status")
+    public ResponseEntity<?> updateStatuses(@Valid @RequestBody TransactionStatusUpdateDto request) {
+        try {
+            String userEmail = getCurrentUserEmail();
+            TransactionStatusResultDto result = transactionService.updateTransactionStatuses(userEmail, request);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (OptimisticLockingFailureException | PessimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
     @GetMapping("/customer/{customerId}")
     public ResponseEntity<List<TransactionDto>> getTransactionsByCustomer(@PathVariable String customerId) {
         String userEmail = getCurrentUserEmail();
@@ -0,0 +1,68 @@
+package com.shop.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the auto-configured DataSource with a primary/replica router when
+ * {@code datasource.replicas.enabled=true} (and sharding is off). The primary is built from the usual
+ * {@code spring.datasource.*} properties, replicas from {@code datasource.replicas.nodes[n].*}.
+ */
+@Configuration
+@EnableConfigurationProperties(ReplicaProperties.class)
+// Sharding owns the DataSource when both are switched on; per-shard replicas are not supported
+@ConditionalOnExpression("${datasource.replicas.enabled:false} and !${datasource.shards.enabled:false}")
+public class DataSourceRoutingConfig {
+
+    @Bean
+    public ReadYourWritesTracker readYourWritesTracker(ReplicaProperties replicaProperties) {
+        return new ReadYourWritesTracker(replicaProperties.getStickyWindowMs());
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties dataSourceProperties,
+                                                             ReplicaProperties replicaProperties,
+                                                             ReadYourWritesTracker tracker) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        primary.setPoolName("primary");
+
+        List<DataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaProperties.getNodes().size(); i++) {
+            DataSourceNode node = replicaProperties.getNodes().get(i);
+            HikariDataSource replica = node.build("replica-" + i);
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, tracker);
+    }
+
+    // A replica read that lags the primary would be put into the shared cache and then served
+    // to everyone, so the second-level cache is only used against a single source of truth
+    @Bean
+    public HibernatePropertiesCustomizer disableSecondLevelCacheWithReplicas() {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, false);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, false);
+        };
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+}
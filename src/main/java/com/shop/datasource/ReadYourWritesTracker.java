@@ -0,0 +1,35 @@
+package com.shop.datasource;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers when each tenant last wrote, so that tenant's reads can be kept on the primary
+ * until replicas have had time to catch up.
+ */
+public class ReadYourWritesTracker {
+
+    private final long stickyWindowNanos;
+    private final Map<String, Long> lastWrite = new ConcurrentHashMap<>();
+
+    public ReadYourWritesTracker(long stickyWindowMs) {
+        this.stickyWindowNanos = stickyWindowMs * 1_000_000L;
+    }
+
+    public void recordWrite(String tenant) {
+        lastWrite.put(tenant, System.nanoTime());
+    }
+
+    public boolean isSticky(String tenant) {
+        Long writtenAt = lastWrite.get(tenant);
+        if (writtenAt == null) {
+            return false;
+        }
+        if (System.nanoTime() - writtenAt < stickyWindowNanos) {
+            return true;
+        }
+        // Expired - drop it so the map only holds recently active writers
+        lastWrite.remove(tenant, writtenAt);
+        return false;
+    }
+}
@@ -0,0 +1,41 @@
+package com.shop.datasource;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "datasource.replicas")
+public class ReplicaProperties {
+
+    private boolean enabled = false;
+
+    // How long a tenant's reads stay on the primary after that tenant commits a write
+    private long stickyWindowMs = 5000;
+
+    private List<DataSourceNode> nodes = new ArrayList<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getStickyWindowMs() {
+        return stickyWindowMs;
+    }
+
+    public void setStickyWindowMs(long stickyWindowMs) {
+        this.stickyWindowMs = stickyWindowMs;
+    }
+
+    public List<DataSourceNode> getNodes() {
+        return nodes;
+    }
+
+    public void setNodes(List<DataSourceNode> nodes) {
+        this.nodes = nodes;
+    }
+}
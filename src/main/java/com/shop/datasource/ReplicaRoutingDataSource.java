@@ -0,0 +1,74 @@
+package com.shop.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends connections for read-only transactions to a replica (round robin) and everything else
+ * to the primary. Reads stay on the primary when the tenant cannot be identified or has written
+ * within the sticky window, so a tenant never reads a balance older than its own last write.
+ *
+ * <p>Must sit behind a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}
+ * so the connection is fetched after the transaction's read-only flag has been set.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    private final ReadYourWritesTracker tracker;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, ReadYourWritesTracker tracker) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.tracker = tracker;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(i, replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    public List<DataSource> getReplicas() {
+        return replicas;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        boolean inTransaction = TransactionSynchronizationManager.isActualTransactionActive();
+        String tenant = TenantContext.currentTenant();
+
+        if (!inTransaction || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (inTransaction && tenant != null) {
+                tracker.recordWrite(tenant);
+                // Restart the window at commit, when the write actually becomes visible
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        tracker.recordWrite(tenant);
+                    }
+                });
+            }
+            return PRIMARY;
+        }
+        if (replicas.isEmpty() || tenant == null || tracker.isSticky(tenant)) {
+            return PRIMARY;
+        }
+        return Math.floorMod(next.getAndIncrement(), replicas.size());
+    }
+}
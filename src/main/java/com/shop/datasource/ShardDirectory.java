@@ -0,0 +1,83 @@
+package com.shop.datasource;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Maps tenants to shards. A tenant's home shard comes from a consistent-hash ring, so adding a
+ * shard only relocates roughly 1/n of the tenants; explicit assignments (written when a tenant is
+ * moved) take precedence over the ring.
+ *
+ * <p>Each tenant also has a fence: transactions hold the read side while they run, and a shard
+ * move takes the write side for its final catch-up and switch.
+ */
+public class ShardDirectory {
+
+    private final int shardCount;
+    private final NavigableMap<Long, Integer> ring = new TreeMap<>();
+    private final Map<String, Integer> assignments = new ConcurrentHashMap<>();
+    private final Map<String, ReentrantReadWriteLock> fences = new ConcurrentHashMap<>();
+
+    public ShardDirectory(int shardCount, int virtualNodes) {
+        this.shardCount = shardCount;
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int point = 0; point < virtualNodes; point++) {
+                ring.put(hash("shard-" + shard + "#" + point), shard);
+            }
+        }
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int shardFor(String tenant) {
+        Integer assigned = assignments.get(tenant);
+        return assigned != null ? assigned : hashShard(tenant);
+    }
+
+    public int hashShard(String tenant) {
+        Map.Entry<Long, Integer> entry = ring.ceilingEntry(hash(tenant));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public void assign(String tenant, int shard) {
+        if (shard == hashShard(tenant)) {
+            assignments.remove(tenant);
+        } else {
+            assignments.put(tenant, shard);
+        }
+    }
+
+    public void replaceAssignments(Map<String, Integer> loaded) {
+        assignments.keySet().retainAll(loaded.keySet());
+        loaded.forEach(this::assign);
+    }
+
+    public Map<String, Integer> getAssignments() {
+        return Map.copyOf(assignments);
+    }
+
+    public ReentrantReadWriteLock fence(String tenant) {
+        return fences.computeIfAbsent(tenant, key -> new ReentrantReadWriteLock());
+    }
+
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (digest[i] & 0xff);
+            }
+            return value;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.shop.datasource;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Persists explicit tenant-to-shard assignments in shard 0 and keeps the in-memory
+ * {@link ShardDirectory} in step with it, including assignments made by other instances.
+ *
+ * <p>Every reload also records that this instance is running. A shard move fences the tenant only
+ * inside the instance that runs it, and other instances keep routing by their own copy of the
+ * directory until their next reload, so a move refuses to run while another instance is up
+ * (see {@link #otherLiveInstances}).
+ */
+public class ShardDirectoryStore {
+
+    // Instances that reloaded within this many refresh intervals count as running
+    private static final int LIVE_INTERVALS = 3;
+
+    @Autowired
+    private ShardRoutingDataSource routingDataSource;
+
+    @Value("${datasource.shards.directory-refresh-ms:5000}")
+    private long refreshMs;
+
+    private final String instanceId = hostName() + "/" + UUID.randomUUID();
+
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate = new JdbcTemplate(routingDataSource.getShard(ShardRoutingDataSource.DEFAULT_SHARD));
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS tenant_shard_assignments (" +
+                "tenant_email VARCHAR(100) PRIMARY KEY, shard_id INT NOT NULL, updated_at TIMESTAMP NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS shard_directory_instances (" +
+                "instance_id VARCHAR(150) PRIMARY KEY, last_seen TIMESTAMP NOT NULL)");
+        reload();
+    }
+
+    @Scheduled(fixedDelayString = "${datasource.shards.directory-refresh-ms:5000}")
+    public void reload() {
+        heartbeat();
+        Map<String, Integer> loaded = new HashMap<>();
+        jdbcTemplate.query("SELECT tenant_email, shard_id FROM tenant_shard_assignments",
+                rs -> {
+                    loaded.put(rs.getString(1), rs.getInt(2));
+                });
+        routingDataSource.getDirectory().replaceAssignments(loaded);
+    }
+
+    public void assign(String tenant, int shard) {
+        int updated = jdbcTemplate.update("UPDATE tenant_shard_assignments SET shard_id = ?, updated_at = ? WHERE tenant_email = ?",
+                shard, Timestamp.valueOf(LocalDateTime.now()), tenant);
+        if (updated == 0) {
+            jdbcTemplate.update("INSERT INTO tenant_shard_assignments (tenant_email, shard_id, updated_at) VALUES (?, ?, ?)",
+                    tenant, shard, Timestamp.valueOf(LocalDateTime.now()));
+        }
+        routingDataSource.getDirectory().assign(tenant, shard);
+    }
+
+    /** Other instances that have reloaded the directory recently; a shard move needs this to be empty. */
+    public List<String> otherLiveInstances() {
+        LocalDateTime since = LocalDateTime.now().minusNanos(LIVE_INTERVALS * refreshMs * 1_000_000);
+        return jdbcTemplate.queryForList("SELECT instance_id FROM shard_directory_instances " +
+                "WHERE instance_id <> ? AND last_seen > ? ORDER BY instance_id", String.class,
+                instanceId, Timestamp.valueOf(since));
+    }
+
+    @PreDestroy
+    public void leave() {
+        jdbcTemplate.update("DELETE FROM shard_directory_instances WHERE instance_id = ?", instanceId);
+    }
+
+    private void heartbeat() {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        if (jdbcTemplate.update("UPDATE shard_directory_instances SET last_seen = ? WHERE instance_id = ?",
+                now, instanceId) == 0) {
+            jdbcTemplate.update("INSERT INTO shard_directory_instances (instance_id, last_seen) VALUES (?, ?)",
+                    instanceId, now);
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+}
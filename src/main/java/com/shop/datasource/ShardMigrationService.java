@@ -0,0 +1,364 @@
+package com.shop.datasource;
+
+import com.shop.balance.BalanceWriteBehind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Moves a tenant to another shard online, copy-then-switch:
+ * <ol>
+ *   <li>bulk copy of the tenant's rows while the tenant keeps working on the source shard;</li>
+ *   <li>fence the tenant (wait for in-flight transactions, hold off new ones), copy rows changed
+ *       since the bulk copy started, drop rows deleted meanwhile, and switch the directory;</li>
+ *   <li>release the fence and delete the tenant's rows from the source shard.</li>
+ * </ol>
+ * The tenant is only blocked for step 2, whose cost is proportional to the changes made during step 1.
+ * <p>
+ * The fence exists only in this instance, and other instances route by their own copy of the directory,
+ * so a move runs only while no other instance is up. An instance that shows up during the move keeps the
+ * tenant's source rows from being deleted, so nothing it wrote there is lost.
+ */
+public class ShardMigrationService {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardMigrationService.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Tenant-owned tables in foreign-key order. Tables keyed by a generated id get new ids on the
+     * target shard; references to them are remapped. Tables are keyed by {@code id} unless a key
+     * column is given.
+     */
+    private static final List<TenantTable> TENANT_TABLES = List.of(
+            new TenantTable("users", "email = ?", null, false, Map.of()),
+            new TenantTable("customers", "user_email = ?", "updated_at", false, Map.of()),
+            new TenantTable("transactions", "user_email = ?", "updated_at", false, Map.of()),
+            new TenantTable("payment_records", "customer_id IN (SELECT id FROM customers WHERE user_email = ?)",
+                    "created_at", true, Map.of()),
+            new TenantTable("transaction_payments", "transaction_id IN (SELECT id FROM transactions WHERE user_email = ?)",
+                    "created_at", true, Map.of("payment_record_id", "payment_records")),
+            new TenantTable("balance_journal", "user_email = ?", "created_at", true, Map.of()),
+            new TenantTable("audit_log", "user_email = ?", "recorded_at", true, Map.of()),
+            new TenantTable("customer_ledger", "user_email = ?", "recorded_at", true, Map.of()),
+            new TenantTable("customer_balance_snapshots", "user_email = ?", null, true, Map.of()),
+            new TenantTable("category_stats", "user_email = ?", "updated_at", false, Map.of()),
+            new TenantTable("idempotency_keys", "user_email = ?", "updated_at", false, Map.of()),
+            new TenantTable("transactions_archive", "user_email = ?", "archived_at", false, Map.of()),
+            new TenantTable("transaction_payments_archive",
+                    "transaction_id IN (SELECT id FROM transactions_archive WHERE user_email = ?)", "archived_at", true,
+                    Map.of("payment_record_id", "payment_records")),
+            new TenantTable("customer_opening_balances", "user_email = ?", "updated_at", false, Map.of(),
+                    "customer_id"),
+            new TenantTable("sync_sequences", "user_email = ?", "updated_at", false, Map.of(), "user_email"),
+            new TenantTable("sync_tombstones", "user_email = ?", "deleted_at", true, Map.of()));
+
+    @Autowired
+    private ShardRoutingDataSource routingDataSource;
+
+    @Autowired
+    private ShardDirectoryStore directoryStore;
+
+    @Autowired
+    private ShardProperties shardProperties;
+
+    @Autowired
+    private BalanceWriteBehind balances;
+
+    public synchronized Map<String, Object> moveTenant(String tenant, int targetShard) {
+        ShardDirectory directory = routingDataSource.getDirectory();
+        if (targetShard < 0 || targetShard >= directory.getShardCount()) {
+            throw new IllegalArgumentException("Unknown shard " + targetShard);
+        }
+        int sourceShard = directory.shardFor(tenant);
+        if (sourceShard == targetShard) {
+            throw new IllegalArgumentException("Tenant " + tenant + " is already on shard " + targetShard);
+        }
+        List<String> others = directoryStore.otherLiveInstances();
+        if (!others.isEmpty()) {
+            throw new IllegalStateException("Shard moves need every other instance stopped; still running: " + others);
+        }
+        DataSource source = routingDataSource.getShard(sourceShard);
+        DataSource target = routingDataSource.getShard(targetShard);
+        Map<String, Map<Object, Object>> idMaps = new HashMap<>();
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("tenant", tenant);
+        report.put("sourceShard", sourceShard);
+        report.put("targetShard", targetShard);
+        long start = System.currentTimeMillis();
+
+        try {
+            // 1. Bulk copy, tenant still live on the source. Margin covers in-flight transactions
+            // whose updated_at was stamped just before this point.
+            LocalDateTime copyStart = LocalDateTime.now().minusSeconds(5);
+            try (Connection from = source.getConnection(); Connection to = target.getConnection()) {
+                to.setAutoCommit(false);
+                deleteTenantRows(to, tenant);
+                Map<String, Integer> copied = new LinkedHashMap<>();
+                for (TenantTable table : TENANT_TABLES) {
+                    copied.put(table.name, copyRows(from, to, table, tenant, null, idMaps));
+                }
+                to.commit();
+                report.put("copiedRows", copied);
+            }
+
+            // 2. Fence, catch up, switch
+            Lock fence = directory.fence(tenant).writeLock();
+            if (!fence.tryLock(shardProperties.getFenceTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Could not fence tenant " + tenant + "; try again");
+            }
+            long fencedAt = System.currentTimeMillis();
+            try (Connection from = source.getConnection(); Connection to = target.getConnection()) {
+                to.setAutoCommit(false);
+                Map<String, Integer> caughtUp = new LinkedHashMap<>();
+                for (TenantTable table : TENANT_TABLES) {
+                    caughtUp.put(table.name, copyRows(from, to, table, tenant, copyStart, idMaps));
+                }
+                for (int i = TENANT_TABLES.size() - 1; i >= 0; i--) {
+                    deleteVanishedRows(from, to, TENANT_TABLES.get(i), tenant, idMaps);
+                }
+                to.commit();
+                directoryStore.assign(tenant, targetShard);
+                // Still fenced, so no journal row of the tenant is being committed right now
+                balances.remapJournalIds(tenant, idMaps.getOrDefault("balance_journal", Map.of()));
+                report.put("caughtUpRows", caughtUp);
+            } finally {
+                fence.unlock();
+                report.put("fencedMs", System.currentTimeMillis() - fencedAt);
+            }
+
+            // 3. Tenant now lives on the target; clean up the source, unless an instance started meanwhile
+            // may have written there by the old directory
+            others = directoryStore.otherLiveInstances();
+            if (!others.isEmpty()) {
+                log.warn("Kept tenant {} rows on shard {}: instances {} started during the move", tenant,
+                        sourceShard, others);
+                report.put("sourceRowsKept", others);
+            } else {
+                try (Connection from = source.getConnection()) {
+                    from.setAutoCommit(false);
+                    deleteTenantRows(from, tenant);
+                    from.commit();
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Moving tenant " + tenant + " failed: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted moving tenant " + tenant, e);
+        }
+
+        report.put("totalMs", System.currentTimeMillis() - start);
+        log.info("Moved tenant {}: {}", tenant, report);
+        return report;
+    }
+
+    /**
+     * Copies the tenant's rows of one table, or with {@code since} only rows changed since then.
+     * Returns the number of rows written.
+     */
+    private int copyRows(Connection from, Connection to, TenantTable table, String tenant,
+                         LocalDateTime since, Map<String, Map<Object, Object>> idMaps) throws SQLException {
+        String sql = "SELECT * FROM " + table.name + " WHERE " + table.predicate;
+        if (since != null && table.changeColumn != null) {
+            sql += " AND " + table.changeColumn + " >= ?";
+        }
+        Map<Object, Object> idMap = idMaps.computeIfAbsent(table.name, key -> new HashMap<>());
+        int written = 0;
+        try (PreparedStatement select = from.prepareStatement(sql)) {
+            select.setString(1, tenant);
+            if (since != null && table.changeColumn != null) {
+                select.setTimestamp(2, Timestamp.valueOf(since));
+            }
+            try (ResultSet rs = select.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                List<String> columns = new ArrayList<>();
+                for (int i = 1; i <= meta.getColumnCount(); i++) {
+                    columns.add(meta.getColumnLabel(i).toLowerCase());
+                }
+                if (table.generatedId) {
+                    written = copyGenerated(rs, to, table, columns, idMaps, idMap);
+                } else if (since == null) {
+                    written = insertBatched(rs, to, table, columns);
+                } else {
+                    written = upsert(rs, to, table, columns);
+                }
+            }
+        }
+        return written;
+    }
+
+    private int insertBatched(ResultSet rs, Connection to, TenantTable table, List<String> columns) throws SQLException {
+        int written = 0;
+        try (PreparedStatement insert = to.prepareStatement(insertSql(table.name, columns))) {
+            while (rs.next()) {
+                for (int i = 0; i < columns.size(); i++) {
+                    insert.setObject(i + 1, rs.getObject(i + 1));
+                }
+                insert.addBatch();
+                if (++written % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        return written;
+    }
+
+    private int upsert(ResultSet rs, Connection to, TenantTable table, List<String> columns) throws SQLException {
+        List<String> assigned = new ArrayList<>(columns);
+        assigned.remove(table.keyColumn);
+        String updateSql = "UPDATE " + table.name + " SET " + String.join(" = ?, ", assigned) + " = ? WHERE " +
+                table.keyColumn + " = ?";
+        int written = 0;
+        try (PreparedStatement update = to.prepareStatement(updateSql);
+             PreparedStatement insert = to.prepareStatement(insertSql(table.name, columns))) {
+            while (rs.next()) {
+                for (int i = 0; i < assigned.size(); i++) {
+                    update.setObject(i + 1, rs.getObject(assigned.get(i)));
+                }
+                update.setObject(assigned.size() + 1, rs.getObject(table.keyColumn));
+                if (update.executeUpdate() == 0) {
+                    for (int i = 0; i < columns.size(); i++) {
+                        insert.setObject(i + 1, rs.getObject(i + 1));
+                    }
+                    insert.executeUpdate();
+                }
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private int copyGenerated(ResultSet rs, Connection to, TenantTable table, List<String> columns,
+                              Map<String, Map<Object, Object>> idMaps, Map<Object, Object> idMap) throws SQLException {
+        List<String> inserted = new ArrayList<>(columns);
+        inserted.remove("id");
+        int written = 0;
+        try (PreparedStatement insert = to.prepareStatement(insertSql(table.name, inserted), new String[]{"id"})) {
+            while (rs.next()) {
+                Object sourceId = rs.getObject("id");
+                if (idMap.containsKey(sourceId)) {
+                    continue;
+                }
+                for (int i = 0; i < inserted.size(); i++) {
+                    String column = inserted.get(i);
+                    Object value = rs.getObject(column);
+                    String referenced = table.remappedColumns.get(column);
+                    if (referenced != null) {
+                        value = idMaps.get(referenced).get(value);
+                    }
+                    insert.setObject(i + 1, value);
+                }
+                insert.executeUpdate();
+                try (ResultSet keys = insert.getGeneratedKeys()) {
+                    keys.next();
+                    idMap.put(sourceId, keys.getObject(1));
+                }
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private void deleteVanishedRows(Connection from, Connection to, TenantTable table, String tenant,
+                                    Map<String, Map<Object, Object>> idMaps) throws SQLException {
+        Set<Object> sourceIds = new HashSet<>(selectIds(from, table, tenant));
+        Map<Object, Object> idMap = idMaps.get(table.name);
+        List<Object> vanished = new ArrayList<>();
+        if (table.generatedId) {
+            idMap.forEach((sourceId, targetId) -> {
+                if (!sourceIds.contains(sourceId)) {
+                    vanished.add(targetId);
+                }
+            });
+        } else {
+            for (Object targetId : selectIds(to, table, tenant)) {
+                if (!sourceIds.contains(targetId)) {
+                    vanished.add(targetId);
+                }
+            }
+        }
+        try (PreparedStatement delete = to.prepareStatement(
+                "DELETE FROM " + table.name + " WHERE " + table.keyColumn + " = ?")) {
+            for (Object id : vanished) {
+                delete.setObject(1, id);
+                delete.addBatch();
+            }
+            delete.executeBatch();
+        }
+    }
+
+    private List<Object> selectIds(Connection connection, TenantTable table, String tenant) throws SQLException {
+        List<Object> ids = new ArrayList<>();
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT " + table.keyColumn + " FROM " + table.name + " WHERE " + table.predicate)) {
+            select.setString(1, tenant);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getObject(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private void deleteTenantRows(Connection connection, String tenant) throws SQLException {
+        for (int i = TENANT_TABLES.size() - 1; i >= 0; i--) {
+            TenantTable table = TENANT_TABLES.get(i);
+            try (PreparedStatement delete = connection.prepareStatement(
+                    "DELETE FROM " + table.name + " WHERE " + table.predicate)) {
+                delete.setString(1, tenant);
+                delete.executeUpdate();
+            }
+        }
+    }
+
+    private static String insertSql(String table, List<String> columns) {
+        return "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES (" +
+                String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+    }
+
+    private static class TenantTable {
+        private final String name;
+        private final String predicate;
+        private final String changeColumn;
+        private final boolean generatedId;
+        private final Map<String, String> remappedColumns;
+        private final String keyColumn;
+
+        TenantTable(String name, String predicate, String changeColumn, boolean generatedId,
+                    Map<String, String> remappedColumns) {
+            this(name, predicate, changeColumn, generatedId, remappedColumns, "id");
+        }
+
+        TenantTable(String name, String predicate, String changeColumn, boolean generatedId,
+                    Map<String, String> remappedColumns, String keyColumn) {
+            this.name = name;
+            this.predicate = predicate;
+            this.changeColumn = changeColumn;
+            this.generatedId = generatedId;
+            this.remappedColumns = remappedColumns;
+            this.keyColumn = keyColumn;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.shop.datasource;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "datasource.shards")
+public class ShardProperties {
+
+    private boolean enabled = false;
+
+    // Points per shard on the consistent-hash ring; more points = more even spread
+    private int virtualNodes = 128;
+
+    // Create the JPA schema on shards 1..n at startup (shard 0 is handled by ddl-auto)
+    private boolean createSchema = false;
+
+    // How long requests for a tenant wait while that tenant is being switched to another shard
+    private long fenceTimeoutMs = 10000;
+
+    // Shards 1..n; shard 0 is spring.datasource and also holds the shard directory
+    private List<DataSourceNode> nodes = new ArrayList<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    public void setVirtualNodes(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    public boolean isCreateSchema() {
+        return createSchema;
+    }
+
+    public void setCreateSchema(boolean createSchema) {
+        this.createSchema = createSchema;
+    }
+
+    public long getFenceTimeoutMs() {
+        return fenceTimeoutMs;
+    }
+
+    public void setFenceTimeoutMs(long fenceTimeoutMs) {
+        this.fenceTimeoutMs = fenceTimeoutMs;
+    }
+
+    public List<DataSourceNode> getNodes() {
+        return nodes;
+    }
+
+    public void setNodes(List<DataSourceNode> nodes) {
+        this.nodes = nodes;
+    }
+}
@@ -0,0 +1,93 @@
+package com.shop.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Routes each connection to the shard that owns the current tenant ({@link TenantContext}).
+ * Work without a tenant goes to shard 0. Inside a transaction the tenant's fence is held until
+ * completion, so a shard move can wait for in-flight work and hold off new work while it switches.
+ *
+ * <p>Must sit behind a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}
+ * so the connection is fetched only once the tenant is known.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final int DEFAULT_SHARD = 0;
+
+    private static final Object FENCE_KEY = new Object();
+
+    private final List<DataSource> shards;
+    private final ShardDirectory directory;
+    private final long fenceTimeoutMs;
+
+    public ShardRoutingDataSource(List<DataSource> shards, ShardDirectory directory, long fenceTimeoutMs) {
+        this.shards = shards;
+        this.directory = directory;
+        this.fenceTimeoutMs = fenceTimeoutMs;
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(DEFAULT_SHARD));
+    }
+
+    public DataSource getShard(int shard) {
+        return shards.get(shard);
+    }
+
+    public ShardDirectory getDirectory() {
+        return directory;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer pinned = TenantContext.pinnedShard();
+        if (pinned != null) {
+            return pinned;
+        }
+        String tenant = TenantContext.currentTenant();
+        if (tenant == null) {
+            return DEFAULT_SHARD;
+        }
+        enterFence(tenant);
+        return directory.shardFor(tenant);
+    }
+
+    private void enterFence(String tenant) {
+        if (TransactionSynchronizationManager.hasResource(FENCE_KEY)) {
+            return;
+        }
+        Lock readLock = directory.fence(tenant).readLock();
+        try {
+            if (!readLock.tryLock(fenceTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Timed out waiting for shard move of tenant " + tenant);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for shard move of tenant " + tenant, e);
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Auto-commit work: only wait for a running switch, don't hold the fence
+            readLock.unlock();
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(FENCE_KEY, readLock);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(FENCE_KEY);
+                readLock.unlock();
+            }
+        });
+    }
+}
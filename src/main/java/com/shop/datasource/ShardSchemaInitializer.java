@@ -0,0 +1,36 @@
+package com.shop.datasource;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the JPA schema on shards 1..n, which ddl-auto (running against shard 0) never sees.
+ * Meant for embedded/test setups; production shards get their schema from migrations.
+ */
+@Component
+@ConditionalOnProperty(name = {"datasource.shards.enabled", "datasource.shards.create-schema"}, havingValue = "true")
+public class ShardSchemaInitializer {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardSchemaInitializer.class);
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ShardRoutingDataSource routingDataSource;
+
+    @PostConstruct
+    public void createSchemas() {
+        SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        for (int shard = 1; shard < routingDataSource.getDirectory().getShardCount(); shard++) {
+            TenantContext.runOnShard(shard, () -> sessionFactory.getSchemaManager().exportMappedObjects(true));
+            log.info("Created schema on shard {}", shard);
+        }
+    }
+}
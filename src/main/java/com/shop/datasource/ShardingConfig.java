@@ -0,0 +1,57 @@
+package com.shop.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the auto-configured DataSource with a tenant shard router when
+ * {@code datasource.shards.enabled=true}. Shard 0 is built from {@code spring.datasource.*},
+ * shards 1..n from {@code datasource.shards.nodes[n-1].*}.
+ */
+@Configuration
+@EnableConfigurationProperties(ShardProperties.class)
+@ConditionalOnProperty(name = "datasource.shards.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(DataSourceProperties dataSourceProperties,
+                                                         ShardProperties shardProperties) {
+        List<DataSource> shards = new ArrayList<>();
+        HikariDataSource shard0 = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        shard0.setPoolName("shard-0");
+        shards.add(shard0);
+        for (int i = 0; i < shardProperties.getNodes().size(); i++) {
+            shards.add(shardProperties.getNodes().get(i).build("shard-" + (i + 1)));
+        }
+        ShardDirectory directory = new ShardDirectory(shards.size(), shardProperties.getVirtualNodes());
+        return new ShardRoutingDataSource(shards, directory, shardProperties.getFenceTimeoutMs());
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+
+    @Bean
+    public ShardDirectoryStore shardDirectoryStore() {
+        return new ShardDirectoryStore();
+    }
+
+    @Bean
+    public ShardMigrationService shardMigrationService() {
+        return new ShardMigrationService();
+    }
+}
@@ -0,0 +1,80 @@
+package com.shop.datasource;
+
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.function.Supplier;
+
+/**
+ * Resolves the tenant (shop owner email) that database routing decisions are made for.
+ * Normally that is the authenticated user; code that runs before authentication (login,
+ * registration, JWT validation) or on behalf of a tenant in the background sets it explicitly.
+ * Maintenance code can also pin a specific shard.
+ */
+public final class TenantContext {
+
+    private static final ThreadLocal<String> TENANT = new ThreadLocal<>();
+    private static final ThreadLocal<Integer> PINNED_SHARD = new ThreadLocal<>();
+
+    private TenantContext() {
+    }
+
+    public static String currentTenant() {
+        String tenant = TENANT.get();
+        if (tenant != null) {
+            return tenant;
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication.getName();
+    }
+
+    public static Integer pinnedShard() {
+        return PINNED_SHARD.get();
+    }
+
+    public static <T> T callAsTenant(String tenant, Supplier<T> action) {
+        String previous = TENANT.get();
+        TENANT.set(tenant);
+        try {
+            return action.get();
+        } finally {
+            restore(TENANT, previous);
+        }
+    }
+
+    public static void runAsTenant(String tenant, Runnable action) {
+        callAsTenant(tenant, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public static <T> T callOnShard(int shard, Supplier<T> action) {
+        Integer previous = PINNED_SHARD.get();
+        PINNED_SHARD.set(shard);
+        try {
+            return action.get();
+        } finally {
+            restore(PINNED_SHARD, previous);
+        }
+    }
+
+    public static void runOnShard(int shard, Runnable action) {
+        callOnShard(shard, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private static <T> void restore(ThreadLocal<T> holder, T previous) {
+        if (previous == null) {
+            holder.remove();
+        } else {
+            holder.set(previous);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.shop.diagnostics;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Detects virtual threads that stay pinned to their carrier thread (typically by blocking inside
+ * a synchronized block, e.g. in the JDBC driver) by streaming the JFR {@code jdk.VirtualThreadPinned}
+ * event in-process. Pinning events are aggregated by the first application or library frame
+ * below the JDK internals, logged on first sight, and exposed through {@link #snapshot()}.
+ */
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadPinningMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    @Value("${diagnostics.pinning.threshold-ms:20}")
+    private long thresholdMs;
+
+    private final Map<String, Site> sites = new ConcurrentHashMap<>();
+    private final LongAdder totalEvents = new LongAdder();
+    private RecordingStream stream;
+
+    @PostConstruct
+    public void start() {
+        stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::onPinned);
+        stream.startAsync();
+        log.info("Virtual thread pinning monitor started (threshold {} ms)", thresholdMs);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        totalEvents.increment();
+        String site = pinningSite(event.getStackTrace());
+        Site stats = sites.computeIfAbsent(site, key -> {
+            log.warn("Virtual thread pinned for {} ms at {}\n{}", event.getDuration().toMillis(), key,
+                    formatStack(event.getStackTrace()));
+            return new Site();
+        });
+        stats.count.increment();
+        stats.totalNanos.add(event.getDuration().toNanos());
+        stats.maxNanos.accumulateAndGet(event.getDuration().toNanos(), Math::max);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("thresholdMs", thresholdMs);
+        result.put("totalEvents", totalEvents.sum());
+        Map<String, Object> bySite = new LinkedHashMap<>();
+        sites.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().totalNanos.sum(), a.getValue().totalNanos.sum()))
+                .forEach(entry -> {
+                    Map<String, Object> stats = new LinkedHashMap<>();
+                    stats.put("count", entry.getValue().count.sum());
+                    stats.put("totalMs", entry.getValue().totalNanos.sum() / 1_000_000);
+                    stats.put("maxMs", entry.getValue().maxNanos.get() / 1_000_000);
+                    bySite.put(entry.getKey(), stats);
+                });
+        result.put("sites", bySite);
+        return result;
+    }
+
+    private static String pinningSite(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "<no stack trace>";
+        }
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            String type = frame.getMethod().getType().getName();
+            if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+                return type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+            }
+        }
+        return "<jdk internal>";
+    }
+
+    private static String formatStack(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder();
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            out.append("\tat ").append(frame.getMethod().getType().getName()).append('.')
+                    .append(frame.getMethod().getName()).append(':').append(frame.getLineNumber()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static class Site {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+    }
+}
@@ -0,0 +1,74 @@
+package com.shop.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+public class BalanceAsOfDto {
+    private String customerId;
+    private LocalDate asOf;
+    private BigDecimal balance;
+
+    // When the ledger started itemizing the customer's changes; earlier balances are carried forward.
+    // Null if nothing has changed since the ledger was introduced.
+    private LocalDateTime trackedSince;
+
+    // The snapshot the balance was replayed from, and how many entries after it were added
+    private Long snapshotSeq;
+    private long replayedEntries;
+
+    public BalanceAsOfDto() {}
+
+    public BalanceAsOfDto(String customerId, LocalDate asOf) {
+        this.customerId = customerId;
+        this.asOf = asOf;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public LocalDate getAsOf() {
+        return asOf;
+    }
+
+    public void setAsOf(LocalDate asOf) {
+        this.asOf = asOf;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public void setBalance(BigDecimal balance) {
+        this.balance = balance;
+    }
+
+    public LocalDateTime getTrackedSince() {
+        return trackedSince;
+    }
+
+    public void setTrackedSince(LocalDateTime trackedSince) {
+        this.trackedSince = trackedSince;
+    }
+
+    public Long getSnapshotSeq() {
+        return snapshotSeq;
+    }
+
+    public void setSnapshotSeq(Long snapshotSeq) {
+        this.snapshotSeq = snapshotSeq;
+    }
+
+    public long getReplayedEntries() {
+        return replayedEntries;
+    }
+
+    public void setReplayedEntries(long replayedEntries) {
+        this.replayedEntries = replayedEntries;
+    }
+}
@@ -2,6 +2,7 @@ package com.shop.dto;
 
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
+import java.math.BigDecimal;
 
 public class CategoryDto {
     private Integer id;
@@ -14,6 +15,10 @@ public class CategoryDto {
     private String color = "#3182ce";
     private Boolean isActive = true;
 
+    // The current shop's active customers in this category and what they owe
+    private Long customerCount;
+    private BigDecimal totalDue;
+
     public CategoryDto() {}
 
     public CategoryDto(Integer id, String name, String description, String color, Boolean isActive) {
@@ -64,4 +69,20 @@ public class CategoryDto {
     public void setIsActive(Boolean isActive) {
         this.isActive = isActive;
     }
-} 
\ No newline at end of file
+
+    public Long getCustomerCount() {
+        return customerCount;
+    }
+
+    public void setCustomerCount(Long customerCount) {
+        this.customerCount = customerCount;
+    }
+
+    public BigDecimal getTotalDue() {
+        return totalDue;
+    }
+
+    public void setTotalDue(BigDecimal totalDue) {
+        this.totalDue = totalDue;
+    }
+}
@@ -0,0 +1,126 @@
+package com.shop.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+public class CustomerDetailDto {
+    private CustomerDto customer;
+
+    // One page of the customer's transactions, newest first
+    private List<TransactionDto> transactions;
+    private int page;
+    private int size;
+    private boolean hasMoreTransactions;
+
+    // Unpaid CREDIT and received PAYMENT totals of the transactions not yet archived
+    private BigDecimal pendingCredit;
+    private BigDecimal totalPayments;
+
+    // What the archived transactions add up to, and how many there are; null if none are archived
+    private BigDecimal archivedBalance;
+    private Long archivedTransactions;
+    private LocalDate archivedThrough;
+
+    // The most recent payments, newest first
+    private List<PaymentRecordDto> payments;
+    private boolean hasMorePayments;
+
+    public CustomerDetailDto() {}
+
+    public CustomerDto getCustomer() {
+        return customer;
+    }
+
+    public void setCustomer(CustomerDto customer) {
+        this.customer = customer;
+    }
+
+    public List<TransactionDto> getTransactions() {
+        return transactions;
+    }
+
+    public void setTransactions(List<TransactionDto> transactions) {
+        this.transactions = transactions;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public void setPage(int page) {
+        this.page = page;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public boolean isHasMoreTransactions() {
+        return hasMoreTransactions;
+    }
+
+    public void setHasMoreTransactions(boolean hasMoreTransactions) {
+        this.hasMoreTransactions = hasMoreTransactions;
+    }
+
+    public BigDecimal getPendingCredit() {
+        return pendingCredit;
+    }
+
+    public void setPendingCredit(BigDecimal pendingCredit) {
+        this.pendingCredit = pendingCredit;
+    }
+
+    public BigDecimal getTotalPayments() {
+        return totalPayments;
+    }
+
+    public void setTotalPayments(BigDecimal totalPayments) {
+        this.totalPayments = totalPayments;
+    }
+
+    public BigDecimal getArchivedBalance() {
+        return archivedBalance;
+    }
+
+    public void setArchivedBalance(BigDecimal archivedBalance) {
+        this.archivedBalance = archivedBalance;
+    }
+
+    public Long getArchivedTransactions() {
+        return archivedTransactions;
+    }
+
+    public void setArchivedTransactions(Long archivedTransactions) {
+        this.archivedTransactions = archivedTransactions;
+    }
+
+    public LocalDate getArchivedThrough() {
+        return archivedThrough;
+    }
+
+    public void setArchivedThrough(LocalDate archivedThrough) {
+        this.archivedThrough = archivedThrough;
+    }
+
+    public List<PaymentRecordDto> getPayments() {
+        return payments;
+    }
+
+    public void setPayments(List<PaymentRecordDto> payments) {
+        this.payments = payments;
+    }
+
+    public boolean isHasMorePayments() {
+        return hasMorePayments;
+    }
+
+    public void setHasMorePayments(boolean hasMorePayments) {
+        this.hasMorePayments = hasMorePayments;
+    }
+}
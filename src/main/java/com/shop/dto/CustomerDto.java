@@ -16,10 +16,16 @@ public class CustomerDto {
     
     private String address;
     private String category = "Regular";
+    // Read-only; clients set the category by name
+    private Integer categoryId;
     private String notes;
     private BigDecimal totalDue = BigDecimal.ZERO;
+    // Null means the shop-wide max_credit_limit setting applies
+    private BigDecimal creditLimit;
     private LocalDate lastTransactionDate;
     private Boolean isActive = true;
+    // Read-only; updates are made conditional with the If-Match header
+    private Long version;
 
     public CustomerDto() {}
 
@@ -69,6 +75,14 @@ public class CustomerDto {
         this.address = address;
     }
 
+    public Integer getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(Integer categoryId) {
+        this.categoryId = categoryId;
+    }
+
     public String getCategory() {
         return category;
     }
@@ -93,6 +107,14 @@ public class CustomerDto {
         this.totalDue = totalDue;
     }
 
+    public BigDecimal getCreditLimit() {
+        return creditLimit;
+    }
+
+    public void setCreditLimit(BigDecimal creditLimit) {
+        this.creditLimit = creditLimit;
+    }
+
     public LocalDate getLastTransactionDate() {
         return lastTransactionDate;
     }
@@ -108,4 +130,12 @@ public class CustomerDto {
     public void setIsActive(Boolean isActive) {
         this.isActive = isActive;
     }
-} 
\ No newline at end of file
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+}
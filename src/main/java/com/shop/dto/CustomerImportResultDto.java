@@ -0,0 +1,110 @@
+package com.shop.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CustomerImportResultDto {
+    // Data rows read, not counting the header
+    private long rows;
+
+    private long imported;
+
+    private long rejected;
+
+    // False when a batch could not be written; rows after it were not read
+    private boolean completed = true;
+
+    private List<RowError> errors = new ArrayList<>();
+
+    // Rejected rows left out of errors once it is full
+    private long errorsOmitted;
+
+    public static class RowError {
+        // Line of the record in the file, the header being line 1
+        private long row;
+        private String mobile;
+        private String error;
+
+        public RowError() {}
+
+        public RowError(long row, String mobile, String error) {
+            this.row = row;
+            this.mobile = mobile;
+            this.error = error;
+        }
+
+        public long getRow() {
+            return row;
+        }
+
+        public void setRow(long row) {
+            this.row = row;
+        }
+
+        public String getMobile() {
+            return mobile;
+        }
+
+        public void setMobile(String mobile) {
+            this.mobile = mobile;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public void setError(String error) {
+            this.error = error;
+        }
+    }
+
+    public CustomerImportResultDto() {}
+
+    public long getRows() {
+        return rows;
+    }
+
+    public void setRows(long rows) {
+        this.rows = rows;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public void setImported(long imported) {
+        this.imported = imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(long rejected) {
+        this.rejected = rejected;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(boolean completed) {
+        this.completed = completed;
+    }
+
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<RowError> errors) {
+        this.errors = errors;
+    }
+
+    public long getErrorsOmitted() {
+        return errorsOmitted;
+    }
+
+    public void setErrorsOmitted(long errorsOmitted) {
+        this.errorsOmitted = errorsOmitted;
+    }
+}
@@ -5,6 +5,7 @@ import jakarta.validation.constraints.Positive;
 import jakarta.validation.constraints.Size;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.List;
 
 public class PaymentRecordDto {
     private Long id;
@@ -30,6 +31,12 @@ public class PaymentRecordDto {
     
     private String notes;
 
+    // How the payment was spread over the customer's pending credits
+    private List<TransactionPaymentDto> transactionPayments;
+
+    // Part of the payment not applied to any credit (paid in advance)
+    private BigDecimal unallocatedAmount;
+
     public PaymentRecordDto() {}
 
     public PaymentRecordDto(Long id, String customerId, String customerName, LocalDate paymentDate, 
@@ -108,4 +115,20 @@ public class PaymentRecordDto {
     public void setNotes(String notes) {
         this.notes = notes;
     }
-} 
\ No newline at end of file
+
+    public List<TransactionPaymentDto> getTransactionPayments() {
+        return transactionPayments;
+    }
+
+    public void setTransactionPayments(List<TransactionPaymentDto> transactionPayments) {
+        this.transactionPayments = transactionPayments;
+    }
+
+    public BigDecimal getUnallocatedAmount() {
+        return unallocatedAmount;
+    }
+
+    public void setUnallocatedAmount(BigDecimal unallocatedAmount) {
+        this.unallocatedAmount = unallocatedAmount;
+    }
+}
@@ -0,0 +1,74 @@
+package com.shop.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SyncDto {
+    // Pass back as since on the next call
+    private String cursor;
+
+    // More changes are waiting; call again right away with the new cursor
+    private boolean hasMore;
+
+    // Created or updated since the previous cursor, as they are now, in the order they changed
+    private List<CustomerDto> customers = new ArrayList<>();
+    private List<TransactionDto> transactions = new ArrayList<>();
+
+    // Deleted since the previous cursor
+    private List<String> deletedCustomers = new ArrayList<>();
+    private List<String> deletedTransactions = new ArrayList<>();
+
+    public SyncDto() {}
+
+    public SyncDto(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+
+    public List<CustomerDto> getCustomers() {
+        return customers;
+    }
+
+    public void setCustomers(List<CustomerDto> customers) {
+        this.customers = customers;
+    }
+
+    public List<TransactionDto> getTransactions() {
+        return transactions;
+    }
+
+    public void setTransactions(List<TransactionDto> transactions) {
+        this.transactions = transactions;
+    }
+
+    public List<String> getDeletedCustomers() {
+        return deletedCustomers;
+    }
+
+    public void setDeletedCustomers(List<String> deletedCustomers) {
+        this.deletedCustomers = deletedCustomers;
+    }
+
+    public List<String> getDeletedTransactions() {
+        return deletedTransactions;
+    }
+
+    public void setDeletedTransactions(List<String> deletedTransactions) {
+        this.deletedTransactions = deletedTransactions;
+    }
+}
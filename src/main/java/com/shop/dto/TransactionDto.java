@@ -29,9 +29,14 @@ public class TransactionDto {
     @NotNull(message = "Date is required")
     private LocalDate date;
     
+    // Optional; defaults to date plus the default_payment_terms setting
+    private LocalDate dueDate;
+    
     private TransactionStatus status = TransactionStatus.PENDING;
     private PaymentMethod paymentMethod = PaymentMethod.CASH;
     private String notes;
+    // Read-only; updates are made conditional with the If-Match header
+    private Long version;
 
     public TransactionDto() {}
 
@@ -107,6 +112,14 @@ public class TransactionDto {
         this.date = date;
     }
 
+    public LocalDate getDueDate() {
+        return dueDate;
+    }
+
+    public void setDueDate(LocalDate dueDate) {
+        this.dueDate = dueDate;
+    }
+
     public TransactionStatus getStatus() {
         return status;
     }
@@ -130,4 +143,12 @@ public class TransactionDto {
     public void setNotes(String notes) {
         this.notes = notes;
     }
-} 
\ No newline at end of file
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+}
@@ -6,7 +6,7 @@ import java.math.BigDecimal;
 
 public class TransactionPaymentDto {
     @NotNull(message = "Transaction ID is required")
-    private Long transactionId;
+    private String transactionId;
     
     @NotNull(message = "Amount applied is required")
     @Positive(message = "Amount applied must be positive")
@@ -14,17 +14,17 @@ public class TransactionPaymentDto {
 
     public TransactionPaymentDto() {}
 
-    public TransactionPaymentDto(Long transactionId, BigDecimal amountApplied) {
+    public TransactionPaymentDto(String transactionId, BigDecimal amountApplied) {
         this.transactionId = transactionId;
         this.amountApplied = amountApplied;
     }
 
     // Getters and Setters
-    public Long getTransactionId() {
+    public String getTransactionId() {
         return transactionId;
     }
 
-    public void setTransactionId(Long transactionId) {
+    public void setTransactionId(String transactionId) {
         this.transactionId = transactionId;
     }
 
@@ -0,0 +1,52 @@
+package com.shop.dto;
+
+import com.shop.entity.Transaction.TransactionStatus;
+import java.util.List;
+import java.util.Map;
+
+public class TransactionStatusResultDto {
+    private TransactionStatus status;
+
+    // Transactions moved to status; ones already in it are left alone
+    private int updated;
+
+    // Updated transactions per customer id
+    private Map<String, Integer> updatedByCustomer;
+
+    // Requested ids that were not updated: unknown, filtered out, or already in status
+    private List<String> notUpdated;
+
+    public TransactionStatusResultDto() {}
+
+    public TransactionStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(TransactionStatus status) {
+        this.status = status;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(int updated) {
+        this.updated = updated;
+    }
+
+    public Map<String, Integer> getUpdatedByCustomer() {
+        return updatedByCustomer;
+    }
+
+    public void setUpdatedByCustomer(Map<String, Integer> updatedByCustomer) {
+        this.updatedByCustomer = updatedByCustomer;
+    }
+
+    public List<String> getNotUpdated() {
+        return notUpdated;
+    }
+
+    public void setNotUpdated(List<String> notUpdated) {
+        this.notUpdated = notUpdated;
+    }
+}
@@ -0,0 +1,84 @@
+package com.shop.dto;
+
+import com.shop.entity.Transaction.TransactionStatus;
+import com.shop.entity.Transaction.TransactionType;
+import jakarta.validation.constraints.NotNull;
+import java.time.LocalDate;
+import java.util.List;
+
+// Selects transactions by ids, by filter, or both (ids that also match the filter)
+public class TransactionStatusUpdateDto {
+    @NotNull(message = "Status is required")
+    private TransactionStatus status;
+
+    private List<String> ids;
+
+    private String customerId;
+
+    private LocalDate startDate;
+
+    private LocalDate endDate;
+
+    // Only transactions currently in this status, e.g. PENDING
+    private TransactionStatus fromStatus;
+
+    private TransactionType transactionType;
+
+    public TransactionStatusUpdateDto() {}
+
+    public TransactionStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(TransactionStatus status) {
+        this.status = status;
+    }
+
+    public List<String> getIds() {
+        return ids;
+    }
+
+    public void setIds(List<String> ids) {
+        this.ids = ids;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(LocalDate endDate) {
+        this.endDate = endDate;
+    }
+
+    public TransactionStatus getFromStatus() {
+        return fromStatus;
+    }
+
+    public void setFromStatus(TransactionStatus fromStatus) {
+        this.fromStatus = fromStatus;
+    }
+
+    public TransactionType getTransactionType() {
+        return transactionType;
+    }
+
+    public void setTransactionType(TransactionType transactionType) {
+        this.transactionType = transactionType;
+    }
+}
@@ -0,0 +1,85 @@
+package com.shop.entity;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A payment allocation of an archived transaction, moved out of {@code transaction_payments} with it,
+ * so a payment still lists everything it paid.
+ */
+@Entity
+@Table(name = "transaction_payments_archive", indexes = {
+        @Index(name = "idx_transaction_payments_archive_payment", columnList = "payment_record_id"),
+        @Index(name = "idx_transaction_payments_archive_transaction", columnList = "transaction_id")
+})
+public class ArchivedTransactionPayment {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "transaction_id", nullable = false, length = 50)
+    private String transactionId;
+
+    @Column(name = "payment_record_id", nullable = false)
+    private Long paymentRecordId;
+
+    @Column(name = "amount_applied", precision = 10, scale = 2, nullable = false)
+    private BigDecimal amountApplied;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "archived_at", nullable = false)
+    private LocalDateTime archivedAt;
+
+    public ArchivedTransactionPayment() {}
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public void setTransactionId(String transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    public Long getPaymentRecordId() {
+        return paymentRecordId;
+    }
+
+    public void setPaymentRecordId(Long paymentRecordId) {
+        this.paymentRecordId = paymentRecordId;
+    }
+
+    public BigDecimal getAmountApplied() {
+        return amountApplied;
+    }
+
+    public void setAmountApplied(BigDecimal amountApplied) {
+        this.amountApplied = amountApplied;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getArchivedAt() {
+        return archivedAt;
+    }
+
+    public void setArchivedAt(LocalDateTime archivedAt) {
+        this.archivedAt = archivedAt;
+    }
+}
@@ -0,0 +1,120 @@
+package com.shop.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One committed change to a customer or transaction, with the record as it was before and after
+ * (JSON; null for a create's before and a delete's after). Append-only: rows are written in
+ * batches by {@code AuditJournal} and never updated or deleted by the application.
+ */
+@Entity
+@Table(name = "audit_log", indexes = {
+        @Index(name = "idx_audit_log_entity", columnList = "user_email, entity_id"),
+        @Index(name = "idx_audit_log_recorded", columnList = "recorded_at")
+})
+public class AuditLogEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_email", nullable = false)
+    private String userEmail;
+
+    @Column(name = "entity_type", nullable = false, length = 20)
+    private String entityType;
+
+    @Column(name = "entity_id", nullable = false, length = 50)
+    private String entityId;
+
+    @Column(nullable = false, length = 20)
+    private String action;
+
+    @Column(name = "before_state", columnDefinition = "TEXT")
+    private String beforeState;
+
+    @Column(name = "after_state", columnDefinition = "TEXT")
+    private String afterState;
+
+    // When the change committed
+    @Column(name = "occurred_at", nullable = false)
+    private LocalDateTime occurredAt;
+
+    // When the row was written, which can lag occurred_at by the journal's backlog
+    @Column(name = "recorded_at", nullable = false)
+    private LocalDateTime recordedAt;
+
+    public AuditLogEntry() {}
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getUserEmail() {
+        return userEmail;
+    }
+
+    public void setUserEmail(String userEmail) {
+        this.userEmail = userEmail;
+    }
+
+    public String getEntityType() {
+        return entityType;
+    }
+
+    public void setEntityType(String entityType) {
+        this.entityType = entityType;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public void setEntityId(String entityId) {
+        this.entityId = entityId;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public void setAction(String action) {
+        this.action = action;
+    }
+
+    public String getBeforeState() {
+        return beforeState;
+    }
+
+    public void setBeforeState(String beforeState) {
+        this.beforeState = beforeState;
+    }
+
+    public String getAfterState() {
+        return afterState;
+    }
+
+    public void setAfterState(String afterState) {
+        this.afterState = afterState;
+    }
+
+    public LocalDateTime getOccurredAt() {
+        return occurredAt;
+    }
+
+    public void setOccurredAt(LocalDateTime occurredAt) {
+        this.occurredAt = occurredAt;
+    }
+
+    public LocalDateTime getRecordedAt() {
+        return recordedAt;
+    }
+
+    public void setRecordedAt(LocalDateTime recordedAt) {
+        this.recordedAt = recordedAt;
+    }
+}
@@ -0,0 +1,97 @@
+package com.shop.entity;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * One pending change to a customer's total due, written in the same transaction as the
+ * change that caused it. Rows are only ever inserted and then deleted when folded into
+ * {@code customers.total_due}, so the table holds just the not-yet-applied tail.
+ */
+@Entity
+@Table(name = "balance_journal", indexes = @Index(name = "idx_balance_journal_user", columnList = "user_email"))
+public class BalanceJournalEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_email", nullable = false)
+    private String userEmail;
+
+    @Column(name = "customer_id", nullable = false, length = 50)
+    private String customerId;
+
+    @Column(precision = 10, scale = 2, nullable = false)
+    private BigDecimal delta;
+
+    // Set when the change also moves the customer's last transaction date
+    @Column(name = "transaction_date")
+    private LocalDate transactionDate;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    public BalanceJournalEntry() {}
+
+    public BalanceJournalEntry(String userEmail, String customerId, BigDecimal delta, LocalDate transactionDate) {
+        this.userEmail = userEmail;
+        this.customerId = customerId;
+        this.delta = delta;
+        this.transactionDate = transactionDate;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getUserEmail() {
+        return userEmail;
+    }
+
+    public void setUserEmail(String userEmail) {
+        this.userEmail = userEmail;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public BigDecimal getDelta() {
+        return delta;
+    }
+
+    public void setDelta(BigDecimal delta) {
+        this.delta = delta;
+    }
+
+    public LocalDate getTransactionDate() {
+        return transactionDate;
+    }
+
+    public void setTransactionDate(LocalDate transactionDate) {
+        this.transactionDate = transactionDate;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
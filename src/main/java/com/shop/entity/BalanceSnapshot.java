@@ -0,0 +1,94 @@
+package com.shop.entity;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A customer's balance after its ledger entries up to and including {@code seq}, as of the time
+ * the entry at {@code seq} was booked. The snapshot at seq 0 is the starting point: the balance
+ * carried into the ledger for customers that existed before it (asOf null), or zero as of the
+ * customer's creation.
+ */
+@Entity
+@Table(name = "customer_balance_snapshots",
+        uniqueConstraints = @UniqueConstraint(name = "uk_balance_snapshot_seq", columnNames = {"customer_id", "seq"}),
+        indexes = @Index(name = "idx_balance_snapshot_as_of", columnList = "customer_id, as_of"))
+public class BalanceSnapshot {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_email", nullable = false)
+    private String userEmail;
+
+    @Column(name = "customer_id", nullable = false, length = 50)
+    private String customerId;
+
+    @Column(nullable = false)
+    private Long seq;
+
+    @Column(precision = 10, scale = 2, nullable = false)
+    private BigDecimal balance;
+
+    @Column(name = "as_of")
+    private LocalDateTime asOf;
+
+    public BalanceSnapshot() {}
+
+    public BalanceSnapshot(String userEmail, String customerId, Long seq, BigDecimal balance, LocalDateTime asOf) {
+        this.userEmail = userEmail;
+        this.customerId = customerId;
+        this.seq = seq;
+        this.balance = balance;
+        this.asOf = asOf;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getUserEmail() {
+        return userEmail;
+    }
+
+    public void setUserEmail(String userEmail) {
+        this.userEmail = userEmail;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public Long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public void setBalance(BigDecimal balance) {
+        this.balance = balance;
+    }
+
+    public LocalDateTime getAsOf() {
+        return asOf;
+    }
+
+    public void setAsOf(LocalDateTime asOf) {
+        this.asOf = asOf;
+    }
+}
@@ -0,0 +1,91 @@
+package com.shop.entity;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A shop's active customers in one category and the sum of their balances. Kept current by
+ * {@code CategoryStats}, which adds each transaction's changes to the row just before it commits, so
+ * listing categories never has to aggregate the customers table.
+ */
+@Entity
+@Table(name = "category_stats", indexes = {
+        @Index(name = "idx_category_stats_user_email", columnList = "user_email")
+})
+public class CategoryStat {
+    // "<user email>/<category id>": a natural key, so a row can be created without looking it up first
+    // and a tenant's rows keep their ids when moved to another shard
+    @Id
+    @Column(length = 120)
+    private String id;
+
+    @Column(name = "user_email", nullable = false, length = 100)
+    private String userEmail;
+
+    @Column(name = "category_id", nullable = false)
+    private Integer categoryId;
+
+    @Column(name = "customer_count", nullable = false)
+    private Long customerCount = 0L;
+
+    @Column(name = "total_due", precision = 14, scale = 2, nullable = false)
+    private BigDecimal totalDue = BigDecimal.ZERO;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public CategoryStat() {}
+
+    public static String idOf(String userEmail, Integer categoryId) {
+        return userEmail + "/" + categoryId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getUserEmail() {
+        return userEmail;
+    }
+
+    public void setUserEmail(String userEmail) {
+        this.userEmail = userEmail;
+    }
+
+    public Integer getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(Integer categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    public Long getCustomerCount() {
+        return customerCount;
+    }
+
+    public void setCustomerCount(Long customerCount) {
+        this.customerCount = customerCount;
+    }
+
+    public BigDecimal getTotalDue() {
+        return totalDue;
+    }
+
+    public void setTotalDue(BigDecimal totalDue) {
+        this.totalDue = totalDue;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -2,22 +2,36 @@ package com.shop.entity;
 
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "customers")
+@Table(name = "customers", indexes = {
+        @Index(name = "idx_customers_user_category", columnList = "user_email, category_id"),
+        // Delta sync: a shop's rows changed after a given point of its change sequence
+        @Index(name = "idx_customers_change_seq", columnList = "user_email, change_seq")
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "customers")
 public class Customer {
     @Id
     @Column(length = 50)
     private String id;
 
+    // Read-only: a customer restored from the second-level cache comes back without this
+    // association (it joins on email, not on the user's id), so the FK is written through userEmail
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "user_email", referencedColumnName = "email", nullable = false)
+    @JoinColumn(name = "user_email", referencedColumnName = "email", insertable = false, updatable = false)
     private User user;
 
+    // Owner FK, also lets ownership checks skip loading the User
+    @Column(name = "user_email", nullable = false, length = 100)
+    private String userEmail;
+
     @NotNull(message = "Name is required")
     @Column(nullable = false, length = 100)
     private String name;
@@ -29,8 +43,9 @@ public class Customer {
     @Column(columnDefinition = "TEXT")
     private String address;
 
-    @Column(length = 50)
-    private String category = "Regular";
+    // Id in the global category catalog; the name is resolved by CategoryCatalog
+    @Column(name = "category_id")
+    private Integer categoryId;
 
     @Column(columnDefinition = "TEXT")
     private String notes;
@@ -38,6 +53,10 @@ public class Customer {
     @Column(name = "total_due", precision = 10, scale = 2)
     private BigDecimal totalDue = BigDecimal.ZERO;
 
+    // Null means the shop-wide max_credit_limit setting applies
+    @Column(name = "credit_limit", precision = 10, scale = 2)
+    private BigDecimal creditLimit;
+
     @Column(name = "is_active")
     private Boolean isActive = true;
 
@@ -50,6 +69,15 @@ public class Customer {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // Bumped on every update; clients get it as the ETag and send it back in If-Match
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
+    // Position in the shop's change sequence of the last committed change; stamped by ChangeFeed, never by Hibernate
+    @Column(name = "change_seq", insertable = false, updatable = false)
+    private Long changeSeq;
+
     @OneToMany(mappedBy = "customer", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<Transaction> transactions;
 
@@ -73,13 +101,13 @@ public class Customer {
     // Constructors
     public Customer() {}
 
-    public Customer(String id, User user, String name, String mobile, String address, String category, String notes, BigDecimal totalDue) {
+    public Customer(String id, User user, String name, String mobile, String address, Integer categoryId, String notes, BigDecimal totalDue) {
         this.id = id;
-        this.user = user;
+        setUser(user);
         this.name = name;
         this.mobile = mobile;
         this.address = address;
-        this.category = category;
+        this.categoryId = categoryId;
         this.notes = notes;
         this.totalDue = totalDue;
     }
@@ -99,6 +127,11 @@ public class Customer {
 
     public void setUser(User user) {
         this.user = user;
+        this.userEmail = user != null ? user.getEmail() : null;
+    }
+
+    public String getUserEmail() {
+        return userEmail;
     }
 
     public String getName() {
@@ -125,12 +158,12 @@ public class Customer {
         this.address = address;
     }
 
-    public String getCategory() {
-        return category;
+    public Integer getCategoryId() {
+        return categoryId;
     }
 
-    public void setCategory(String category) {
-        this.category = category;
+    public void setCategoryId(Integer categoryId) {
+        this.categoryId = categoryId;
     }
 
     public String getNotes() {
@@ -149,6 +182,14 @@ public class Customer {
         this.totalDue = totalDue;
     }
 
+    public BigDecimal getCreditLimit() {
+        return creditLimit;
+    }
+
+    public void setCreditLimit(BigDecimal creditLimit) {
+        this.creditLimit = creditLimit;
+    }
+
     public Boolean getIsActive() {
         return isActive;
     }
@@ -181,6 +222,18 @@ public class Customer {
         this.updatedAt = updatedAt;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Long getChangeSeq() {
+        return changeSeq;
+    }
+
     public List<Transaction> getTransactions() {
         return transactions;
     }
@@ -0,0 +1,88 @@
+package com.shop.entity;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * What a customer's archived transactions add up to: the balance they carried forward, so the
+ * transactions still in {@code transactions} plus this opening balance give the customer's balance.
+ * Written by {@code TransactionArchive} in the same transaction that moves the rows.
+ */
+@Entity
+@Table(name = "customer_opening_balances", indexes = {
+        @Index(name = "idx_customer_opening_balances_user_email", columnList = "user_email")
+})
+public class CustomerOpeningBalance {
+    @Id
+    @Column(name = "customer_id", length = 50)
+    private String customerId;
+
+    @Column(name = "user_email", nullable = false)
+    private String userEmail;
+
+    // Credits less payments and adjustments of the archived transactions
+    @Column(precision = 14, scale = 2, nullable = false)
+    private BigDecimal balance;
+
+    @Column(name = "transaction_count", nullable = false)
+    private Long transactionCount;
+
+    // Date of the newest archived transaction
+    @Column(name = "archived_through", nullable = false)
+    private LocalDate archivedThrough;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public CustomerOpeningBalance() {}
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public String getUserEmail() {
+        return userEmail;
+    }
+
+    public void setUserEmail(String userEmail) {
+        this.userEmail = userEmail;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public void setBalance(BigDecimal balance) {
+        this.balance = balance;
+    }
+
+    public Long getTransactionCount() {
+        return transactionCount;
+    }
+
+    public void setTransactionCount(Long transactionCount) {
+        this.transactionCount = transactionCount;
+    }
+
+    public LocalDate getArchivedThrough() {
+        return archivedThrough;
+    }
+
+    public void setArchivedThrough(LocalDate archivedThrough) {
+        this.archivedThrough = archivedThrough;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,88 @@
+package com.shop.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A request made with an {@code Idempotency-Key} header and the response it got, so a retry of it can
+ * be answered without running it again. Written and read by {@code IdempotencyKeys} with plain SQL;
+ * rows older than {@code idempotency.ttl-hours} are removed in bulk, oldest first, via the
+ * {@code updated_at} index.
+ */
+@Entity
+@Table(name = "idempotency_keys", indexes = {
+        @Index(name = "idx_idempotency_keys_updated", columnList = "updated_at")
+})
+public class IdempotencyRecord {
+    // Hex SHA-256 of shop, endpoint and key: fixed length however long the client's key is
+    @Id
+    @Column(length = 64)
+    private String id;
+
+    @Column(name = "user_email", nullable = false, length = 100)
+    private String userEmail;
+
+    // Hex SHA-256 of the request body, to refuse a key reused for a different request
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    // HTTP status of the stored response; 0 while the request is still running
+    @Column(nullable = false)
+    private Integer status;
+
+    @Column(name = "response_body", columnDefinition = "TEXT")
+    private String responseBody;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public IdempotencyRecord() {}
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getUserEmail() {
+        return userEmail;
+    }
+
+    public void setUserEmail(String userEmail) {
+        this.userEmail = userEmail;
+    }
+
+    public String getRequestHash() {
+        return requestHash;
+    }
+
+    public void setRequestHash(String requestHash) {
+        this.requestHash = requestHash;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+
+    public String getResponseBody() {
+        return responseBody;
+    }
+
+    public void setResponseBody(String responseBody) {
+        this.responseBody = responseBody;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,117 @@
+package com.shop.entity;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * One change to a customer's total due, in the order it was booked. {@code seq} counts a
+ * customer's entries from 1 with no gaps. Append-only: rows are never updated or deleted.
+ */
+@Entity
+@Table(name = "customer_ledger",
+        uniqueConstraints = @UniqueConstraint(name = "uk_customer_ledger_seq", columnNames = {"customer_id", "seq"}))
+public class LedgerEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_email", nullable = false)
+    private String userEmail;
+
+    @Column(name = "customer_id", nullable = false, length = 50)
+    private String customerId;
+
+    @Column(nullable = false)
+    private Long seq;
+
+    @Column(precision = 10, scale = 2, nullable = false)
+    private BigDecimal delta;
+
+    @Column(nullable = false, length = 20)
+    private String reason;
+
+    // The transaction that caused the change, if any
+    @Column(name = "transaction_id", length = 50)
+    private String transactionId;
+
+    @Column(name = "recorded_at", nullable = false)
+    private LocalDateTime recordedAt;
+
+    public LedgerEntry() {}
+
+    public LedgerEntry(String userEmail, String customerId, Long seq, BigDecimal delta, String reason,
+                       String transactionId, LocalDateTime recordedAt) {
+        this.userEmail = userEmail;
+        this.customerId = customerId;
+        this.seq = seq;
+        this.delta = delta;
+        this.reason = reason;
+        this.transactionId = transactionId;
+        this.recordedAt = recordedAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getUserEmail() {
+        return userEmail;
+    }
+
+    public void setUserEmail(String userEmail) {
+        this.userEmail = userEmail;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public Long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
+
+    public BigDecimal getDelta() {
+        return delta;
+    }
+
+    public void setDelta(BigDecimal delta) {
+        this.delta = delta;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public void setTransactionId(String transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    public LocalDateTime getRecordedAt() {
+        return recordedAt;
+    }
+
+    public void setRecordedAt(LocalDateTime recordedAt) {
+        this.recordedAt = recordedAt;
+    }
+}
@@ -0,0 +1,114 @@
+package com.shop.entity;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A customer whose total due (plus unflushed write-behind changes) did not match its ledger
+ * when a reconciliation run checked it. Kept with the run in the default shard.
+ */
+@Entity
+@Table(name = "reconciliation_drift", indexes = @Index(name = "idx_reconciliation_drift_run", columnList = "run_id"))
+public class ReconciliationDrift {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "run_id", nullable = false)
+    private Long runId;
+
+    @Column(name = "user_email", nullable = false)
+    private String userEmail;
+
+    @Column(name = "customer_id", nullable = false, length = 50)
+    private String customerId;
+
+    @Column(name = "recorded_balance", precision = 10, scale = 2, nullable = false)
+    private BigDecimal recordedBalance;
+
+    @Column(name = "ledger_balance", precision = 10, scale = 2, nullable = false)
+    private BigDecimal ledgerBalance;
+
+    @Column(nullable = false)
+    private boolean repaired;
+
+    @Column(name = "detected_at", nullable = false)
+    private LocalDateTime detectedAt;
+
+    public ReconciliationDrift() {}
+
+    public ReconciliationDrift(Long runId, String userEmail, String customerId, BigDecimal recordedBalance,
+                               BigDecimal ledgerBalance) {
+        this.runId = runId;
+        this.userEmail = userEmail;
+        this.customerId = customerId;
+        this.recordedBalance = recordedBalance;
+        this.ledgerBalance = ledgerBalance;
+        this.detectedAt = LocalDateTime.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getRunId() {
+        return runId;
+    }
+
+    public void setRunId(Long runId) {
+        this.runId = runId;
+    }
+
+    public String getUserEmail() {
+        return userEmail;
+    }
+
+    public void setUserEmail(String userEmail) {
+        this.userEmail = userEmail;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public BigDecimal getRecordedBalance() {
+        return recordedBalance;
+    }
+
+    public void setRecordedBalance(BigDecimal recordedBalance) {
+        this.recordedBalance = recordedBalance;
+    }
+
+    public BigDecimal getLedgerBalance() {
+        return ledgerBalance;
+    }
+
+    public void setLedgerBalance(BigDecimal ledgerBalance) {
+        this.ledgerBalance = ledgerBalance;
+    }
+
+    public boolean isRepaired() {
+        return repaired;
+    }
+
+    public void setRepaired(boolean repaired) {
+        this.repaired = repaired;
+    }
+
+    public LocalDateTime getDetectedAt() {
+        return detectedAt;
+    }
+
+    public void setDetectedAt(LocalDateTime detectedAt) {
+        this.detectedAt = detectedAt;
+    }
+}
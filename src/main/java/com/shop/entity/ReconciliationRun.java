@@ -0,0 +1,184 @@
+package com.shop.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One pass of the balance reconciliation job over every tenant. Tenants are visited in email
+ * order and {@code cursorTenant} is the last one fully done, so an interrupted run resumes after it.
+ * Kept in the default shard.
+ */
+@Entity
+@Table(name = "reconciliation_runs")
+public class ReconciliationRun {
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String INTERRUPTED = "INTERRUPTED";
+    public static final String FAILED = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // false: only report drift
+    @Column(nullable = false)
+    private boolean repair;
+
+    @Column(nullable = false, length = 20)
+    private String status;
+
+    @Column(name = "cursor_tenant", length = 100)
+    private String cursorTenant;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    // Bumped after every chunk of tenants; a RUNNING run that stops beating was abandoned
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "tenants_checked", nullable = false)
+    private long tenantsChecked;
+
+    @Column(name = "failed_tenants", nullable = false)
+    private long failedTenants;
+
+    @Column(name = "customers_checked", nullable = false)
+    private long customersChecked;
+
+    // Customers whose balance has not changed since the ledger started, so there is nothing to compare
+    @Column(name = "untracked_customers", nullable = false)
+    private long untrackedCustomers;
+
+    @Column(nullable = false)
+    private long drifted;
+
+    @Column(nullable = false)
+    private long repaired;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    public ReconciliationRun() {}
+
+    public ReconciliationRun(boolean repair) {
+        this.repair = repair;
+        this.status = RUNNING;
+        this.startedAt = LocalDateTime.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public boolean isRepair() {
+        return repair;
+    }
+
+    public void setRepair(boolean repair) {
+        this.repair = repair;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getCursorTenant() {
+        return cursorTenant;
+    }
+
+    public void setCursorTenant(String cursorTenant) {
+        this.cursorTenant = cursorTenant;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getHeartbeatAt() {
+        return heartbeatAt;
+    }
+
+    public void setHeartbeatAt(LocalDateTime heartbeatAt) {
+        this.heartbeatAt = heartbeatAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public long getTenantsChecked() {
+        return tenantsChecked;
+    }
+
+    public void setTenantsChecked(long tenantsChecked) {
+        this.tenantsChecked = tenantsChecked;
+    }
+
+    public long getFailedTenants() {
+        return failedTenants;
+    }
+
+    public void setFailedTenants(long failedTenants) {
+        this.failedTenants = failedTenants;
+    }
+
+    public long getCustomersChecked() {
+        return customersChecked;
+    }
+
+    public void setCustomersChecked(long customersChecked) {
+        this.customersChecked = customersChecked;
+    }
+
+    public long getUntrackedCustomers() {
+        return untrackedCustomers;
+    }
+
+    public void setUntrackedCustomers(long untrackedCustomers) {
+        this.untrackedCustomers = untrackedCustomers;
+    }
+
+    public long getDrifted() {
+        return drifted;
+    }
+
+    public void setDrifted(long drifted) {
+        this.drifted = drifted;
+    }
+
+    public long getRepaired() {
+        return repaired;
+    }
+
+    public void setRepaired(long repaired) {
+        this.repaired = repaired;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+}
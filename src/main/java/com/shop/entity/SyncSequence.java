@@ -0,0 +1,61 @@
+package com.shop.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A shop's change sequence: the last number handed to one of its customer or transaction changes or
+ * tombstones. Maintained by {@code ChangeFeed} with plain SQL; the row lock taken to advance it orders
+ * the shop's writes, so numbers become visible in the order they were given out.
+ */
+@Entity
+@Table(name = "sync_sequences")
+public class SyncSequence {
+    @Id
+    @Column(name = "user_email", length = 100)
+    private String userEmail;
+
+    @Column(name = "last_seq", nullable = false)
+    private Long lastSeq;
+
+    // Tombstones up to here were purged; a cursor before it may have missed deletes
+    @Column(name = "purged_through", nullable = false)
+    private Long purgedThrough;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public SyncSequence() {}
+
+    public String getUserEmail() {
+        return userEmail;
+    }
+
+    public void setUserEmail(String userEmail) {
+        this.userEmail = userEmail;
+    }
+
+    public Long getLastSeq() {
+        return lastSeq;
+    }
+
+    public void setLastSeq(Long lastSeq) {
+        this.lastSeq = lastSeq;
+    }
+
+    public Long getPurgedThrough() {
+        return purgedThrough;
+    }
+
+    public void setPurgedThrough(Long purgedThrough) {
+        this.purgedThrough = purgedThrough;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
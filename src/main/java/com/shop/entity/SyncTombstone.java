@@ -0,0 +1,85 @@
+package com.shop.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A deleted customer or transaction, kept so clients syncing with {@code GET /sync} learn it is gone.
+ * Written by {@code ChangeFeed} in the deleting transaction and purged after
+ * {@code sync.tombstone-retention-days}.
+ */
+@Entity
+@Table(name = "sync_tombstones", indexes = {
+        @Index(name = "idx_sync_tombstones_change_seq", columnList = "user_email, change_seq")
+})
+public class SyncTombstone {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_email", nullable = false, length = 100)
+    private String userEmail;
+
+    // CUSTOMER or TRANSACTION
+    @Column(name = "entity_type", nullable = false, length = 20)
+    private String entityType;
+
+    @Column(name = "entity_id", nullable = false, length = 50)
+    private String entityId;
+
+    @Column(name = "change_seq", nullable = false)
+    private Long changeSeq;
+
+    @Column(name = "deleted_at", nullable = false)
+    private LocalDateTime deletedAt;
+
+    public SyncTombstone() {}
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getUserEmail() {
+        return userEmail;
+    }
+
+    public void setUserEmail(String userEmail) {
+        this.userEmail = userEmail;
+    }
+
+    public String getEntityType() {
+        return entityType;
+    }
+
+    public void setEntityType(String entityType) {
+        this.entityType = entityType;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public void setEntityId(String entityId) {
+        this.entityId = entityId;
+    }
+
+    public Long getChangeSeq() {
+        return changeSeq;
+    }
+
+    public void setChangeSeq(Long changeSeq) {
+        this.changeSeq = changeSeq;
+    }
+
+    public LocalDateTime getDeletedAt() {
+        return deletedAt;
+    }
+
+    public void setDeletedAt(LocalDateTime deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+}
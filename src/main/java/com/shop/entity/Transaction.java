@@ -9,7 +9,14 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "transactions")
+@Table(name = "transactions", indexes = {
+        // Date-ordered reads of one shop, e.g. exports
+        @Index(name = "idx_transactions_user_date", columnList = "user_email, date"),
+        // Overdue items of one shop: a range read of its PENDING rows due before today
+        @Index(name = "idx_transactions_overdue", columnList = "user_email, status, due_date"),
+        // Delta sync: a shop's rows changed after a given point of its change sequence
+        @Index(name = "idx_transactions_change_seq", columnList = "user_email, change_seq")
+})
 public class Transaction {
     @Id
     @Column(length = 50)
@@ -41,6 +48,10 @@ public class Transaction {
     @Column(nullable = false)
     private LocalDate date;
 
+    // When a PENDING transaction becomes overdue; defaults to date plus the default_payment_terms setting
+    @Column(name = "due_date")
+    private LocalDate dueDate;
+
     @Enumerated(EnumType.STRING)
     private TransactionStatus status = TransactionStatus.PENDING;
 
@@ -57,6 +68,15 @@ public class Transaction {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // Bumped on every update; clients get it as the ETag and send it back in If-Match
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
+    // Position in the shop's change sequence of the last committed change; stamped by ChangeFeed, never by Hibernate
+    @Column(name = "change_seq", insertable = false, updatable = false)
+    private Long changeSeq;
+
     @OneToMany(mappedBy = "transaction", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<TransactionPayment> transactionPayments;
 
@@ -170,6 +190,14 @@ public class Transaction {
         this.date = date;
     }
 
+    public LocalDate getDueDate() {
+        return dueDate;
+    }
+
+    public void setDueDate(LocalDate dueDate) {
+        this.dueDate = dueDate;
+    }
+
     public TransactionStatus getStatus() {
         return status;
     }
@@ -210,6 +238,18 @@ public class Transaction {
         this.updatedAt = updatedAt;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Long getChangeSeq() {
+        return changeSeq;
+    }
+
     public List<TransactionPayment> getTransactionPayments() {
         return transactionPayments;
     }
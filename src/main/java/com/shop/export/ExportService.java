@@ -0,0 +1,296 @@
+package com.shop.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.shop.archive.TransactionArchive;
+import com.shop.balance.BalanceWriteBehind;
+import com.shop.category.CategoryCatalog;
+import com.shop.dto.CustomerDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Full exports of a shop's transactions and customers as CSV or NDJSON, written row by row from a
+ * forward-only, read-only cursor straight to the caller's stream. Nothing but the current row is
+ * held, so memory use does not depend on the size of the shop; a slow client simply blocks the
+ * writes, and with them the reads.
+ * <p>
+ * MySQL Connector/J only streams when the fetch size is {@code Integer.MIN_VALUE}; other drivers
+ * get {@code export.fetch-size}. The export runs in a read-only transaction, so it goes to a replica
+ * when replicas are enabled. Customer balances include pending write-behind changes.
+ */
+@Service
+public class ExportService {
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    private static final String TRANSACTION_SELECT = "SELECT id, customer_id, customer_name, transaction_type, amount, " +
+            "description, date, due_date, status, payment_method, notes, created_at, updated_at";
+    private static final String TRANSACTIONS = TRANSACTION_SELECT + " FROM transactions WHERE user_email = ?";
+    private static final String ARCHIVED_TRANSACTIONS = TRANSACTION_SELECT + " FROM transactions_archive WHERE user_email = ?";
+    private static final String[] TRANSACTION_COLUMNS = {"id", "customerId", "customerName", "transactionType",
+            "amount", "description", "date", "dueDate", "status", "paymentMethod", "notes", "createdAt", "updatedAt"};
+
+    private static final String CUSTOMERS = "SELECT id, name, mobile, address, category_id, notes, total_due, credit_limit, " +
+            "last_transaction_date, is_active, created_at, version FROM customers WHERE user_email = ? ORDER BY created_at, id";
+    private static final String[] CUSTOMER_COLUMNS = {"id", "name", "mobile", "address", "category", "notes",
+            "totalDue", "creditLimit", "lastTransactionDate", "isActive", "createdAt"};
+
+    // Free-text columns a spreadsheet could take for a formula
+    private static final int[] TRANSACTION_TEXT = {2, 5, 10};
+    private static final int[] CUSTOMER_TEXT = {1, 3, 5};
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private CategoryCatalog categoryCatalog;
+
+    @Autowired
+    private BalanceWriteBehind balances;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionArchive archive;
+
+    @Value("${export.fetch-size:1000}")
+    private int fetchSize;
+
+    /**
+     * Writes the shop's transactions, oldest first; null dates leave that end open. A range reaching
+     * archived dates reads the archive in the same ordered query. Returns the row count.
+     */
+    public long exportTransactions(String userEmail, LocalDate startDate, LocalDate endDate, Format format,
+                                   OutputStream out) throws IOException {
+        StringBuilder sql = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        appendRange(sql, args, TRANSACTIONS, userEmail, startDate, endDate);
+        if (archive.covers(userEmail, startDate)) {
+            sql.append(" UNION ALL ");
+            appendRange(sql, args, ARCHIVED_TRANSACTIONS, userEmail, startDate, endDate);
+        }
+        sql.append(" ORDER BY date, created_at, id");
+
+        return export(sql.toString(), args, TRANSACTION_COLUMNS, TRANSACTION_TEXT, format, out, rs -> new Object[]{
+                rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getBigDecimal(5),
+                rs.getString(6), rs.getDate(7), rs.getDate(8), rs.getString(9), rs.getString(10), rs.getString(11),
+                rs.getTimestamp(12), rs.getTimestamp(13)});
+    }
+
+    private static void appendRange(StringBuilder sql, List<Object> args, String select, String userEmail,
+                                    LocalDate startDate, LocalDate endDate) {
+        sql.append(select);
+        args.add(userEmail);
+        if (startDate != null) {
+            sql.append(" AND date >= ?");
+            args.add(Date.valueOf(startDate));
+        }
+        if (endDate != null) {
+            sql.append(" AND date <= ?");
+            args.add(Date.valueOf(endDate));
+        }
+    }
+
+    public long exportCustomers(String userEmail, Format format, OutputStream out) throws IOException {
+        boolean merge = balances.hasPending(userEmail);
+        return export(CUSTOMERS, List.of(userEmail), CUSTOMER_COLUMNS, CUSTOMER_TEXT, format, out, rs -> {
+            BigDecimal totalDue = rs.getBigDecimal(7);
+            Date lastTransactionDate = rs.getDate(9);
+            if (merge) {
+                CustomerDto customer = new CustomerDto();
+                customer.setId(rs.getString(1));
+                customer.setTotalDue(totalDue);
+                customer.setLastTransactionDate(lastTransactionDate != null ? lastTransactionDate.toLocalDate() : null);
+                customer.setVersion(rs.getLong(12));
+                balances.merge(userEmail, customer);
+                totalDue = customer.getTotalDue();
+                lastTransactionDate = customer.getLastTransactionDate() != null
+                        ? Date.valueOf(customer.getLastTransactionDate()) : null;
+            }
+            int categoryId = rs.getInt(5);
+            String category = rs.wasNull() ? null : categoryCatalog.nameOf(categoryId);
+            return new Object[]{rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                    category, rs.getString(6), totalDue,
+                    rs.getBigDecimal(8), lastTransactionDate, rs.getBoolean(10), rs.getTimestamp(11)};
+        });
+    }
+
+    private long export(String sql, List<Object> args, String[] columns, int[] textColumns, Format format,
+                        OutputStream out, RowReader reader) throws IOException {
+        RowWriter writer = format == Format.NDJSON ? new NdjsonWriter(objectMapper, columns, out)
+                : new CsvWriter(columns, textColumns, out);
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        long[] rows = {0};
+        try {
+            template.execute(status -> {
+                jdbcTemplate.query(cursor(sql, args), rs -> {
+                    try {
+                        writer.write(reader.read(rs));
+                    } catch (IOException e) {
+                        // Usually the client went away; stops the cursor
+                        throw new UncheckedIOException(e);
+                    }
+                    rows[0]++;
+                });
+                return null;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.finish();
+        return rows[0];
+    }
+
+    private PreparedStatementCreator cursor(String sql, List<Object> args) {
+        return connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(isMySql(connection) ? Integer.MIN_VALUE : fetchSize);
+            for (int i = 0; i < args.size(); i++) {
+                statement.setObject(i + 1, args.get(i));
+            }
+            return statement;
+        };
+    }
+
+    private static boolean isMySql(Connection connection) throws SQLException {
+        return "MySQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName());
+    }
+
+    @FunctionalInterface
+    private interface RowReader {
+        Object[] read(ResultSet rs) throws SQLException;
+    }
+
+    private interface RowWriter {
+        void write(Object[] values) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private static String text(Object value) {
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        }
+        if (value instanceof Date) {
+            return ((Date) value).toLocalDate().toString();
+        }
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime().toString();
+        }
+        return value.toString();
+    }
+
+    private static final class CsvWriter implements RowWriter {
+        private final Writer out;
+        private final boolean[] text;
+
+        CsvWriter(String[] columns, int[] textColumns, OutputStream stream) throws IOException {
+            this.out = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+            this.text = new boolean[columns.length];
+            for (int column : textColumns) {
+                text[column] = true;
+            }
+            out.write(String.join(",", columns));
+            out.write("\r\n");
+        }
+
+        @Override
+        public void write(Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                if (values[i] != null) {
+                    out.write(escape(text(values[i]), text[i]));
+                }
+            }
+            out.write("\r\n");
+        }
+
+        // RFC 4180 quoting; free text that starts like a formula gets a leading apostrophe
+        private static String escape(String value, boolean text) {
+            if (text && !value.isEmpty() && "=+-@\t\r".indexOf(value.charAt(0)) >= 0) {
+                value = "'" + value;
+            }
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                return "\"" + value.replace("\"", "\"\"") + "\"";
+            }
+            return value;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            out.flush();
+        }
+    }
+
+    private static final class NdjsonWriter implements RowWriter {
+        private final String[] columns;
+        private final OutputStream stream;
+        private final SequenceWriter out;
+        private boolean empty = true;
+
+        NdjsonWriter(ObjectMapper objectMapper, String[] columns, OutputStream stream) throws IOException {
+            this.columns = columns;
+            this.stream = stream;
+            // Left to the response buffer: flushing every row would send a packet per row
+            this.out = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                    .withRootValueSeparator("\n").writeValues(stream);
+        }
+
+        @Override
+        public void write(Object[] values) throws IOException {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int i = 0; i < columns.length; i++) {
+                Object value = values[i];
+                row.put(columns[i], value instanceof Date || value instanceof Timestamp ? text(value) : value);
+            }
+            out.write(row);
+            empty = false;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            // Flushed but not closed, which would close the response stream
+            out.flush();
+            if (!empty) {
+                stream.write('\n');
+            }
+            stream.flush();
+        }
+    }
+}
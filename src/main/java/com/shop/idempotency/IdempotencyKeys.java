@@ -0,0 +1,317 @@
+package com.shop.idempotency;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.datasource.ShardRoutingDataSource;
+import com.shop.datasource.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Makes a POST safe to retry: a request carrying an {@code Idempotency-Key} header runs once per shop,
+ * endpoint and key, and every retry gets the first response back (with {@code Idempotent-Replayed: true})
+ * instead of creating a second transaction or payment.
+ * <p>
+ * Finished keys are looked up in a bounded in-memory LRU first and in {@code idempotency_keys} second,
+ * so a retry that lands on another instance is caught too. A key is claimed by inserting its row before
+ * the request runs; the primary key makes two concurrent requests with the same key race for the insert,
+ * and the loser gets {@code 409} while the winner is still running. Only successful responses are kept:
+ * a failed request gives up its key, so it can be retried with the same one. A key reused with a different
+ * body gets {@code 422}.
+ * <p>
+ * If the instance dies while a request runs, its key stays claimed and retries get {@code 409} until the
+ * key expires: nobody can tell whether the request committed, and a duplicate is the worse outcome.
+ * Keys expire {@code idempotency.ttl-hours} after they were last written, removed by a scheduled range
+ * delete on the {@code updated_at} index, {@code idempotency.purge-chunk-size} rows per statement.
+ */
+@Component
+public class IdempotencyKeys {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyKeys.class);
+
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final int IN_PROGRESS = 0;
+
+    private static final String SELECT = "SELECT request_hash, status, response_body, updated_at FROM idempotency_keys WHERE id = ?";
+    private static final String RESERVE = "INSERT INTO idempotency_keys (id, user_email, request_hash, status, updated_at) " +
+            "VALUES (?, ?, ?, 0, ?)";
+    private static final String COMPLETE = "UPDATE idempotency_keys SET status = ?, response_body = ?, updated_at = ? WHERE id = ?";
+    private static final String RELEASE = "DELETE FROM idempotency_keys WHERE id = ? AND status = 0";
+    private static final String PURGE = "DELETE FROM idempotency_keys WHERE updated_at < ? LIMIT ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ObjectProvider<ShardRoutingDataSource> shardRouting;
+
+    @Value("${idempotency.ttl-hours:24}")
+    private long ttlHours;
+
+    @Value("${idempotency.purge-chunk-size:5000}")
+    private int purgeChunkSize;
+
+    private final Map<String, Stored> cache;
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong cacheReplays = new AtomicLong();
+    private final AtomicLong tableReplays = new AtomicLong();
+    private final AtomicLong inProgressConflicts = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private final AtomicLong purged = new AtomicLong();
+    private volatile long lastPurgeMs;
+
+    public IdempotencyKeys(@Value("${idempotency.cache-size:10000}") int cacheSize) {
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Stored> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    private static final class Stored {
+        final String requestHash;
+        final int status;
+        final String body;
+        final LocalDateTime updatedAt;
+
+        Stored(String requestHash, int status, String body, LocalDateTime updatedAt) {
+            this.requestHash = requestHash;
+            this.status = status;
+            this.body = body;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    /**
+     * Runs {@code work} unless this shop already sent {@code key} to {@code scope}, in which case the
+     * stored response is returned. Without a key the work just runs. {@code request} is the parsed body,
+     * compared with the first request's.
+     */
+    public ResponseEntity<?> execute(String tenant, String scope, String key, Object request,
+                                     Supplier<ResponseEntity<?>> work) {
+        if (key == null || key.isBlank()) {
+            return work.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            return error(HttpStatus.BAD_REQUEST, HEADER + " must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+        String id = sha256(tenant + "\n" + scope + "\n" + key);
+        String requestHash = sha256(toJson(request));
+
+        Stored stored = cached(id);
+        if (stored != null) {
+            cacheReplays.incrementAndGet();
+            return replay(stored, requestHash);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            inTransaction(tenant, () -> jdbcTemplate.update(RESERVE, id, tenant, requestHash, Timestamp.valueOf(now)));
+        } catch (DuplicateKeyException e) {
+            stored = inTransaction(tenant, () -> load(id));
+            if (stored == null) {
+                // Given up by a failed request, or expired, just now; the client's next retry claims it
+                inProgressConflicts.incrementAndGet();
+                return error(HttpStatus.CONFLICT, "A request with this " + HEADER + " is still in progress");
+            }
+            if (stored.status == IN_PROGRESS) {
+                if (!stored.requestHash.equals(requestHash)) {
+                    mismatches.incrementAndGet();
+                    return error(HttpStatus.UNPROCESSABLE_ENTITY, HEADER + " was already used for a different request");
+                }
+                inProgressConflicts.incrementAndGet();
+                return error(HttpStatus.CONFLICT, "A request with this " + HEADER + " is still in progress");
+            }
+            remember(id, stored);
+            tableReplays.incrementAndGet();
+            return replay(stored, requestHash);
+        }
+
+        ResponseEntity<?> response;
+        try {
+            response = work.get();
+        } catch (RuntimeException | Error e) {
+            release(tenant, id);
+            throw e;
+        }
+        executed.incrementAndGet();
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            release(tenant, id);
+            return response;
+        }
+        Stored result = new Stored(requestHash, response.getStatusCode().value(),
+                response.getBody() != null ? toJson(response.getBody()) : null, LocalDateTime.now());
+        try {
+            inTransaction(tenant, () -> jdbcTemplate.update(COMPLETE, result.status, result.body,
+                    Timestamp.valueOf(result.updatedAt), id));
+            remember(id, result);
+        } catch (DataAccessException e) {
+            // The work is done; retries get 409 until the key expires rather than running it again
+            log.warn("Could not store the response for an idempotency key of {}", tenant, e);
+        }
+        return response;
+    }
+
+    private ResponseEntity<?> replay(Stored stored, String requestHash) {
+        if (!stored.requestHash.equals(requestHash)) {
+            mismatches.incrementAndGet();
+            return error(HttpStatus.UNPROCESSABLE_ENTITY, HEADER + " was already used for a different request");
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(stored.status).header(REPLAYED_HEADER, "true");
+        if (stored.body == null) {
+            return builder.build();
+        }
+        return builder.contentType(MediaType.APPLICATION_JSON).body(stored.body);
+    }
+
+    private void release(String tenant, String id) {
+        try {
+            inTransaction(tenant, () -> jdbcTemplate.update(RELEASE, id));
+            released.incrementAndGet();
+        } catch (DataAccessException e) {
+            log.warn("Could not release an idempotency key of {}; it stays claimed until it expires", tenant, e);
+        }
+    }
+
+    private Stored load(String id) {
+        List<Stored> rows = jdbcTemplate.query(SELECT, (rs, i) -> new Stored(rs.getString(1), rs.getInt(2),
+                rs.getString(3), rs.getTimestamp(4).toLocalDateTime()), id);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private Stored cached(String id) {
+        synchronized (cache) {
+            Stored stored = cache.get(id);
+            if (stored != null && stored.updatedAt.isBefore(LocalDateTime.now().minusHours(ttlHours))) {
+                cache.remove(id);
+                return null;
+            }
+            return stored;
+        }
+    }
+
+    private void remember(String id, Stored stored) {
+        synchronized (cache) {
+            cache.put(id, stored);
+        }
+    }
+
+    // Commits on its own, before and after the work, whatever the caller's transaction does
+    private <T> T inTransaction(String tenant, Supplier<T> action) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return TenantContext.callAsTenant(tenant, () -> template.execute(status -> action.get()));
+    }
+
+    // Expiry
+
+    @Scheduled(fixedDelayString = "${idempotency.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        long start = System.currentTimeMillis();
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusHours(ttlHours));
+        ShardRoutingDataSource routing = shardRouting.getIfAvailable();
+        int shards = routing != null ? routing.getDirectory().getShardCount() : 1;
+        for (int shard = 0; shard < shards; shard++) {
+            long removed = routing != null ? TenantContext.callOnShard(shard, () -> purge(cutoff)) : purge(cutoff);
+            if (removed > 0) {
+                log.debug("Purged {} expired idempotency keys from shard {}", removed, shard);
+            }
+        }
+        lastPurgeMs = System.currentTimeMillis() - start;
+    }
+
+    // Oldest first along the index, a chunk per statement and transaction, so no purge holds many locks
+    private long purge(Timestamp cutoff) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        long removed = 0;
+        while (true) {
+            Integer rows = template.execute(status -> jdbcTemplate.update(PURGE, cutoff, purgeChunkSize));
+            if (rows == null || rows == 0) {
+                return removed;
+            }
+            removed += rows;
+            purged.addAndGet(rows);
+            if (rows < purgeChunkSize) {
+                return removed;
+            }
+        }
+    }
+
+    private static ResponseEntity<Map<String, String>> error(HttpStatus status, String message) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", message);
+        return ResponseEntity.status(status).body(error);
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (cache) {
+            stats.put("cached", cache.size());
+        }
+        stats.put("ttlHours", ttlHours);
+        stats.put("executed", executed.get());
+        stats.put("cacheReplays", cacheReplays.get());
+        stats.put("tableReplays", tableReplays.get());
+        stats.put("inProgressConflicts", inProgressConflicts.get());
+        stats.put("mismatches", mismatches.get());
+        stats.put("released", released.get());
+        stats.put("purged", purged.get());
+        stats.put("lastPurgeMs", lastPurgeMs);
+        return stats;
+    }
+}
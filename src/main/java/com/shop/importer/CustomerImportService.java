@@ -0,0 +1,464 @@
+package com.shop.importer;
+
+import com.shop.category.CategoryCatalog;
+import com.shop.dto.CustomerImportResultDto;
+import com.shop.dto.CustomerImportResultDto.RowError;
+import com.shop.entity.Customer;
+import com.shop.entity.User;
+import com.shop.repository.UserRepository;
+import com.shop.service.EntityChanges;
+import com.shop.workingset.TenantWorkingSetManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Loads a shop's customers from a CSV file. The file is read one record at a time and valid rows
+ * are inserted {@code import.batch-size} at a time, each batch in a transaction of its own with its
+ * ledger openings, category counters and audit events, so memory holds one batch whatever the size
+ * of the file.
+ * <p>
+ * Mobile numbers are normalized (separators dropped, a leading {@code +} kept) and checked against
+ * the shop's existing numbers, loaded once into a set, and against the rows before them in the file;
+ * no query is made per row. A customer created through the API while an import runs is not seen by
+ * it. Rows that fail are listed in the result, up to {@code import.max-errors} of them, and the rest
+ * of the file is still imported. A batch that cannot be written, or a file that stops being CSV,
+ * ends the import; batches before it stay committed.
+ * <p>
+ * The header names the columns, in any order and case: {@code name} and {@code mobile} are required;
+ * {@code address}, {@code category}, {@code notes}, {@code totalDue}, {@code creditLimit},
+ * {@code isActive} and {@code lastTransactionDate} are optional, and other columns are ignored, so a
+ * customer export can be imported as it is.
+ */
+@Service
+public class CustomerImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerImportService.class);
+
+    private static final String INSERT = "INSERT INTO customers (id, user_email, name, mobile, address, category_id, notes, " +
+            "total_due, credit_limit, is_active, last_transaction_date, created_at, updated_at, version) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    // Largest value a DECIMAL(10,2) column holds
+    private static final BigDecimal MAX_AMOUNT = new BigDecimal("99999999.99");
+
+    private static final int MAX_RECORD_CHARS = 64 * 1024;
+
+    private static final String NAME = "name";
+    private static final String MOBILE = "mobile";
+    private static final String ADDRESS = "address";
+    private static final String CATEGORY = "category";
+    private static final String NOTES = "notes";
+    private static final String TOTAL_DUE = "totaldue";
+    private static final String CREDIT_LIMIT = "creditlimit";
+    private static final String IS_ACTIVE = "isactive";
+    private static final String LAST_TRANSACTION_DATE = "lasttransactiondate";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CategoryCatalog categoryCatalog;
+
+    @Autowired
+    private TenantWorkingSetManager workingSets;
+
+    @Autowired
+    private EntityChanges changes;
+
+    @Value("${import.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${import.max-errors:1000}")
+    private int maxErrors;
+
+    /**
+     * Imports the CSV in {@code in} (UTF-8) into the shop. Throws IllegalArgumentException when the
+     * header lacks the required columns; everything else is reported in the result.
+     */
+    public CustomerImportResultDto importCustomers(String userEmail, InputStream in) throws IOException {
+        User user = userRepository.findActiveUserByEmail(userEmail)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+
+        CsvReader reader = new CsvReader(in);
+        Map<String, Integer> columns = readHeader(reader);
+
+        Set<String> existing = existingMobiles(userEmail);
+        Set<String> inFile = new HashSet<>();
+        CustomerImportResultDto result = new CustomerImportResultDto();
+        List<Customer> batch = new ArrayList<>(batchSize);
+        long firstRowOfBatch = 0;
+        long lastRowOfBatch = 0;
+        try {
+            while (true) {
+                List<String> record;
+                try {
+                    record = reader.next();
+                } catch (IllegalArgumentException e) {
+                    reject(result, reader.recordLine(), null, e.getMessage() + "; import stopped");
+                    result.setCompleted(false);
+                    break;
+                }
+                if (record == null) {
+                    break;
+                }
+                if (record.size() == 1 && record.get(0).trim().isEmpty()) {
+                    continue;
+                }
+                long row = reader.recordLine();
+                result.setRows(result.getRows() + 1);
+
+                String mobile = normalizeMobile(field(record, columns, MOBILE));
+                try {
+                    Customer customer = toCustomer(user, record, columns, mobile);
+                    if (existing.contains(mobile)) {
+                        throw new IllegalArgumentException("Customer with mobile number " + mobile + " already exists in your shop");
+                    }
+                    if (!inFile.add(mobile)) {
+                        throw new IllegalArgumentException("Mobile number " + mobile + " appears earlier in the file");
+                    }
+                    if (batch.isEmpty()) {
+                        firstRowOfBatch = row;
+                    }
+                    batch.add(customer);
+                    lastRowOfBatch = row;
+                } catch (IllegalArgumentException e) {
+                    reject(result, row, mobile != null ? mobile : field(record, columns, MOBILE), e.getMessage());
+                    continue;
+                }
+
+                if (batch.size() >= batchSize && !flush(userEmail, batch, firstRowOfBatch, lastRowOfBatch, result)) {
+                    break;
+                }
+            }
+            if (!batch.isEmpty()) {
+                flush(userEmail, batch, firstRowOfBatch, lastRowOfBatch, result);
+            }
+        } finally {
+            if (result.getImported() > 0) {
+                // Cheaper to reload a shop's working set than to apply thousands of rows to it
+                workingSets.invalidate(userEmail);
+            }
+        }
+        return result;
+    }
+
+    private boolean flush(String userEmail, List<Customer> batch, long firstRow, long lastRow,
+                          CustomerImportResultDto result) {
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> insert(userEmail, batch));
+            result.setImported(result.getImported() + batch.size());
+            return true;
+        } catch (DataAccessException e) {
+            log.warn("Customer import for {} stopped at rows {}-{}: {}", userEmail, firstRow, lastRow, e.getMessage());
+            result.setRejected(result.getRejected() + batch.size());
+            addError(result, new RowError(firstRow, null, "Rows " + firstRow + "-" + lastRow +
+                    " could not be saved; import stopped"));
+            result.setCompleted(false);
+            return false;
+        } finally {
+            batch.clear();
+        }
+    }
+
+    private void insert(String userEmail, List<Customer> batch) {
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        for (Customer c : batch) {
+            rows.add(new Object[]{c.getId(), userEmail, c.getName(), c.getMobile(), c.getAddress(), c.getCategoryId(),
+                    c.getNotes(), c.getTotalDue(), c.getCreditLimit(), c.getIsActive(), Date.valueOf(c.getLastTransactionDate()),
+                    Timestamp.valueOf(c.getCreatedAt()), Timestamp.valueOf(c.getUpdatedAt())});
+        }
+        jdbcTemplate.batchUpdate(INSERT, rows);
+        changes.customersImported(userEmail, batch);
+    }
+
+    // The same rules as CustomerService.createCustomer and CustomerDto
+    private Customer toCustomer(User user, List<String> record, Map<String, Integer> columns, String mobile) {
+        String name = text(field(record, columns, NAME));
+        if (name == null) {
+            throw new IllegalArgumentException("Customer name is required");
+        }
+        if (name.length() < 2 || name.length() > 100) {
+            throw new IllegalArgumentException("Name must be between 2 and 100 characters");
+        }
+        if (field(record, columns, MOBILE) == null) {
+            throw new IllegalArgumentException("Customer mobile number is required");
+        }
+        if (mobile == null) {
+            throw new IllegalArgumentException("Mobile number must be between 10 and 15 digits");
+        }
+
+        Customer customer = new Customer();
+        customer.setId(UUID.randomUUID().toString());
+        customer.setUser(user);
+        customer.setName(name);
+        customer.setMobile(mobile);
+        customer.setAddress(text(field(record, columns, ADDRESS)));
+        customer.setCategoryId(categoryCatalog.idFor(text(field(record, columns, CATEGORY))));
+        customer.setNotes(text(field(record, columns, NOTES)));
+        BigDecimal totalDue = amount(field(record, columns, TOTAL_DUE), "totalDue");
+        customer.setTotalDue(totalDue != null ? totalDue : BigDecimal.ZERO);
+        BigDecimal creditLimit = amount(field(record, columns, CREDIT_LIMIT), "creditLimit");
+        if (creditLimit != null && creditLimit.signum() < 0) {
+            throw new IllegalArgumentException("creditLimit must not be negative");
+        }
+        customer.setCreditLimit(creditLimit);
+        customer.setIsActive(bool(field(record, columns, IS_ACTIVE), "isActive"));
+        customer.setLastTransactionDate(date(field(record, columns, LAST_TRANSACTION_DATE), "lastTransactionDate"));
+        LocalDateTime now = LocalDateTime.now();
+        customer.setCreatedAt(now);
+        customer.setUpdatedAt(now);
+        customer.setVersion(0L);
+        return customer;
+    }
+
+    private Map<String, Integer> readHeader(CsvReader reader) throws IOException {
+        List<String> header = reader.next();
+        Map<String, Integer> columns = new HashMap<>();
+        if (header != null) {
+            for (int i = 0; i < header.size(); i++) {
+                String key = canonical(header.get(i));
+                if (key != null) {
+                    columns.putIfAbsent(key, i);
+                }
+            }
+        }
+        if (!columns.containsKey(NAME) || !columns.containsKey(MOBILE)) {
+            throw new IllegalArgumentException("The first line must be a header with name and mobile columns");
+        }
+        return columns;
+    }
+
+    private static String canonical(String header) {
+        String key = header.replaceAll("[^A-Za-z]", "").toLowerCase();
+        switch (key) {
+            case "phone":
+            case "mobilenumber":
+                return MOBILE;
+            case "active":
+                return IS_ACTIVE;
+            case NAME:
+            case MOBILE:
+            case ADDRESS:
+            case CATEGORY:
+            case NOTES:
+            case TOTAL_DUE:
+            case CREDIT_LIMIT:
+            case IS_ACTIVE:
+            case LAST_TRANSACTION_DATE:
+                return key;
+            default:
+                return null;
+        }
+    }
+
+    private Set<String> existingMobiles(String userEmail) {
+        Set<String> mobiles = new HashSet<>();
+        jdbcTemplate.query("SELECT mobile FROM customers WHERE user_email = ?", rs -> {
+            String mobile = rs.getString(1);
+            if (mobile != null) {
+                String normalized = normalizeMobile(mobile);
+                mobiles.add(normalized != null ? normalized : mobile.trim());
+            }
+        }, userEmail);
+        return mobiles;
+    }
+
+    /** Digits only, keeping a leading +; null if it is not 10 to 15 digits or has other characters. */
+    private static String normalizeMobile(String mobile) {
+        if (mobile == null) {
+            return null;
+        }
+        StringBuilder normalized = new StringBuilder(16);
+        int digits = 0;
+        for (int i = 0; i < mobile.length(); i++) {
+            char c = mobile.charAt(i);
+            if (c >= '0' && c <= '9') {
+                normalized.append(c);
+                digits++;
+            } else if (c == '+' && normalized.length() == 0) {
+                normalized.append(c);
+            } else if (" -().\t'".indexOf(c) < 0) {
+                return null;
+            }
+        }
+        // The column holds 15 characters, the + included
+        if (digits < 10 || normalized.length() > 15) {
+            return null;
+        }
+        return normalized.toString();
+    }
+
+    private void reject(CustomerImportResultDto result, long row, String mobile, String error) {
+        result.setRejected(result.getRejected() + 1);
+        addError(result, new RowError(row, mobile, error));
+    }
+
+    private void addError(CustomerImportResultDto result, RowError error) {
+        if (result.getErrors().size() < maxErrors) {
+            result.getErrors().add(error);
+        } else {
+            result.setErrorsOmitted(result.getErrorsOmitted() + 1);
+        }
+    }
+
+    private static String field(List<String> record, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= record.size()) {
+            return null;
+        }
+        String value = record.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    // Undoes the apostrophe the export puts before text that looks like a formula
+    private static String text(String value) {
+        if (value != null && value.length() > 1 && value.charAt(0) == '\'' && "=+-@\t\r".indexOf(value.charAt(1)) >= 0) {
+            return value.substring(1);
+        }
+        return value;
+    }
+
+    private static BigDecimal amount(String value, String column) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            BigDecimal amount = new BigDecimal(value).setScale(2, RoundingMode.UNNECESSARY);
+            if (amount.abs().compareTo(MAX_AMOUNT) > 0) {
+                throw new IllegalArgumentException(column + " is too large");
+            }
+            return amount;
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException(column + " must be an amount with at most 2 decimals");
+        }
+    }
+
+    private static Boolean bool(String value, String column) {
+        if (value == null || "true".equalsIgnoreCase(value)) {
+            return true;
+        }
+        if ("false".equalsIgnoreCase(value)) {
+            return false;
+        }
+        throw new IllegalArgumentException(column + " must be true or false");
+    }
+
+    // Defaults to today, as a customer created through the API does
+    private static LocalDate date(String value, String column) {
+        if (value == null) {
+            return LocalDate.now();
+        }
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(column + " must be a date like 2024-01-31");
+        }
+    }
+
+    // RFC 4180 records, read a character at a time; quoted fields may hold commas, quotes and line breaks
+    private static final class CsvReader {
+        private final PushbackReader in;
+        private long line = 1;
+        private long recordLine;
+
+        CsvReader(InputStream stream) throws IOException {
+            this.in = new PushbackReader(new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8), 65536));
+            int first = in.read();
+            if (first != -1 && first != '\uFEFF') {
+                in.unread(first);
+            }
+        }
+
+        // Line the last record returned started on
+        long recordLine() {
+            return recordLine;
+        }
+
+        List<String> next() throws IOException {
+            int c = in.read();
+            if (c == -1) {
+                return null;
+            }
+            recordLine = line;
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            int chars = 0;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        throw new IllegalArgumentException("Quoted field is never closed");
+                    }
+                    if (c == '"') {
+                        int next = in.read();
+                        if (next != '"') {
+                            quoted = false;
+                            c = next;
+                            continue;
+                        }
+                    } else if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\r' || c == '\n' || c == -1) {
+                    if (c == '\r') {
+                        int next = in.read();
+                        if (next != '\n' && next != -1) {
+                            in.unread(next);
+                        }
+                    }
+                    if (c != -1) {
+                        line++;
+                    }
+                    fields.add(field.toString());
+                    return fields;
+                } else {
+                    field.append((char) c);
+                }
+                if (++chars > MAX_RECORD_CHARS) {
+                    throw new IllegalArgumentException("Record is longer than " + MAX_RECORD_CHARS + " characters");
+                }
+                c = in.read();
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.shop.ledger;
+
+import com.shop.audit.AuditSnapshots;
+import com.shop.datasource.ShardRoutingDataSource;
+import com.shop.datasource.TenantContext;
+import com.shop.entity.Customer;
+import com.shop.entity.ReconciliationDrift;
+import com.shop.entity.ReconciliationRun;
+import com.shop.repository.CustomerRepository;
+import com.shop.repository.ReconciliationDriftRepository;
+import com.shop.repository.ReconciliationRunRepository;
+import com.shop.service.CustomerLockManager;
+import com.shop.service.EntityChanges;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks every customer's total due against its ledger ({@link CustomerLedger}): the starting
+ * snapshot plus every booked entry should equal {@code total_due} plus unflushed write-behind
+ * changes. Direct total-due edits are booked too, so any difference is real drift. In repair mode a
+ * drifted customer is set back to what its ledger says.
+ * <p>
+ * Tenants are read in email order, {@code reconciliation.chunk-size} at a time, and each chunk is
+ * spread over a fork-join pool of {@code reconciliation.parallelism} workers. A worker holds at most
+ * one connection, so that is also the most connections the job takes from the pool. Each tenant is
+ * one streamed query on its shard. After each chunk the run saves its tenant cursor, so a stopped or
+ * crashed run can carry on where it left off.
+ */
+@Component
+public class BalanceReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(BalanceReconciler.class);
+
+    // One consistent read per tenant: ledger and balance are written in the same transaction
+    private static final String SCAN = "SELECT c.id, COALESCE(c.total_due, 0) AS total_due, s.balance AS opening, "
+            + "(SELECT COALESCE(SUM(e.delta), 0) FROM customer_ledger e WHERE e.customer_id = c.id) AS booked, "
+            + "(SELECT COALESCE(SUM(j.delta), 0) FROM balance_journal j WHERE j.customer_id = c.id) AS pending "
+            + "FROM customers c LEFT JOIN customer_balance_snapshots s ON s.customer_id = c.id AND s.seq = 0 "
+            + "WHERE c.user_email = ?";
+
+    @Value("${reconciliation.enabled:false}")
+    private boolean enabled;
+
+    @Value("${reconciliation.repair:false}")
+    private boolean repairByDefault;
+
+    @Value("${reconciliation.parallelism:4}")
+    private int parallelism;
+
+    @Value("${reconciliation.chunk-size:100}")
+    private int chunkSize;
+
+    @Value("${reconciliation.stale-after-ms:600000}")
+    private long staleAfterMs;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ObjectProvider<ShardRoutingDataSource> shardRouting;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ReconciliationRunRepository runRepository;
+
+    @Autowired
+    private ReconciliationDriftRepository driftRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private CustomerLockManager customerLocks;
+
+    @Autowired
+    private EntityChanges changes;
+
+    private JdbcTemplate jdbcTemplate;
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(r -> new Thread(r, "reconciliation"));
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean stopRequested;
+
+    @PostConstruct
+    void init() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(500);
+    }
+
+    @Scheduled(cron = "${reconciliation.cron:0 0 2 * * *}")
+    public void nightly() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            start(repairByDefault, true);
+        } catch (IllegalStateException e) {
+            log.info("Skipping scheduled reconciliation: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Starts a run in the background. With {@code resume}, an unfinished earlier run carries on
+     * from its cursor in its own mode; otherwise a new run starts from the first tenant.
+     */
+    public ReconciliationRun start(boolean repair, boolean resume) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A reconciliation run is already in progress");
+        }
+        try {
+            ReconciliationRun latest = runRepository.findTopByOrderByIdDesc().orElse(null);
+            if (latest != null && ReconciliationRun.RUNNING.equals(latest.getStatus()) && latest.getHeartbeatAt() != null
+                    && latest.getHeartbeatAt().isAfter(LocalDateTime.now().minusNanos(staleAfterMs * 1_000_000))) {
+                throw new IllegalStateException("Run " + latest.getId() + " is in progress on another instance");
+            }
+            ReconciliationRun run;
+            if (resume && latest != null && !ReconciliationRun.COMPLETED.equals(latest.getStatus())) {
+                run = latest;
+                run.setFinishedAt(null);
+                run.setLastError(null);
+            } else {
+                run = new ReconciliationRun(repair);
+            }
+            run.setStatus(ReconciliationRun.RUNNING);
+            run.setHeartbeatAt(LocalDateTime.now());
+            ReconciliationRun saved = runRepository.save(run);
+            stopRequested = false;
+            coordinator.execute(() -> execute(saved));
+            return saved;
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    /** Asks the current run to stop after its current chunk; it can be resumed later. */
+    public boolean stop() {
+        stopRequested = true;
+        return running.get();
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private void execute(ReconciliationRun run) {
+        log.info("Reconciliation run {} ({}) starting after tenant {}", run.getId(), run.isRepair() ? "repair" : "report",
+                run.getCursorTenant());
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<String> chunk;
+            while (!stopRequested && !(chunk = nextTenants(run.getCursorTenant())).isEmpty()) {
+                List<Callable<TenantResult>> tasks = new ArrayList<>(chunk.size());
+                for (String tenant : chunk) {
+                    tasks.add(() -> reconcileTenant(run.getId(), tenant, run.isRepair()));
+                }
+                for (Future<TenantResult> result : pool.invokeAll(tasks)) {
+                    collect(run, result.get());
+                }
+                run.setCursorTenant(chunk.get(chunk.size() - 1));
+                run.setHeartbeatAt(LocalDateTime.now());
+                runRepository.save(run);
+            }
+            run.setStatus(stopRequested ? ReconciliationRun.INTERRUPTED : ReconciliationRun.COMPLETED);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            run.setStatus(ReconciliationRun.INTERRUPTED);
+        } catch (ExecutionException | RuntimeException e) {
+            log.error("Reconciliation run {} failed after tenant {}", run.getId(), run.getCursorTenant(), e);
+            run.setStatus(ReconciliationRun.FAILED);
+            run.setLastError(truncate(String.valueOf(e.getMessage())));
+        } finally {
+            pool.shutdown();
+            run.setFinishedAt(LocalDateTime.now());
+            try {
+                runRepository.save(run);
+            } catch (RuntimeException e) {
+                log.error("Could not save the state of reconciliation run {}", run.getId(), e);
+            }
+            running.set(false);
+            log.info("Reconciliation run {} {}: {} tenants, {} customers, {} drifted, {} repaired", run.getId(),
+                    run.getStatus(), run.getTenantsChecked(), run.getCustomersChecked(), run.getDrifted(), run.getRepaired());
+        }
+    }
+
+    // The next chunk of tenant emails after the cursor, merged across shards
+    private List<String> nextTenants(String cursor) {
+        String after = cursor != null ? cursor : "";
+        String sql = "SELECT email FROM users WHERE email > ? ORDER BY email LIMIT " + chunkSize;
+        TreeSet<String> merged = new TreeSet<>();
+        ShardRoutingDataSource routing = shardRouting.getIfAvailable();
+        if (routing == null) {
+            merged.addAll(jdbcTemplate.queryForList(sql, String.class, after));
+        } else {
+            for (int shard = 0; shard < routing.getDirectory().getShardCount(); shard++) {
+                merged.addAll(TenantContext.callOnShard(shard, () -> jdbcTemplate.queryForList(sql, String.class, after)));
+            }
+        }
+        List<String> chunk = new ArrayList<>(chunkSize);
+        for (String tenant : merged) {
+            if (chunk.size() == chunkSize) {
+                break;
+            }
+            chunk.add(tenant);
+        }
+        return chunk;
+    }
+
+    private TenantResult reconcileTenant(Long runId, String tenant, boolean repair) {
+        TenantResult result = new TenantResult();
+        try {
+            TenantContext.runAsTenant(tenant, () -> jdbcTemplate.query(SCAN, rs -> {
+                result.customers++;
+                BigDecimal opening = rs.getBigDecimal("opening");
+                if (opening == null) {
+                    result.untracked++;
+                    return;
+                }
+                BigDecimal expected = opening.add(rs.getBigDecimal("booked"));
+                BigDecimal recorded = rs.getBigDecimal("total_due").add(rs.getBigDecimal("pending"));
+                if (expected.compareTo(recorded) != 0) {
+                    result.drifts.add(new ReconciliationDrift(runId, tenant, rs.getString("id"), recorded, expected));
+                }
+            }, tenant));
+            if (repair) {
+                for (ReconciliationDrift drift : result.drifts) {
+                    drift.setRepaired(repairCustomer(tenant, drift.getCustomerId()));
+                }
+            }
+        } catch (RuntimeException e) {
+            result.error = e;
+        }
+        return result;
+    }
+
+    // Under the customer's lock no balance change or write-behind flush can interleave, so the
+    // balance is recomputed there before it is overwritten
+    private boolean repairCustomer(String tenant, String customerId) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        return customerLocks.withCustomerLock(customerId, () -> TenantContext.callAsTenant(tenant,
+                () -> template.execute(status -> {
+                    List<Map<String, Object>> rows = jdbcTemplate.queryForList(SCAN + " AND c.id = ?", tenant, customerId);
+                    // Drift usually means the row was changed behind the application's back, cached copies included
+                    entityManagerFactory.getCache().evict(Customer.class, customerId);
+                    Customer customer = customerRepository.findByIdAndUserEmail(customerId, tenant).orElse(null);
+                    if (rows.isEmpty() || customer == null || rows.get(0).get("opening") == null) {
+                        return false;
+                    }
+                    Map<String, Object> row = rows.get(0);
+                    BigDecimal expected = ((BigDecimal) row.get("opening")).add((BigDecimal) row.get("booked"));
+                    BigDecimal target = expected.subtract((BigDecimal) row.get("pending"));
+                    if (target.compareTo((BigDecimal) row.get("total_due")) == 0) {
+                        return false;
+                    }
+                    Map<String, Object> before = AuditSnapshots.of(customer);
+                    BigDecimal delta = target.subtract((BigDecimal) row.get("total_due"));
+                    customer.setTotalDue(target);
+                    Customer saved = customerRepository.saveAndFlush(customer);
+                    changes.balanceRepaired(tenant, saved, before, delta);
+                    return true;
+                })));
+    }
+
+    private void collect(ReconciliationRun run, TenantResult result) {
+        run.setTenantsChecked(run.getTenantsChecked() + 1);
+        run.setCustomersChecked(run.getCustomersChecked() + result.customers);
+        run.setUntrackedCustomers(run.getUntrackedCustomers() + result.untracked);
+        run.setDrifted(run.getDrifted() + result.drifts.size());
+        run.setRepaired(run.getRepaired() + result.drifts.stream().filter(ReconciliationDrift::isRepaired).count());
+        if (result.error != null) {
+            run.setFailedTenants(run.getFailedTenants() + 1);
+            run.setLastError(truncate(result.error.getMessage()));
+            log.warn("Reconciliation run {} could not check a tenant", run.getId(), result.error);
+        }
+        if (!result.drifts.isEmpty()) {
+            driftRepository.saveAll(result.drifts);
+        }
+    }
+
+    private static String truncate(String message) {
+        return message != null && message.length() > 500 ? message.substring(0, 500) : message;
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        stopRequested = true;
+        coordinator.shutdown();
+        coordinator.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    private static final class TenantResult {
+        long customers;
+        long untracked;
+        final List<ReconciliationDrift> drifts = new ArrayList<>();
+        RuntimeException error;
+    }
+}
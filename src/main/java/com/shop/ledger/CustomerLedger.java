@@ -0,0 +1,211 @@
+package com.shop.ledger;
+
+import com.shop.dto.BalanceAsOfDto;
+import com.shop.entity.BalanceSnapshot;
+import com.shop.entity.Customer;
+import com.shop.entity.LedgerEntry;
+import com.shop.repository.BalanceJournalRepository;
+import com.shop.repository.BalanceSnapshotRepository;
+import com.shop.repository.CustomerRepository;
+import com.shop.repository.LedgerEntryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Append-only history of every customer's balance. Each change to a total due is booked as a
+ * {@link LedgerEntry} in the transaction that makes it, and every {@code ledger.snapshot-every}
+ * entries, as well as at the first change of a new month, the running balance is saved as a
+ * {@link BalanceSnapshot}. A balance as of a date is the nearest earlier snapshot plus the entries
+ * booked after it, so it never replays more than {@code ledger.snapshot-every} entries however long
+ * the customer's history is.
+ * <p>
+ * Customers that existed before the ledger start with a snapshot of the balance they had when
+ * their first change was booked.
+ */
+@Component
+public class CustomerLedger {
+
+    public static final String CREATED = "CREATED";
+    public static final String TRANSACTION = "TRANSACTION";
+    public static final String REVERSAL = "REVERSAL";
+    public static final String ADJUSTMENT = "ADJUSTMENT";
+    public static final String SET = "SET";
+
+    @Value("${ledger.snapshot-every:100}")
+    private int snapshotEvery;
+
+    @Autowired
+    private LedgerEntryRepository entryRepository;
+
+    @Autowired
+    private BalanceSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private BalanceJournalRepository journalRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final AtomicLong entriesBooked = new AtomicLong();
+    private final AtomicLong snapshotsWritten = new AtomicLong();
+    private final AtomicLong carriedForward = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong replayedEntries = new AtomicLong();
+    private final AtomicLong maxReplayed = new AtomicLong();
+
+    /** Starts the ledger of a customer created in the current transaction. */
+    public void opened(String tenant, String customerId, BigDecimal initialBalance) {
+        LocalDateTime now = LocalDateTime.now();
+        snapshotRepository.save(new BalanceSnapshot(tenant, customerId, 0L, BigDecimal.ZERO, now));
+        if (initialBalance != null && initialBalance.signum() != 0) {
+            entryRepository.save(new LedgerEntry(tenant, customerId, 1L, initialBalance, CREATED, null, now));
+            entriesBooked.incrementAndGet();
+        }
+    }
+
+    /** {@link #opened} for many customers at once, as one batched insert per table. */
+    public void openedAll(String tenant, List<Customer> customers) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> snapshots = new ArrayList<>(customers.size());
+        List<Object[]> entries = new ArrayList<>();
+        for (Customer customer : customers) {
+            snapshots.add(new Object[]{tenant, customer.getId(), 0L, BigDecimal.ZERO, now});
+            BigDecimal initialBalance = customer.getTotalDue();
+            if (initialBalance != null && initialBalance.signum() != 0) {
+                entries.add(new Object[]{tenant, customer.getId(), 1L, initialBalance, CREATED, null, now});
+            }
+        }
+        if (!snapshots.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO customer_balance_snapshots (user_email, customer_id, seq, balance, as_of) " +
+                    "VALUES (?, ?, ?, ?, ?)", snapshots);
+        }
+        if (!entries.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO customer_ledger (user_email, customer_id, seq, delta, reason, " +
+                    "transaction_id, recorded_at) VALUES (?, ?, ?, ?, ?, ?, ?)", entries);
+            entriesBooked.addAndGet(entries.size());
+        }
+    }
+
+    /**
+     * Books a change to a customer's balance. Call it once the change itself is written (customer
+     * row saved, or write-behind journal row appended), while holding the customer's lock or row
+     * lock, so that a customer's entries are numbered in the order they commit.
+     */
+    public void record(String tenant, String customerId, BigDecimal delta, String reason, String transactionId) {
+        if (delta == null || delta.signum() == 0) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LedgerEntry last = entryRepository.findTopByCustomerIdOrderBySeqDesc(customerId).orElse(null);
+        long seq;
+        if (last == null) {
+            if (snapshotRepository.findByCustomerIdAndSeq(customerId, 0L).isEmpty()) {
+                carryForward(tenant, customerId, delta);
+            }
+            seq = 1;
+        } else {
+            if (!YearMonth.from(last.getRecordedAt()).equals(YearMonth.from(now))) {
+                // First change of a new month: the previous one ends with a snapshot
+                snapshot(tenant, last);
+            }
+            seq = last.getSeq() + 1;
+        }
+        LedgerEntry entry = entryRepository.save(new LedgerEntry(tenant, customerId, seq, delta, reason, transactionId, now));
+        entriesBooked.incrementAndGet();
+        if (seq % snapshotEvery == 0) {
+            snapshot(tenant, entry);
+        }
+    }
+
+    // The balance before this first booked change, read back from what is already written
+    private void carryForward(String tenant, String customerId, BigDecimal delta) {
+        Customer customer = customerRepository.findByIdAndUserEmail(customerId, tenant)
+                .orElseThrow(() -> new RuntimeException("Customer not found"));
+        BigDecimal current = customer.getTotalDue() != null ? customer.getTotalDue() : BigDecimal.ZERO;
+        BigDecimal balance = current.add(journalRepository.sumDeltasByCustomerId(customerId)).subtract(delta);
+        snapshotRepository.save(new BalanceSnapshot(tenant, customerId, 0L, balance, null));
+        carriedForward.incrementAndGet();
+    }
+
+    private void snapshot(String tenant, LedgerEntry through) {
+        BalanceSnapshot latest = snapshotRepository.findTopByCustomerIdOrderBySeqDesc(through.getCustomerId())
+                .orElseThrow(() -> new IllegalStateException("Ledger of customer " + through.getCustomerId()
+                        + " has entries but no starting snapshot"));
+        if (latest.getSeq() >= through.getSeq()) {
+            return;
+        }
+        BigDecimal balance = latest.getBalance().add(
+                entryRepository.sumDeltas(through.getCustomerId(), latest.getSeq(), through.getSeq()));
+        snapshotRepository.save(new BalanceSnapshot(tenant, through.getCustomerId(), through.getSeq(), balance,
+                through.getRecordedAt()));
+        snapshotsWritten.incrementAndGet();
+    }
+
+    /**
+     * The customer's balance at the end of {@code asOf}. {@code currentBalance} answers for a
+     * customer whose balance has not changed since the ledger was introduced.
+     */
+    public BalanceAsOfDto balanceAsOf(String customerId, LocalDate asOf, Supplier<BigDecimal> currentBalance) {
+        queries.incrementAndGet();
+        LocalDateTime cutoff = asOf.plusDays(1).atStartOfDay();
+        BalanceAsOfDto result = new BalanceAsOfDto(customerId, asOf);
+
+        BalanceSnapshot snapshot = snapshotRepository.findTopByCustomerIdAndAsOfBeforeOrderByAsOfDesc(customerId, cutoff)
+                .orElse(null);
+        BalanceSnapshot start = snapshot != null && snapshot.getSeq() == 0 ? snapshot
+                : snapshotRepository.findByCustomerIdAndSeq(customerId, 0L).orElse(null);
+        if (start == null) {
+            result.setBalance(currentBalance.get());
+            return result;
+        }
+        result.setTrackedSince(start.getAsOf() != null ? start.getAsOf()
+                : entryRepository.findByCustomerIdAndSeq(customerId, 1L).map(LedgerEntry::getRecordedAt).orElse(null));
+        if (snapshot == null) {
+            if (start.getAsOf() != null) {
+                // Created after asOf
+                result.setBalance(BigDecimal.ZERO);
+                return result;
+            }
+            snapshot = start;
+        }
+
+        LedgerEntryRepository.TailSum tail = entryRepository.sumTail(customerId, snapshot.getSeq(), cutoff);
+        long replayed = tail.getEntries();
+        result.setBalance(snapshot.getBalance().add(tail.getTotal()));
+        result.setSnapshotSeq(snapshot.getSeq());
+        result.setReplayedEntries(replayed);
+        replayedEntries.addAndGet(replayed);
+        maxReplayed.accumulateAndGet(replayed, Math::max);
+        return result;
+    }
+
+    public Map<String, Object> snapshot() {
+        long queryCount = queries.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("snapshotEvery", snapshotEvery);
+        stats.put("entriesBooked", entriesBooked.get());
+        stats.put("snapshotsWritten", snapshotsWritten.get());
+        stats.put("carriedForward", carriedForward.get());
+        stats.put("queries", queryCount);
+        stats.put("avgReplayedEntries", queryCount > 0 ? (double) replayedEntries.get() / queryCount : 0.0);
+        stats.put("maxReplayedEntries", maxReplayed.get());
+        return stats;
+    }
+}
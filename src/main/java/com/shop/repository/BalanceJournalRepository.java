@@ -0,0 +1,27 @@
+package com.shop.repository;
+
+import com.shop.entity.BalanceJournalEntry;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BalanceJournalRepository extends JpaRepository<BalanceJournalEntry, Long> {
+
+    List<BalanceJournalEntry> findByUserEmail(String userEmail);
+
+    @Query("SELECT COALESCE(SUM(e.delta), 0) FROM BalanceJournalEntry e WHERE e.customerId = :customerId")
+    BigDecimal sumDeltasByCustomerId(@Param("customerId") String customerId);
+
+    // Locking read: sees the latest committed rows and keeps a second flusher off them until we commit
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM BalanceJournalEntry e WHERE e.userEmail = :userEmail AND e.id IN :ids")
+    List<BalanceJournalEntry> lockByIds(@Param("userEmail") String userEmail, @Param("ids") Collection<Long> ids);
+}
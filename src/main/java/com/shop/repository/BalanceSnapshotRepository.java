@@ -0,0 +1,18 @@
+package com.shop.repository;
+
+import com.shop.entity.BalanceSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface BalanceSnapshotRepository extends JpaRepository<BalanceSnapshot, Long> {
+
+    Optional<BalanceSnapshot> findTopByCustomerIdOrderBySeqDesc(String customerId);
+
+    Optional<BalanceSnapshot> findTopByCustomerIdAndAsOfBeforeOrderByAsOfDesc(String customerId, LocalDateTime before);
+
+    Optional<BalanceSnapshot> findByCustomerIdAndSeq(String customerId, Long seq);
+}
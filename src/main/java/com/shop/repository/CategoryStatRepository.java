@@ -0,0 +1,13 @@
+package com.shop.repository;
+
+import com.shop.entity.CategoryStat;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface CategoryStatRepository extends JpaRepository<CategoryStat, String> {
+
+    List<CategoryStat> findByUserEmail(String userEmail);
+}
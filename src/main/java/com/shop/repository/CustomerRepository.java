@@ -8,23 +8,29 @@ import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 
 @Repository
-public interface CustomerRepository extends JpaRepository<Customer, String> {
+public interface CustomerRepository extends JpaRepository<Customer, String>, CustomerRepositoryCustom {
     
     // Find by user email
     List<Customer> findByUserEmailAndIsActiveTrue(String userEmail);
     
-    Optional<Customer> findByIdAndUserEmail(String id, String userEmail);
+    List<Customer> findByUserEmail(String userEmail);
+    
+    long countByUserEmail(String userEmail);
+    
+    List<Customer> findByUserEmailAndIdIn(String userEmail, Collection<String> ids);
     
     boolean existsByUserEmailAndMobile(String userEmail, String mobile);
     
+    boolean existsByIdAndUserEmail(String id, String userEmail);
+    
     // Search methods
     List<Customer> findByUserEmailAndNameContainingIgnoreCaseOrMobileContaining(String userEmail, String name, String mobile);
     
-    List<Customer> findByUserEmailAndCategory(String userEmail, String category);
+    List<Customer> findByUserEmailAndCategoryId(String userEmail, Integer categoryId);
     
     List<Customer> findByUserEmailAndTotalDueGreaterThan(String userEmail, BigDecimal amount);
     
@@ -0,0 +1,12 @@
+package com.shop.repository;
+
+import com.shop.entity.Customer;
+
+import java.util.Optional;
+
+public interface CustomerRepositoryCustom {
+
+    // Primary-key lookup so the customer can come from the second-level cache; the owner check
+    // happens on the loaded entity, so a cached customer is never returned to another shop
+    Optional<Customer> findByIdAndUserEmail(String id, String userEmail);
+}
@@ -0,0 +1,58 @@
+package com.shop.repository;
+
+import com.shop.entity.Customer;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The second-level cache is local to each instance, so a cached customer may predate a write made
+ * through another instance. Before a cached copy is used, its version is compared with the row's:
+ * every write to a customer, balance changes included, bumps the version, so a mismatch means the
+ * copy is stale and it is reloaded. The probe reads one column by primary key; without a cached
+ * copy the lookup is a plain load.
+ */
+class CustomerRepositoryImpl implements CustomerRepositoryCustom {
+
+    private static final String VERSION = "SELECT c.version FROM Customer c WHERE c.id = :id";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Optional<Customer> findByIdAndUserEmail(String id, String userEmail) {
+        if (id == null || userEmail == null) {
+            return Optional.empty();
+        }
+        Cache cache = entityManager.getEntityManagerFactory().getCache();
+        if (!cache.contains(Customer.class, id)) {
+            return owned(entityManager.find(Customer.class, id), userEmail);
+        }
+        // The query flushes pending changes to customers first, so the refresh below loses nothing
+        List<Long> versions = entityManager.createQuery(VERSION, Long.class).setParameter("id", id).getResultList();
+        if (versions.isEmpty()) {
+            cache.evict(Customer.class, id);
+            return Optional.empty();
+        }
+        Customer customer = entityManager.find(Customer.class, id);
+        if (customer != null && !versions.get(0).equals(customer.getVersion())) {
+            cache.evict(Customer.class, id);
+            // refresh needs a transaction; without one there are no pending changes, so the copy is just reloaded
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                entityManager.refresh(customer);
+            } else {
+                entityManager.detach(customer);
+                customer = entityManager.find(Customer.class, id);
+            }
+        }
+        return owned(customer, userEmail);
+    }
+
+    private static Optional<Customer> owned(Customer customer, String userEmail) {
+        return Optional.ofNullable(customer).filter(c -> userEmail.equals(c.getUserEmail()));
+    }
+}
@@ -0,0 +1,38 @@
+package com.shop.repository;
+
+import com.shop.entity.LedgerEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface LedgerEntryRepository extends JpaRepository<LedgerEntry, Long> {
+
+    Optional<LedgerEntry> findTopByCustomerIdOrderBySeqDesc(String customerId);
+
+    Optional<LedgerEntry> findTopByCustomerIdOrderBySeqAsc(String customerId);
+
+    Optional<LedgerEntry> findByCustomerIdAndSeq(String customerId, Long seq);
+
+    @Query("SELECT COALESCE(SUM(e.delta), 0) FROM LedgerEntry e WHERE e.customerId = :customerId " +
+           "AND e.seq > :afterSeq AND e.seq <= :throughSeq")
+    BigDecimal sumDeltas(@Param("customerId") String customerId, @Param("afterSeq") Long afterSeq,
+                         @Param("throughSeq") Long throughSeq);
+
+    // The tail after a snapshot: at most ledger.snapshot-every rows, found through the (customer_id, seq) key
+    @Query("SELECT COUNT(e) AS entries, COALESCE(SUM(e.delta), 0) AS total FROM LedgerEntry e " +
+           "WHERE e.customerId = :customerId AND e.seq > :afterSeq AND e.recordedAt < :before")
+    TailSum sumTail(@Param("customerId") String customerId, @Param("afterSeq") Long afterSeq,
+                    @Param("before") LocalDateTime before);
+
+    interface TailSum {
+        Long getEntries();
+
+        BigDecimal getTotal();
+    }
+}
@@ -0,0 +1,33 @@
+package com.shop.repository;
+
+import com.shop.entity.PaymentRecord;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface PaymentRecordRepository extends JpaRepository<PaymentRecord, Long> {
+
+    @Query("SELECT p FROM PaymentRecord p JOIN FETCH p.customer c WHERE p.id = :id AND c.userEmail = :userEmail")
+    Optional<PaymentRecord> findByIdAndUserEmail(@Param("id") Long id, @Param("userEmail") String userEmail);
+
+    @Query("SELECT p FROM PaymentRecord p JOIN FETCH p.customer c WHERE c.userEmail = :userEmail " +
+           "AND (:customerId IS NULL OR c.id = :customerId) " +
+           "AND (CAST(:startDate AS LocalDate) IS NULL OR p.paymentDate >= :startDate) " +
+           "AND (CAST(:endDate AS LocalDate) IS NULL OR p.paymentDate <= :endDate) " +
+           "ORDER BY p.paymentDate DESC, p.id DESC")
+    List<PaymentRecord> findByUserEmail(@Param("userEmail") String userEmail, @Param("customerId") String customerId,
+                                        @Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    @Query("SELECT p FROM PaymentRecord p JOIN FETCH p.customer c WHERE c.id = :customerId AND c.userEmail = :userEmail " +
+           "ORDER BY p.paymentDate DESC, p.id DESC")
+    Slice<PaymentRecord> findRecentByCustomer(@Param("userEmail") String userEmail, @Param("customerId") String customerId,
+                                              Pageable pageable);
+}
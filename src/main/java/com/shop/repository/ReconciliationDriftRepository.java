@@ -0,0 +1,14 @@
+package com.shop.repository;
+
+import com.shop.entity.ReconciliationDrift;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ReconciliationDriftRepository extends JpaRepository<ReconciliationDrift, Long> {
+
+    List<ReconciliationDrift> findByRunIdOrderByIdAsc(Long runId, Pageable pageable);
+}
@@ -0,0 +1,13 @@
+package com.shop.repository;
+
+import com.shop.entity.ReconciliationRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ReconciliationRunRepository extends JpaRepository<ReconciliationRun, Long> {
+
+    Optional<ReconciliationRun> findTopByOrderByIdDesc();
+}
@@ -0,0 +1,13 @@
+package com.shop.repository;
+
+import com.shop.entity.Setting;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface SettingRepository extends JpaRepository<Setting, Integer> {
+
+    Optional<Setting> findBySettingKey(String settingKey);
+}
@@ -0,0 +1,29 @@
+package com.shop.repository;
+
+import com.shop.entity.TransactionPayment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Repository
+public interface TransactionPaymentRepository extends JpaRepository<TransactionPayment, Long> {
+
+    @Query("SELECT tp.transaction.id AS transactionId, tp.amountApplied AS amountApplied FROM TransactionPayment tp " +
+           "WHERE tp.paymentRecord.id = :paymentRecordId ORDER BY tp.id")
+    List<Applied> findByPaymentRecordId(@Param("paymentRecordId") Long paymentRecordId);
+
+    // What earlier payments already covered of each of the customer's pending transactions, in one round trip
+    @Query("SELECT t.id AS transactionId, SUM(tp.amountApplied) AS amountApplied FROM TransactionPayment tp " +
+           "JOIN tp.transaction t WHERE t.customer.id = :customerId AND t.status = 'PENDING' GROUP BY t.id")
+    List<Applied> sumAppliedToPendingTransactions(@Param("customerId") String customerId);
+
+    interface Applied {
+        String getTransactionId();
+
+        BigDecimal getAmountApplied();
+    }
+}
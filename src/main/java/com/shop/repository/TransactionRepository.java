@@ -3,13 +3,18 @@ package com.shop.repository;
 import com.shop.entity.Transaction;
 import com.shop.entity.Transaction.TransactionStatus;
 import com.shop.entity.Transaction.TransactionType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,11 +24,21 @@ public interface TransactionRepository extends JpaRepository<Transaction, String
     // Find by user email
     List<Transaction> findByUserEmailOrderByDateDescCreatedAtDesc(String userEmail);
     
+    long countByUserEmail(String userEmail);
+    
     Optional<Transaction> findByIdAndUserEmail(String id, String userEmail);
+
+    List<Transaction> findByUserEmailAndIdIn(String userEmail, Collection<String> ids);
+
+    @Query("SELECT t.customer.id FROM Transaction t WHERE t.id = :id AND t.user.email = :userEmail")
+    Optional<String> findCustomerIdByIdAndUserEmail(@Param("id") String id, @Param("userEmail") String userEmail);
     
     List<Transaction> findByUserEmailAndCustomerId(String userEmail, String customerId);
     
     List<Transaction> findByUserEmailAndCustomerIdOrderByDateDesc(String userEmail, String customerId);
+
+    // One page, and whether there is another, without counting the rest
+    Slice<Transaction> findByUserEmailAndCustomerIdOrderByDateDescCreatedAtDesc(String userEmail, String customerId, Pageable pageable);
     
     List<Transaction> findByUserEmailAndTransactionType(String userEmail, TransactionType type);
     
@@ -41,18 +56,44 @@ public interface TransactionRepository extends JpaRepository<Transaction, String
     
     List<Transaction> findByUserEmailAndStatusAndDateBefore(String userEmail, TransactionStatus status, LocalDate date);
     
+    List<Transaction> findByUserEmailAndStatusAndDueDateBeforeOrderByDueDateAsc(String userEmail, TransactionStatus status, LocalDate dueDate);
+    
+    long countByUserEmailAndStatusAndDueDateBefore(String userEmail, TransactionStatus status, LocalDate dueDate);
+    
     List<Transaction> findByUserEmailAndDateBetween(String userEmail, LocalDate startDate, LocalDate endDate);
     
+    List<Transaction> findByUserEmailAndDateBetweenOrderByDateDescCreatedAtDesc(String userEmail, LocalDate startDate, LocalDate endDate);
+    
+    List<Transaction> findByUserEmailAndCustomerIdAndDateBetweenOrderByDateDescCreatedAtDesc(String userEmail, String customerId,
+                                                                                           LocalDate startDate, LocalDate endDate);
+    
     // Custom queries with user filtering
-    @Query("SELECT t FROM Transaction t WHERE t.user.email = :userEmail AND t.customer.id = :customerId AND t.status = 'PENDING' ORDER BY t.date ASC")
+    @Query("SELECT t FROM Transaction t WHERE t.user.email = :userEmail AND t.customer.id = :customerId AND t.status = 'PENDING' ORDER BY t.date ASC, t.createdAt ASC")
     List<Transaction> findPendingTransactionsByCustomerAndUser(@Param("userEmail") String userEmail, @Param("customerId") String customerId);
     
+    // Settles a customer's pending transactions in one statement. Bumps the version like a normal update, and
+    // skips rows that stopped being pending, so a count short of ids.size() means someone got there first
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Transaction t SET t.status = 'COMPLETED', t.version = t.version + 1, t.updatedAt = :now " +
+           "WHERE t.customer.id = :customerId AND t.id IN :ids AND t.status = 'PENDING'")
+    int completePendingTransactions(@Param("customerId") String customerId, @Param("ids") Collection<String> ids,
+                                    @Param("now") LocalDateTime now);
+
     @Query("SELECT SUM(t.amount) FROM Transaction t WHERE t.user.email = :userEmail AND t.customer.id = :customerId AND t.transactionType = 'CREDIT' AND t.status = 'PENDING'")
     BigDecimal getTotalPendingCreditByCustomerAndUser(@Param("userEmail") String userEmail, @Param("customerId") String customerId);
     
     @Query("SELECT SUM(t.amount) FROM Transaction t WHERE t.user.email = :userEmail AND t.customer.id = :customerId AND t.transactionType = 'PAYMENT' AND t.status = 'COMPLETED'")
     BigDecimal getTotalPaymentsByCustomerAndUser(@Param("userEmail") String userEmail, @Param("customerId") String customerId);
     
+    // getTotalPendingCreditByCustomerAndUser and getTotalPaymentsByCustomerAndUser in one pass over the customer's rows
+    @Query("SELECT SUM(CASE WHEN t.transactionType = 'CREDIT' AND t.status = 'PENDING' THEN t.amount END) AS pendingCredit, " +
+           "SUM(CASE WHEN t.transactionType = 'PAYMENT' AND t.status = 'COMPLETED' THEN t.amount END) AS totalPayments " +
+           "FROM Transaction t WHERE t.user.email = :userEmail AND t.customer.id = :customerId")
+    CustomerTotals getCustomerTotals(@Param("userEmail") String userEmail, @Param("customerId") String customerId);
+    
+    @Query("SELECT SUM(t.amount) FROM Transaction t WHERE t.user.email = :userEmail AND t.status = 'PENDING' AND t.dueDate < :today")
+    BigDecimal getOverdueAmount(@Param("userEmail") String userEmail, @Param("today") LocalDate today);
+    
     @Query("SELECT SUM(t.amount) FROM Transaction t WHERE t.user.email = :userEmail AND t.transactionType = :type AND t.date = :date AND t.status = :status")
     BigDecimal getTotalAmountByUserAndTypeAndDateAndStatus(
             @Param("userEmail") String userEmail,
@@ -80,4 +121,10 @@ public interface TransactionRepository extends JpaRepository<Transaction, String
     
     @Query("SELECT COUNT(t) FROM Transaction t WHERE t.user.email = :userEmail AND t.status = 'COMPLETED'")
     Long countCompletedTransactionsByUser(@Param("userEmail") String userEmail);
-} 
\ No newline at end of file
+
+    interface CustomerTotals {
+        BigDecimal getPendingCredit();
+
+        BigDecimal getTotalPayments();
+    }
+}
@@ -1,8 +1,11 @@
 package com.shop.repository;
 
 import com.shop.entity.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -15,7 +18,9 @@ public interface UserRepository extends JpaRepository<User, String> {
 
     boolean existsByEmail(String email);
 
+    // Runs on every authenticated request (JWT filter) - cache the result id, the User itself comes from the entity cache
     @Query("SELECT u FROM User u WHERE u.email = :email AND u.isActive = true")
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_CACHEABLE, value = "true"))
     Optional<User> findActiveUserByEmail(@Param("email") String email);
 
     @Query("SELECT COUNT(u) FROM User u WHERE u.isActive = true")
@@ -0,0 +1,27 @@
+package com.shop.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Guards operator endpoints (/admin/**) with a shared key sent in the X-Admin-Key header.
+ * Admin endpoints are disabled while admin.api-key is empty.
+ */
+@Component
+public class AdminKeyVerifier {
+
+    public static final String HEADER = "X-Admin-Key";
+
+    @Value("${admin.api-key:}")
+    private String apiKey;
+
+    public boolean isAuthorized(String providedKey) {
+        if (apiKey == null || apiKey.isEmpty() || providedKey == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(apiKey.getBytes(StandardCharsets.UTF_8), providedKey.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,5 +1,6 @@
 package com.shop.security;
 
+import com.shop.datasource.TenantContext;
 import com.shop.service.UserService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -45,7 +46,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         // Once we get the token validate it.
         if (email != null && SecurityContextHolder.getContext().getAuthentication() == null) {
 
-            UserDetails userDetails = this.userService.loadUserByUsername(email);
+            final String tenant = email;
+            UserDetails userDetails = TenantContext.callAsTenant(tenant, () -> this.userService.loadUserByUsername(tenant));
 
             // if token is valid configure Spring Security to manually set authentication
             if (jwtUtil.validateToken(jwtToken, email)) {
@@ -70,6 +72,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         return path.startsWith("/api/auth/") || 
                path.startsWith("/api/swagger-ui/") || 
                path.startsWith("/api/api-docs/") ||
+               path.startsWith("/api/admin/") ||
                path.equals("/api/swagger-ui.html");
     }
 } 
\ No newline at end of file
@@ -0,0 +1,211 @@
+package com.shop.service;
+
+import com.shop.entity.Customer;
+import com.shop.entity.Transaction;
+import com.shop.sync.ChangeFeed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Deletes customers and transactions together with the rows that hang off them, one set-based
+ * statement per table in foreign-key order: payment allocations, then transactions and payment
+ * records, then the customer. Deleting through the entities' {@code CascadeType.ALL} collections
+ * instead loads every child into the persistence context and deletes it with a statement of its own.
+ * Archived transactions, their allocations and the customer's opening balance go with the customer.
+ * Every deleted customer and transaction leaves a sync tombstone.
+ * <p>
+ * A customer whose history is longer than {@code delete.chunk-size} rows can have it removed
+ * {@code delete.chunk-size} rows per transaction first, so no transaction holds locks on the whole
+ * history at once. Ledger rows are history and are kept. While that runs the customer is marked, and
+ * edits and balance changes to it are refused (see {@link #checkNotDeleting}) rather than queued behind
+ * the delete.
+ */
+@Component
+public class CascadingDeletes {
+
+    private static final String HISTORY_SIZE = "SELECT (SELECT COUNT(*) FROM transactions WHERE customer_id = ?) + " +
+            "(SELECT COUNT(*) FROM payment_records WHERE customer_id = ?)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ChangeFeed changeFeed;
+
+    @Value("${delete.chunk-size:1000}")
+    private int chunkSize;
+
+    private final Set<String> deleting = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong customersDeleted = new AtomicLong();
+    private final AtomicLong chunkedDeletes = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong rowsDeleted = new AtomicLong();
+
+    /** Runs the delete of a customer with the customer marked as being deleted. */
+    public void whileDeleting(String customerId, Runnable delete) {
+        deleting.add(customerId);
+        try {
+            delete.run();
+        } finally {
+            deleting.remove(customerId);
+        }
+    }
+
+    /** Refuses a change to a customer whose delete is under way, like a customer lock timeout. */
+    public void checkNotDeleting(String customerId) {
+        if (customerId != null && deleting.contains(customerId)) {
+            throw new CannotAcquireLockException("Customer " + customerId + " is being deleted");
+        }
+    }
+
+    /** Transactions and payment records of the customer. */
+    public long historySize(String customerId) {
+        Long size = jdbcTemplate.queryForObject(HISTORY_SIZE, Long.class, customerId, customerId);
+        return size != null ? size : 0L;
+    }
+
+    public boolean needsChunks(long historySize) {
+        return historySize > chunkSize;
+    }
+
+    /**
+     * Deletes the customer's transactions and payment records, {@code delete.chunk-size} at a time,
+     * each chunk in a transaction of its own. Must not be called inside a transaction, and only under
+     * the customer's lock (CustomerLockManager) inside {@link #whileDeleting}: the chunks cannot be rolled
+     * back, so the balance must not change between the check before them and the final delete. Returns
+     * the number of rows deleted.
+     */
+    public long deleteHistoryInChunks(String userEmail, String customerId) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        long deleted = 0;
+        deleted += deleteInChunks(template, "SELECT id FROM transactions WHERE customer_id = ? LIMIT ?", customerId,
+                "DELETE FROM transaction_payments WHERE transaction_id IN ", "DELETE FROM transactions WHERE id IN ",
+                ids -> changeFeed.transactionsDeleted(userEmail, ids.stream().map(String::valueOf).toList()));
+        deleted += deleteInChunks(template, "SELECT id FROM payment_records WHERE customer_id = ? LIMIT ?", customerId,
+                "DELETE FROM transaction_payments WHERE payment_record_id IN ", "DELETE FROM payment_records WHERE id IN ",
+                ids -> {});
+        chunkedDeletes.incrementAndGet();
+        return deleted;
+    }
+
+    private long deleteInChunks(TransactionTemplate template, String selectIds, String customerId,
+                                String deleteChildren, String deleteRows, Consumer<List<Object>> deleted) {
+        long total = 0;
+        while (true) {
+            Integer rows = template.execute(status -> {
+                List<Object> ids = jdbcTemplate.queryForList(selectIds, Object.class, customerId, chunkSize);
+                if (ids.isEmpty()) {
+                    return 0;
+                }
+                String in = "(" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+                Object[] args = ids.toArray();
+                int children = jdbcTemplate.update(deleteChildren + in, args);
+                int removed = jdbcTemplate.update(deleteRows + in, args);
+                deleted.accept(ids);
+                return children + removed;
+            });
+            if (rows == null || rows == 0) {
+                return total;
+            }
+            chunks.incrementAndGet();
+            rowsDeleted.addAndGet(rows);
+            total += rows;
+        }
+    }
+
+    /**
+     * Deletes the customer and whatever history is left, in the current transaction. Fails with an
+     * optimistic locking exception if the customer row changed since {@code customer} was read.
+     */
+    public void deleteCustomer(Customer customer) {
+        String id = customer.getId();
+        List<String> transactionIds = jdbcTemplate.queryForList("SELECT id FROM transactions WHERE customer_id = ?",
+                String.class, id);
+        int rows = jdbcTemplate.update("DELETE FROM transaction_payments WHERE transaction_id IN " +
+                "(SELECT id FROM transactions WHERE customer_id = ?)", id);
+        rows += jdbcTemplate.update("DELETE FROM transaction_payments WHERE payment_record_id IN " +
+                "(SELECT id FROM payment_records WHERE customer_id = ?)", id);
+        rows += jdbcTemplate.update("DELETE FROM transaction_payments_archive WHERE payment_record_id IN " +
+                "(SELECT id FROM payment_records WHERE customer_id = ?)", id);
+        rows += jdbcTemplate.update("DELETE FROM transaction_payments_archive WHERE transaction_id IN " +
+                "(SELECT id FROM transactions_archive WHERE customer_id = ?)", id);
+        rows += jdbcTemplate.update("DELETE FROM transactions_archive WHERE customer_id = ?", id);
+        rows += jdbcTemplate.update("DELETE FROM customer_opening_balances WHERE customer_id = ?", id);
+        rows += jdbcTemplate.update("DELETE FROM transactions WHERE customer_id = ?", id);
+        rows += jdbcTemplate.update("DELETE FROM payment_records WHERE customer_id = ?", id);
+        if (jdbcTemplate.update("DELETE FROM customers WHERE id = ? AND version = ?", id, customer.getVersion()) == 0) {
+            throw new ObjectOptimisticLockingFailureException(Customer.class, id);
+        }
+        if (!transactionIds.isEmpty()) {
+            changeFeed.transactionsDeleted(customer.getUserEmail(), transactionIds);
+        }
+        rowsDeleted.addAndGet(rows + 1);
+        customersDeleted.incrementAndGet();
+        // The row is gone behind Hibernate's back
+        entityManager.detach(customer);
+        evict(id);
+    }
+
+    /** Deletes the transaction and its payment allocations in the current transaction. */
+    public void deleteTransaction(Transaction transaction) {
+        String id = transaction.getId();
+        int rows = jdbcTemplate.update("DELETE FROM transaction_payments WHERE transaction_id = ?", id);
+        if (jdbcTemplate.update("DELETE FROM transactions WHERE id = ? AND version = ?", id, transaction.getVersion()) == 0) {
+            throw new ObjectOptimisticLockingFailureException(Transaction.class, id);
+        }
+        rowsDeleted.addAndGet(rows + 1);
+        entityManager.detach(transaction);
+    }
+
+    // Again after completion, in case a concurrent read cached the old row meanwhile
+    private void evict(String customerId) {
+        entityManager.getEntityManagerFactory().getCache().evict(Customer.class, customerId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    entityManager.getEntityManagerFactory().getCache().evict(Customer.class, customerId);
+                }
+            });
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("chunkSize", chunkSize);
+        stats.put("customersDeleted", customersDeleted.get());
+        stats.put("deletesInProgress", deleting.size());
+        stats.put("chunkedDeletes", chunkedDeletes.get());
+        stats.put("chunks", chunks.get());
+        stats.put("rowsDeleted", rowsDeleted.get());
+        return stats;
+    }
+}
@@ -0,0 +1,27 @@
+package com.shop.service;
+
+import java.math.BigDecimal;
+
+/**
+ * A credit would take the customer's total due past their credit limit (their own, or the shop-wide
+ * {@code max_credit_limit} setting). Nothing was written.
+ */
+public class CreditLimitExceededException extends RuntimeException {
+
+    private final String customerId;
+    private final BigDecimal limit;
+
+    public CreditLimitExceededException(String customerId, BigDecimal limit) {
+        super("Credit limit of " + limit + " exceeded for customer " + customerId);
+        this.customerId = customerId;
+        this.limit = limit;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public BigDecimal getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,156 @@
+package com.shop.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes balance changes per customer inside this instance. Customer ids hash onto a fixed set of
+ * stripes; work touching several customers takes their stripes in ascending stripe order, so two such
+ * calls can never wait on each other in opposite orders. Take the locks before starting the database
+ * transaction, so concurrent edits of one customer queue here instead of on its row lock.
+ */
+@Component
+public class CustomerLockManager {
+
+    @Value("${concurrency.customer-locks.stripes:256}")
+    private int stripeCount;
+
+    @Value("${concurrency.customer-locks.timeout-ms:5000}")
+    private long timeoutMs;
+
+    private ReentrantLock[] stripes;
+    private AtomicLongArray acquisitions;
+    private AtomicLongArray contended;
+    private AtomicLongArray waitNanos;
+    private AtomicLongArray maxWaitNanos;
+    private AtomicLongArray timeouts;
+
+    @PostConstruct
+    void init() {
+        stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        acquisitions = new AtomicLongArray(stripeCount);
+        contended = new AtomicLongArray(stripeCount);
+        waitNanos = new AtomicLongArray(stripeCount);
+        maxWaitNanos = new AtomicLongArray(stripeCount);
+        timeouts = new AtomicLongArray(stripeCount);
+    }
+
+    public <T> T withCustomerLock(String customerId, Supplier<T> work) {
+        return withCustomerLocks(Collections.singletonList(customerId), work);
+    }
+
+    public void runWithCustomerLock(String customerId, Runnable work) {
+        withCustomerLocks(Collections.singletonList(customerId), () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public <T> T withCustomerLocks(Collection<String> customerIds, Supplier<T> work) {
+        TreeSet<Integer> ordered = new TreeSet<>();
+        for (String customerId : customerIds) {
+            if (customerId != null) {
+                ordered.add(stripeFor(customerId));
+            }
+        }
+        List<ReentrantLock> held = new ArrayList<>(ordered.size());
+        try {
+            for (int stripe : ordered) {
+                acquire(stripe);
+                held.add(stripes[stripe]);
+            }
+            return work.get();
+        } finally {
+            for (int i = held.size() - 1; i >= 0; i--) {
+                held.get(i).unlock();
+            }
+        }
+    }
+
+    private void acquire(int stripe) {
+        ReentrantLock lock = stripes[stripe];
+        acquisitions.incrementAndGet(stripe);
+        if (lock.tryLock()) {
+            return;
+        }
+        contended.incrementAndGet(stripe);
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            // Bounded, so a nested call that takes stripes out of order fails instead of hanging
+            acquired = lock.tryLock(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotAcquireLockException("Interrupted waiting for customer lock stripe " + stripe);
+        }
+        long waited = System.nanoTime() - start;
+        waitNanos.addAndGet(stripe, waited);
+        maxWaitNanos.accumulateAndGet(stripe, waited, Math::max);
+        if (!acquired) {
+            timeouts.incrementAndGet(stripe);
+            throw new CannotAcquireLockException("Timed out after " + timeoutMs
+                    + " ms waiting for another change to the same customer");
+        }
+    }
+
+    private int stripeFor(String customerId) {
+        // Spread the hash so ids with a common prefix don't crowd a few stripes
+        int h = customerId.hashCode();
+        h ^= (h >>> 16);
+        return Math.floorMod(h * 0x9E3779B9, stripeCount);
+    }
+
+    /** Totals plus one entry per stripe that has seen contention, most waited-on first. */
+    public Map<String, Object> snapshot() {
+        long totalAcquisitions = 0;
+        long totalContended = 0;
+        long totalWaitNanos = 0;
+        long totalTimeouts = 0;
+        List<Map<String, Object>> hot = new ArrayList<>();
+        for (int i = 0; i < stripeCount; i++) {
+            totalAcquisitions += acquisitions.get(i);
+            totalContended += contended.get(i);
+            totalWaitNanos += waitNanos.get(i);
+            totalTimeouts += timeouts.get(i);
+            if (contended.get(i) > 0) {
+                Map<String, Object> stripe = new LinkedHashMap<>();
+                stripe.put("stripe", i);
+                stripe.put("acquisitions", acquisitions.get(i));
+                stripe.put("contended", contended.get(i));
+                stripe.put("waitMs", waitNanos.get(i) / 1_000_000);
+                stripe.put("maxWaitMs", maxWaitNanos.get(i) / 1_000_000);
+                stripe.put("timeouts", timeouts.get(i));
+                stripe.put("queued", stripes[i].getQueueLength());
+                hot.add(stripe);
+            }
+        }
+        hot.sort((a, b) -> Long.compare((Long) b.get("waitMs"), (Long) a.get("waitMs")));
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("stripes", stripeCount);
+        stats.put("acquisitions", totalAcquisitions);
+        stats.put("contended", totalContended);
+        stats.put("waitMs", totalWaitNanos / 1_000_000);
+        stats.put("timeouts", totalTimeouts);
+        stats.put("contendedStripes", hot);
+        return stats;
+    }
+}
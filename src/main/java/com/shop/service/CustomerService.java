@@ -1,17 +1,38 @@
 package com.shop.service;
 
+import com.shop.archive.TransactionArchive;
+import com.shop.audit.AuditJournal;
+import com.shop.audit.AuditSnapshots;
+import com.shop.balance.BalanceWriteBehind;
+import com.shop.category.CategoryCatalog;
+import com.shop.category.CategoryStats;
+import com.shop.dto.BalanceAsOfDto;
+import com.shop.dto.CustomerDetailDto;
 import com.shop.dto.CustomerDto;
+import com.shop.dto.PaymentRecordDto;
+import com.shop.dto.TransactionDto;
 import com.shop.entity.Customer;
+import com.shop.entity.CustomerOpeningBalance;
 import com.shop.entity.User;
+import com.shop.ledger.CustomerLedger;
 import com.shop.repository.CustomerRepository;
 import com.shop.repository.UserRepository;
+import com.shop.workingset.TenantWorkingSet;
+import com.shop.workingset.TenantWorkingSetManager;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -26,16 +47,77 @@ public class CustomerService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private TenantWorkingSetManager workingSets;
+
+    @Autowired
+    private OptimisticRetry optimisticRetry;
+
+    @Autowired
+    private BalanceWriteBehind balances;
+
+    @Autowired
+    private CustomerLockManager customerLocks;
+
+    @Autowired
+    private CustomerLedger ledger;
+
+    @Autowired
+    private CategoryCatalog categoryCatalog;
+
+    @Autowired
+    private EntityChanges changes;
+
+    @Autowired
+    private CascadingDeletes cascadingDeletes;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private TransactionArchive archive;
+
+    // Reads that the in-memory working set can answer use SUPPORTS: when the shop is in memory no
+    // transaction (and no pooled connection) is opened, otherwise each repository call runs in its own
+    // read-only transaction as before
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public List<CustomerDto> getAllCustomers(String userEmail) {
-        return customerRepository.findByUserEmailAndIsActiveTrue(userEmail)
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            return balances.merge(userEmail, workingSet.getActiveCustomers());
+        }
+        return balances.merge(userEmail, customerRepository.findByUserEmailAndIsActiveTrue(userEmail)
                 .stream()
                 .map(this::convertToDto)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
     }
 
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public CustomerDto getCustomerById(String userEmail, String id) {
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            return balances.merge(userEmail, workingSet.getCustomer(id));
+        }
         Optional<Customer> customer = customerRepository.findByIdAndUserEmail(id, userEmail);
-        return customer.map(this::convertToDto).orElse(null);
+        return balances.merge(userEmail, customer.map(this::convertToDto).orElse(null));
+    }
+
+    // In no particular order; ids of other shops and deleted customers are left out
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public List<CustomerDto> getCustomersByIds(String userEmail, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return balances.merge(userEmail, customerRepository.findByUserEmailAndIdIn(userEmail, ids)
+                .stream()
+                .map(this::convertToDto)
+                .collect(Collectors.toList()));
     }
 
     public CustomerDto createCustomer(String userEmail, CustomerDto customerDto) {
@@ -62,19 +144,45 @@ public class CustomerService {
         customer.setName(customerDto.getName());
         customer.setMobile(customerDto.getMobile());
         customer.setAddress(customerDto.getAddress());
-        customer.setCategory(customerDto.getCategory() != null ? customerDto.getCategory() : "Regular");
+        customer.setCategoryId(categoryCatalog.idFor(customerDto.getCategory()));
         customer.setNotes(customerDto.getNotes());
         customer.setTotalDue(customerDto.getTotalDue() != null ? customerDto.getTotalDue() : BigDecimal.ZERO);
+        customer.setCreditLimit(customerDto.getCreditLimit());
         customer.setLastTransactionDate(customerDto.getLastTransactionDate());
         customer.setIsActive(customerDto.getIsActive() != null ? customerDto.getIsActive() : true);
 
         Customer savedCustomer = customerRepository.save(customer);
-        return convertToDto(savedCustomer);
+        CustomerDto created = convertToDto(savedCustomer);
+        changes.customerCreated(userEmail, savedCustomer, CategoryStats.stateOf(created));
+        return created;
     }
 
     public CustomerDto updateCustomer(String userEmail, String id, CustomerDto customerDto) {
+        return updateCustomer(userEmail, id, customerDto, null);
+    }
+
+    // expectedVersion comes from If-Match; null means unconditional. Every edit takes the customer lock, so
+    // none lands between a delete's balance check and its removal of the row. A new totalDue is a balance
+    // change, so it is serialized with the others like updateCustomerTotalDue
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public CustomerDto updateCustomer(String userEmail, String id, CustomerDto customerDto, Long expectedVersion) {
+        cascadingDeletes.checkNotDeleting(id);
+        if (customerDto.getTotalDue() == null) {
+            return customerLocks.withCustomerLock(id, () -> new TransactionTemplate(transactionManager).execute(status ->
+                    applyUpdate(userEmail, id, customerDto, expectedVersion)));
+        }
+        return customerLocks.withCustomerLock(id, () -> {
+            balances.flushCustomer(userEmail, id);
+            return optimisticRetry.execute(() -> applyUpdate(userEmail, id, customerDto, expectedVersion));
+        });
+    }
+
+    private CustomerDto applyUpdate(String userEmail, String id, CustomerDto customerDto, Long expectedVersion) {
         Customer customer = customerRepository.findByIdAndUserEmail(id, userEmail)
                 .orElseThrow(() -> new RuntimeException("Customer not found"));
+        VersionMismatchException.check(Customer.class, id, customer.getVersion(), expectedVersion);
+        Map<String, Object> before = AuditSnapshots.of(customer);
+        CategoryStats.State counted = CategoryStats.stateOf(balances.merge(userEmail, convertToDto(customer)));
 
         // Check if mobile number is being changed and if it already exists
         if (customerDto.getMobile() != null && !customer.getMobile().equals(customerDto.getMobile()) &&
@@ -93,14 +201,19 @@ public class CustomerService {
             customer.setAddress(customerDto.getAddress());
         }
         if (customerDto.getCategory() != null) {
-            customer.setCategory(customerDto.getCategory());
+            customer.setCategoryId(categoryCatalog.idFor(customerDto.getCategory()));
         }
         if (customerDto.getNotes() != null) {
             customer.setNotes(customerDto.getNotes());
         }
+        BigDecimal balanceChange = null;
         if (customerDto.getTotalDue() != null) {
+            balanceChange = customerDto.getTotalDue().subtract(customer.getTotalDue() != null ? customer.getTotalDue() : BigDecimal.ZERO);
             customer.setTotalDue(customerDto.getTotalDue());
         }
+        if (customerDto.getCreditLimit() != null) {
+            customer.setCreditLimit(customerDto.getCreditLimit());
+        }
         if (customerDto.getLastTransactionDate() != null) {
             customer.setLastTransactionDate(customerDto.getLastTransactionDate());
         }
@@ -108,61 +221,125 @@ public class CustomerService {
             customer.setIsActive(customerDto.getIsActive());
         }
 
-        Customer savedCustomer = customerRepository.save(customer);
-        return convertToDto(savedCustomer);
+        Customer savedCustomer = customerRepository.saveAndFlush(customer);
+        CustomerDto updated = balances.merge(userEmail, convertToDto(savedCustomer));
+        changes.customerEdited(userEmail, savedCustomer, before, balanceChange, counted, CategoryStats.stateOf(updated));
+        return updated;
     }
 
+    // Not one transaction: a long history is first deleted in chunks that commit on their own. The customer's
+    // lock is held throughout and balance changes to it are refused meanwhile, so the balance checked before
+    // the first chunk is still the balance when the customer row goes.
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void deleteCustomer(String userEmail, String id) {
-        Customer customer = customerRepository.findByIdAndUserEmail(id, userEmail)
-                .orElseThrow(() -> new RuntimeException("Customer not found"));
+        customerLocks.runWithCustomerLock(id, () -> cascadingDeletes.whileDeleting(id, () -> {
+            Customer found = customerRepository.findByIdAndUserEmail(id, userEmail)
+                    .orElseThrow(() -> new RuntimeException("Customer not found"));
+            checkNothingOwed(userEmail, found);
+            if (cascadingDeletes.needsChunks(cascadingDeletes.historySize(id))) {
+                cascadingDeletes.deleteHistoryInChunks(userEmail, id);
+            }
+
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                Customer customer = customerRepository.findByIdAndUserEmail(id, userEmail)
+                        .orElseThrow(() -> new RuntimeException("Customer not found"));
+                CustomerDto current = checkNothingOwed(userEmail, customer);
+                cascadingDeletes.deleteCustomer(customer);
+                changes.customerDeleted(userEmail, customer, CategoryStats.stateOf(current));
+            });
+        }));
+    }
 
-        // Check if customer has outstanding transactions
-        if (customer.getTotalDue() != null && customer.getTotalDue().compareTo(BigDecimal.ZERO) > 0) {
-            throw new RuntimeException("Cannot delete customer with outstanding balance: " + customer.getTotalDue());
+    private CustomerDto checkNothingOwed(String userEmail, Customer customer) {
+        CustomerDto current = balances.merge(userEmail, convertToDto(customer));
+        BigDecimal totalDue = current.getTotalDue();
+        if (totalDue.compareTo(BigDecimal.ZERO) > 0) {
+            throw new RuntimeException("Cannot delete customer with outstanding balance: " + totalDue);
         }
-
-        customerRepository.deleteById(id);
+        return current;
     }
 
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public List<CustomerDto> searchCustomers(String userEmail, String query) {
         if (query == null || query.trim().isEmpty()) {
             return getAllCustomers(userEmail);
         }
-        return customerRepository.findByUserEmailAndNameContainingIgnoreCaseOrMobileContaining(userEmail, query.trim(), query.trim())
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            return balances.merge(userEmail, workingSet.searchCustomers(query.trim()));
+        }
+        return balances.merge(userEmail, customerRepository.findByUserEmailAndNameContainingIgnoreCaseOrMobileContaining(userEmail, query.trim(), query.trim())
                 .stream()
                 .map(this::convertToDto)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
     }
 
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public List<CustomerDto> getCustomersByCategory(String userEmail, String category) {
         if (category == null || category.trim().isEmpty()) {
             return getAllCustomers(userEmail);
         }
-        return customerRepository.findByUserEmailAndCategory(userEmail, category.trim())
+        Integer categoryId = categoryCatalog.findId(category);
+        if (categoryId == null) {
+            return new ArrayList<>();
+        }
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            return balances.merge(userEmail, workingSet.getCustomersByCategory(categoryId));
+        }
+        return balances.merge(userEmail, customerRepository.findByUserEmailAndCategoryId(userEmail, categoryId)
                 .stream()
                 .map(this::convertToDto)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
     }
 
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public List<CustomerDto> getActiveCustomers(String userEmail) {
-        return customerRepository.findByUserEmailAndIsActiveTrue(userEmail)
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            return balances.merge(userEmail, workingSet.getActiveCustomers());
+        }
+        return balances.merge(userEmail, customerRepository.findByUserEmailAndIsActiveTrue(userEmail)
                 .stream()
                 .map(this::convertToDto)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
     }
 
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public List<CustomerDto> getCustomersWithOutstandingBalance(String userEmail) {
-        return customerRepository.findByUserEmailAndTotalDueGreaterThan(userEmail, BigDecimal.ZERO)
-                .stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        List<CustomerDto> customers;
+        if (workingSet != null) {
+            customers = workingSet.getCustomersWithTotalDueAbove(BigDecimal.ZERO);
+        } else {
+            customers = customerRepository.findByUserEmailAndTotalDueGreaterThan(userEmail, BigDecimal.ZERO)
+                    .stream()
+                    .map(this::convertToDto)
+                    .collect(Collectors.toList());
+        }
+        return balances.mergeFiltered(userEmail, customers,
+                c -> c.getTotalDue().compareTo(BigDecimal.ZERO) > 0,
+                ids -> loadCustomers(userEmail, workingSet, ids));
     }
 
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public BigDecimal getTotalOutstandingBalance(String userEmail) {
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (balances.hasPending(userEmail)) {
+            // Unflushed balance changes: add up the merged balances instead
+            return getActiveCustomers(userEmail).stream()
+                    .map(CustomerDto::getTotalDue)
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+        }
+        if (workingSet != null) {
+            return workingSet.getTotalOutstandingBalance();
+        }
         BigDecimal total = customerRepository.getTotalOutstandingBalanceByUser(userEmail);
         return total != null ? total : BigDecimal.ZERO;
     }
 
+    // A relative change, so losing a version race just means running it again on the fresh balance
+    @Transactional(propagation = Propagation.SUPPORTS)
     public CustomerDto updateCustomerBalance(String userEmail, String customerId, BigDecimal amountChange) {
         if (customerId == null || customerId.trim().isEmpty()) {
             throw new RuntimeException("Customer ID cannot be null or empty");
@@ -170,44 +347,111 @@ public class CustomerService {
         if (amountChange == null) {
             throw new RuntimeException("Amount change cannot be null");
         }
+        cascadingDeletes.checkNotDeleting(customerId);
 
-        Customer customer = customerRepository.findByIdAndUserEmail(customerId, userEmail)
-                .orElseThrow(() -> new RuntimeException("Customer not found"));
+        if (balances.isEnabled()) {
+            return customerLocks.withCustomerLock(customerId, () -> writeBehind(userEmail, customerId, amountChange));
+        }
 
-        BigDecimal currentBalance = customer.getTotalDue() != null ? customer.getTotalDue() : BigDecimal.ZERO;
-        customer.setTotalDue(currentBalance.add(amountChange));
-        customer.setLastTransactionDate(LocalDate.now());
+        return customerLocks.withCustomerLock(customerId, () -> optimisticRetry.execute(() -> {
+            Customer customer = customerRepository.findByIdAndUserEmail(customerId, userEmail)
+                    .orElseThrow(() -> new RuntimeException("Customer not found"));
+            Map<String, Object> before = AuditSnapshots.of(customer);
 
-        Customer savedCustomer = customerRepository.save(customer);
-        return convertToDto(savedCustomer);
+            BigDecimal currentBalance = customer.getTotalDue() != null ? customer.getTotalDue() : BigDecimal.ZERO;
+            customer.setTotalDue(currentBalance.add(amountChange));
+            customer.setLastTransactionDate(LocalDate.now());
+
+            Customer savedCustomer = customerRepository.saveAndFlush(customer);
+            changes.balanceChanged(userEmail, savedCustomer, before, AuditJournal.UPDATE, amountChange,
+                    CustomerLedger.ADJUSTMENT, null);
+            return convertToDto(savedCustomer);
+        }));
+    }
+
+    // The journal row goes in with a transaction of its own when the caller has none
+    private CustomerDto writeBehind(String userEmail, String customerId, BigDecimal amountChange) {
+        return optimisticRetry.execute(() -> {
+            Customer customer = customerRepository.findByIdAndUserEmail(customerId, userEmail)
+                    .orElseThrow(() -> new RuntimeException("Customer not found"));
+            balances.append(userEmail, customerId, amountChange, LocalDate.now());
+            changes.balanceAppended(userEmail, customer, amountChange, CustomerLedger.ADJUSTMENT, null);
+            CustomerDto dto = balances.merge(userEmail, convertToDto(customer));
+            dto.setTotalDue(dto.getTotalDue().add(amountChange));
+            if (dto.getLastTransactionDate() == null || LocalDate.now().isAfter(dto.getLastTransactionDate())) {
+                dto.setLastTransactionDate(LocalDate.now());
+            }
+            return dto;
+        });
     }
 
     public CustomerDto updateCustomerTotalDue(String userEmail, String customerId, BigDecimal newTotalDue) {
+        return updateCustomerTotalDue(userEmail, customerId, newTotalDue, null);
+    }
+
+    // Serialized with the other balance changes of the customer; with If-Match a concurrent change still
+    // fails the version check, without it the new total simply wins
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public CustomerDto updateCustomerTotalDue(String userEmail, String customerId, BigDecimal newTotalDue, Long expectedVersion) {
         if (customerId == null || customerId.trim().isEmpty()) {
             throw new RuntimeException("Customer ID cannot be null or empty");
         }
         if (newTotalDue == null) {
             throw new RuntimeException("Total due amount cannot be null");
         }
-
-        Customer customer = customerRepository.findByIdAndUserEmail(customerId, userEmail)
-                .orElseThrow(() -> new RuntimeException("Customer not found"));
-
-        customer.setTotalDue(newTotalDue);
-        customer.setLastTransactionDate(LocalDate.now());
-
-        Customer savedCustomer = customerRepository.save(customer);
-        return convertToDto(savedCustomer);
+        cascadingDeletes.checkNotDeleting(customerId);
+
+        // Overwriting the balance, so pending changes have to be in the row first. Flushed under the
+        // customer lock, so no change can be appended between the flush and the overwrite.
+        return customerLocks.withCustomerLock(customerId, () -> {
+            balances.flushCustomer(userEmail, customerId);
+            return optimisticRetry.execute(() -> {
+                Customer customer = customerRepository.findByIdAndUserEmail(customerId, userEmail)
+                        .orElseThrow(() -> new RuntimeException("Customer not found"));
+
+                VersionMismatchException.check(Customer.class, customerId, customer.getVersion(), expectedVersion);
+                Map<String, Object> before = AuditSnapshots.of(customer);
+
+                BigDecimal balanceChange = newTotalDue.subtract(customer.getTotalDue() != null ? customer.getTotalDue() : BigDecimal.ZERO);
+                customer.setTotalDue(newTotalDue);
+                customer.setLastTransactionDate(LocalDate.now());
+
+                Customer savedCustomer = customerRepository.saveAndFlush(customer);
+                changes.balanceChanged(userEmail, savedCustomer, before, AuditJournal.UPDATE, balanceChange,
+                        CustomerLedger.SET, null);
+                return balances.merge(userEmail, convertToDto(savedCustomer));
+            });
+        });
     }
 
     public CustomerDto patchCustomer(String userEmail, String customerId, CustomerDto customerDto) {
+        return patchCustomer(userEmail, customerId, customerDto, null);
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public CustomerDto patchCustomer(String userEmail, String customerId, CustomerDto customerDto, Long expectedVersion) {
         if (customerId == null || customerId.trim().isEmpty()) {
             throw new RuntimeException("Customer ID cannot be null or empty");
         }
+        cascadingDeletes.checkNotDeleting(customerId);
+        if (customerDto.getTotalDue() == null) {
+            return customerLocks.withCustomerLock(customerId, () -> new TransactionTemplate(transactionManager)
+                    .execute(status -> applyPatch(userEmail, customerId, customerDto, expectedVersion)));
+        }
+        return customerLocks.withCustomerLock(customerId, () -> {
+            balances.flushCustomer(userEmail, customerId);
+            return optimisticRetry.execute(() -> applyPatch(userEmail, customerId, customerDto, expectedVersion));
+        });
+    }
 
+    private CustomerDto applyPatch(String userEmail, String customerId, CustomerDto customerDto, Long expectedVersion) {
         Customer customer = customerRepository.findByIdAndUserEmail(customerId, userEmail)
                 .orElseThrow(() -> new RuntimeException("Customer not found"));
 
+        VersionMismatchException.check(Customer.class, customerId, customer.getVersion(), expectedVersion);
+        Map<String, Object> before = AuditSnapshots.of(customer);
+        CategoryStats.State counted = CategoryStats.stateOf(balances.merge(userEmail, convertToDto(customer)));
+
         // Partial update - only update non-null fields
         if (customerDto.getName() != null) {
             customer.setName(customerDto.getName());
@@ -219,14 +463,19 @@ public class CustomerService {
             customer.setAddress(customerDto.getAddress());
         }
         if (customerDto.getCategory() != null) {
-            customer.setCategory(customerDto.getCategory());
+            customer.setCategoryId(categoryCatalog.idFor(customerDto.getCategory()));
         }
         if (customerDto.getNotes() != null) {
             customer.setNotes(customerDto.getNotes());
         }
+        BigDecimal balanceChange = null;
         if (customerDto.getTotalDue() != null) {
+            balanceChange = customerDto.getTotalDue().subtract(customer.getTotalDue() != null ? customer.getTotalDue() : BigDecimal.ZERO);
             customer.setTotalDue(customerDto.getTotalDue());
         }
+        if (customerDto.getCreditLimit() != null) {
+            customer.setCreditLimit(customerDto.getCreditLimit());
+        }
         if (customerDto.getLastTransactionDate() != null) {
             customer.setLastTransactionDate(customerDto.getLastTransactionDate());
         }
@@ -235,31 +484,118 @@ public class CustomerService {
         }
 
         customer.setLastTransactionDate(LocalDate.now()); // Always update last transaction date
-        Customer savedCustomer = customerRepository.save(customer);
-        return convertToDto(savedCustomer);
+        Customer savedCustomer = customerRepository.saveAndFlush(customer);
+        CustomerDto updated = balances.merge(userEmail, convertToDto(savedCustomer));
+        changes.customerEdited(userEmail, savedCustomer, before, balanceChange, counted, CategoryStats.stateOf(updated));
+        return updated;
+    }
+
+    // asOf null means today
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public BalanceAsOfDto getBalanceAsOf(String userEmail, String customerId, LocalDate asOf) {
+        CustomerDto customer = getCustomerById(userEmail, customerId);
+        if (customer == null) {
+            return null;
+        }
+        return ledger.balanceAsOf(customerId, asOf != null ? asOf : LocalDate.now(), customer::getTotalDue);
     }
 
+    /**
+     * The customer with one page of its transactions, its pending totals and its latest payments, for the
+     * customer screen. A fixed number of statements on one connection however long the history is: the
+     * customer, the page, both totals in one aggregate, the payments, and the opening balance if anything
+     * of the shop is archived. With the working set loaded only the payments and opening balance are read.
+     */
+    @Transactional(readOnly = true)
+    public CustomerDetailDto getCustomerDetail(String userEmail, String customerId, int page, int size, int payments) {
+        CustomerDto customer = getCustomerById(userEmail, customerId);
+        if (customer == null) {
+            return null;
+        }
+        CustomerDetailDto detail = new CustomerDetailDto();
+        detail.setCustomer(customer);
+        Slice<TransactionDto> transactions = transactionService.getCustomerTransactionPage(userEmail, customerId, page, size);
+        detail.setTransactions(transactions.getContent());
+        detail.setPage(page);
+        detail.setSize(size);
+        detail.setHasMoreTransactions(transactions.hasNext());
+        transactionService.addCustomerTotals(userEmail, customerId, detail);
+        Slice<PaymentRecordDto> recent = paymentService.getRecentPayments(userEmail, customerId, payments);
+        detail.setPayments(recent.getContent());
+        detail.setHasMorePayments(recent.hasNext());
+        CustomerOpeningBalance opening = archive.openingBalance(userEmail, customerId);
+        if (opening != null) {
+            detail.setArchivedBalance(opening.getBalance());
+            detail.setArchivedTransactions(opening.getTransactionCount());
+            detail.setArchivedThrough(opening.getArchivedThrough());
+        }
+        return detail;
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public List<CustomerDto> getCustomersByOutstandingBalanceRange(String userEmail, BigDecimal minAmount, BigDecimal maxAmount) {
         if (minAmount == null)
             minAmount = BigDecimal.ZERO;
         if (maxAmount == null)
             maxAmount = new BigDecimal("999999999.99");
 
-        return customerRepository.findByUserEmailAndTotalDueBetween(userEmail, minAmount, maxAmount)
-                .stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        List<CustomerDto> customers;
+        if (workingSet != null) {
+            customers = workingSet.getCustomersWithTotalDueBetween(minAmount, maxAmount);
+        } else {
+            customers = customerRepository.findByUserEmailAndTotalDueBetween(userEmail, minAmount, maxAmount)
+                    .stream()
+                    .map(this::convertToDto)
+                    .collect(Collectors.toList());
+        }
+        BigDecimal min = minAmount;
+        BigDecimal max = maxAmount;
+        return balances.mergeFiltered(userEmail, customers,
+                c -> c.getTotalDue().compareTo(min) >= 0 && c.getTotalDue().compareTo(max) <= 0,
+                ids -> loadCustomers(userEmail, workingSet, ids));
     }
 
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public List<CustomerDto> getCustomersByLastTransactionDate(String userEmail, LocalDate startDate, LocalDate endDate) {
         if (startDate == null || endDate == null) {
             throw new RuntimeException("Start date and end date cannot be null");
         }
 
-        return customerRepository.findByUserEmailAndLastTransactionDateBetween(userEmail, startDate, endDate)
-                .stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        List<CustomerDto> customers;
+        if (workingSet != null) {
+            customers = workingSet.getCustomersByLastTransactionDate(startDate, endDate);
+        } else {
+            customers = customerRepository.findByUserEmailAndLastTransactionDateBetween(userEmail, startDate, endDate)
+                    .stream()
+                    .map(this::convertToDto)
+                    .collect(Collectors.toList());
+        }
+        return balances.mergeFiltered(userEmail, customers,
+                c -> c.getLastTransactionDate() != null && !c.getLastTransactionDate().isBefore(startDate)
+                        && !c.getLastTransactionDate().isAfter(endDate),
+                ids -> loadCustomers(userEmail, workingSet, ids));
+    }
+
+    // Customers that have unflushed balance changes, for re-checking balance filters
+    private List<CustomerDto> loadCustomers(String userEmail, TenantWorkingSet workingSet, Collection<String> ids) {
+        List<CustomerDto> customers = new ArrayList<>();
+        if (workingSet != null) {
+            for (String id : ids) {
+                CustomerDto customer = workingSet.getCustomer(id);
+                if (customer != null) {
+                    customers.add(customer);
+                }
+            }
+            return customers;
+        }
+        for (Customer customer : customerRepository.findAllById(ids)) {
+            if (userEmail.equals(customer.getUserEmail())) {
+                customers.add(convertToDto(customer));
+            }
+        }
+        return customers;
     }
 
     private CustomerDto convertToDto(Customer customer) {
@@ -272,11 +608,14 @@ public class CustomerService {
         dto.setName(customer.getName());
         dto.setMobile(customer.getMobile());
         dto.setAddress(customer.getAddress());
-        dto.setCategory(customer.getCategory());
+        dto.setCategoryId(customer.getCategoryId());
+        dto.setCategory(categoryCatalog.nameOf(customer.getCategoryId()));
         dto.setNotes(customer.getNotes());
         dto.setTotalDue(customer.getTotalDue() != null ? customer.getTotalDue() : BigDecimal.ZERO);
+        dto.setCreditLimit(customer.getCreditLimit());
         dto.setLastTransactionDate(customer.getLastTransactionDate());
         dto.setIsActive(customer.getIsActive() != null ? customer.getIsActive() : true);
+        dto.setVersion(customer.getVersion());
         return dto;
     }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package com.shop.service;
+
+import com.shop.datasource.ShardRoutingDataSource;
+import com.shop.datasource.TenantContext;
+import com.shop.settings.SettingsService;
+import com.shop.sync.ChangeFeed;
+import com.shop.workingset.TenantWorkingSetManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives transactions written before they had a due date one, the transaction date plus the
+ * {@code default_payment_terms} setting, so the overdue index sees them. Runs once at startup,
+ * {@value #CHUNK_SIZE} rows per transaction; once everything has a due date it costs one scan per shard.
+ */
+@Component
+public class DueDateBackfill {
+
+    private static final Logger log = LoggerFactory.getLogger(DueDateBackfill.class);
+
+    private static final int CHUNK_SIZE = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private SettingsService settingsService;
+
+    @Autowired
+    private TenantWorkingSetManager workingSets;
+
+    @Autowired
+    private ChangeFeed changeFeed;
+
+    @Autowired
+    private ObjectProvider<ShardRoutingDataSource> shardRouting;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        int terms = settingsService.current().getDefaultPaymentTerms();
+        ShardRoutingDataSource routing = shardRouting.getIfAvailable();
+        int shards = routing != null ? routing.getDirectory().getShardCount() : 1;
+        long filled = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            filled += routing != null ? TenantContext.callOnShard(shard, () -> fill(terms)) : fill(terms);
+        }
+        if (filled > 0) {
+            // Working sets loaded meanwhile hold the rows without their due dates
+            workingSets.invalidateAll();
+            log.info("Set the due date of {} transactions to their date plus {} days", filled, terms);
+        }
+    }
+
+    private long fill(int terms) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        long filled = 0;
+        while (true) {
+            Integer rows = template.execute(status -> {
+                Map<String, List<String>> idsByTenant = new HashMap<>();
+                List<Object[]> chunk = jdbcTemplate.query("SELECT id, date, user_email FROM transactions WHERE due_date IS NULL LIMIT ?",
+                        (rs, i) -> {
+                            idsByTenant.computeIfAbsent(rs.getString(3), t -> new ArrayList<>()).add(rs.getString(1));
+                            return new Object[]{Date.valueOf(rs.getDate(2).toLocalDate().plusDays(terms)), rs.getString(1)};
+                        }, CHUNK_SIZE);
+                if (!chunk.isEmpty()) {
+                    jdbcTemplate.batchUpdate("UPDATE transactions SET due_date = ? WHERE id = ? AND due_date IS NULL", chunk);
+                    idsByTenant.forEach(changeFeed::transactionsChanged);
+                }
+                return chunk.size();
+            });
+            if (rows == null || rows == 0) {
+                return filled;
+            }
+            filled += rows;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.shop.service;
+
+import com.shop.audit.AuditJournal;
+import com.shop.audit.AuditSnapshots;
+import com.shop.category.CategoryStats;
+import com.shop.entity.Customer;
+import com.shop.entity.Transaction;
+import com.shop.ledger.CustomerLedger;
+import com.shop.sync.ChangeFeed;
+import com.shop.workingset.TenantWorkingSetManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything that has to follow a write to a customer or transaction row: the in-memory working set,
+ * the sync change feed, the audit trail and, for customers, the balance ledger and the category
+ * counters. Each write site calls one method here once its row is written, inside the same transaction,
+ * so a new consumer of these changes is added in this class rather than at every site.
+ * <p>
+ * The stores each defer their own work to the transaction's completion (see {@link ChangeFeed},
+ * {@link AuditJournal}, {@link CategoryStats}), so calling them here rather than from a
+ * synchronization of our own keeps the order they already rely on.
+ */
+@Component
+public class EntityChanges {
+
+    @Autowired
+    private TenantWorkingSetManager workingSets;
+
+    @Autowired
+    private ChangeFeed changeFeed;
+
+    @Autowired
+    private AuditJournal audit;
+
+    @Autowired
+    private CustomerLedger ledger;
+
+    @Autowired
+    private CategoryStats categoryStats;
+
+    /** A customer was inserted; state is what it counts for in its category. */
+    public void customerCreated(String tenant, Customer customer, CategoryStats.State state) {
+        ledger.opened(tenant, customer.getId(), customer.getTotalDue());
+        customerWritten(tenant, customer, AuditJournal.CREATE, null);
+        categoryStats.changed(tenant, null, state);
+    }
+
+    /** {@link #customerCreated} for a batch inserted behind Hibernate, which keeps no working set copy. */
+    public void customersImported(String tenant, List<Customer> customers) {
+        ledger.openedAll(tenant, customers);
+        changeFeed.customersChanged(tenant, customers.stream().map(Customer::getId).toList());
+        for (Customer customer : customers) {
+            categoryStats.changed(tenant, null,
+                    new CategoryStats.State(customer.getCategoryId(), customer.getTotalDue(), customer.getIsActive()));
+            audit.record(tenant, AuditJournal.CUSTOMER, customer.getId(), AuditJournal.CREATE, null,
+                    AuditSnapshots.of(customer));
+        }
+    }
+
+    /**
+     * A customer's fields were edited. balanceSet is how much a new total due moved the balance (null when
+     * it was not set); counted and now are what the customer counted for in its category before and after.
+     */
+    public void customerEdited(String tenant, Customer saved, Map<String, Object> before, BigDecimal balanceSet,
+                               CategoryStats.State counted, CategoryStats.State now) {
+        ledger.record(tenant, saved.getId(), balanceSet, CustomerLedger.SET, null);
+        customerWritten(tenant, saved, AuditJournal.UPDATE, before);
+        categoryStats.changed(tenant, counted, now);
+    }
+
+    /** A customer row was deleted; counted is what it counted for in its category. */
+    public void customerDeleted(String tenant, Customer customer, CategoryStats.State counted) {
+        categoryStats.changed(tenant, counted, null);
+        audit.record(tenant, AuditJournal.CUSTOMER, customer.getId(), AuditJournal.DELETE, AuditSnapshots.of(customer), null);
+        workingSets.customerDeleted(tenant, customer.getId());
+        changeFeed.customerDeleted(tenant, customer.getId());
+    }
+
+    /**
+     * A balance change was written to the customer row. reason is the {@link CustomerLedger} reason it is
+     * booked under and action the audit action it is recorded as.
+     */
+    public void balanceChanged(String tenant, Customer saved, Map<String, Object> before, String action,
+                               BigDecimal delta, String reason, String transactionId) {
+        ledger.record(tenant, saved.getId(), delta, reason, transactionId);
+        categoryStats.balanceChanged(saved, delta);
+        customerWritten(tenant, saved, action, before);
+    }
+
+    /**
+     * A balance change was appended to the write-behind journal. It is booked and counted now, when it
+     * becomes visible; the row write follows with {@link #balanceFlushed}.
+     */
+    public void balanceAppended(String tenant, Customer customer, BigDecimal delta, String reason, String transactionId) {
+        ledger.record(tenant, customer.getId(), delta, reason, transactionId);
+        categoryStats.balanceChanged(customer, delta);
+    }
+
+    /** Pending write-behind changes were applied to the customer row. */
+    public void balanceFlushed(String tenant, Customer saved, Map<String, Object> before) {
+        customerWritten(tenant, saved, AuditJournal.BALANCE, before);
+    }
+
+    /** The reconciler put a drifted balance back in line with the ledger, so nothing is booked. */
+    public void balanceRepaired(String tenant, Customer saved, Map<String, Object> before, BigDecimal delta) {
+        categoryStats.balanceChanged(saved, delta);
+        customerWritten(tenant, saved, AuditJournal.UPDATE, before);
+    }
+
+    /** A transaction was inserted or updated; before is its audit snapshot beforehand, null for an insert. */
+    public void transactionSaved(String tenant, Transaction saved, String action, Map<String, Object> before) {
+        workingSets.transactionSaved(tenant, saved);
+        changeFeed.transactionChanged(tenant, saved.getId());
+        audit.record(tenant, AuditJournal.TRANSACTION, saved.getId(), action, before, AuditSnapshots.of(saved));
+    }
+
+    /** A transaction row was deleted. */
+    public void transactionDeleted(String tenant, Transaction transaction) {
+        audit.record(tenant, AuditJournal.TRANSACTION, transaction.getId(), AuditJournal.DELETE,
+                AuditSnapshots.of(transaction), null);
+        workingSets.transactionDeleted(tenant, transaction.getId());
+        changeFeed.transactionDeleted(tenant, transaction.getId());
+    }
+
+    private void customerWritten(String tenant, Customer saved, String action, Map<String, Object> before) {
+        workingSets.customerSaved(tenant, saved);
+        changeFeed.customerChanged(tenant, saved.getId());
+        audit.record(tenant, AuditJournal.CUSTOMER, saved.getId(), action, before, AuditSnapshots.of(saved));
+    }
+}
@@ -0,0 +1,73 @@
+package com.shop.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Runs a read-modify-write in its own transaction and, when the commit loses a version race
+ * (another request updated the same customer in between), runs it again on fresh data.
+ * Inside a caller's transaction the work just joins it: only the outermost transaction can be retried.
+ */
+@Component
+public class OptimisticRetry {
+
+    private static final Logger log = LoggerFactory.getLogger(OptimisticRetry.class);
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${concurrency.optimistic-retry.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${concurrency.optimistic-retry.backoff-ms:20}")
+    private long backoffMs;
+
+    public <T> T execute(Supplier<T> work) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return work.get();
+        }
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return template.execute(status -> work.get());
+            } catch (VersionMismatchException e) {
+                throw e;
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= maxAttempts) {
+                    log.warn("Giving up after {} attempts: {}", attempt, e.getMessage());
+                    throw e;
+                }
+                log.debug("Version conflict on attempt {}, retrying: {}", attempt, e.getMessage());
+                backoff(attempt);
+            }
+        }
+    }
+
+    public void run(Runnable work) {
+        execute(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    // Exponential with full jitter, so requests that collided spread out instead of colliding again
+    private void backoff(int attempt) {
+        long ceiling = backoffMs << Math.min(attempt - 1, 10);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying", e);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.shop.service;
+
+import com.shop.archive.TransactionArchive;
+import com.shop.audit.AuditJournal;
+import com.shop.audit.AuditSnapshots;
+import com.shop.dto.PaymentRecordDto;
+import com.shop.dto.PaymentRequestDto;
+import com.shop.dto.TransactionDto;
+import com.shop.dto.TransactionPaymentDto;
+import com.shop.entity.Customer;
+import com.shop.entity.PaymentRecord;
+import com.shop.entity.Transaction;
+import com.shop.entity.Transaction.PaymentMethod;
+import com.shop.entity.Transaction.TransactionStatus;
+import com.shop.entity.Transaction.TransactionType;
+import com.shop.repository.CustomerRepository;
+import com.shop.repository.PaymentRecordRepository;
+import com.shop.repository.TransactionPaymentRepository;
+import com.shop.repository.TransactionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Records customer payments and spreads them over the customer's pending credits. A lump sum (or a
+ * payment without explicit allocations) pays the oldest credits first; a partial payment applies the
+ * given amounts to the given credits. Whatever is left over is kept as an advance.
+ * <p>
+ * A payment is one database transaction with a fixed number of statements however many credits it
+ * covers: the pending credits and what earlier payments already covered of them are read with one
+ * query each, the allocation rows go in as one JDBC batch, fully covered credits are completed with one
+ * bulk UPDATE, and the payment itself is booked as a COMPLETED PAYMENT transaction, which moves the
+ * balance through the usual path (ledger, write-behind, audit).
+ */
+@Service
+@Transactional
+public class PaymentService {
+
+    private static final String INSERT_ALLOCATION = "INSERT INTO transaction_payments "
+            + "(transaction_id, payment_record_id, amount_applied, created_at) VALUES (?, ?, ?, ?)";
+
+    @Autowired
+    private PaymentRecordRepository paymentRecordRepository;
+
+    @Autowired
+    private TransactionPaymentRepository transactionPaymentRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionArchive archive;
+
+    @Autowired
+    private CustomerLockManager customerLocks;
+
+    @Autowired
+    private OptimisticRetry optimisticRetry;
+
+    @Autowired
+    private CascadingDeletes cascadingDeletes;
+
+    @Autowired
+    private EntityChanges changes;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Throws IllegalArgumentException for a request that can never succeed: unknown customer or bad allocations
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public PaymentRecordDto recordPayment(String userEmail, PaymentRequestDto request) {
+        cascadingDeletes.checkNotDeleting(request.getCustomerId());
+        if (!customerRepository.existsByIdAndUserEmail(request.getCustomerId(), userEmail)) {
+            throw new IllegalArgumentException("Customer not found or access denied");
+        }
+        return customerLocks.withCustomerLock(request.getCustomerId(), () -> optimisticRetry.execute(() -> {
+            // Booked first, and it checks the customer belongs to the user. Loading the customer (and with it a
+            // reference to its user, joined by email) before the user itself leaves the user without its email.
+            transactionService.createTransaction(userEmail, paymentTransaction(request));
+            Customer customer = customerRepository.findByIdAndUserEmail(request.getCustomerId(), userEmail)
+                    .orElseThrow(() -> new RuntimeException("Customer not found or access denied"));
+
+            // Oldest first; only credits are invoices a payment can settle
+            Map<String, Transaction> pending = new LinkedHashMap<>();
+            for (Transaction t : transactionRepository.findPendingTransactionsByCustomerAndUser(userEmail, customer.getId())) {
+                if (t.getTransactionType() == TransactionType.CREDIT) {
+                    pending.put(t.getId(), t);
+                }
+            }
+            Map<String, BigDecimal> outstanding = new HashMap<>();
+            pending.forEach((id, t) -> outstanding.put(id, t.getAmount()));
+            for (TransactionPaymentRepository.Applied applied :
+                    transactionPaymentRepository.sumAppliedToPendingTransactions(customer.getId())) {
+                outstanding.computeIfPresent(applied.getTransactionId(), (id, left) -> left.subtract(applied.getAmountApplied()));
+            }
+
+            boolean explicit = !Boolean.TRUE.equals(request.getIsLumpSum())
+                    && request.getTransactionPayments() != null && !request.getTransactionPayments().isEmpty();
+            Map<String, BigDecimal> allocation = explicit
+                    ? allocateAsRequested(request, pending, outstanding)
+                    : allocateOldestFirst(request.getAmount(), pending, outstanding);
+
+            PaymentRecord record = new PaymentRecord();
+            record.setCustomer(customer);
+            record.setPaymentDate(request.getPaymentDate());
+            record.setAmount(request.getAmount());
+            record.setPaymentMethod(request.getPaymentMethod());
+            record.setReferenceNumber(request.getReferenceNumber());
+            record.setNotes(request.getNotes());
+            PaymentRecord savedRecord = paymentRecordRepository.save(record);
+
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            List<Object[]> rows = new ArrayList<>(allocation.size());
+            List<String> settled = new ArrayList<>();
+            allocation.forEach((transactionId, amount) -> {
+                rows.add(new Object[]{transactionId, savedRecord.getId(), amount, now});
+                if (amount.compareTo(outstanding.get(transactionId)) == 0) {
+                    settled.add(transactionId);
+                }
+            });
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_ALLOCATION, rows);
+            }
+
+            if (!settled.isEmpty()) {
+                completeSettled(userEmail, customer.getId(), settled, pending);
+            }
+
+            PaymentRecordDto dto = convertToDto(savedRecord, customer);
+            dto.setTransactionPayments(allocation.entrySet().stream()
+                    .map(e -> new TransactionPaymentDto(e.getKey(), e.getValue()))
+                    .collect(Collectors.toList()));
+            dto.setUnallocatedAmount(request.getAmount().subtract(total(allocation)));
+            return dto;
+        }));
+    }
+
+    @Transactional(readOnly = true)
+    public List<PaymentRecordDto> getPayments(String userEmail, String customerId, LocalDate startDate, LocalDate endDate) {
+        return paymentRecordRepository.findByUserEmail(userEmail, customerId, startDate, endDate)
+                .stream()
+                .map(p -> convertToDto(p, p.getCustomer()))
+                .collect(Collectors.toList());
+    }
+
+    // The customer's latest payments, without their allocations
+    @Transactional(readOnly = true)
+    public Slice<PaymentRecordDto> getRecentPayments(String userEmail, String customerId, int limit) {
+        return paymentRecordRepository.findRecentByCustomer(userEmail, customerId, PageRequest.of(0, limit))
+                .map(p -> convertToDto(p, p.getCustomer()));
+    }
+
+    @Transactional(readOnly = true)
+    public PaymentRecordDto getPaymentById(String userEmail, Long id) {
+        PaymentRecord record = paymentRecordRepository.findByIdAndUserEmail(id, userEmail).orElse(null);
+        if (record == null) {
+            return null;
+        }
+        PaymentRecordDto dto = convertToDto(record, record.getCustomer());
+        Map<String, BigDecimal> allocation = new LinkedHashMap<>();
+        for (TransactionPaymentRepository.Applied applied : transactionPaymentRepository.findByPaymentRecordId(id)) {
+            allocation.merge(applied.getTransactionId(), applied.getAmountApplied(), BigDecimal::add);
+        }
+        archive.addAllocations(userEmail, id, allocation);
+        dto.setTransactionPayments(allocation.entrySet().stream()
+                .map(e -> new TransactionPaymentDto(e.getKey(), e.getValue()))
+                .collect(Collectors.toList()));
+        dto.setUnallocatedAmount(record.getAmount().subtract(total(allocation)));
+        return dto;
+    }
+
+    private Map<String, BigDecimal> allocateOldestFirst(BigDecimal amount, Map<String, Transaction> pending,
+                                                        Map<String, BigDecimal> outstanding) {
+        Map<String, BigDecimal> allocation = new LinkedHashMap<>();
+        BigDecimal left = amount;
+        for (String transactionId : pending.keySet()) {
+            if (left.signum() <= 0) {
+                break;
+            }
+            BigDecimal due = outstanding.get(transactionId);
+            if (due.signum() <= 0) {
+                continue;
+            }
+            BigDecimal applied = due.min(left);
+            allocation.put(transactionId, applied);
+            left = left.subtract(applied);
+        }
+        return allocation;
+    }
+
+    private Map<String, BigDecimal> allocateAsRequested(PaymentRequestDto request, Map<String, Transaction> pending,
+                                                        Map<String, BigDecimal> outstanding) {
+        Map<String, BigDecimal> allocation = new LinkedHashMap<>();
+        for (TransactionPaymentDto requested : request.getTransactionPayments()) {
+            if (requested.getTransactionId() == null || requested.getAmountApplied() == null
+                    || requested.getAmountApplied().signum() <= 0) {
+                throw new IllegalArgumentException("Each allocation needs a transaction and a positive amount");
+            }
+            if (!pending.containsKey(requested.getTransactionId())) {
+                throw new IllegalArgumentException("Transaction " + requested.getTransactionId()
+                        + " is not a pending credit of this customer");
+            }
+            allocation.merge(requested.getTransactionId(), requested.getAmountApplied(), BigDecimal::add);
+        }
+        allocation.forEach((transactionId, amount) -> {
+            if (amount.compareTo(outstanding.get(transactionId)) > 0) {
+                throw new IllegalArgumentException("Allocation to transaction " + transactionId + " exceeds the "
+                        + outstanding.get(transactionId) + " still outstanding");
+            }
+        });
+        if (total(allocation).compareTo(request.getAmount()) > 0) {
+            throw new IllegalArgumentException("Allocations exceed the payment amount");
+        }
+        return allocation;
+    }
+
+    // One UPDATE for all fully paid credits. It also clears the persistence context, so the entities loaded
+    // above are detached afterwards and only used to refresh the working set and the audit trail.
+    private void completeSettled(String userEmail, String customerId, List<String> settled,
+                                 Map<String, Transaction> pending) {
+        Map<String, Map<String, Object>> before = new HashMap<>();
+        for (String transactionId : settled) {
+            before.put(transactionId, AuditSnapshots.of(pending.get(transactionId)));
+        }
+        LocalDateTime now = LocalDateTime.now();
+        int updated = transactionRepository.completePendingTransactions(customerId, settled, now);
+        if (updated != settled.size()) {
+            // Some credit changed status after we read it (mark-paid doesn't take the customer lock)
+            throw new OptimisticLockingFailureException("Expected to complete " + settled.size()
+                    + " transactions of customer " + customerId + " but completed " + updated);
+        }
+        for (String transactionId : settled) {
+            Transaction transaction = pending.get(transactionId);
+            transaction.setStatus(TransactionStatus.COMPLETED);
+            transaction.setVersion(transaction.getVersion() + 1);
+            transaction.setUpdatedAt(now);
+            changes.transactionSaved(userEmail, transaction, AuditJournal.UPDATE, before.get(transactionId));
+        }
+    }
+
+    // The payment as it shows up in the transaction list and the cash-received reports
+    private TransactionDto paymentTransaction(PaymentRequestDto request) {
+        TransactionDto dto = new TransactionDto();
+        dto.setCustomerId(request.getCustomerId());
+        dto.setTransactionType(TransactionType.PAYMENT);
+        dto.setAmount(request.getAmount());
+        dto.setDescription(request.getReferenceNumber() != null
+                ? "Payment received (" + request.getReferenceNumber() + ")" : "Payment received");
+        dto.setDate(request.getPaymentDate());
+        dto.setStatus(TransactionStatus.COMPLETED);
+        dto.setPaymentMethod(toPaymentMethod(request.getPaymentMethod()));
+        dto.setNotes(request.getNotes());
+        return dto;
+    }
+
+    private static PaymentMethod toPaymentMethod(String paymentMethod) {
+        if (paymentMethod == null) {
+            return PaymentMethod.CASH;
+        }
+        try {
+            return PaymentMethod.valueOf(paymentMethod.trim().toUpperCase().replace(' ', '_'));
+        } catch (IllegalArgumentException e) {
+            return PaymentMethod.OTHER;
+        }
+    }
+
+    private static BigDecimal total(Map<String, BigDecimal> allocation) {
+        return allocation.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    private PaymentRecordDto convertToDto(PaymentRecord record, Customer customer) {
+        return new PaymentRecordDto(record.getId(), customer.getId(), customer.getName(), record.getPaymentDate(),
+                record.getAmount(), record.getPaymentMethod(), record.getReferenceNumber(), record.getNotes());
+    }
+}
@@ -0,0 +1,12 @@
+package com.shop.service;
+
+/**
+ * A sync cursor can no longer be served: deletes after it were purged, or it comes from a different
+ * database. The client has to sync from scratch.
+ */
+public class SyncCursorExpiredException extends RuntimeException {
+
+    public SyncCursorExpiredException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,122 @@
+package com.shop.service;
+
+import com.shop.dto.CustomerDto;
+import com.shop.dto.SyncDto;
+import com.shop.dto.TransactionDto;
+import com.shop.sync.ChangeFeed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Delta sync for clients that keep a copy of the shop: what changed after a cursor, read from the
+ * {@link ChangeFeed}. A client that is up to date costs one primary-key read of the shop's sequence row;
+ * otherwise one range read per table along the change index, then the changed rows by id.
+ */
+@Service
+public class SyncService {
+
+    private static final String CURSOR_VERSION = "v1:";
+
+    @Autowired
+    private ChangeFeed changeFeed;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Value("${sync.page-size:500}")
+    private int pageSize;
+
+    @Value("${sync.max-page-size:2000}")
+    private int maxPageSize;
+
+    // since null means from scratch; limit null means sync.page-size
+    @Transactional(readOnly = true)
+    public SyncDto changesSince(String userEmail, String since, Integer limit) {
+        long after = decode(since);
+        int size = limit != null ? limit : pageSize;
+        if (size < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        size = Math.min(size, maxPageSize);
+
+        ChangeFeed.Head head = changeFeed.head(userEmail);
+        if (after > head.lastSeq() || after < head.purgedThrough() && after > 0) {
+            throw new SyncCursorExpiredException("The sync cursor has expired; sync again without since");
+        }
+        if (after == head.lastSeq()) {
+            return new SyncDto(encode(after));
+        }
+
+        List<ChangeFeed.Change> changes = changeFeed.changesBetween(userEmail, after, head.lastSeq(), size);
+        boolean hasMore = changes.size() > size;
+        if (hasMore) {
+            changes = changes.subList(0, size);
+        }
+        SyncDto result = new SyncDto(encode(hasMore ? changes.get(changes.size() - 1).seq() : head.lastSeq()));
+        result.setHasMore(hasMore);
+        List<String> customerIds = new ArrayList<>();
+        List<String> transactionIds = new ArrayList<>();
+        for (ChangeFeed.Change change : changes) {
+            boolean customer = ChangeFeed.CUSTOMER.equals(change.entityType());
+            if (change.deleted()) {
+                (customer ? result.getDeletedCustomers() : result.getDeletedTransactions()).add(change.entityId());
+            } else {
+                (customer ? customerIds : transactionIds).add(change.entityId());
+            }
+        }
+        result.setCustomers(inOrder(customerIds, customerService.getCustomersByIds(userEmail, customerIds),
+                CustomerDto::getId));
+        result.setTransactions(inOrder(transactionIds, transactionService.getTransactionsByIds(userEmail, transactionIds),
+                TransactionDto::getId));
+        return result;
+    }
+
+    // Rows deleted since they were numbered are missing here; their tombstones come with a later cursor
+    private static <T> List<T> inOrder(List<String> ids, List<T> rows, Function<T, String> id) {
+        Map<String, T> byId = rows.stream().collect(Collectors.toMap(id, Function.identity()));
+        List<T> ordered = new ArrayList<>(rows.size());
+        for (String key : ids) {
+            T row = byId.get(key);
+            if (row != null) {
+                ordered.add(row);
+            }
+        }
+        return ordered;
+    }
+
+    private static String encode(long seq) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((CURSOR_VERSION + seq).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static long decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            if (decoded.startsWith(CURSOR_VERSION)) {
+                long seq = Long.parseLong(decoded.substring(CURSOR_VERSION.length()));
+                if (seq >= 0) {
+                    return seq;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // not Base64, or not a number; NumberFormatException is one too
+        }
+        throw new IllegalArgumentException("Invalid sync cursor");
+    }
+}
@@ -1,23 +1,60 @@
 package com.shop.service;
 
+import com.shop.archive.TransactionArchive;
+import com.shop.audit.AuditJournal;
+import com.shop.audit.AuditSnapshots;
+import com.shop.balance.BalanceWriteBehind;
+import com.shop.dto.CustomerDetailDto;
 import com.shop.dto.TransactionDto;
+import com.shop.dto.TransactionStatusResultDto;
+import com.shop.dto.TransactionStatusUpdateDto;
 import com.shop.entity.Customer;
 import com.shop.entity.Transaction;
 import com.shop.entity.Transaction.TransactionStatus;
 import com.shop.entity.Transaction.TransactionType;
 import com.shop.entity.Transaction.PaymentMethod;
 import com.shop.entity.User;
+import com.shop.ledger.CustomerLedger;
 import com.shop.repository.CustomerRepository;
 import com.shop.repository.TransactionRepository;
 import com.shop.repository.UserRepository;
+import com.shop.settings.Settings;
+import com.shop.settings.SettingsService;
+import com.shop.workingset.TenantWorkingSet;
+import com.shop.workingset.TenantWorkingSetManager;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -25,6 +62,24 @@ import java.util.stream.Collectors;
 @Transactional
 public class TransactionService {
 
+    // Checks the limit and moves the balance in one statement; the second form also counts balance
+    // changes still waiting in the write-behind journal
+    private static final String CREDIT_WITHIN_LIMIT = "UPDATE customers SET total_due = COALESCE(total_due, 0) + ?, " +
+            "last_transaction_date = ?, updated_at = ?, version = version + 1 " +
+            "WHERE id = ? AND user_email = ? AND COALESCE(total_due, 0) + ? <= COALESCE(credit_limit, ?)";
+    private static final String CREDIT_WITHIN_LIMIT_WITH_JOURNAL = "UPDATE customers SET total_due = COALESCE(total_due, 0) + ?, " +
+            "last_transaction_date = ?, updated_at = ?, version = version + 1 " +
+            "WHERE id = ? AND user_email = ? AND COALESCE(total_due, 0) + ? + " +
+            "COALESCE((SELECT SUM(j.delta) FROM balance_journal j WHERE j.customer_id = customers.id), 0) " +
+            "<= COALESCE(credit_limit, ?)";
+
+    private static final String STATUS_ROWS = "SELECT id, customer_id, customer_name, transaction_type, amount, description, " +
+            "date, status, payment_method, notes, created_at, version, due_date FROM transactions WHERE user_email = ? AND status <> ?";
+    private static final int IN_LIST_SIZE = 1000;
+    // Open ends of a date range; DATE columns start at year 1000 in MySQL
+    private static final LocalDate FIRST_DATE = LocalDate.of(1000, 1, 1);
+    private static final LocalDate LAST_DATE = LocalDate.of(9999, 12, 31);
+
     @Autowired
     private TransactionRepository transactionRepository;
 
@@ -34,158 +89,537 @@ public class TransactionService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private TenantWorkingSetManager workingSets;
+
+    @Autowired
+    private OptimisticRetry optimisticRetry;
+
+    @Autowired
+    private BalanceWriteBehind balances;
+
+    @Autowired
+    private CustomerLockManager customerLocks;
+
+    @Autowired
+    private EntityChanges changes;
+
+    @Autowired
+    private SettingsService settingsService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CascadingDeletes cascadingDeletes;
+
+    @Autowired
+    private TransactionArchive archive;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${transactions.bulk-status.max-rows:10000}")
+    private int bulkStatusMaxRows;
+
+    // Reads that the in-memory working set can answer use SUPPORTS (see CustomerService)
+
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public List<TransactionDto> getAllTransactions(String userEmail) {
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            return workingSet.getAllTransactions();
+        }
         return transactionRepository.findByUserEmailOrderByDateDescCreatedAtDesc(userEmail)
                 .stream()
                 .map(this::convertToDto)
                 .collect(Collectors.toList());
     }
 
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public TransactionDto getTransactionById(String userEmail, String id) {
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            TransactionDto transaction = workingSet.getTransaction(id);
+            return transaction != null ? transaction : archive.findById(userEmail, id);
+        }
         Optional<Transaction> transaction = transactionRepository.findByIdAndUserEmail(id, userEmail);
-        return transaction.map(this::convertToDto).orElse(null);
+        return transaction.map(this::convertToDto).orElseGet(() -> archive.findById(userEmail, id));
     }
 
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public List<TransactionDto> getTransactionsByCustomer(String userEmail, String customerId) {
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            return workingSet.getTransactionsByCustomer(customerId);
+        }
         return transactionRepository.findByUserEmailAndCustomerIdOrderByDateDesc(userEmail, customerId)
                 .stream()
                 .map(this::convertToDto)
                 .collect(Collectors.toList());
     }
 
+    // In no particular order; ids of other shops and deleted or archived transactions are left out
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public List<TransactionDto> getTransactionsByIds(String userEmail, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return transactionRepository.findByUserEmailAndIdIn(userEmail, ids)
+                .stream()
+                .map(this::convertToDto)
+                .collect(Collectors.toList());
+    }
+
+    // One page of the customer's transactions, newest first; archived ones are left to getTransactionsInPeriod
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public Slice<TransactionDto> getCustomerTransactionPage(String userEmail, String customerId, int page, int size) {
+        Pageable pageable = PageRequest.of(page, size);
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            List<TransactionDto> all = workingSet.getTransactionsByCustomer(customerId);
+            int from = (int) Math.min(pageable.getOffset(), all.size());
+            int to = Math.min(from + size, all.size());
+            return new SliceImpl<>(new ArrayList<>(all.subList(from, to)), pageable, to < all.size());
+        }
+        return transactionRepository.findByUserEmailAndCustomerIdOrderByDateDescCreatedAtDesc(userEmail, customerId, pageable)
+                .map(this::convertToDto);
+    }
+
+    // Sets the customer's pending credit and payments received, over the transactions not yet archived
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public void addCustomerTotals(String userEmail, String customerId, CustomerDetailDto detail) {
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            BigDecimal pendingCredit = BigDecimal.ZERO;
+            BigDecimal payments = BigDecimal.ZERO;
+            for (TransactionDto t : workingSet.getTransactionsByCustomer(customerId)) {
+                if (t.getTransactionType() == TransactionType.CREDIT && t.getStatus() == TransactionStatus.PENDING) {
+                    pendingCredit = pendingCredit.add(t.getAmount());
+                } else if (t.getTransactionType() == TransactionType.PAYMENT && t.getStatus() == TransactionStatus.COMPLETED) {
+                    payments = payments.add(t.getAmount());
+                }
+            }
+            detail.setPendingCredit(pendingCredit);
+            detail.setTotalPayments(payments);
+            return;
+        }
+        TransactionRepository.CustomerTotals totals = transactionRepository.getCustomerTotals(userEmail, customerId);
+        detail.setPendingCredit(totals.getPendingCredit() != null ? totals.getPendingCredit() : BigDecimal.ZERO);
+        detail.setTotalPayments(totals.getTotalPayments() != null ? totals.getTotalPayments() : BigDecimal.ZERO);
+    }
+
+    // Dated within the range, newest first, archived ones included; a null end is open, a null customer all
+    @Transactional(readOnly = true)
+    public List<TransactionDto> getTransactionsInPeriod(String userEmail, String customerId, LocalDate startDate,
+                                                        LocalDate endDate) {
+        LocalDate from = startDate != null ? startDate : FIRST_DATE;
+        LocalDate to = endDate != null ? endDate : LAST_DATE;
+        List<Transaction> hot = customerId != null
+                ? transactionRepository.findByUserEmailAndCustomerIdAndDateBetweenOrderByDateDescCreatedAtDesc(userEmail,
+                        customerId, from, to)
+                : transactionRepository.findByUserEmailAndDateBetweenOrderByDateDescCreatedAtDesc(userEmail, from, to);
+        List<TransactionDto> result = hot.stream().map(this::convertToDto).collect(Collectors.toList());
+        List<TransactionDto> archived = archive.find(userEmail, customerId, from, to);
+        if (!archived.isEmpty()) {
+            result.addAll(archived);
+            result.sort(Comparator.comparing(TransactionDto::getDate).reversed());
+        }
+        return result;
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public List<TransactionDto> getPendingTransactions(String userEmail) {
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            return workingSet.getTransactionsByStatus(TransactionStatus.PENDING);
+        }
         return transactionRepository.findByUserEmailAndStatus(userEmail, TransactionStatus.PENDING)
                 .stream()
                 .map(this::convertToDto)
                 .collect(Collectors.toList());
     }
 
+    // PENDING and due before today, most overdue first. Both paths read an index ordered by due date
+    // (idx_transactions_overdue, or the working set's), so the day rolling over needs no upkeep
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public List<TransactionDto> getOverdueTransactions(String userEmail) {
         LocalDate currentDate = LocalDate.now();
-        return transactionRepository.findByUserEmailAndStatusAndDateBefore(userEmail, TransactionStatus.PENDING, currentDate)
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            return workingSet.getOverdueTransactions(currentDate);
+        }
+        return transactionRepository.findByUserEmailAndStatusAndDueDateBeforeOrderByDueDateAsc(userEmail,
+                        TransactionStatus.PENDING, currentDate)
                 .stream()
                 .map(this::convertToDto)
                 .collect(Collectors.toList());
     }
 
-    public TransactionDto createTransaction(String userEmail, TransactionDto transactionDto) {
-        // Get user
-        User user = userRepository.findActiveUserByEmail(userEmail)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public long countOverdueTransactions(String userEmail) {
+        LocalDate currentDate = LocalDate.now();
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            return workingSet.countOverdueTransactions(currentDate);
+        }
+        return transactionRepository.countByUserEmailAndStatusAndDueDateBefore(userEmail, TransactionStatus.PENDING,
+                currentDate);
+    }
 
-        // Get customer and verify it belongs to the user
-        Customer customer = customerRepository.findByIdAndUserEmail(transactionDto.getCustomerId(), userEmail)
-                .orElseThrow(() -> new RuntimeException("Customer not found or access denied"));
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public BigDecimal getOverdueAmount(String userEmail) {
+        LocalDate currentDate = LocalDate.now();
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            return workingSet.sumOverdueAmount(currentDate);
+        }
+        BigDecimal amount = transactionRepository.getOverdueAmount(userEmail, currentDate);
+        return amount != null ? amount : BigDecimal.ZERO;
+    }
 
-        Transaction transaction = new Transaction();
-        transaction.setId(UUID.randomUUID().toString());
-        transaction.setUser(user);
-        transaction.setCustomer(customer);
-        transaction.setCustomerName(customer.getName());
-        transaction.setTransactionType(transactionDto.getTransactionType());
-        transaction.setAmount(transactionDto.getAmount());
-        transaction.setDescription(transactionDto.getDescription());
-        transaction.setDate(transactionDto.getDate() != null ? transactionDto.getDate() : LocalDate.now());
-        transaction.setStatus(transactionDto.getStatus() != null ? transactionDto.getStatus() : TransactionStatus.PENDING);
-        transaction.setPaymentMethod(transactionDto.getPaymentMethod() != null ? transactionDto.getPaymentMethod() : PaymentMethod.CASH);
-        transaction.setNotes(transactionDto.getNotes());
+    // Changes the customer's balance: serialized per customer (CustomerLockManager), and a lost version
+    // race is still retried on fresh data (see OptimisticRetry)
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public TransactionDto createTransaction(String userEmail, TransactionDto transactionDto) {
+        cascadingDeletes.checkNotDeleting(transactionDto.getCustomerId());
+        return customerLocks.withCustomerLock(transactionDto.getCustomerId(), () -> optimisticRetry.execute(() -> {
+            // Get user
+            User user = userRepository.findActiveUserByEmail(userEmail)
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+
+            // Get customer and verify it belongs to the user
+            Customer customer = customerRepository.findByIdAndUserEmail(transactionDto.getCustomerId(), userEmail)
+                    .orElseThrow(() -> new RuntimeException("Customer not found or access denied"));
+
+            Transaction transaction = new Transaction();
+            transaction.setId(UUID.randomUUID().toString());
+            transaction.setUser(user);
+            transaction.setCustomer(customer);
+            transaction.setCustomerName(customer.getName());
+            transaction.setTransactionType(transactionDto.getTransactionType());
+            transaction.setAmount(transactionDto.getAmount());
+            transaction.setDescription(transactionDto.getDescription());
+            transaction.setDate(transactionDto.getDate() != null ? transactionDto.getDate() : LocalDate.now());
+            transaction.setDueDate(transactionDto.getDueDate() != null ? transactionDto.getDueDate()
+                    : defaultDueDate(transaction.getDate()));
+            transaction.setStatus(transactionDto.getStatus() != null ? transactionDto.getStatus() : TransactionStatus.PENDING);
+            transaction.setPaymentMethod(transactionDto.getPaymentMethod() != null ? transactionDto.getPaymentMethod() : PaymentMethod.CASH);
+            transaction.setNotes(transactionDto.getNotes());
+
+            Transaction savedTransaction = transactionRepository.save(transaction);
+            changes.transactionSaved(userEmail, savedTransaction, AuditJournal.CREATE, null);
+
+            // Update customer balance based on transaction type
+            updateCustomerBalance(customer, transactionDto.getTransactionType(), transactionDto.getAmount(),
+                    savedTransaction.getId());
+
+            return convertToDto(savedTransaction);
+        }));
+    }
 
-        Transaction savedTransaction = transactionRepository.save(transaction);
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public TransactionDto updateTransaction(String userEmail, String id, TransactionDto transactionDto) {
+        return updateTransaction(userEmail, id, transactionDto, null);
+    }
 
-        // Update customer balance based on transaction type
-        updateCustomerBalance(customer, transactionDto.getTransactionType(), transactionDto.getAmount());
+    // expectedVersion comes from If-Match; null means unconditional
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public TransactionDto updateTransaction(String userEmail, String id, TransactionDto transactionDto, Long expectedVersion) {
+        String customerId = transactionRepository.findCustomerIdByIdAndUserEmail(id, userEmail)
+                .orElseThrow(() -> new RuntimeException("Transaction not found"));
+        cascadingDeletes.checkNotDeleting(customerId);
+        return customerLocks.withCustomerLock(customerId, () -> optimisticRetry.execute(() -> {
+            Transaction transaction = transactionRepository.findByIdAndUserEmail(id, userEmail)
+                    .orElseThrow(() -> new RuntimeException("Transaction not found"));
+            VersionMismatchException.check(Transaction.class, id, transaction.getVersion(), expectedVersion);
+            Map<String, Object> before = AuditSnapshots.of(transaction);
+
+            // Store old values for balance adjustment
+            TransactionType oldType = transaction.getTransactionType();
+            BigDecimal oldAmount = transaction.getAmount();
+
+            // Update transaction
+            transaction.setTransactionType(transactionDto.getTransactionType());
+            transaction.setAmount(transactionDto.getAmount());
+            transaction.setDescription(transactionDto.getDescription());
+            // A new date moves a defaulted due date with it; an explicit one is taken as given
+            if (transactionDto.getDueDate() != null) {
+                transaction.setDueDate(transactionDto.getDueDate());
+            } else if (!Objects.equals(transaction.getDate(), transactionDto.getDate()) || transaction.getDueDate() == null) {
+                transaction.setDueDate(defaultDueDate(transactionDto.getDate()));
+            }
+            transaction.setDate(transactionDto.getDate());
+            transaction.setStatus(transactionDto.getStatus());
+            transaction.setPaymentMethod(transactionDto.getPaymentMethod());
+            transaction.setNotes(transactionDto.getNotes());
+
+            Transaction savedTransaction = transactionRepository.saveAndFlush(transaction);
+            changes.transactionSaved(userEmail, savedTransaction, AuditJournal.UPDATE, before);
+
+            // Adjust customer balance; looked up rather than taken from the association, so a cached copy is checked
+            Customer customer = customerRepository.findByIdAndUserEmail(transaction.getCustomer().getId(), userEmail)
+                    .orElseThrow(() -> new RuntimeException("Customer not found or access denied"));
+            // Reverse old transaction effect
+            reverseCustomerBalance(customer, oldType, oldAmount, id);
+            // Apply new transaction effect
+            updateCustomerBalance(customer, transactionDto.getTransactionType(), transactionDto.getAmount(), id);
+
+            return convertToDto(savedTransaction);
+        }));
+    }
 
-        return convertToDto(savedTransaction);
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void deleteTransaction(String userEmail, String id) {
+        String customerId = transactionRepository.findCustomerIdByIdAndUserEmail(id, userEmail)
+                .orElseThrow(() -> new RuntimeException("Transaction not found"));
+        cascadingDeletes.checkNotDeleting(customerId);
+        customerLocks.runWithCustomerLock(customerId, () -> optimisticRetry.run(() -> {
+            Transaction transaction = transactionRepository.findByIdAndUserEmail(id, userEmail)
+                    .orElseThrow(() -> new RuntimeException("Transaction not found"));
+
+            // Reverse the transaction effect on customer balance
+            Customer customer = customerRepository.findByIdAndUserEmail(customerId, userEmail)
+                    .orElseThrow(() -> new RuntimeException("Customer not found or access denied"));
+            reverseCustomerBalance(customer, transaction.getTransactionType(), transaction.getAmount(), id);
+
+            cascadingDeletes.deleteTransaction(transaction);
+            changes.transactionDeleted(userEmail, transaction);
+        }));
     }
 
-    public TransactionDto updateTransaction(String userEmail, String id, TransactionDto transactionDto) {
+    public TransactionDto updateTransactionStatus(String userEmail, String id, TransactionStatus status) {
         Transaction transaction = transactionRepository.findByIdAndUserEmail(id, userEmail)
                 .orElseThrow(() -> new RuntimeException("Transaction not found"));
+        cascadingDeletes.checkNotDeleting(transaction.getCustomer().getId());
 
-        // Store old values for balance adjustment
-        TransactionType oldType = transaction.getTransactionType();
-        BigDecimal oldAmount = transaction.getAmount();
+        Map<String, Object> before = AuditSnapshots.of(transaction);
+        transaction.setStatus(status);
+        Transaction savedTransaction = transactionRepository.saveAndFlush(transaction);
+        changes.transactionSaved(userEmail, savedTransaction, AuditJournal.UPDATE, before);
+        return convertToDto(savedTransaction);
+    }
 
-        // Update transaction
-        transaction.setTransactionType(transactionDto.getTransactionType());
-        transaction.setAmount(transactionDto.getAmount());
-        transaction.setDescription(transactionDto.getDescription());
-        transaction.setDate(transactionDto.getDate());
-        transaction.setStatus(transactionDto.getStatus());
-        transaction.setPaymentMethod(transactionDto.getPaymentMethod());
-        transaction.setNotes(transactionDto.getNotes());
+    /**
+     * Moves the selected transactions to one status. The rows are locked and read with one query, then
+     * updated with one UPDATE per {@value #IN_LIST_SIZE} ids, instead of a find and a save each. A status
+     * has no effect on balances (as with mark-paid), so customers are only counted. Throws
+     * IllegalArgumentException when nothing selects the rows or more than
+     * {@code transactions.bulk-status.max-rows} match, and refuses the whole request when one of the
+     * customers is being deleted.
+     */
+    public TransactionStatusResultDto updateTransactionStatuses(String userEmail, TransactionStatusUpdateDto request) {
+        TransactionStatus status = request.getStatus();
+        List<String> ids = request.getIds() == null ? List.of()
+                : request.getIds().stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        StringBuilder sql = new StringBuilder(STATUS_ROWS);
+        List<Object> args = new ArrayList<>(List.of(userEmail, status.name()));
+        if (request.getCustomerId() != null) {
+            sql.append(" AND customer_id = ?");
+            args.add(request.getCustomerId());
+        }
+        if (request.getStartDate() != null) {
+            sql.append(" AND date >= ?");
+            args.add(Date.valueOf(request.getStartDate()));
+        }
+        if (request.getEndDate() != null) {
+            sql.append(" AND date <= ?");
+            args.add(Date.valueOf(request.getEndDate()));
+        }
+        if (request.getFromStatus() != null) {
+            sql.append(" AND status = ?");
+            args.add(request.getFromStatus().name());
+        }
+        if (request.getTransactionType() != null) {
+            sql.append(" AND transaction_type = ?");
+            args.add(request.getTransactionType().name());
+        }
+        if (ids.isEmpty() && args.size() == 2) {
+            throw new IllegalArgumentException("Select transactions by ids or by customerId, startDate, endDate, " +
+                    "fromStatus or transactionType");
+        }
+        if (ids.size() > bulkStatusMaxRows) {
+            throw new IllegalArgumentException("At most " + bulkStatusMaxRows + " ids per request");
+        }
 
-        Transaction savedTransaction = transactionRepository.save(transaction);
+        // Locked in id order, so two bulk updates over the same rows queue instead of deadlocking
+        List<Transaction> rows = new ArrayList<>();
+        if (ids.isEmpty()) {
+            List<Object> limited = new ArrayList<>(args);
+            limited.add(bulkStatusMaxRows + 1);
+            rows.addAll(jdbcTemplate.query(sql + " ORDER BY id LIMIT ? FOR UPDATE", this::statusRow, limited.toArray()));
+            if (rows.size() > bulkStatusMaxRows) {
+                throw new IllegalArgumentException("More than " + bulkStatusMaxRows + " transactions match; narrow the filter");
+            }
+        } else {
+            for (int from = 0; from < ids.size(); from += IN_LIST_SIZE) {
+                List<String> chunk = ids.subList(from, Math.min(from + IN_LIST_SIZE, ids.size()));
+                List<Object> chunkArgs = new ArrayList<>(args);
+                chunkArgs.addAll(chunk);
+                rows.addAll(jdbcTemplate.query(sql + " AND id IN " + placeholders(chunk.size()) + " ORDER BY id FOR UPDATE",
+                        this::statusRow, chunkArgs.toArray()));
+            }
+        }
 
-        // Adjust customer balance
-        Customer customer = transaction.getCustomer();
-        // Reverse old transaction effect
-        reverseCustomerBalance(customer, oldType, oldAmount);
-        // Apply new transaction effect
-        updateCustomerBalance(customer, transactionDto.getTransactionType(), transactionDto.getAmount());
+        // Checked with the rows locked: a delete that starts now waits for them, one under way is refused
+        for (Transaction row : rows) {
+            cascadingDeletes.checkNotDeleting(row.getCustomer().getId());
+        }
 
-        return convertToDto(savedTransaction);
-    }
+        LocalDateTime now = LocalDateTime.now();
+        for (int from = 0; from < rows.size(); from += IN_LIST_SIZE) {
+            List<Transaction> chunk = rows.subList(from, Math.min(from + IN_LIST_SIZE, rows.size()));
+            List<Object> updateArgs = new ArrayList<>(List.of(status.name(), Timestamp.valueOf(now)));
+            for (Transaction row : chunk) {
+                updateArgs.add(row.getId());
+            }
+            jdbcTemplate.update("UPDATE transactions SET status = ?, updated_at = ?, version = version + 1 WHERE id IN " +
+                    placeholders(chunk.size()), updateArgs.toArray());
+        }
 
-    public void deleteTransaction(String userEmail, String id) {
-        Transaction transaction = transactionRepository.findByIdAndUserEmail(id, userEmail)
-                .orElseThrow(() -> new RuntimeException("Transaction not found"));
+        Map<String, Integer> byCustomer = new TreeMap<>();
+        Set<String> updatedIds = new HashSet<>();
+        for (Transaction row : rows) {
+            Map<String, Object> before = AuditSnapshots.of(row);
+            row.setStatus(status);
+            row.setUpdatedAt(now);
+            row.setVersion(row.getVersion() + 1);
+            changes.transactionSaved(userEmail, row, AuditJournal.UPDATE, before);
+            byCustomer.merge(row.getCustomer().getId(), 1, Integer::sum);
+            updatedIds.add(row.getId());
+        }
 
-        // Reverse the transaction effect on customer balance
-        Customer customer = transaction.getCustomer();
-        reverseCustomerBalance(customer, transaction.getTransactionType(), transaction.getAmount());
+        TransactionStatusResultDto result = new TransactionStatusResultDto();
+        result.setStatus(status);
+        result.setUpdated(rows.size());
+        result.setUpdatedByCustomer(byCustomer);
+        result.setNotUpdated(ids.stream().filter(id -> !updatedIds.contains(id)).collect(Collectors.toList()));
+        return result;
+    }
 
-        transactionRepository.deleteById(id);
+    // Only what audit snapshots and the working set use
+    private Transaction statusRow(ResultSet rs, int rowNum) throws SQLException {
+        Customer customer = new Customer();
+        customer.setId(rs.getString(2));
+        Transaction transaction = new Transaction();
+        transaction.setId(rs.getString(1));
+        transaction.setCustomer(customer);
+        transaction.setCustomerName(rs.getString(3));
+        transaction.setTransactionType(TransactionType.valueOf(rs.getString(4)));
+        transaction.setAmount(rs.getBigDecimal(5));
+        transaction.setDescription(rs.getString(6));
+        transaction.setDate(rs.getDate(7).toLocalDate());
+        transaction.setStatus(TransactionStatus.valueOf(rs.getString(8)));
+        String paymentMethod = rs.getString(9);
+        transaction.setPaymentMethod(paymentMethod != null ? PaymentMethod.valueOf(paymentMethod) : null);
+        transaction.setNotes(rs.getString(10));
+        Timestamp createdAt = rs.getTimestamp(11);
+        transaction.setCreatedAt(createdAt != null ? createdAt.toLocalDateTime() : null);
+        transaction.setVersion(rs.getLong(12));
+        Date dueDate = rs.getDate(13);
+        transaction.setDueDate(dueDate != null ? dueDate.toLocalDate() : null);
+        return transaction;
     }
 
-    public TransactionDto updateTransactionStatus(String userEmail, String id, TransactionStatus status) {
-        Transaction transaction = transactionRepository.findByIdAndUserEmail(id, userEmail)
-                .orElseThrow(() -> new RuntimeException("Transaction not found"));
+    private LocalDate defaultDueDate(LocalDate date) {
+        return date != null ? date.plusDays(settingsService.current().getDefaultPaymentTerms()) : null;
+    }
 
-        transaction.setStatus(status);
-        Transaction savedTransaction = transactionRepository.save(transaction);
-        return convertToDto(savedTransaction);
+    private static String placeholders(int count) {
+        return "(" + String.join(", ", Collections.nCopies(count, "?")) + ")";
     }
 
-    // Reporting methods
+    // Reporting methods. Archived transactions are settled, so only the COMPLETED totals can include them
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public BigDecimal getDailySales(String userEmail, LocalDate date) {
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            return workingSet.sumAmount(TransactionType.CREDIT, TransactionStatus.COMPLETED, date, date)
+                    .add(archive.sumAmount(userEmail, TransactionType.CREDIT, TransactionStatus.COMPLETED, date, date));
+        }
         BigDecimal sales = transactionRepository.getTotalAmountByUserAndTypeAndDateAndStatus(
                 userEmail, TransactionType.CREDIT, date, TransactionStatus.COMPLETED);
-        return sales != null ? sales : BigDecimal.ZERO;
+        return (sales != null ? sales : BigDecimal.ZERO)
+                .add(archive.sumAmount(userEmail, TransactionType.CREDIT, TransactionStatus.COMPLETED, date, date));
     }
 
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public BigDecimal getDailyCashReceived(String userEmail, LocalDate date) {
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            return workingSet.sumAmount(TransactionType.PAYMENT, TransactionStatus.COMPLETED, date, date)
+                    .add(archive.sumAmount(userEmail, TransactionType.PAYMENT, TransactionStatus.COMPLETED, date, date));
+        }
         BigDecimal cash = transactionRepository.getTotalAmountByUserAndTypeAndDateAndStatus(
                 userEmail, TransactionType.PAYMENT, date, TransactionStatus.COMPLETED);
-        return cash != null ? cash : BigDecimal.ZERO;
+        return (cash != null ? cash : BigDecimal.ZERO)
+                .add(archive.sumAmount(userEmail, TransactionType.PAYMENT, TransactionStatus.COMPLETED, date, date));
     }
 
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public BigDecimal getDailyCreditGiven(String userEmail, LocalDate date) {
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            return workingSet.sumAmount(TransactionType.CREDIT, TransactionStatus.PENDING, date, date);
+        }
         BigDecimal credit = transactionRepository.getTotalAmountByUserAndTypeAndDateAndStatus(
                 userEmail, TransactionType.CREDIT, date, TransactionStatus.PENDING);
         return credit != null ? credit : BigDecimal.ZERO;
     }
 
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public BigDecimal getPeriodSales(String userEmail, LocalDate startDate, LocalDate endDate) {
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            return workingSet.sumAmount(TransactionType.CREDIT, TransactionStatus.COMPLETED, startDate, endDate)
+                    .add(archive.sumAmount(userEmail, TransactionType.CREDIT, TransactionStatus.COMPLETED, startDate, endDate));
+        }
         BigDecimal sales = transactionRepository.getTotalAmountByUserAndTypeAndDateRangeAndStatus(
                 userEmail, TransactionType.CREDIT, startDate, endDate, TransactionStatus.COMPLETED);
-        return sales != null ? sales : BigDecimal.ZERO;
+        return (sales != null ? sales : BigDecimal.ZERO)
+                .add(archive.sumAmount(userEmail, TransactionType.CREDIT, TransactionStatus.COMPLETED, startDate, endDate));
     }
 
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public BigDecimal getPeriodCashReceived(String userEmail, LocalDate startDate, LocalDate endDate) {
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            return workingSet.sumAmount(TransactionType.PAYMENT, TransactionStatus.COMPLETED, startDate, endDate)
+                    .add(archive.sumAmount(userEmail, TransactionType.PAYMENT, TransactionStatus.COMPLETED, startDate, endDate));
+        }
         BigDecimal cash = transactionRepository.getTotalAmountByUserAndTypeAndDateRangeAndStatus(
                 userEmail, TransactionType.PAYMENT, startDate, endDate, TransactionStatus.COMPLETED);
-        return cash != null ? cash : BigDecimal.ZERO;
+        return (cash != null ? cash : BigDecimal.ZERO)
+                .add(archive.sumAmount(userEmail, TransactionType.PAYMENT, TransactionStatus.COMPLETED, startDate, endDate));
     }
 
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public BigDecimal getPeriodCreditGiven(String userEmail, LocalDate startDate, LocalDate endDate) {
+        TenantWorkingSet workingSet = workingSets.find(userEmail);
+        if (workingSet != null) {
+            return workingSet.sumAmount(TransactionType.CREDIT, TransactionStatus.PENDING, startDate, endDate);
+        }
         BigDecimal credit = transactionRepository.getTotalAmountByUserAndTypeAndDateRangeAndStatus(
                 userEmail, TransactionType.CREDIT, startDate, endDate, TransactionStatus.PENDING);
         return credit != null ? credit : BigDecimal.ZERO;
     }
 
     // Helper methods
-    private void updateCustomerBalance(Customer customer, TransactionType type, BigDecimal amount) {
+    private void updateCustomerBalance(Customer customer, TransactionType type, BigDecimal amount, String transactionId) {
+        if (type == TransactionType.CREDIT) {
+            BigDecimal limit = creditLimitOf(customer);
+            if (limit != null) {
+                creditWithinLimit(customer, amount, limit, transactionId);
+                return;
+            }
+        }
+        if (balances.isEnabled()) {
+            balances.append(customer.getUserEmail(), customer.getId(), signedAmount(type, amount), LocalDate.now());
+            changes.balanceAppended(customer.getUserEmail(), customer, signedAmount(type, amount), CustomerLedger.TRANSACTION,
+                    transactionId);
+            return;
+        }
+        Map<String, Object> before = AuditSnapshots.of(customer);
         BigDecimal currentBalance = customer.getTotalDue() != null ? customer.getTotalDue() : BigDecimal.ZERO;
         
         switch (type) {
@@ -202,10 +636,69 @@ public class TransactionService {
         }
         
         customer.setLastTransactionDate(LocalDate.now());
-        customerRepository.save(customer);
+        Customer savedCustomer = customerRepository.saveAndFlush(customer);
+        changes.balanceChanged(customer.getUserEmail(), savedCustomer, before, AuditJournal.BALANCE,
+                signedAmount(type, amount), CustomerLedger.TRANSACTION, transactionId);
     }
 
-    private void reverseCustomerBalance(Customer customer, TransactionType type, BigDecimal amount) {
+    // The customer's own limit, else max_credit_limit; null (neither set) means no limit
+    private BigDecimal creditLimitOf(Customer customer) {
+        if (customer.getCreditLimit() != null) {
+            return customer.getCreditLimit();
+        }
+        Settings settings = settingsService.current();
+        return settings.contains(Settings.MAX_CREDIT_LIMIT) ? settings.getMaxCreditLimit() : null;
+    }
+
+    // The conditional UPDATE replaces the balance write a credit makes anyway, so the check costs no
+    // extra statement. Its row lock orders concurrent credits from any instance, and each is checked
+    // against the balance the one before it left. Under write-behind a limited credit goes into the row
+    // directly, with the journal's pending changes counted in the check.
+    private void creditWithinLimit(Customer customer, BigDecimal amount, BigDecimal limit, String transactionId) {
+        Map<String, Object> before = AuditSnapshots.of(customer);
+        LocalDate today = LocalDate.now();
+        LocalDateTime now = LocalDateTime.now();
+        Settings settings = settingsService.current();
+        BigDecimal shopLimit = settings.contains(Settings.MAX_CREDIT_LIMIT) ? settings.getMaxCreditLimit() : limit;
+        int updated = jdbcTemplate.update(balances.isEnabled() ? CREDIT_WITHIN_LIMIT_WITH_JOURNAL : CREDIT_WITHIN_LIMIT,
+                amount, Date.valueOf(today), Timestamp.valueOf(now), customer.getId(), customer.getUserEmail(),
+                amount, shopLimit);
+        if (updated == 0) {
+            throw new CreditLimitExceededException(customer.getId(), limit);
+        }
+
+        // The row changed behind Hibernate: stop tracking the loaded copy and bring it in line instead
+        entityManager.detach(customer);
+        evictCustomer(customer.getId());
+        BigDecimal currentBalance = customer.getTotalDue() != null ? customer.getTotalDue() : BigDecimal.ZERO;
+        customer.setTotalDue(currentBalance.add(amount));
+        customer.setLastTransactionDate(today);
+        customer.setUpdatedAt(now);
+        customer.setVersion(customer.getVersion() + 1);
+
+        changes.balanceChanged(customer.getUserEmail(), customer, before, AuditJournal.BALANCE, amount,
+                CustomerLedger.TRANSACTION, transactionId);
+    }
+
+    // Again after completion, in case a concurrent read cached the old row meanwhile
+    private void evictCustomer(String customerId) {
+        entityManager.getEntityManagerFactory().getCache().evict(Customer.class, customerId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                entityManager.getEntityManagerFactory().getCache().evict(Customer.class, customerId);
+            }
+        });
+    }
+
+    private void reverseCustomerBalance(Customer customer, TransactionType type, BigDecimal amount, String transactionId) {
+        if (balances.isEnabled()) {
+            balances.append(customer.getUserEmail(), customer.getId(), signedAmount(type, amount).negate(), null);
+            changes.balanceAppended(customer.getUserEmail(), customer, signedAmount(type, amount).negate(),
+                    CustomerLedger.REVERSAL, transactionId);
+            return;
+        }
+        Map<String, Object> before = AuditSnapshots.of(customer);
         BigDecimal currentBalance = customer.getTotalDue() != null ? customer.getTotalDue() : BigDecimal.ZERO;
         
         switch (type) {
@@ -220,7 +713,14 @@ public class TransactionService {
                 break;
         }
         
-        customerRepository.save(customer);
+        Customer savedCustomer = customerRepository.saveAndFlush(customer);
+        changes.balanceChanged(customer.getUserEmail(), savedCustomer, before, AuditJournal.BALANCE,
+                signedAmount(type, amount).negate(), CustomerLedger.REVERSAL, transactionId);
+    }
+
+    // Effect of a transaction on what the customer owes
+    private static BigDecimal signedAmount(TransactionType type, BigDecimal amount) {
+        return type == TransactionType.CREDIT ? amount : amount.negate();
     }
 
     private TransactionDto convertToDto(Transaction transaction) {
@@ -236,9 +736,11 @@ public class TransactionService {
         dto.setAmount(transaction.getAmount());
         dto.setDescription(transaction.getDescription());
         dto.setDate(transaction.getDate());
+        dto.setDueDate(transaction.getDueDate());
         dto.setStatus(transaction.getStatus());
         dto.setPaymentMethod(transaction.getPaymentMethod());
         dto.setNotes(transaction.getNotes());
+        dto.setVersion(transaction.getVersion());
         return dto;
     }
 } 
\ No newline at end of file
@@ -9,6 +9,7 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
@@ -28,6 +29,7 @@ public class UserService implements UserDetailsService {
     }
 
     @Override
+    @Transactional(readOnly = true)
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
         Optional<User> user = userRepository.findActiveUserByEmail(email);
         if (user.isEmpty()) {
@@ -61,15 +63,19 @@ public class UserService implements UserDetailsService {
         return convertToDto(savedUser);
     }
 
+    @Transactional(readOnly = true)
     public Optional<User> findByEmail(String email) {
         return userRepository.findActiveUserByEmail(email);
     }
 
+    @Transactional(readOnly = true)
     public UserDto getUserByEmail(String email) {
         Optional<User> user = userRepository.findActiveUserByEmail(email);
         return user.map(this::convertToDto).orElse(null);
     }
 
+    // BCrypt is slow on purpose - don't hold a transaction (and connection) open while it runs
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public boolean validatePassword(String rawPassword, String encodedPassword) {
         return passwordEncoder.matches(rawPassword, encodedPassword);
     }
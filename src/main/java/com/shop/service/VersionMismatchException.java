@@ -0,0 +1,20 @@
+package com.shop.service;
+
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+/**
+ * The client's If-Match version is not the row's current version. Unlike a version clash at
+ * flush time this is not retried: the client has to re-read and decide.
+ */
+public class VersionMismatchException extends ObjectOptimisticLockingFailureException {
+
+    public VersionMismatchException(Class<?> entityClass, String id) {
+        super(entityClass, id);
+    }
+
+    public static void check(Class<?> entityClass, String id, Long currentVersion, Long expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(currentVersion)) {
+            throw new VersionMismatchException(entityClass, id);
+        }
+    }
+}
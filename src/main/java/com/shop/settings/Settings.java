@@ -0,0 +1,95 @@
+package com.shop.settings;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * One immutable, already-parsed copy of the {@code settings} table. Values are typed by their
+ * setting_type when the snapshot is built (NUMBER as BigDecimal, BOOLEAN as Boolean, STRING and JSON
+ * as String), so lookups never parse. A key that is missing or did not parse falls back to the default
+ * passed in, or to the shipped default for the well-known keys.
+ */
+public final class Settings {
+
+    public static final String COMPANY_NAME = "company_name";
+    public static final String CURRENCY_SYMBOL = "currency_symbol";
+    public static final String DEFAULT_PAYMENT_TERMS = "default_payment_terms";
+    public static final String ENABLE_NOTIFICATIONS = "enable_notifications";
+    public static final String TAX_RATE = "tax_rate";
+    public static final String MAX_CREDIT_LIMIT = "max_credit_limit";
+
+    static final Settings EMPTY = new Settings(0, Collections.emptyMap(), null);
+
+    private final long version;
+    private final Map<String, Object> values;
+    private final LocalDateTime loadedAt;
+
+    Settings(long version, Map<String, Object> values, LocalDateTime loadedAt) {
+        this.version = version;
+        this.values = Collections.unmodifiableMap(values);
+        this.loadedAt = loadedAt;
+    }
+
+    public String getCompanyName() {
+        return getString(COMPANY_NAME, "Shop Cash Flow Manager");
+    }
+
+    public String getCurrencySymbol() {
+        return getString(CURRENCY_SYMBOL, "₹");
+    }
+
+    public int getDefaultPaymentTerms() {
+        return getInt(DEFAULT_PAYMENT_TERMS, 30);
+    }
+
+    public boolean isNotificationsEnabled() {
+        return getBoolean(ENABLE_NOTIFICATIONS, true);
+    }
+
+    public BigDecimal getTaxRate() {
+        return getDecimal(TAX_RATE, new BigDecimal("18.0"));
+    }
+
+    public BigDecimal getMaxCreditLimit() {
+        return getDecimal(MAX_CREDIT_LIMIT, new BigDecimal("10000.00"));
+    }
+
+    public String getString(String key, String defaultValue) {
+        Object value = values.get(key);
+        return value != null ? value.toString() : defaultValue;
+    }
+
+    public BigDecimal getDecimal(String key, BigDecimal defaultValue) {
+        Object value = values.get(key);
+        return value instanceof BigDecimal ? (BigDecimal) value : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Object value = values.get(key);
+        return value instanceof BigDecimal ? ((BigDecimal) value).intValue() : defaultValue;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    public boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    // Bumped each time a changed table is loaded into a new snapshot
+    public long getVersion() {
+        return version;
+    }
+
+    public LocalDateTime getLoadedAt() {
+        return loadedAt;
+    }
+
+    public Map<String, Object> getValues() {
+        return values;
+    }
+}
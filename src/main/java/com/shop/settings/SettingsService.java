@@ -0,0 +1,186 @@
+package com.shop.settings;
+
+import com.shop.dto.SettingDto;
+import com.shop.entity.Setting;
+import com.shop.entity.Setting.SettingType;
+import com.shop.repository.SettingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Application settings for the hot path. {@link #current()} is a single volatile read of an
+ * immutable {@link Settings} snapshot; nothing on the request path queries the table.
+ * <p>
+ * Changes made through the admin API are saved and then loaded into a new snapshot, which replaces
+ * the old one in one write. Edits made elsewhere (another instance, or SQL) are picked up by polling
+ * {@code COUNT(*)} and {@code MAX(updated_at)} every {@code settings.poll-interval-ms}; the table is
+ * only read in full when that fingerprint moves, so direct SQL edits must set updated_at.
+ * <p>
+ * The table is read with plain JDBC outside any transaction, so it always comes from the primary
+ * (default shard) and setting_type is accepted in any case.
+ */
+@Component
+public class SettingsService {
+
+    private static final Logger log = LoggerFactory.getLogger(SettingsService.class);
+
+    private static final String FINGERPRINT = "SELECT COUNT(*), MAX(updated_at) FROM settings";
+    private static final String LOAD = "SELECT setting_key, setting_value, setting_type FROM settings";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SettingRepository settingRepository;
+
+    private volatile Settings current = Settings.EMPTY;
+    private volatile String fingerprint;
+
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong failedPolls = new AtomicLong();
+    private volatile List<String> invalidKeys = List.of();
+
+    public Settings current() {
+        return current;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            log.warn("Could not load settings, using defaults until the next poll: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${settings.poll-interval-ms:10000}")
+    public void poll() {
+        polls.incrementAndGet();
+        try {
+            if (!Objects.equals(readFingerprint(), fingerprint)) {
+                reload();
+            }
+        } catch (RuntimeException e) {
+            failedPolls.incrementAndGet();
+            log.warn("Polling settings failed: {}", e.getMessage());
+        }
+    }
+
+    public synchronized Settings reload() {
+        // Fingerprint first: a change landing between the two reads is seen again on the next poll
+        String newFingerprint = readFingerprint();
+        Map<String, Object> values = new LinkedHashMap<>();
+        List<String> invalid = new ArrayList<>();
+        jdbcTemplate.query(LOAD, rs -> {
+            String key = rs.getString(1);
+            try {
+                Object value = parse(rs.getString(2), typeOf(rs.getString(3)));
+                if (value != null) {
+                    values.put(key, value);
+                }
+            } catch (IllegalArgumentException e) {
+                invalid.add(key);
+                log.warn("Ignoring setting {}: {}", key, e.getMessage());
+            }
+        });
+        Settings loaded = new Settings(current.getVersion() + 1, values, LocalDateTime.now());
+        current = loaded;
+        fingerprint = newFingerprint;
+        invalidKeys = List.copyOf(invalid);
+        reloads.incrementAndGet();
+        return loaded;
+    }
+
+    /** Creates or replaces a setting and returns the snapshot that includes it. */
+    public Settings put(String key, SettingDto dto) {
+        SettingType type = dto.getSettingType() != null ? dto.getSettingType() : SettingType.STRING;
+        // Rejects values the snapshot could not use, before anything is written
+        parse(dto.getSettingValue(), type);
+
+        Setting setting = settingRepository.findBySettingKey(key).orElseGet(Setting::new);
+        setting.setSettingKey(key);
+        setting.setSettingValue(dto.getSettingValue());
+        setting.setSettingType(type);
+        if (dto.getDescription() != null) {
+            setting.setDescription(dto.getDescription());
+        }
+        settingRepository.save(setting);
+        return reload();
+    }
+
+    public boolean delete(String key) {
+        Setting setting = settingRepository.findBySettingKey(key).orElse(null);
+        if (setting == null) {
+            return false;
+        }
+        settingRepository.delete(setting);
+        reload();
+        return true;
+    }
+
+    private String readFingerprint() {
+        return jdbcTemplate.queryForObject(FINGERPRINT, (rs, row) -> rs.getLong(1) + "|" + rs.getTimestamp(2));
+    }
+
+    private static SettingType typeOf(String type) {
+        if (type == null || type.isBlank()) {
+            return SettingType.STRING;
+        }
+        try {
+            return SettingType.valueOf(type.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown type " + type);
+        }
+    }
+
+    private static Object parse(String value, SettingType type) {
+        if (value == null) {
+            return null;
+        }
+        switch (type) {
+            case NUMBER:
+                try {
+                    return new BigDecimal(value.trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("not a number: " + value);
+                }
+            case BOOLEAN:
+                if ("true".equalsIgnoreCase(value.trim()) || "false".equalsIgnoreCase(value.trim())) {
+                    return Boolean.valueOf(value.trim());
+                }
+                throw new IllegalArgumentException("not a boolean: " + value);
+            default:
+                return value;
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Settings settings = current;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("version", settings.getVersion());
+        stats.put("loadedAt", settings.getLoadedAt());
+        stats.put("values", settings.getValues());
+        stats.put("invalidKeys", invalidKeys);
+        stats.put("polls", polls.get());
+        stats.put("failedPolls", failedPolls.get());
+        stats.put("reloads", reloads.get());
+        return stats;
+    }
+}
@@ -0,0 +1,392 @@
+package com.shop.sync;
+
+import com.shop.datasource.ShardRoutingDataSource;
+import com.shop.datasource.TenantContext;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Numbers every change to a shop's customers and transactions with the shop's change sequence, so
+ * {@code GET /sync} can hand a client exactly what changed after the last number it saw. Timestamps
+ * cannot do that: two writes share a millisecond, and a write that commits late carries an early time.
+ * <p>
+ * Services report what they wrote, next to their working-set calls. Just before the transaction commits,
+ * the shop's {@code sync_sequences} row is advanced by the number of changes, each changed row gets its
+ * own number in {@code change_seq}, and each deleted one a tombstone. The row lock on the sequence is
+ * held from then until the commit, so the shop's numbers become visible in order: once a reader sees
+ * {@code last_seq}, every change up to it is committed. It is taken last, after the rows it numbers, so
+ * it cannot deadlock with them, and it orders only the final statements of each write.
+ * <p>
+ * Rows written before the sequence existed, or inserted behind the services' back (seed data), are
+ * numbered at startup. Tombstones older than {@code sync.tombstone-retention-days} are purged; a cursor
+ * older than the purge has to sync from scratch.
+ */
+@Component
+public class ChangeFeed {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeFeed.class);
+
+    public static final String CUSTOMER = "CUSTOMER";
+    public static final String TRANSACTION = "TRANSACTION";
+
+    // Order of the synchronization that numbers a transaction's changes. It holds the shop's sequence row until
+    // commit, so other before-commit writes must run first (a lower order), or two commits can deadlock.
+    public static final int STAMP_ORDER = Ordered.LOWEST_PRECEDENCE;
+
+    private static final String ADVANCE = "UPDATE sync_sequences SET last_seq = last_seq + ?, updated_at = ? WHERE user_email = ?";
+    private static final String START = "INSERT INTO sync_sequences (user_email, last_seq, purged_through, updated_at) " +
+            "VALUES (?, ?, 0, ?)";
+    private static final String HEAD = "SELECT last_seq, purged_through FROM sync_sequences WHERE user_email = ?";
+    private static final String STAMP_CUSTOMER = "UPDATE customers SET change_seq = ? WHERE id = ? AND user_email = ?";
+    private static final String STAMP_TRANSACTION = "UPDATE transactions SET change_seq = ? WHERE id = ? AND user_email = ?";
+    private static final String TOMBSTONE = "INSERT INTO sync_tombstones (user_email, entity_type, entity_id, change_seq, " +
+            "deleted_at) VALUES (?, ?, ?, ?, ?)";
+    private static final String CHANGED_CUSTOMERS = "SELECT id, change_seq FROM customers WHERE user_email = ? " +
+            "AND change_seq > ? AND change_seq <= ? ORDER BY change_seq LIMIT ?";
+    private static final String CHANGED_TRANSACTIONS = "SELECT id, change_seq FROM transactions WHERE user_email = ? " +
+            "AND change_seq > ? AND change_seq <= ? ORDER BY change_seq LIMIT ?";
+    private static final String TOMBSTONES = "SELECT entity_type, entity_id, change_seq FROM sync_tombstones " +
+            "WHERE user_email = ? AND change_seq > ? AND change_seq <= ? ORDER BY change_seq LIMIT ?";
+
+    private static final int BACKFILL_CHUNK_SIZE = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private ObjectProvider<ShardRoutingDataSource> shardRouting;
+
+    @Value("${sync.tombstone-retention-days:90}")
+    private int tombstoneRetentionDays;
+
+    @Value("${sync.purge-chunk-size:1000}")
+    private int purgeChunkSize;
+
+    private final AtomicLong stampedCommits = new AtomicLong();
+    private final AtomicLong stampedRows = new AtomicLong();
+    private final AtomicLong tombstonesWritten = new AtomicLong();
+    private final AtomicLong backfilledRows = new AtomicLong();
+    private final AtomicLong headProbes = new AtomicLong();
+    private final AtomicLong pageReads = new AtomicLong();
+    private final AtomicLong tombstonesPurged = new AtomicLong();
+    private volatile long lastPurgeMs;
+
+    /** One entry of the feed: a changed or deleted customer or transaction and its number. */
+    public record Change(long seq, String entityType, String entityId, boolean deleted) {}
+
+    /** The shop's last handed-out number and how far its tombstones were purged; zeros if it never changed. */
+    public record Head(long lastSeq, long purgedThrough) {}
+
+    // What one database transaction changed for one shop
+    private static final class Changes {
+        final Set<String> customers = new LinkedHashSet<>();
+        final Set<String> transactions = new LinkedHashSet<>();
+        final Set<String> deletedCustomers = new LinkedHashSet<>();
+        final Set<String> deletedTransactions = new LinkedHashSet<>();
+
+        int size() {
+            return customers.size() + transactions.size() + deletedCustomers.size() + deletedTransactions.size();
+        }
+    }
+
+    // Recording, called by the services in the transaction that makes the change
+
+    public void customerChanged(String tenant, String customerId) {
+        record(tenant, changes -> changes.customers.add(customerId));
+    }
+
+    public void customersChanged(String tenant, Collection<String> customerIds) {
+        record(tenant, changes -> changes.customers.addAll(customerIds));
+    }
+
+    public void customerDeleted(String tenant, String customerId) {
+        record(tenant, changes -> {
+            changes.customers.remove(customerId);
+            changes.deletedCustomers.add(customerId);
+        });
+    }
+
+    public void transactionChanged(String tenant, String transactionId) {
+        record(tenant, changes -> changes.transactions.add(transactionId));
+    }
+
+    public void transactionsChanged(String tenant, Collection<String> transactionIds) {
+        record(tenant, changes -> changes.transactions.addAll(transactionIds));
+    }
+
+    public void transactionDeleted(String tenant, String transactionId) {
+        transactionsDeleted(tenant, List.of(transactionId));
+    }
+
+    public void transactionsDeleted(String tenant, Collection<String> transactionIds) {
+        record(tenant, changes -> {
+            changes.transactions.removeAll(transactionIds);
+            changes.deletedTransactions.addAll(transactionIds);
+        });
+    }
+
+    private void record(String tenant, Consumer<Changes> change) {
+        if (tenant == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            // The write already committed on its own; number it in a transaction of its own
+            Changes changes = new Changes();
+            change.accept(changes);
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> stamp(tenant, changes));
+            return;
+        }
+        change.accept(stamper().changes.computeIfAbsent(tenant, t -> new Changes()));
+    }
+
+    // Per transaction: a REQUIRES_NEW inside it gets a synchronization list, and so a stamper, of its own
+    private Stamper stamper() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof Stamper stamper && stamper.feed() == this) {
+                return stamper;
+            }
+        }
+        Stamper stamper = new Stamper();
+        TransactionSynchronizationManager.registerSynchronization(stamper);
+        return stamper;
+    }
+
+    private final class Stamper implements TransactionSynchronization {
+        // By shop, so a transaction touching two shops always locks their sequences in the same order
+        final Map<String, Changes> changes = new TreeMap<>();
+
+        ChangeFeed feed() {
+            return ChangeFeed.this;
+        }
+
+        @Override
+        public int getOrder() {
+            return STAMP_ORDER;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            // Hibernate writes pending entity changes at commit; the rows have to be there to be numbered
+            entityManager.flush();
+            changes.forEach(ChangeFeed.this::stamp);
+        }
+    }
+
+    private void stamp(String tenant, Changes changes) {
+        int count = changes.size();
+        if (count == 0) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        long seq = advance(tenant, count, now) - count + 1;
+        List<Object[]> customers = new ArrayList<>(changes.customers.size());
+        for (String id : changes.customers) {
+            customers.add(new Object[]{seq++, id, tenant});
+        }
+        List<Object[]> transactions = new ArrayList<>(changes.transactions.size());
+        for (String id : changes.transactions) {
+            transactions.add(new Object[]{seq++, id, tenant});
+        }
+        List<Object[]> tombstones = new ArrayList<>(changes.deletedCustomers.size() + changes.deletedTransactions.size());
+        for (String id : changes.deletedCustomers) {
+            tombstones.add(new Object[]{tenant, CUSTOMER, id, seq++, now});
+        }
+        for (String id : changes.deletedTransactions) {
+            tombstones.add(new Object[]{tenant, TRANSACTION, id, seq++, now});
+        }
+        if (!customers.isEmpty()) {
+            jdbcTemplate.batchUpdate(STAMP_CUSTOMER, customers);
+        }
+        if (!transactions.isEmpty()) {
+            jdbcTemplate.batchUpdate(STAMP_TRANSACTION, transactions);
+        }
+        if (!tombstones.isEmpty()) {
+            jdbcTemplate.batchUpdate(TOMBSTONE, tombstones);
+            tombstonesWritten.addAndGet(tombstones.size());
+        }
+        stampedCommits.incrementAndGet();
+        stampedRows.addAndGet(customers.size() + transactions.size());
+    }
+
+    // Reserves count numbers and returns the last; the row stays locked until the transaction ends
+    private long advance(String tenant, int count, Timestamp now) {
+        if (jdbcTemplate.update(ADVANCE, count, now, tenant) == 0) {
+            try {
+                jdbcTemplate.update(START, tenant, count, now);
+                return count;
+            } catch (DuplicateKeyException e) {
+                // Another transaction started the sequence first
+                jdbcTemplate.update(ADVANCE, count, now, tenant);
+            }
+        }
+        Long last = jdbcTemplate.queryForObject("SELECT last_seq FROM sync_sequences WHERE user_email = ?", Long.class, tenant);
+        return last != null ? last : count;
+    }
+
+    // Reading
+
+    public Head head(String tenant) {
+        headProbes.incrementAndGet();
+        List<Head> rows = jdbcTemplate.query(HEAD, (rs, i) -> new Head(rs.getLong(1), rs.getLong(2)), tenant);
+        return rows.isEmpty() ? new Head(0, 0) : rows.get(0);
+    }
+
+    /**
+     * Up to {@code limit} changes numbered after {@code after} and up to {@code upTo}, in order. One range
+     * read per table along its {@code (user_email, change_seq)} index, each capped at limit + 1, so the
+     * result says whether more follow without counting them: it holds limit + 1 entries if they do.
+     */
+    public List<Change> changesBetween(String tenant, long after, long upTo, int limit) {
+        pageReads.incrementAndGet();
+        List<Change> changes = new ArrayList<>();
+        changes.addAll(jdbcTemplate.query(CHANGED_CUSTOMERS, (rs, i) -> new Change(rs.getLong(2), CUSTOMER,
+                rs.getString(1), false), tenant, after, upTo, limit + 1));
+        changes.addAll(jdbcTemplate.query(CHANGED_TRANSACTIONS, (rs, i) -> new Change(rs.getLong(2), TRANSACTION,
+                rs.getString(1), false), tenant, after, upTo, limit + 1));
+        changes.addAll(jdbcTemplate.query(TOMBSTONES, (rs, i) -> new Change(rs.getLong(3), rs.getString(1),
+                rs.getString(2), true), tenant, after, upTo, limit + 1));
+        changes.sort(Comparator.comparingLong(Change::seq));
+        return changes.size() > limit + 1 ? new ArrayList<>(changes.subList(0, limit + 1)) : changes;
+    }
+
+    // Numbering what was written without the services
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        ShardRoutingDataSource routing = shardRouting.getIfAvailable();
+        int shards = routing != null ? routing.getDirectory().getShardCount() : 1;
+        long numbered = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            numbered += routing != null ? TenantContext.callOnShard(shard, this::backfillShard) : backfillShard();
+        }
+        if (numbered > 0) {
+            log.info("Numbered {} customers and transactions written before the change sequence", numbered);
+        }
+    }
+
+    private long backfillShard() {
+        long numbered = 0;
+        for (String tenant : jdbcTemplate.queryForList("SELECT email FROM users", String.class)) {
+            numbered += backfill(tenant, "SELECT id FROM customers WHERE user_email = ? AND change_seq IS NULL LIMIT ?",
+                    ids -> customersChanged(tenant, ids));
+            numbered += backfill(tenant, "SELECT id FROM transactions WHERE user_email = ? AND change_seq IS NULL LIMIT ?",
+                    ids -> transactionsChanged(tenant, ids));
+        }
+        backfilledRows.addAndGet(numbered);
+        return numbered;
+    }
+
+    private long backfill(String tenant, String unnumbered, Consumer<List<String>> changed) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        long numbered = 0;
+        while (true) {
+            Integer rows = template.execute(status -> {
+                List<String> ids = jdbcTemplate.queryForList(unnumbered, String.class, tenant, BACKFILL_CHUNK_SIZE);
+                if (!ids.isEmpty()) {
+                    changed.accept(ids);
+                }
+                return ids.size();
+            });
+            if (rows == null || rows == 0) {
+                return numbered;
+            }
+            numbered += rows;
+        }
+    }
+
+    // Tombstone expiry
+
+    @Scheduled(fixedDelayString = "${sync.purge-interval-ms:3600000}")
+    public void purgeTombstones() {
+        long start = System.currentTimeMillis();
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusDays(tombstoneRetentionDays));
+        ShardRoutingDataSource routing = shardRouting.getIfAvailable();
+        int shards = routing != null ? routing.getDirectory().getShardCount() : 1;
+        for (int shard = 0; shard < shards; shard++) {
+            long removed = routing != null ? TenantContext.callOnShard(shard, () -> purge(cutoff)) : purge(cutoff);
+            if (removed > 0) {
+                log.debug("Purged {} sync tombstones from shard {}", removed, shard);
+            }
+        }
+        lastPurgeMs = System.currentTimeMillis() - start;
+    }
+
+    // Per shop: first record how far its tombstones go, so cursors before that are refused, then delete them
+    // along the (user_email, change_seq) index, a chunk per statement and transaction
+    private long purge(Timestamp cutoff) {
+        Map<String, Long> throughByTenant = new HashMap<>();
+        jdbcTemplate.query("SELECT user_email, MAX(change_seq) FROM sync_tombstones WHERE deleted_at < ? GROUP BY user_email",
+                rs -> {
+                    throughByTenant.put(rs.getString(1), rs.getLong(2));
+                }, cutoff);
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        long removed = 0;
+        for (Map.Entry<String, Long> e : throughByTenant.entrySet()) {
+            template.executeWithoutResult(status -> jdbcTemplate.update("UPDATE sync_sequences SET purged_through = ? " +
+                    "WHERE user_email = ? AND purged_through < ?", e.getValue(), e.getKey(), e.getValue()));
+            while (true) {
+                Integer rows = template.execute(status -> jdbcTemplate.update("DELETE FROM sync_tombstones " +
+                        "WHERE user_email = ? AND change_seq <= ? LIMIT ?", e.getKey(), e.getValue(), purgeChunkSize));
+                if (rows == null || rows == 0) {
+                    break;
+                }
+                removed += rows;
+                tombstonesPurged.addAndGet(rows);
+                if (rows < purgeChunkSize) {
+                    break;
+                }
+            }
+        }
+        return removed;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("stampedCommits", stampedCommits.get());
+        stats.put("stampedRows", stampedRows.get());
+        stats.put("tombstonesWritten", tombstonesWritten.get());
+        stats.put("backfilledRows", backfilledRows.get());
+        stats.put("headProbes", headProbes.get());
+        stats.put("pageReads", pageReads.get());
+        stats.put("tombstoneRetentionDays", tombstoneRetentionDays);
+        stats.put("tombstonesPurged", tombstonesPurged.get());
+        stats.put("lastPurgeMs", lastPurgeMs);
+        return stats;
+    }
+}
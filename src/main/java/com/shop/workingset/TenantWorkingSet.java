@@ -0,0 +1,464 @@
+package com.shop.workingset;
+
+import com.shop.dto.CustomerDto;
+import com.shop.dto.TransactionDto;
+import com.shop.entity.Transaction.TransactionStatus;
+import com.shop.entity.Transaction.TransactionType;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * All customers and transactions of one shop, held in memory. Reads answer the same questions
+ * as the repository queries behind CustomerService and TransactionService and return copies.
+ * <p>
+ * Every change carries the commit stamp it was taken with (see {@link TenantWorkingSetManager});
+ * a change older than what a row already reflects is ignored, so rows end up in commit order
+ * even when after-commit callbacks of concurrent requests run out of order.
+ */
+public class TenantWorkingSet {
+
+    // Newest first, as findByUserEmailOrderByDateDescCreatedAtDesc returns them
+    private static final Comparator<TransactionEntry> NEWEST_FIRST = Comparator
+            .comparing((TransactionEntry e) -> e.dto.getDate(), Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(e -> e.createdAt, Comparator.nullsLast(Comparator.reverseOrder()));
+
+    private final String tenant;
+    private final long loadedAtMillis;
+    private volatile long lastAccessNanos;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, CustomerEntry> customers = new LinkedHashMap<>();
+    private final Map<String, TransactionEntry> transactionsById = new HashMap<>();
+    private final List<TransactionEntry> transactions = new ArrayList<>();
+    // PENDING transactions by due date: what is overdue on a given day is the part due before it
+    private final NavigableMap<LocalDate, Map<String, TransactionEntry>> pendingByDueDate = new TreeMap<>();
+    // Stamps of deleted rows, so a late update can't bring a row back
+    private final Map<String, Long> deleted = new HashMap<>();
+    private long estimatedBytes;
+
+    TenantWorkingSet(String tenant, List<CustomerDto> customers, List<TransactionDto> transactions,
+                     List<LocalDateTime> createdAt) {
+        this.tenant = tenant;
+        this.loadedAtMillis = System.currentTimeMillis();
+        this.lastAccessNanos = System.nanoTime();
+        for (CustomerDto customer : customers) {
+            CustomerEntry entry = new CustomerEntry(customer, 0);
+            this.customers.put(customer.getId(), entry);
+            estimatedBytes += entry.bytes;
+        }
+        // Already newest first
+        for (int i = 0; i < transactions.size(); i++) {
+            TransactionEntry entry = new TransactionEntry(transactions.get(i), createdAt.get(i), 0);
+            this.transactions.add(entry);
+            this.transactionsById.put(entry.dto.getId(), entry);
+            indexDueDate(entry);
+            estimatedBytes += entry.bytes;
+        }
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    long getLoadedAtMillis() {
+        return loadedAtMillis;
+    }
+
+    long getLastAccessNanos() {
+        return lastAccessNanos;
+    }
+
+    void touch() {
+        lastAccessNanos = System.nanoTime();
+    }
+
+    public long getEstimatedBytes() {
+        lock.readLock().lock();
+        try {
+            return estimatedBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getCustomerCount() {
+        lock.readLock().lock();
+        try {
+            return customers.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getTransactionCount() {
+        lock.readLock().lock();
+        try {
+            return transactions.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Customers
+
+    public CustomerDto getCustomer(String id) {
+        lock.readLock().lock();
+        try {
+            CustomerEntry entry = customers.get(id);
+            return entry != null ? copy(entry.dto) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<CustomerDto> getActiveCustomers() {
+        return findCustomers(c -> Boolean.TRUE.equals(c.getIsActive()));
+    }
+
+    public List<CustomerDto> searchCustomers(String query) {
+        String lowerQuery = query.toLowerCase();
+        return findCustomers(c -> (c.getName() != null && c.getName().toLowerCase().contains(lowerQuery))
+                || (c.getMobile() != null && c.getMobile().contains(query)));
+    }
+
+    public List<CustomerDto> getCustomersByCategory(Integer categoryId) {
+        return findCustomers(c -> categoryId.equals(c.getCategoryId()));
+    }
+
+    public List<CustomerDto> getCustomersWithTotalDueAbove(BigDecimal amount) {
+        return findCustomers(c -> c.getTotalDue() != null && c.getTotalDue().compareTo(amount) > 0);
+    }
+
+    public List<CustomerDto> getCustomersWithTotalDueBetween(BigDecimal minAmount, BigDecimal maxAmount) {
+        return findCustomers(c -> c.getTotalDue() != null
+                && c.getTotalDue().compareTo(minAmount) >= 0 && c.getTotalDue().compareTo(maxAmount) <= 0);
+    }
+
+    public List<CustomerDto> getCustomersByLastTransactionDate(LocalDate startDate, LocalDate endDate) {
+        return findCustomers(c -> c.getLastTransactionDate() != null
+                && !c.getLastTransactionDate().isBefore(startDate) && !c.getLastTransactionDate().isAfter(endDate));
+    }
+
+    public BigDecimal getTotalOutstandingBalance() {
+        lock.readLock().lock();
+        try {
+            BigDecimal total = BigDecimal.ZERO;
+            for (CustomerEntry entry : customers.values()) {
+                if (Boolean.TRUE.equals(entry.dto.getIsActive()) && entry.dto.getTotalDue() != null) {
+                    total = total.add(entry.dto.getTotalDue());
+                }
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<CustomerDto> findCustomers(Predicate<CustomerDto> filter) {
+        lock.readLock().lock();
+        try {
+            List<CustomerDto> result = new ArrayList<>();
+            for (CustomerEntry entry : customers.values()) {
+                if (filter.test(entry.dto)) {
+                    result.add(copy(entry.dto));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Transactions
+
+    public TransactionDto getTransaction(String id) {
+        lock.readLock().lock();
+        try {
+            TransactionEntry entry = transactionsById.get(id);
+            return entry != null ? copy(entry.dto) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<TransactionDto> getAllTransactions() {
+        return findTransactions(t -> true);
+    }
+
+    public List<TransactionDto> getTransactionsByCustomer(String customerId) {
+        return findTransactions(t -> customerId.equals(t.getCustomerId()));
+    }
+
+    public List<TransactionDto> getTransactionsByStatus(TransactionStatus status) {
+        return findTransactions(t -> t.getStatus() == status);
+    }
+
+    // PENDING and due before today, most overdue first
+    public List<TransactionDto> getOverdueTransactions(LocalDate today) {
+        lock.readLock().lock();
+        try {
+            List<TransactionDto> result = new ArrayList<>();
+            for (Map<String, TransactionEntry> due : pendingByDueDate.headMap(today, false).values()) {
+                for (TransactionEntry entry : due.values()) {
+                    result.add(copy(entry.dto));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long countOverdueTransactions(LocalDate today) {
+        lock.readLock().lock();
+        try {
+            long count = 0;
+            for (Map<String, TransactionEntry> due : pendingByDueDate.headMap(today, false).values()) {
+                count += due.size();
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public BigDecimal sumOverdueAmount(LocalDate today) {
+        lock.readLock().lock();
+        try {
+            BigDecimal total = BigDecimal.ZERO;
+            for (Map<String, TransactionEntry> due : pendingByDueDate.headMap(today, false).values()) {
+                for (TransactionEntry entry : due.values()) {
+                    if (entry.dto.getAmount() != null) {
+                        total = total.add(entry.dto.getAmount());
+                    }
+                }
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Same as getTotalAmountByUserAndTypeAndDateRangeAndStatus, both ends inclusive
+    public BigDecimal sumAmount(TransactionType type, TransactionStatus status, LocalDate startDate, LocalDate endDate) {
+        lock.readLock().lock();
+        try {
+            BigDecimal total = BigDecimal.ZERO;
+            for (TransactionEntry entry : transactions) {
+                TransactionDto t = entry.dto;
+                if (t.getTransactionType() == type && t.getStatus() == status && t.getDate() != null
+                        && !t.getDate().isBefore(startDate) && !t.getDate().isAfter(endDate)
+                        && t.getAmount() != null) {
+                    total = total.add(t.getAmount());
+                }
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<TransactionDto> findTransactions(Predicate<TransactionDto> filter) {
+        lock.readLock().lock();
+        try {
+            List<TransactionDto> result = new ArrayList<>();
+            for (TransactionEntry entry : transactions) {
+                if (filter.test(entry.dto)) {
+                    result.add(copy(entry.dto));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Write-through
+
+    void putCustomer(CustomerDto customer, long stamp) {
+        lock.writeLock().lock();
+        try {
+            if (isStale(customer.getId(), stamp, customers.get(customer.getId()))) {
+                return;
+            }
+            CustomerEntry entry = new CustomerEntry(customer, stamp);
+            CustomerEntry previous = customers.put(customer.getId(), entry);
+            estimatedBytes += entry.bytes - (previous != null ? previous.bytes : 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void removeCustomer(String id, long stamp) {
+        lock.writeLock().lock();
+        try {
+            if (isStale(id, stamp, customers.get(id))) {
+                return;
+            }
+            CustomerEntry previous = customers.remove(id);
+            if (previous != null) {
+                estimatedBytes -= previous.bytes;
+            }
+            deleted.put(id, stamp);
+            // Transactions go with their customer
+            transactions.removeIf(entry -> {
+                if (id.equals(entry.dto.getCustomerId())) {
+                    transactionsById.remove(entry.dto.getId());
+                    unindexDueDate(entry);
+                    estimatedBytes -= entry.bytes;
+                    return true;
+                }
+                return false;
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void putTransaction(TransactionDto transaction, LocalDateTime createdAt, long stamp) {
+        lock.writeLock().lock();
+        try {
+            TransactionEntry previous = transactionsById.get(transaction.getId());
+            if (isStale(transaction.getId(), stamp, previous)) {
+                return;
+            }
+            if (previous != null) {
+                transactions.remove(previous);
+                unindexDueDate(previous);
+                estimatedBytes -= previous.bytes;
+                if (createdAt == null) {
+                    createdAt = previous.createdAt;
+                }
+            }
+            TransactionEntry entry = new TransactionEntry(transaction, createdAt, stamp);
+            int index = Collections.binarySearch(transactions, entry, NEWEST_FIRST);
+            transactions.add(index < 0 ? -index - 1 : index, entry);
+            transactionsById.put(transaction.getId(), entry);
+            indexDueDate(entry);
+            estimatedBytes += entry.bytes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void removeTransaction(String id, long stamp) {
+        lock.writeLock().lock();
+        try {
+            TransactionEntry previous = transactionsById.get(id);
+            if (isStale(id, stamp, previous)) {
+                return;
+            }
+            if (previous != null) {
+                transactionsById.remove(id);
+                transactions.remove(previous);
+                unindexDueDate(previous);
+                estimatedBytes -= previous.bytes;
+            }
+            deleted.put(id, stamp);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void indexDueDate(TransactionEntry entry) {
+        if (entry.dto.getStatus() == TransactionStatus.PENDING && entry.dto.getDueDate() != null) {
+            pendingByDueDate.computeIfAbsent(entry.dto.getDueDate(), d -> new LinkedHashMap<>()).put(entry.dto.getId(), entry);
+        }
+    }
+
+    private void unindexDueDate(TransactionEntry entry) {
+        LocalDate dueDate = entry.dto.getDueDate();
+        Map<String, TransactionEntry> due = dueDate != null ? pendingByDueDate.get(dueDate) : null;
+        if (due != null && due.remove(entry.dto.getId()) != null && due.isEmpty()) {
+            pendingByDueDate.remove(dueDate);
+        }
+    }
+
+    private boolean isStale(String id, long stamp, Entry current) {
+        Long deletedAt = deleted.get(id);
+        return (current != null && current.stamp > stamp) || (deletedAt != null && deletedAt > stamp);
+    }
+
+    private static CustomerDto copy(CustomerDto c) {
+        CustomerDto dto = new CustomerDto(c.getId(), c.getName(), c.getMobile(), c.getAddress(), c.getCategory(),
+                c.getNotes(), c.getTotalDue(), c.getLastTransactionDate(), c.getIsActive());
+        dto.setCategoryId(c.getCategoryId());
+        dto.setCreditLimit(c.getCreditLimit());
+        dto.setVersion(c.getVersion());
+        return dto;
+    }
+
+    private static TransactionDto copy(TransactionDto t) {
+        TransactionDto dto = new TransactionDto();
+        dto.setId(t.getId());
+        dto.setCustomerId(t.getCustomerId());
+        dto.setCustomerName(t.getCustomerName());
+        dto.setTransactionType(t.getTransactionType());
+        dto.setAmount(t.getAmount());
+        dto.setDescription(t.getDescription());
+        dto.setDate(t.getDate());
+        dto.setDueDate(t.getDueDate());
+        dto.setStatus(t.getStatus());
+        dto.setPaymentMethod(t.getPaymentMethod());
+        dto.setNotes(t.getNotes());
+        dto.setVersion(t.getVersion());
+        return dto;
+    }
+
+    // Rough heap footprint: object headers and fixed fields plus two bytes per string character
+    private static long estimate(long fixed, String... strings) {
+        long bytes = fixed;
+        for (String s : strings) {
+            if (s != null) {
+                bytes += 40 + 2L * s.length();
+            }
+        }
+        return bytes;
+    }
+
+    private abstract static class Entry {
+        final long stamp;
+        final long bytes;
+
+        Entry(long stamp, long bytes) {
+            this.stamp = stamp;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class CustomerEntry extends Entry {
+        final CustomerDto dto;
+
+        CustomerEntry(CustomerDto dto, long stamp) {
+            super(stamp, estimate(240, dto.getId(), dto.getName(), dto.getMobile(), dto.getAddress(),
+                    dto.getCategory(), dto.getNotes()));
+            this.dto = dto;
+        }
+    }
+
+    private static final class TransactionEntry extends Entry {
+        final TransactionDto dto;
+        final LocalDateTime createdAt;
+
+        TransactionEntry(TransactionDto dto, LocalDateTime createdAt, long stamp) {
+            super(stamp, estimate(280, dto.getId(), dto.getCustomerId(), dto.getCustomerName(),
+                    dto.getDescription(), dto.getNotes()));
+            this.dto = dto;
+            this.createdAt = createdAt;
+        }
+    }
+}
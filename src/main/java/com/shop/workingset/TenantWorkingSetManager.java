@@ -0,0 +1,311 @@
+package com.shop.workingset;
+
+import com.shop.category.CategoryCatalog;
+import com.shop.dto.CustomerDto;
+import com.shop.dto.TransactionDto;
+import com.shop.entity.Customer;
+import com.shop.entity.Transaction;
+import com.shop.repository.CustomerRepository;
+import com.shop.repository.TransactionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps whole shops in memory ({@link TenantWorkingSet}) when {@code workingset.enabled=true}.
+ * A shop is loaded on first access, served from memory afterwards, and evicted least recently
+ * used first once the estimated size of all loaded shops exceeds {@code workingset.memory-budget-mb}.
+ * <p>
+ * Writes still go to the database first. Services report each saved or deleted row here; the
+ * change is stamped in beforeCommit (while the database still holds the row lock, so stamps of
+ * conflicting writes follow commit order) and applied to the loaded shop after commit. A load
+ * that overlapped a commit is thrown away and tried again on the next access.
+ */
+@Component
+@EnableConfigurationProperties(WorkingSetProperties.class)
+public class TenantWorkingSetManager {
+
+    private static final Logger log = LoggerFactory.getLogger(TenantWorkingSetManager.class);
+
+    private static final int LOAD_LOCK_STRIPES = 64;
+
+    @Autowired
+    private WorkingSetProperties properties;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private CategoryCatalog categoryCatalog;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final Map<String, TenantWorkingSet> workingSets = new ConcurrentHashMap<>();
+    // Commit stamps per shop; also tells a load whether a write committed while it was running
+    private final Map<String, AtomicLong> commitStamps = new ConcurrentHashMap<>();
+    // Shops over the size limits, with the time they were last counted
+    private final Map<String, Long> tooLarge = new ConcurrentHashMap<>();
+    private final Object[] loadLocks = new Object[LOAD_LOCK_STRIPES];
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public TenantWorkingSetManager() {
+        for (int i = 0; i < loadLocks.length; i++) {
+            loadLocks[i] = new Object();
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * The shop's working set, loading it if needed, or null when the engine is off or the shop
+     * has to be read from the database (too large, or its load raced a write).
+     */
+    public TenantWorkingSet find(String tenant) {
+        if (!properties.isEnabled() || tenant == null) {
+            return null;
+        }
+        TenantWorkingSet workingSet = workingSets.get(tenant);
+        if (workingSet != null && !isExpired(workingSet.getLoadedAtMillis())) {
+            workingSet.touch();
+            hits.incrementAndGet();
+            return workingSet;
+        }
+        misses.incrementAndGet();
+        Long countedAt = tooLarge.get(tenant);
+        if (countedAt != null && !isExpired(countedAt)) {
+            return null;
+        }
+        synchronized (loadLocks[Math.floorMod(tenant.hashCode(), LOAD_LOCK_STRIPES)]) {
+            workingSet = workingSets.get(tenant);
+            if (workingSet != null && !isExpired(workingSet.getLoadedAtMillis())) {
+                workingSet.touch();
+                return workingSet;
+            }
+            return load(tenant);
+        }
+    }
+
+    private TenantWorkingSet load(String tenant) {
+        long stampBefore = stampFor(tenant).get();
+        // Read-write transaction so that with read replicas the load comes from the primary
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        TenantWorkingSet loaded = template.execute(status -> {
+            if (customerRepository.countByUserEmail(tenant) > properties.getMaxCustomers()
+                    || transactionRepository.countByUserEmail(tenant) > properties.getMaxTransactions()) {
+                return null;
+            }
+            List<CustomerDto> customers = new ArrayList<>();
+            for (Customer customer : customerRepository.findByUserEmail(tenant)) {
+                customers.add(toDto(customer));
+            }
+            List<TransactionDto> transactions = new ArrayList<>();
+            List<LocalDateTime> createdAt = new ArrayList<>();
+            for (Transaction transaction : transactionRepository.findByUserEmailOrderByDateDescCreatedAtDesc(tenant)) {
+                transactions.add(toDto(transaction));
+                createdAt.add(transaction.getCreatedAt());
+            }
+            return new TenantWorkingSet(tenant, customers, transactions, createdAt);
+        });
+        if (loaded == null) {
+            tooLarge.put(tenant, System.currentTimeMillis());
+            workingSets.remove(tenant);
+            log.debug("Shop {} exceeds the working set limits, reading it from the database", tenant);
+            return null;
+        }
+        tooLarge.remove(tenant);
+        workingSets.put(tenant, loaded);
+        if (stampFor(tenant).get() != stampBefore) {
+            // A write committed during the load; its after-commit update may have missed this copy
+            workingSets.remove(tenant, loaded);
+            return null;
+        }
+        loads.incrementAndGet();
+        enforceBudget();
+        return loaded;
+    }
+
+    public void invalidate(String tenant) {
+        if (tenant != null) {
+            stampFor(tenant).incrementAndGet();
+            workingSets.remove(tenant);
+        }
+    }
+
+    public void invalidateAll() {
+        for (String tenant : new ArrayList<>(workingSets.keySet())) {
+            invalidate(tenant);
+        }
+    }
+
+    // Write-through hooks, called by the services after saving to the database
+
+    public void customerSaved(String tenant, Customer customer) {
+        CustomerDto dto = toDto(customer);
+        afterCommit(tenant, (workingSet, stamp) -> workingSet.putCustomer(dto, stamp));
+    }
+
+    public void customerDeleted(String tenant, String customerId) {
+        afterCommit(tenant, (workingSet, stamp) -> workingSet.removeCustomer(customerId, stamp));
+    }
+
+    public void transactionSaved(String tenant, Transaction transaction) {
+        TransactionDto dto = toDto(transaction);
+        LocalDateTime createdAt = transaction.getCreatedAt();
+        afterCommit(tenant, (workingSet, stamp) -> workingSet.putTransaction(dto, createdAt, stamp));
+    }
+
+    public void transactionDeleted(String tenant, String transactionId) {
+        afterCommit(tenant, (workingSet, stamp) -> workingSet.removeTransaction(transactionId, stamp));
+    }
+
+    private void afterCommit(String tenant, Change change) {
+        if (!properties.isEnabled() || tenant == null) {
+            return;
+        }
+        AtomicLong stamps = stampFor(tenant);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(tenant, change, stamps.incrementAndGet());
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private long stamp;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                stamp = stamps.incrementAndGet();
+            }
+
+            @Override
+            public void afterCommit() {
+                // Bumped again so a load that started between beforeCommit and the commit is discarded
+                stamps.incrementAndGet();
+                apply(tenant, change, stamp);
+            }
+        });
+    }
+
+    private void apply(String tenant, Change change, long stamp) {
+        TenantWorkingSet workingSet = workingSets.get(tenant);
+        if (workingSet != null) {
+            change.apply(workingSet, stamp);
+            enforceBudget();
+        }
+    }
+
+    private void enforceBudget() {
+        long budget = properties.getMemoryBudgetMb() * 1024 * 1024;
+        while (true) {
+            long total = 0;
+            TenantWorkingSet leastRecent = null;
+            for (TenantWorkingSet workingSet : workingSets.values()) {
+                total += workingSet.getEstimatedBytes();
+                if (leastRecent == null || workingSet.getLastAccessNanos() - leastRecent.getLastAccessNanos() < 0) {
+                    leastRecent = workingSet;
+                }
+            }
+            if (total <= budget || leastRecent == null) {
+                return;
+            }
+            if (workingSets.remove(leastRecent.getTenant(), leastRecent)) {
+                evictions.incrementAndGet();
+                log.debug("Evicted shop {} from the working set ({} bytes)", leastRecent.getTenant(),
+                        leastRecent.getEstimatedBytes());
+            }
+        }
+    }
+
+    private boolean isExpired(long sinceMillis) {
+        return System.currentTimeMillis() - sinceMillis > properties.getMaxAgeSeconds() * 1000;
+    }
+
+    private AtomicLong stampFor(String tenant) {
+        return commitStamps.computeIfAbsent(tenant, t -> new AtomicLong());
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        long bytes = 0;
+        int customers = 0;
+        int transactions = 0;
+        for (TenantWorkingSet workingSet : workingSets.values()) {
+            bytes += workingSet.getEstimatedBytes();
+            customers += workingSet.getCustomerCount();
+            transactions += workingSet.getTransactionCount();
+        }
+        stats.put("enabled", properties.isEnabled());
+        stats.put("loadedShops", workingSets.size());
+        stats.put("customers", customers);
+        stats.put("transactions", transactions);
+        stats.put("estimatedBytes", bytes);
+        stats.put("budgetBytes", properties.getMemoryBudgetMb() * 1024 * 1024);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("loads", loads.get());
+        stats.put("evictions", evictions.get());
+        stats.put("shopsTooLarge", tooLarge.size());
+        return stats;
+    }
+
+    private CustomerDto toDto(Customer customer) {
+        CustomerDto dto = new CustomerDto();
+        dto.setId(customer.getId());
+        dto.setName(customer.getName());
+        dto.setMobile(customer.getMobile());
+        dto.setAddress(customer.getAddress());
+        dto.setCategoryId(customer.getCategoryId());
+        dto.setCategory(categoryCatalog.nameOf(customer.getCategoryId()));
+        dto.setNotes(customer.getNotes());
+        dto.setTotalDue(customer.getTotalDue() != null ? customer.getTotalDue() : BigDecimal.ZERO);
+        dto.setCreditLimit(customer.getCreditLimit());
+        dto.setLastTransactionDate(customer.getLastTransactionDate());
+        dto.setIsActive(customer.getIsActive() != null ? customer.getIsActive() : true);
+        dto.setVersion(customer.getVersion());
+        return dto;
+    }
+
+    private static TransactionDto toDto(Transaction transaction) {
+        TransactionDto dto = new TransactionDto();
+        dto.setId(transaction.getId());
+        dto.setCustomerId(transaction.getCustomer().getId());
+        dto.setCustomerName(transaction.getCustomerName());
+        dto.setTransactionType(transaction.getTransactionType());
+        dto.setAmount(transaction.getAmount());
+        dto.setDescription(transaction.getDescription());
+        dto.setDate(transaction.getDate());
+        dto.setDueDate(transaction.getDueDate());
+        dto.setStatus(transaction.getStatus());
+        dto.setPaymentMethod(transaction.getPaymentMethod());
+        dto.setNotes(transaction.getNotes());
+        dto.setVersion(transaction.getVersion());
+        return dto;
+    }
+
+    private interface Change {
+        void apply(TenantWorkingSet workingSet, long stamp);
+    }
+}
@@ -0,0 +1,60 @@
+package com.shop.workingset;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "workingset")
+public class WorkingSetProperties {
+
+    private boolean enabled = false;
+
+    // Estimated heap for all loaded shops together; least recently used shops are evicted beyond it
+    private long memoryBudgetMb = 256;
+
+    // Shops larger than this are never loaded and keep reading from the database
+    private int maxCustomers = 2000;
+
+    private int maxTransactions = 50000;
+
+    // A loaded shop is reloaded after this long, so writes made by other instances show up eventually
+    private long maxAgeSeconds = 300;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMemoryBudgetMb() {
+        return memoryBudgetMb;
+    }
+
+    public void setMemoryBudgetMb(long memoryBudgetMb) {
+        this.memoryBudgetMb = memoryBudgetMb;
+    }
+
+    public int getMaxCustomers() {
+        return maxCustomers;
+    }
+
+    public void setMaxCustomers(int maxCustomers) {
+        this.maxCustomers = maxCustomers;
+    }
+
+    public int getMaxTransactions() {
+        return maxTransactions;
+    }
+
+    public void setMaxTransactions(int maxTransactions) {
+        this.maxTransactions = maxTransactions;
+    }
+
+    public long getMaxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    public void setMaxAgeSeconds(long maxAgeSeconds) {
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+}
@@ -0,0 +1,118 @@
+package com.shop.datasource;
+
+import com.shop.archive.TransactionArchive;
+import com.shop.dto.CustomerDto;
+import com.shop.dto.RegisterRequest;
+import com.shop.dto.TransactionDto;
+import com.shop.entity.CustomerOpeningBalance;
+import com.shop.entity.Transaction.PaymentMethod;
+import com.shop.entity.Transaction.TransactionStatus;
+import com.shop.entity.Transaction.TransactionType;
+import com.shop.service.CustomerService;
+import com.shop.service.TransactionService;
+import com.shop.service.UserService;
+import com.shop.sync.ChangeFeed;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Moves a shop with archived history, an opening balance and a change feed between the embedded shards:
+ * every row arrives on the target shard and none are left on the source.
+ */
+@SpringBootTest(properties = "loadtest.seed.enabled=false")
+@ActiveProfiles({"embedded", "embedded-sharded"})
+class ShardMigrationServiceTest {
+
+    private static final int RETENTION_DAYS = 730;
+
+    @Autowired
+    private ShardMigrationService migration;
+
+    @Autowired
+    private ShardRoutingDataSource routingDataSource;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionArchive archive;
+
+    @Autowired
+    private ChangeFeed changeFeed;
+
+    @Test
+    void moveCarriesArchivedHistoryAndTheChangeFeed() {
+        String shop = "mover-" + UUID.randomUUID() + "@test.local";
+        TenantContext.runAsTenant(shop, () ->
+                userService.registerUser(new RegisterRequest("Mover", shop, "secret123", "Mover Shop", "9000000000")));
+        LocalDate cutoff = LocalDate.now().minusDays(RETENTION_DAYS);
+        String customerId = TenantContext.callAsTenant(shop, () -> {
+            String id = newCustomer(shop);
+            transactionService.createTransaction(shop, transaction(id, new BigDecimal("40.00"), cutoff.minusDays(30)));
+            transactionService.createTransaction(shop, transaction(id, new BigDecimal("25.00"), cutoff.minusDays(10)));
+            transactionService.createTransaction(shop, transaction(id, new BigDecimal("15.00"), LocalDate.now()));
+            assertEquals(2, archive.archiveTenant(shop, cutoff));
+            return id;
+        });
+        ChangeFeed.Head head = TenantContext.callAsTenant(shop, () -> changeFeed.head(shop));
+
+        ShardDirectory directory = routingDataSource.getDirectory();
+        int sourceShard = directory.shardFor(shop);
+        int targetShard = (sourceShard + 1) % directory.getShardCount();
+        migration.moveTenant(shop, targetShard);
+
+        assertEquals(targetShard, directory.shardFor(shop));
+        TenantContext.runAsTenant(shop, () -> {
+            assertEquals(0, new BigDecimal("80.00").compareTo(customerService.getCustomerById(shop, customerId).getTotalDue()));
+            assertEquals(1, transactionService.getTransactionsByCustomer(shop, customerId).size());
+            assertEquals(2, archive.find(shop, customerId, cutoff.minusYears(1), cutoff).size());
+            CustomerOpeningBalance opening = archive.openingBalance(shop, customerId);
+            assertNotNull(opening);
+            assertEquals(0, new BigDecimal("65.00").compareTo(opening.getBalance()));
+            assertEquals(2L, opening.getTransactionCount());
+            assertEquals(head.lastSeq(), changeFeed.head(shop).lastSeq());
+        });
+
+        JdbcTemplate source = new JdbcTemplate(routingDataSource.getShard(sourceShard));
+        for (String table : new String[]{"customers", "transactions", "transactions_archive",
+                "customer_opening_balances", "sync_sequences"}) {
+            assertEquals(0, source.queryForObject("SELECT COUNT(*) FROM " + table + " WHERE user_email = ?",
+                    Integer.class, shop), table + " left on the source shard");
+        }
+    }
+
+    private String newCustomer(String shop) {
+        CustomerDto customer = new CustomerDto();
+        customer.setName("Moving Customer");
+        customer.setMobile("9000000001");
+        return customerService.createCustomer(shop, customer).getId();
+    }
+
+    private static TransactionDto transaction(String customerId, BigDecimal amount, LocalDate date) {
+        TransactionDto credit = new TransactionDto();
+        credit.setCustomerId(customerId);
+        credit.setTransactionType(TransactionType.CREDIT);
+        credit.setAmount(amount);
+        credit.setDescription("Credit");
+        credit.setDate(date);
+        credit.setStatus(TransactionStatus.COMPLETED);
+        credit.setPaymentMethod(PaymentMethod.CASH);
+        return credit;
+    }
+}
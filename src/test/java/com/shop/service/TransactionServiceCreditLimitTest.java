@@ -0,0 +1,141 @@
+package com.shop.service;
+
+import com.shop.dto.CustomerDto;
+import com.shop.dto.RegisterRequest;
+import com.shop.dto.TransactionDto;
+import com.shop.entity.Transaction.PaymentMethod;
+import com.shop.entity.Transaction.TransactionStatus;
+import com.shop.entity.Transaction.TransactionType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * Parallel CREDIT postings against a customer with a credit limit: the ones that fit are booked, the rest
+ * are refused, and the balance never ends up past the limit.
+ */
+@SpringBootTest(properties = "loadtest.seed.enabled=false")
+@ActiveProfiles("embedded")
+class TransactionServiceCreditLimitTest {
+
+    private static final int POSTINGS = 20;
+    private static final BigDecimal AMOUNT = new BigDecimal("10.00");
+    private static final BigDecimal LIMIT = new BigDecimal("95.00");
+    // 9 credits of 10 fit under 95; the 10th would take the balance to 100
+    private static final int FIT = LIMIT.divideToIntegralValue(AMOUNT).intValue();
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private UserService userService;
+
+    @SpyBean
+    private CustomerLockManager customerLocks;
+
+    @Test
+    void parallelCreditsNeverPassTheLimit() throws Exception {
+        String shop = newShop();
+        String customerId = newCustomer(shop);
+
+        assertLimitHolds(shop, customerId);
+    }
+
+    // As if every posting came through another instance: only the conditional UPDATE keeps them under the limit
+    @Test
+    void parallelCreditsNeverPassTheLimitWithoutTheCustomerLock() throws Exception {
+        doAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get())
+                .when(customerLocks).withCustomerLocks(anyCollection(), any());
+        String shop = newShop();
+        String customerId = newCustomer(shop);
+
+        assertLimitHolds(shop, customerId);
+    }
+
+    private void assertLimitHolds(String shop, String customerId) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(POSTINGS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> postings = new ArrayList<>();
+        try {
+            for (int i = 0; i < POSTINGS; i++) {
+                postings.add(pool.submit(() -> {
+                    start.await();
+                    try {
+                        transactionService.createTransaction(shop, credit(customerId));
+                        return true;
+                    } catch (CreditLimitExceededException e) {
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+            int accepted = 0;
+            int rejected = 0;
+            for (Future<Boolean> posting : postings) {
+                if (posting.get(60, TimeUnit.SECONDS)) {
+                    accepted++;
+                } else {
+                    rejected++;
+                }
+            }
+
+            BigDecimal totalDue = customerService.getCustomerById(shop, customerId).getTotalDue();
+            assertTrue(totalDue.compareTo(LIMIT) <= 0, "total due " + totalDue + " is past the limit " + LIMIT);
+            assertEquals(FIT, accepted);
+            assertEquals(POSTINGS - FIT, rejected);
+            assertEquals(0, AMOUNT.multiply(BigDecimal.valueOf(FIT)).compareTo(totalDue));
+            assertEquals(FIT, transactionService.getTransactionsByCustomer(shop, customerId).size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private String newShop() {
+        String email = "limits-" + UUID.randomUUID() + "@test.local";
+        userService.registerUser(new RegisterRequest("Limits", email, "secret123", "Limits Shop", "9000000000"));
+        return email;
+    }
+
+    private String newCustomer(String shop) {
+        CustomerDto customer = new CustomerDto();
+        customer.setName("Limited Customer");
+        customer.setMobile("9000000001");
+        customer.setCreditLimit(LIMIT);
+        return customerService.createCustomer(shop, customer).getId();
+    }
+
+    private static TransactionDto credit(String customerId) {
+        TransactionDto credit = new TransactionDto();
+        credit.setCustomerId(customerId);
+        credit.setTransactionType(TransactionType.CREDIT);
+        credit.setAmount(AMOUNT);
+        credit.setDescription("Credit");
+        credit.setDate(LocalDate.now());
+        credit.setStatus(TransactionStatus.PENDING);
+        credit.setPaymentMethod(PaymentMethod.CASH);
+        return credit;
+    }
+}